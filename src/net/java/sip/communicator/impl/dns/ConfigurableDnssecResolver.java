@@ -19,10 +19,13 @@
 
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.*;
 import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import javax.swing.*;
 
@@ -40,6 +43,10 @@
 /**
  * Resolver that wraps a DNSSEC capable resolver and handles validation
  * failures according to the user's settings.
+ * <p>
+ * Validated answers are cached until the first of their TTLs or signature
+ * expirations, and the per-domain validation policies are kept in memory and
+ * updated when the configuration changes.
  *
  * @author Ingo Bauersachs
  */
@@ -65,6 +72,11 @@
 
     final static String EVENT_TYPE = "DNSSEC_NOTIFICATION";
 
+    /**
+     * The max number of validated answers we cache.
+     */
+    private final static int VALIDATION_CACHE_SIZE = 512;
+
     private ConfigurationService config
         = DnsUtilActivator.getConfigurationService();
     private ResourceManagementService R
@@ -74,6 +86,45 @@
 
     private ExtendedResolver headResolver;
 
+    /**
+     * The validated answers we have received, in wire format, keyed by
+     * question name, type and class.
+     */
+    private final Map<String, CachedValidation> validationCache
+        = new LinkedHashMap<String, CachedValidation>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CachedValidation> eldest)
+            {
+                return size() > VALIDATION_CACHE_SIZE;
+            }
+        };
+
+    /**
+     * The number of answers that were validated by the DNSSEC resolver.
+     */
+    private final AtomicLong validations = new AtomicLong();
+
+    /**
+     * The number of answers that were served from the validation cache.
+     */
+    private final AtomicLong validationCacheHits = new AtomicLong();
+
+    /**
+     * The default validation policy, {@link #PNAME_DNSSEC_VALIDATION_MODE}.
+     */
+    private volatile SecureResolveMode defaultMode;
+
+    /**
+     * The pinned per-domain validation policies, keyed by their property
+     * names.
+     */
+    private final Map<String, SecureResolveMode> pinnedModes
+        = new ConcurrentHashMap<String, SecureResolveMode>();
+
     /**
      * Creates a new instance of this class. Tries to use the system's
      * default forwarders.
@@ -104,6 +155,14 @@ public ConfigurableDnssecResolver(ExtendedResolver headResolver)
         }
 
         this.headResolver = headResolver;
+        loadPolicies();
+        this.config.addPropertyChangeListener(new PropertyChangeListener()
+        {
+            public void propertyChange(PropertyChangeEvent evt)
+            {
+                policyChanged(evt.getPropertyName(), evt.getNewValue());
+            }
+        });
         reset();
         Lookup.setDefaultResolver(this);
 
@@ -135,26 +194,20 @@ public Message send(Message query)
         //c)  0   |  0   ||  ok  |   nok    |      ok      |    ok    |   ask
         //---------------------------------------------------------------------
 
-        SecureMessage msg = new SecureMessage(super.send(query));
+        SecureMessage msg = validate(query);
         String fqdn = msg.getQuestion().getName().toString();
         String type = Type.string(msg.getQuestion().getType());
         String propName = createPropNameUnsigned(fqdn, type);
-        SecureResolveMode defaultAction = Enum.valueOf(SecureResolveMode.class,
-            config.getString(
-                PNAME_DNSSEC_VALIDATION_MODE,
-                SecureResolveMode.WarnIfBogus.name()
-            )
-        );
-        SecureResolveMode pinned = Enum.valueOf(SecureResolveMode.class,
-            config.getString(
-                propName,
-                defaultAction.name()
-            )
-        );
+        SecureResolveMode defaultAction = defaultMode;
+        SecureResolveMode pinned = pinnedModes.get(propName);
 
         //create default entry
-        if(pinned == defaultAction)
+        if(pinned == null)
+        {
+            pinned = defaultAction;
+            pinnedModes.put(propName, pinned);
             config.setProperty(propName, pinned.name());
+        }
 
         //check domain policy
 
@@ -226,6 +279,208 @@ public Message send(Message query)
         return msg;
     }
 
+    /**
+     * Sends the query to the DNSSEC resolver, or returns the cached answer if
+     * it has already been validated and is not expired.
+     *
+     * @param query the query to send.
+     * @return the validated answer.
+     * @throws IOException An error occurred while sending or receiving.
+     */
+    private SecureMessage validate(Message query)
+        throws IOException
+    {
+        Record question = query.getQuestion();
+        String key = null;
+
+        if(question != null)
+        {
+            key = question.getName().toString().toLowerCase()
+                + "/" + question.getType() + "/" + question.getDClass();
+
+            CachedValidation cached;
+            synchronized(validationCache)
+            {
+                cached = validationCache.get(key);
+                if(cached != null
+                    && cached.expires <= System.currentTimeMillis())
+                {
+                    validationCache.remove(key);
+                    cached = null;
+                }
+            }
+
+            if(cached != null)
+            {
+                validationCacheHits.incrementAndGet();
+                if(logger.isTraceEnabled())
+                    logTraceValidationStats();
+
+                Message response = new Message(cached.wire);
+                response.getHeader().setID(query.getHeader().getID());
+                return new SecureMessage(response);
+            }
+        }
+
+        Message response = super.send(query);
+        validations.incrementAndGet();
+        if(logger.isTraceEnabled())
+            logTraceValidationStats();
+
+        SecureMessage msg = new SecureMessage(response);
+        if(key != null && !msg.isBogus())
+        {
+            long expires = getExpiration(response);
+            if(expires > System.currentTimeMillis())
+            {
+                synchronized(validationCache)
+                {
+                    validationCache.put(key,
+                        new CachedValidation(response.toWire(), expires));
+                }
+            }
+        }
+
+        return msg;
+    }
+
+    /**
+     * Determines until when a validated answer can be cached: the first
+     * expiration of the TTLs of its answer and authority records and of the
+     * validity of their signatures.
+     *
+     * @param response the validated answer.
+     * @return the time in milliseconds the answer expires, or <tt>0</tt> if
+     * it must not be cached.
+     */
+    private static long getExpiration(Message response)
+    {
+        int rcode = response.getRcode();
+        if(rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN)
+            return 0;
+
+        long now = System.currentTimeMillis();
+        long expires = Long.MAX_VALUE;
+        boolean hasRecords = false;
+        for(int section : new int[] { Section.ANSWER, Section.AUTHORITY })
+        {
+            for(Record r : response.getSectionArray(section))
+            {
+                hasRecords = true;
+                expires = Math.min(expires, now + r.getTTL() * 1000);
+                if(r instanceof RRSIGRecord)
+                {
+                    expires = Math.min(expires,
+                        ((RRSIGRecord) r).getExpire().getTime());
+                }
+            }
+        }
+
+        return hasRecords ? expires : 0;
+    }
+
+    /**
+     * Logs the number of validated and cached answers.
+     */
+    private void logTraceValidationStats()
+    {
+        logger.trace("DNSSEC validations: " + validations.get()
+            + ", served from cache: " + validationCacheHits.get());
+    }
+
+    /**
+     * Returns the number of answers that were validated by the DNSSEC
+     * resolver.
+     *
+     * @return the number of validations performed.
+     */
+    public long getValidationCount()
+    {
+        return validations.get();
+    }
+
+    /**
+     * Returns the number of answers that were served from the cache of
+     * validated answers.
+     *
+     * @return the number of answers served from the cache.
+     */
+    public long getValidationCacheHitCount()
+    {
+        return validationCacheHits.get();
+    }
+
+    /**
+     * Loads the default and the pinned per-domain validation policies from
+     * the configuration.
+     */
+    private void loadPolicies()
+    {
+        policyChanged(PNAME_DNSSEC_VALIDATION_MODE,
+            config.getString(PNAME_DNSSEC_VALIDATION_MODE));
+        for(String propName
+                : config.getPropertyNamesByPrefix(PNAME_BASE_DNSSEC_PIN, false))
+        {
+            policyChanged(propName, config.getString(propName));
+        }
+    }
+
+    /**
+     * Updates the in-memory validation policies when their configuration
+     * property changes.
+     *
+     * @param propName the name of the changed property.
+     * @param value the new value of the property, <tt>null</tt> if it was
+     * removed.
+     */
+    private void policyChanged(String propName, Object value)
+    {
+        if(PNAME_DNSSEC_VALIDATION_MODE.equals(propName))
+        {
+            defaultMode = (value == null)
+                ? SecureResolveMode.WarnIfBogus
+                : Enum.valueOf(SecureResolveMode.class, value.toString());
+        }
+        else if(propName.startsWith(PNAME_BASE_DNSSEC_PIN + "."))
+        {
+            if(value == null)
+                pinnedModes.remove(propName);
+            else
+            {
+                pinnedModes.put(propName,
+                    Enum.valueOf(SecureResolveMode.class, value.toString()));
+            }
+        }
+    }
+
+    /**
+     * A validated answer in wire format and the time it expires.
+     */
+    private static class CachedValidation
+    {
+        /**
+         * The validated answer in wire format.
+         */
+        private final byte[] wire;
+
+        /**
+         * The time in milliseconds the answer expires.
+         */
+        private final long expires;
+
+        /**
+         * Creates a cached validated answer.
+         *
+         * @param wire the validated answer in wire format.
+         * @param expires the time in milliseconds the answer expires.
+         */
+        private CachedValidation(byte[] wire, long expires)
+        {
+            this.wire = wire;
+            this.expires = expires;
+        }
+    }
+
     /**
      * Defines the return code from the DNSSEC verification dialog.
      */
@@ -400,6 +655,11 @@ private String createPropNameUnsigned(String fqdn, String type)
     @Override
     public void reset()
     {
+        synchronized(validationCache)
+        {
+            validationCache.clear();
+        }
+
         String forwarders = DnsUtilActivator.getConfigurationService()
             .getString(DnsUtilActivator.PNAME_DNSSEC_NAMESERVERS);
         if(!StringUtils.isNullOrEmpty(forwarders, true))
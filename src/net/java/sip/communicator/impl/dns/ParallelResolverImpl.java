@@ -42,8 +42,13 @@
  * them to both our primary and backup resolvers (in case we have any). We then
  * always return the first response we get, regardless of who sent it.
  * <p>
- * We exit redundant mode after receiving <tt>DNS_REDEMPTION</tt> consecutive
- * timely and correct responses from our primary resolver.
+ * We keep an exponentially weighted moving average of the response times of
+ * our primary and backup resolvers, smoothed over <tt>DNS_REDEMPTION</tt>
+ * responses. We exit redundant mode once the average response time of our
+ * primary resolver is back under <tt>DNS_PATIENCE</tt>.
+ * <p>
+ * All queries are sent from a fixed pool of threads, so that network flaps
+ * with many accounts reconnecting do not spawn a thread per query.
  *
  * @author Emil Ivov
  */
@@ -77,15 +82,26 @@
     public static int currentDnsRedemption = DNS_REDEMPTION;
 
     /**
-     * The number of fast responses that we need to get from the primary
-     * resolver before we exit redundant mode. <tt>0</tt> indicates that we are
-     * no longer in redundant mode
+     * The max number of threads sending queries to the primary resolver, and
+     * to the backup resolvers.
+     */
+    private static final int MAX_QUERY_THREADS = 16;
+
+    /**
+     * The exponentially weighted moving average of the response times of
+     * the primary resolver in milliseconds.
+     */
+    private static double primaryLatency = 0;
+
+    /**
+     * The exponentially weighted moving average of the response times of
+     * the backup resolvers in milliseconds.
      */
-    private static int redemptionStatus = 0;
+    private static double backupLatency = 0;
 
     /**
-     * A lock that we use while determining whether we've completed redemption
-     * and can exit redundant mode.
+     * A lock that we use while updating the response time averages and
+     * determining whether we can exit redundant mode.
      */
     private final static Object redemptionLock = new Object();
 
@@ -99,21 +115,54 @@
      */
     private ExtendedResolver backupResolver;
 
-    /** Thread pool that processes the backup queries. */
-    private ExecutorService backupQueriesPool;
+    /** Thread pool that processes the primary queries. */
+    private final ThreadPoolExecutor primaryQueriesPool;
+
+    /**
+     * Thread pool that processes the backup queries. Backup queries race the
+     * primary ones, so they must not wait behind them in the same queue.
+     */
+    private final ThreadPoolExecutor backupQueriesPool;
 
     /**
      * Creates a new instance of this class.
      */
     ParallelResolverImpl()
     {
-        backupQueriesPool = Executors.newCachedThreadPool();
+        primaryQueriesPool = createQueriesPool("primary query");
+        backupQueriesPool = createQueriesPool("backup query");
         DnsUtilActivator.getConfigurationService()
             .addPropertyChangeListener(this);
         initProperties();
         reset();
     }
 
+    /**
+     * Creates a pool of daemon threads for sending queries.
+     *
+     * @param name the name of the pool threads
+     * @return the new thread pool
+     */
+    private static ThreadPoolExecutor createQueriesPool(final String name)
+    {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            MAX_QUERY_THREADS, MAX_QUERY_THREADS,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r,
+                        ParallelResolverImpl.class.getName() + " " + name);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     private void initProperties()
     {
         String rslvrAddrStr
@@ -228,7 +277,9 @@ public Message send(Message query)
                 synchronized(redemptionLock)
                 {
                     redundantMode = true;
-                    redemptionStatus = currentDnsRedemption;
+                    // the primary resolver has to prove itself again
+                    primaryLatency
+                        = Math.max(primaryLatency, 2 * currentDnsPatience);
                     logger.info("Primary DNS seems laggy: "
                         + "no response for " + query.getQuestion().getName()
                         + "/" + Type.string(query.getQuestion().getType())
@@ -245,30 +296,45 @@ public Message send(Message query)
         //check if it is time to end redundant mode.
         synchronized(redemptionLock)
         {
-            if(!resolution.primaryResolverRespondedFirst)
-            {
-                //primary DNS is still feeling shaky. we reinit redemption
-                //status in case we were about to cut the server some slack
-                redemptionStatus = currentDnsRedemption;
-            }
-            else
+            //the primary server has to reply first and be fast on average
+            //to redeem some dignity
+            if(redundantMode
+                && resolution.primaryResolverRespondedFirst
+                && primaryLatency < currentDnsPatience)
             {
-                //primary server replied first. we let him redeem some dignity
-                redemptionStatus --;
-
                 //yup, it's now time to end DNS redundant mode;
-                if(redemptionStatus <= 0)
-                {
-                    redundantMode = false;
-                    logger.info("Primary DNS seems back in biz. "
-                                    + "Disabling redundant mode.");
-                }
+                redundantMode = false;
+                logger.info("Primary DNS seems back in biz (average response"
+                    + " time " + (long) primaryLatency + "ms, backup "
+                    + (long) backupLatency + "ms). "
+                    + "Disabling redundant mode.");
             }
         }
 
         return resolution.returnResponseOrThrowUp();
     }
 
+    /**
+     * Adds a response time sample to the moving average of the primary or the
+     * backup resolvers. The averages are smoothed over
+     * <tt>currentDnsRedemption</tt> samples.
+     *
+     * @param primary <tt>true</tt> if the sample is for the primary resolver.
+     * @param latency the response time in milliseconds.
+     */
+    private static void addLatencySample(boolean primary, long latency)
+    {
+        double alpha = 2d / (Math.max(currentDnsRedemption, 1) + 1);
+
+        synchronized(redemptionLock)
+        {
+            if(primary)
+                primaryLatency += alpha * (latency - primaryLatency);
+            else
+                backupLatency += alpha * (latency - backupLatency);
+        }
+    }
+
     /**
      * Supposed to asynchronously send messages but not currently implemented.
      *
@@ -505,7 +571,7 @@ public ParallelResolution(final Message query)
          */
         public void sendFirstQuery()
         {
-            ParallelResolverImpl.this.backupQueriesPool.execute(this);
+            ParallelResolverImpl.this.primaryQueriesPool.execute(this);
         }
 
         /**
@@ -514,7 +580,16 @@ public void sendFirstQuery()
         @Override
         public void run()
         {
+            //the backup resolvers may have replied while we were queued
+            if (done)
+            {
+                return;
+            }
+
             Message localResponse = null;
+            // measured from here, so time spent waiting for a pool thread
+            // doesn't count against the primary resolver
+            long startTime = System.currentTimeMillis();
 
             try
             {
@@ -531,6 +606,13 @@ public void run()
                 exception = exc;
             }
 
+            //failures and unsatisfactory responses count as responses
+            //beyond our patience
+            long latency = System.currentTimeMillis() - startTime;
+            if(localResponse == null || !isResponseSatisfactory(localResponse))
+                latency = Math.max(latency, 2 * currentDnsPatience);
+            addLatencySample(true, latency);
+
             //if the backup resolvers had already replied we ignore the
             //reply of the primary one whatever it was.
             if(done)
@@ -568,6 +650,7 @@ public void run()
                     }
 
                     Message localResponse = null;
+                    long backupStartTime = System.currentTimeMillis();
                     try
                     {
                         logger.info("Sending query for "
@@ -585,6 +668,12 @@ public void run()
                         //keep this so that we can rethrow it
                         exception = exc;
                     }
+
+                    if(localResponse != null)
+                    {
+                        addLatencySample(false,
+                            System.currentTimeMillis() - backupStartTime);
+                    }
                     //if the default resolver has already replied we
                     //ignore the reply of the backup ones.
                     if(done)
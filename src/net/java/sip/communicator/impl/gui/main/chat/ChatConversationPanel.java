@@ -25,6 +25,8 @@
 import java.text.*;
 import java.util.*;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.regex.*;
 
 import javax.swing.*;
@@ -40,7 +42,6 @@
 import net.java.sip.communicator.impl.gui.utils.*;
 import net.java.sip.communicator.impl.gui.utils.Constants;
 import net.java.sip.communicator.plugin.desktoputil.*;
-import net.java.sip.communicator.plugin.desktoputil.SwingWorker;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.history.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -111,6 +112,69 @@
     private static final Pattern DIV_PATTERN =
             Pattern.compile("(<div[^>]*>)(.*)(</div>)", Pattern.DOTALL);
 
+    /**
+     * The maximum number of threads that process message replacements for
+     * all chat panels together.
+     */
+    private static final int REPLACEMENT_THREADS = 2;
+
+    /**
+     * The maximum number of entries in each of the replacement caches.
+     */
+    private static final int REPLACEMENT_CACHE_SIZE = 512;
+
+    /**
+     * The executor shared by all chat panels that processes message
+     * replacements. Queued messages are processed newest first, and messages
+     * shown in history windows after those of live chats.
+     */
+    private static final ThreadPoolExecutor replacementExecutor
+        = new ThreadPoolExecutor(
+                REPLACEMENT_THREADS, REPLACEMENT_THREADS,
+                60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "Chat message replacement");
+
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+    static
+    {
+        replacementExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The sequence number of the last scheduled replacement task.
+     */
+    private static final AtomicLong replacementSequence = new AtomicLong();
+
+    /**
+     * The replacements computed by the <tt>ReplacementService</tt>s, by
+     * source name and replaced text. Texts that are not replaced are cached
+     * as well, so that services that fetch information over the network are
+     * not asked about the same link twice.
+     */
+    private static final Map<String, String> replacementCache
+        = createReplacementCache();
+
+    /**
+     * Whether links are images that can be displayed, by link.
+     */
+    private static final Map<String, Boolean> directImageCache
+        = createReplacementCache();
+
+    /**
+     * The compiled patterns of the <tt>ReplacementService</tt>s, by pattern.
+     */
+    private static final Map<String, Pattern> replacementPatterns
+        = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * A regular expression for searching all pieces of plain text within a blob
      * of HTML text. <i>This expression assumes that the plain text part is
@@ -245,6 +309,32 @@
     private ShowPreviewDialog showPreview
         = new ShowPreviewDialog(ChatConversationPanel.this);
 
+    /**
+     * The replacement tasks of this panel that have not completed yet, by
+     * message ID.
+     */
+    private final Map<String, ReplacementTask> pendingReplacements
+        = new HashMap<String, ReplacementTask>();
+
+    /**
+     * The replacement tasks of this panel that have completed and of which the
+     * results have yet to be applied to the document.
+     */
+    private final java.util.List<ReplacementTask> completedReplacements
+        = new ArrayList<ReplacementTask>();
+
+    /**
+     * Applies the results of all completed replacement tasks to the document
+     * at once.
+     */
+    private final Runnable applyReplacementsRunnable = new Runnable()
+    {
+        public void run()
+        {
+            applyReplacements();
+        }
+    };
+
     /**
      * The implementation of the routine which scrolls {@link #chatTextPane} to
      * its bottom.
@@ -942,6 +1032,93 @@ public void run()
         }
     }
 
+    /**
+     * Appends several HTML messages at the end of the document at once. The
+     * messages are inserted with a single document update, so the document is
+     * laid out once for all of them instead of once per message. This is
+     * meant for loading history, where many messages are added in a row.
+     *
+     * @param messages the HTML messages to append, in order
+     */
+    public void appendMessagesToEnd(final java.util.List<String> messages)
+    {
+        if (!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run()
+                {
+                    appendMessagesToEnd(messages);
+                }
+            });
+            return;
+        }
+
+        if (messages.isEmpty())
+            return;
+
+        StringBuilder html = new StringBuilder();
+
+        for (String message : messages)
+            html.append(message);
+
+        synchronized (scrollToBottomRunnable)
+        {
+            Element root = document.getDefaultRootElement();
+
+            try
+            {
+                document.insertBeforeEnd(
+                            // the body element
+                            root.getElement(root.getElementCount() - 1),
+                            // the messages to insert
+                            html.toString());
+
+                SwingUtilities.invokeLater(scrollToBottomRunnable);
+            }
+            catch (BadLocationException e)
+            {
+                logger.error("Insert in the HTMLDocument failed.", e);
+            }
+            catch (IOException e)
+            {
+                logger.error("Insert in the HTMLDocument failed.", e);
+            }
+        }
+
+        if (!isHistory)
+            ensureDocumentSize();
+
+        if (!isReplacementEnabled())
+            return;
+
+        String idPrefix = "id=\"" + ChatHtmlUtils.MESSAGE_TEXT_ID;
+
+        for (String message : messages)
+        {
+            int idIndex = message.indexOf(idPrefix);
+
+            while (idIndex != -1)
+            {
+                int uidStart = idIndex + idPrefix.length();
+                int uidEnd = message.indexOf('"', uidStart);
+
+                if (uidEnd == -1)
+                    break;
+
+                String uid = message.substring(uidStart, uidEnd);
+                String content = getElementContent(uid, message);
+
+                if (content != null)
+                {
+                    processReplacement(ChatHtmlUtils.MESSAGE_TEXT_ID + uid,
+                                       content);
+                }
+                idIndex = message.indexOf(idPrefix, uidEnd);
+            }
+        }
+    }
+
     /**
      * Performs all operations needed in order to finish the adding of the
      * message to the document.
@@ -960,39 +1137,288 @@ private void finishMessageAdd(final String message)
          * Replacements will be processed only if it is enabled in the
          * property.
          */
+        if (isReplacementEnabled())
+        {
+            processReplacement(ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID,
+                                message);
+        }
+    }
+
+    /**
+     * Determines whether any kind of message replacement is enabled.
+     *
+     * @return <tt>true</tt> if messages need to be processed for replacements
+     */
+    private boolean isReplacementEnabled()
+    {
         ConfigurationService cfg = GuiActivator.getConfigurationService();
 
-        if (cfg.getBoolean(ReplacementProperty.REPLACEMENT_ENABLE, true)
+        return cfg.getBoolean(ReplacementProperty.REPLACEMENT_ENABLE, true)
                 ||cfg.getBoolean(ReplacementProperty.REPLACEMENT_PROPOSAL, true)
                 || cfg.getBoolean(
                         ReplacementProperty.getPropertyName("SMILEY"),
-                        true))
-        {
-            processReplacement(ChatHtmlUtils.MESSAGE_TEXT_ID + lastMessageUID,
-                                message);
-        }
+                        true);
     }
 
     /**
     * Formats the given message. Processes the messages and replaces links to
-    * video/image sources with their previews or any other substitution. Spawns
-    * a separate thread for replacement.
+    * video/image sources with their previews or any other substitution. The
+    * replacement is queued for processing in a separate thread.
     *
     * @param messageID the messageID element.
     * @param chatString the message.
     */
     void processReplacement(final String messageID, final String chatString)
     {
-        new ReplacementWorker(messageID, chatString).start();
+        ReplacementTask task = new ReplacementTask(messageID, chatString);
+
+        synchronized (pendingReplacements)
+        {
+            ReplacementTask previous = pendingReplacements.put(messageID, task);
+
+            if (previous != null)
+                cancelReplacement(previous);
+        }
+        replacementExecutor.execute(task);
+    }
+
+    /**
+     * Cancels the pending replacements of the message elements contained in
+     * the given element, which is about to be removed from the document.
+     *
+     * @param element the element that is about to be removed
+     */
+    private void cancelReplacements(Element element)
+    {
+        Object id = element.getAttributes().getAttribute(Attribute.ID);
+
+        if (id != null)
+        {
+            synchronized (pendingReplacements)
+            {
+                ReplacementTask task = pendingReplacements.remove(id);
+
+                if (task != null)
+                    cancelReplacement(task);
+            }
+        }
+        for (int i = 0; i < element.getElementCount(); i++)
+            cancelReplacements(element.getElement(i));
+    }
+
+    /**
+     * Cancels all pending replacements of this panel.
+     */
+    private void cancelAllReplacements()
+    {
+        synchronized (pendingReplacements)
+        {
+            for (ReplacementTask task : pendingReplacements.values())
+                cancelReplacement(task);
+            pendingReplacements.clear();
+        }
+        synchronized (completedReplacements)
+        {
+            completedReplacements.clear();
+        }
+    }
+
+    /**
+     * Cancels a replacement task and removes it from the queue if it has not
+     * started yet.
+     *
+     * @param task the task to cancel
+     */
+    private static void cancelReplacement(ReplacementTask task)
+    {
+        task.cancelled = true;
+        replacementExecutor.remove(task);
+    }
+
+    /**
+     * Queues the result of a completed replacement task to be applied to the
+     * document. Results that complete while others are still waiting are
+     * applied together, in a single pass on the event dispatch thread.
+     *
+     * @param task the completed task
+     */
+    private void replacementCompleted(ReplacementTask task)
+    {
+        synchronized (pendingReplacements)
+        {
+            if (pendingReplacements.get(task.messageID) == task)
+                pendingReplacements.remove(task.messageID);
+        }
+
+        boolean schedule;
+
+        synchronized (completedReplacements)
+        {
+            schedule = completedReplacements.isEmpty();
+            completedReplacements.add(task);
+        }
+        if (schedule)
+            SwingUtilities.invokeLater(applyReplacementsRunnable);
+    }
+
+    /**
+     * Applies the results of the completed replacement tasks to the document.
+     * Must be called on the event dispatch thread.
+     */
+    private void applyReplacements()
+    {
+        java.util.List<ReplacementTask> tasks;
+
+        synchronized (completedReplacements)
+        {
+            tasks = new ArrayList<ReplacementTask>(completedReplacements);
+            completedReplacements.clear();
+        }
+
+        ShowPreviewDialog previewDialog = showPreview;
+        // There is a race between the replacement tasks and the
+        // ChatConversationPanel when it is (being) disposed of. Make sure
+        // we have an instance before continuing.
+        if (previewDialog == null)
+        {
+            // Abort if dialog has been disposed of.
+            return;
+        }
+
+        synchronized (scrollToBottomRunnable)
+        {
+            for (ReplacementTask task : tasks)
+            {
+                String newMessage = task.result;
+
+                if (task.cancelled
+                        || newMessage == null
+                        || newMessage.equals(task.chatString))
+                    continue;
+
+                // The message may have been removed from the document in the
+                // mean time.
+                Element elem = document.getElement(task.messageID);
+
+                if (elem == null)
+                    continue;
+
+                previewDialog.getMsgIDToChatString().put(
+                    task.messageID, newMessage);
+                scrollToBottomIsPending = true;
+
+                try
+                {
+                    document.setOuterHTML(elem, newMessage);
+                }
+                catch (BadLocationException ex)
+                {
+                    logger.error("Could not replace chat message", ex);
+                }
+                catch (IOException ex)
+                {
+                    logger.error("Could not replace chat message", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a thread-safe map that keeps the most recently used
+     * {@link #REPLACEMENT_CACHE_SIZE} entries.
+     *
+     * @return the new cache
+     */
+    private static <T> Map<String, T> createReplacementCache()
+    {
+        return Collections.synchronizedMap(
+            new LinkedHashMap<String, T>(16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 0L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, T> e)
+                {
+                    return size() > REPLACEMENT_CACHE_SIZE;
+                }
+            });
+    }
+
+    /**
+     * Returns the replacement of a text by a <tt>ReplacementService</tt>,
+     * asking the service only if the replacement is not cached yet.
+     *
+     * @param service the replacement service
+     * @param text the text to replace
+     * @return the replacement
+     */
+    private static String getReplacement(ReplacementService service,
+                                         String text)
+    {
+        String key = service.getSourceName() + '\n' + text;
+        String replacement = replacementCache.get(key);
+
+        if (replacement == null)
+        {
+            replacement = service.getReplacement(text);
+            if (replacement != null)
+                replacementCache.put(key, replacement);
+        }
+        return replacement;
+    }
+
+    /**
+     * Determines whether a link refers to an image that can be displayed,
+     * asking the service only if the answer is not cached yet.
+     *
+     * @param service the direct image replacement service
+     * @param link the link
+     * @return <tt>true</tt> if the image can be displayed
+     */
+    private static boolean isDisplayableImage(
+        DirectImageReplacementService service, String link)
+    {
+        Boolean displayable = directImageCache.get(link);
+
+        if (displayable == null)
+        {
+            displayable
+                = service.isDirectImage(link)
+                    && service.getImageSize(link) != -1;
+            directImageCache.put(link, displayable);
+        }
+        return displayable;
+    }
+
+    /**
+     * Returns the compiled pattern of a <tt>ReplacementService</tt>.
+     *
+     * @param service the replacement service
+     * @return the compiled pattern
+     */
+    private static Pattern getReplacementPattern(ReplacementService service)
+    {
+        String sourcePattern = service.getPattern();
+        Pattern pattern = replacementPatterns.get(sourcePattern);
+
+        if (pattern == null)
+        {
+            pattern = Pattern.compile(sourcePattern,
+                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+            replacementPatterns.put(sourcePattern, pattern);
+        }
+        return pattern;
     }
 
     /**
      * Ensures that the document won't become too big. When the document reaches
-     * a certain size the first message in the page is removed.
+     * a certain size the first messages in the page are removed, until the
+     * document fits again. More than one message may need to be removed after
+     * several messages were appended at once.
      */
     private void ensureDocumentSize()
     {
-        if (document.getLength() > Chat.CHAT_BUFFER_SIZE)
+        while (document.getLength() > Chat.CHAT_BUFFER_SIZE)
         {
             String[] ids = new String[]
                                       {ChatHtmlUtils.MESSAGE_TEXT_ID,
@@ -1002,9 +1428,19 @@ private void ensureDocumentSize()
 
             Element firstMsgElement = findElement(Attribute.ID, ids);
 
+            if (firstMsgElement == null)
+                return;
+
             int startIndex = firstMsgElement.getStartOffset();
             int endIndex = firstMsgElement.getEndOffset();
 
+            // Keep the last message, even if it is too large by itself.
+            if (endIndex - startIndex >= document.getLength())
+                return;
+
+            int length = document.getLength();
+
+            cancelReplacements(firstMsgElement);
             try
             {
                 // Remove the message.
@@ -1013,6 +1449,7 @@ private void ensureDocumentSize()
             catch (BadLocationException e)
             {
                 logger.error("Error removing messages from chat: ", e);
+                return;
             }
 
             if(firstMsgElement.getName().equals("table"))
@@ -1021,6 +1458,9 @@ private void ensureDocumentSize()
                 // delete all messages without header
                 deleteAllMessagesWithoutHeader();
             }
+
+            if (document.getLength() >= length)
+                return;
         }
     }
 
@@ -1051,7 +1491,10 @@ private void deleteAllMessagesWithoutHeader()
         {
             // Remove the message.
             if(endIndex - startIndex < document.getLength())
+            {
+                cancelReplacements(firstMsgElement);
                 this.document.remove(startIndex, endIndex - startIndex);
+            }
             else
             {
                 // currently there is a problem of deleting the last message
@@ -1348,6 +1791,7 @@ public void copyConversation()
      */
     public void clear()
     {
+        cancelAllReplacements();
         this.document = (HTMLDocument) editorKit.createDefaultDocument();
         Constants.loadSimpleStyle(
             document.getStyleSheet(), chatTextPane.getFont());
@@ -1869,27 +2313,31 @@ private Element findFirstElement(   Element element,
     }
 
     /**
+     * Extracts the HTML of the message element with the given ID from an HTML
+     * string, from its opening div tag up to and including the first closing
+     * div tag that follows.
      *
-     * @param elementId
-     * @param message
-     * @return
+     * @param elementId the message UID of the element
+     * @param message the HTML string that contains the element
+     * @return the HTML of the element, or <tt>null</tt> if it is not found
      */
     private String getElementContent(String elementId, String message)
     {
-        Pattern p = Pattern.compile(
-            ".*(<div.*id=[\\\"']"
-            + ChatHtmlUtils.MESSAGE_TEXT_ID
-            + elementId
-            + "[\\\"'].*?</div>)", Pattern.DOTALL);
+        String id = ChatHtmlUtils.MESSAGE_TEXT_ID + elementId;
+        int idIndex = message.indexOf("id=\"" + id + "\"");
 
-        Matcher m = p.matcher(message);
+        if (idIndex == -1)
+            idIndex = message.indexOf("id='" + id + "'");
+        if (idIndex == -1)
+            return null;
 
-        if (m.find())
-        {
-            return m.group(1);
-        }
+        int start = message.lastIndexOf("<div", idIndex);
+        int end = message.indexOf("</div>", idIndex);
 
-        return null;
+        if (start == -1 || end == -1)
+            return null;
+
+        return message.substring(start, end + "</div>".length());
     }
 
     /**
@@ -2069,10 +2517,11 @@ public void debug()
     }
 
     /**
-     * Swing worker used by processReplacement.
+     * Task used by processReplacement.
      */
-    private final class ReplacementWorker
-        extends SwingWorker
+    private final class ReplacementTask
+        implements Runnable,
+                   Comparable<ReplacementTask>
     {
         /**
          * The messageID element.
@@ -2084,6 +2533,16 @@ public void debug()
          */
         private final String chatString;
 
+        /**
+         * The order in which the task was scheduled.
+         */
+        private final long sequence = replacementSequence.incrementAndGet();
+
+        /**
+         * Whether the message is shown in a history window.
+         */
+        private final boolean history = isHistory;
+
         /**
          * Counts links while processing. Used to generate unique href.
          */
@@ -2100,12 +2559,23 @@ public void debug()
         private final boolean isProposalEnabled;
 
         /**
-         * Constructs worker.
+         * Whether the message has been removed and its replacement is no
+         * longer needed.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * The processed message.
+         */
+        private volatile String result;
+
+        /**
+         * Constructs task.
          *
          * @param messageID the messageID element.
          * @param chatString the messages.
          */
-        private ReplacementWorker(final String messageID,
+        private ReplacementTask(final String messageID,
             final String chatString)
         {
             this.messageID = messageID;
@@ -2122,51 +2592,39 @@ private ReplacementWorker(final String messageID,
         }
 
         /**
-         * Called on the event dispatching thread (not on the worker thread)
-         * after the <code>construct</code> method has returned.
+         * Orders live chat messages before history messages, and newer
+         * messages before older ones.
          */
-        @Override
-        public void finished()
+        public int compareTo(ReplacementTask other)
         {
-            ShowPreviewDialog previewDialog = showPreview;
-            // There is a race between the replacement worker and the
-            // ChatConversationPanel when it is (being) disposed of. Make sure
-            // we have an instance before continuing.
-            if (previewDialog == null)
-            {
-                // Abort if dialog has been disposed of.
-                return;
-            }
+            if (history != other.history)
+                return history ? 1 : -1;
+            return sequence > other.sequence
+                ? -1
+                : (sequence < other.sequence ? 1 : 0);
+        }
 
-            String newMessage = (String) get();
+        public void run()
+        {
+            if (cancelled)
+                return;
 
-            if (newMessage != null && !newMessage.equals(chatString))
+            try
             {
-                previewDialog.getMsgIDToChatString().put(
-                    messageID, newMessage);
-                synchronized (scrollToBottomRunnable)
-                {
-                    scrollToBottomIsPending = true;
-
-                    try
-                    {
-                        Element elem = document.getElement(messageID);
-                        document.setOuterHTML(elem, newMessage);
-                    }
-                    catch (BadLocationException ex)
-                    {
-                        logger.error("Could not replace chat message", ex);
-                    }
-                    catch (IOException ex)
-                    {
-                        logger.error("Could not replace chat message", ex);
-                    }
-                }
+                result = construct();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Failed to process chat message replacements", t);
+                return;
             }
+            if (!cancelled)
+                replacementCompleted(this);
         }
 
-        @Override
-        public Object construct() throws Exception
+        private String construct()
         {
             Matcher divMatcher = DIV_PATTERN.matcher(chatString);
             String openingTag = "";
@@ -2183,6 +2641,9 @@ public Object construct() throws Exception
             for (Map.Entry<String, ReplacementService> entry : GuiActivator
                 .getReplacementSources().entrySet())
             {
+                if (cancelled)
+                    return null;
+
                 msgBuff = new StringBuilder();
                 processReplacementService(entry.getValue(), msgStore, msgBuff);
                 msgStore = msgBuff.toString();
@@ -2201,10 +2662,7 @@ public Object construct() throws Exception
         private void processReplacementService(final ReplacementService service,
             final String msg, final StringBuilder buff)
         {
-            String sourcePattern = service.getPattern();
-            Pattern pattern =
-                Pattern.compile(sourcePattern, Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
+            Pattern pattern = getReplacementPattern(service);
 
             int startPos = 0;
 
@@ -2290,7 +2748,7 @@ private void processText(final String plainText,
                 startPos = m.end();
 
                 String group = m.group();
-                String temp = rService.getReplacement(group);
+                String temp = getReplacement(rService, group);
                 String group0 = m.group(0);
 
                 if (!temp.equals(group0) || isDirectImage)
@@ -2337,8 +2795,7 @@ else if (isEnabled && isEnabledForSource)
                         {
                             DirectImageReplacementService service
                                 = (DirectImageReplacementService) rService;
-                            if (service.isDirectImage(group)
-                                && service.getImageSize(group) != -1)
+                            if (isDisplayableImage(service, group))
                             {
                                 msgBuff.append(
                                     "<IMG HEIGHT=\"90\" "
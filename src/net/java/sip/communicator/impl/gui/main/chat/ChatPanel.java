@@ -819,6 +819,10 @@ private void processHistory( Collection<Object> historyList,
 
         String messageType;
 
+        // Messages are appended in batches, such that the conversation
+        // document is updated once per batch instead of once per message.
+        List<String> historyStrings = new ArrayList<String>();
+
         while (iterator.hasNext())
         {
             Object o = iterator.next();
@@ -919,14 +923,16 @@ else if (o instanceof FileRecord)
                     FileHistoryConversationComponent component
                         = new FileHistoryConversationComponent(fileRecord);
 
+                    conversationPanel.appendMessagesToEnd(historyStrings);
+                    historyStrings = new ArrayList<String>();
                     conversationPanel.addComponent(component);
                 }
             }
 
-            if (historyString != null)
-                conversationPanel.appendMessageToEnd(
-                    historyString, ChatHtmlUtils.HTML_CONTENT_TYPE);
+            if (historyString != null && historyString.length() > 0)
+                historyStrings.add(historyString);
         }
+        conversationPanel.appendMessagesToEnd(historyStrings);
 
         fireChatHistoryChange();
     }
@@ -270,6 +270,10 @@ private HTMLDocument createHistory(Collection<Object> historyRecords)
         {
             Iterator<Object> i = historyRecords.iterator();
             String processedMessage = "";
+            // Messages are appended in batches, such that the document is
+            // updated once per batch instead of once per message.
+            java.util.List<String> processedMessages
+                = new ArrayList<String>();
             while (i.hasNext())
             {
                 Object o = i.next();
@@ -354,6 +358,8 @@ else if (o instanceof FileRecord)
                     FileHistoryConversationComponent component
                         = new FileHistoryConversationComponent(fileRecord);
 
+                    chatConvPanel.appendMessagesToEnd(processedMessages);
+                    processedMessages = new ArrayList<String>();
                     chatConvPanel.addComponent(component);
                 }
 
@@ -365,10 +371,10 @@ else if (o instanceof FileRecord)
                             protocolProvider,
                             chatMessage.getContactName());
 
-                    chatConvPanel.appendMessageToEnd(processedMessage,
-                        ChatHtmlUtils.HTML_CONTENT_TYPE);
+                    processedMessages.add(processedMessage);
                 }
             }
+            chatConvPanel.appendMessagesToEnd(processedMessages);
         }
 
         this.chatConvPanel.setDefaultContent();
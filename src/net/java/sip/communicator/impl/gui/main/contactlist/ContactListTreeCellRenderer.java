@@ -220,9 +220,14 @@
     protected final JLabel rightLabel = new JLabel();
 
     /**
-     * The message received image.
+     * The message received icon.
      */
-    private Image msgReceivedImage;
+    private ImageIcon msgReceivedIcon;
+
+    /**
+     * The icon indicating that a contact is on a mobile device.
+     */
+    private ImageIcon mobileIndicatorIcon;
 
     /**
      * The label containing the status icon.
@@ -524,10 +529,10 @@ public Component getTreeCellRendererComponent(JTree tree, Object value,
 
             nameLabel.setText(displayName);
 
-            if(statusIcon != null
-                && contactList.isContactActive(contact)
-                && statusIcon instanceof ImageIcon)
-                ((ImageIcon) statusIcon).setImage(msgReceivedImage);
+            // Status icons are shared between contacts, so don't modify
+            // them.
+            if (contactList.isContactActive(contact))
+                statusIcon = msgReceivedIcon;
             else
                 statusIcon = contact.getStatusIcon();
 
@@ -564,11 +569,7 @@ public Component getTreeCellRendererComponent(JTree tree, Object value,
             if (contact.getDescriptor() instanceof MetaContact
                 && isMobile((MetaContact)contact.getDescriptor()))
             {
-                nameLabel.setIcon(
-                        new ImageIcon(
-                                ImageLoader.getImage(
-                                        ImageLoader
-                                            .CONTACT_LIST_MOBILE_INDICATOR)));
+                nameLabel.setIcon(mobileIndicatorIcon);
                 nameLabel.setHorizontalTextPosition(SwingConstants.LEFT);
             }
 
@@ -1636,8 +1637,13 @@ public void loadSkin()
         chatButton.setPressedIcon(ImageLoader.getImage(
                 ImageLoader.CHAT_BUTTON_SMALL_PRESSED));
 
-        msgReceivedImage
-            = ImageLoader.getImage(ImageLoader.MESSAGE_RECEIVED_ICON);
+        msgReceivedIcon = new ImageIcon(
+            ImageLoader.getImage(ImageLoader.MESSAGE_RECEIVED_ICON));
+
+        mobileIndicatorIcon = new ImageIcon(
+            ImageLoader.getImage(ImageLoader.CONTACT_LIST_MOBILE_INDICATOR));
+
+        MetaUIContact.clearIconCache();
 
         int groupForegroundProperty = GuiActivator.getResources()
             .getColor("service.gui.CONTACT_LIST_GROUP_FOREGROUND");
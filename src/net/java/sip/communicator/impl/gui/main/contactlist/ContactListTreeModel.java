@@ -17,21 +17,75 @@
  */
 package net.java.sip.communicator.impl.gui.main.contactlist;
 
+import java.awt.event.*;
 import java.lang.reflect.*;
+import java.util.*;
 
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.tree.*;
 
 import net.java.sip.communicator.service.gui.*;
+import net.java.sip.communicator.util.*;
 
 /**
  * The data model of the contact list.
+ * <p>
+ * Node changes and group sorts, which are mostly caused by presence status
+ * changes, are not applied one by one. They are collected and applied in a
+ * single batch at most once per <tt>BATCH_INTERVAL</tt>, so when hundreds of
+ * contacts change their status at once (e.g. on login) each group is sorted
+ * once and each node repainted once.
  *
  * @author Yana Stamcheva
  */
 public class ContactListTreeModel
     extends DefaultTreeModel
 {
+    /**
+     * The logger.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ContactListTreeModel.class);
+
+    /**
+     * The interval in milliseconds at which pending node changes and sorts
+     * are applied.
+     */
+    private static final int BATCH_INTERVAL = 40;
+
+    /**
+     * The nodes, which have changed since the last batch.
+     */
+    private final Set<TreeNode> changedNodes = new LinkedHashSet<TreeNode>();
+
+    /**
+     * The groups, which should be sorted in the next batch.
+     */
+    private final Set<GroupNode> unsortedGroups
+        = new LinkedHashSet<GroupNode>();
+
+    /**
+     * The timer, which applies the pending changes.
+     */
+    private final Timer batchTimer;
+
+    /**
+     * The number of applied batches. Only accessed in the event dispatch
+     * thread.
+     */
+    private long batchCount = 0;
+
+    /**
+     * The time in nanoseconds spent in the event dispatch thread applying
+     * batches.
+     */
+    private long batchTime = 0;
+
+    /**
+     * The longest time in nanoseconds spent applying a single batch.
+     */
+    private long maxBatchTime = 0;
     /**
      * The root node.
      */
@@ -58,6 +112,15 @@ public ContactListTreeModel(JTree tree)
         rootDescriptor.setGroupNode(rootGroupNode);
 
         this.setRoot(rootGroupNode);
+
+        batchTimer = new Timer(BATCH_INTERVAL, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                applyBatch();
+            }
+        });
+        batchTimer.setRepeats(false);
     }
 
     /**
@@ -140,13 +203,96 @@ public JTree getParentTree()
     @Override
     public void nodeChanged(final TreeNode node)
     {
-        SwingUtilities.invokeLater(new Runnable()
+        if (node == null)
+            return;
+
+        synchronized (changedNodes)
+        {
+            changedNodes.add(node);
+            scheduleBatch();
+        }
+    }
+
+    /**
+     * Sorts the children of the given <tt>groupNode</tt> in the next batch.
+     * @param groupNode the <tt>GroupNode</tt> to sort
+     */
+    void sortLater(GroupNode groupNode)
+    {
+        synchronized (changedNodes)
         {
-            public void run()
+            unsortedGroups.add(groupNode);
+            scheduleBatch();
+        }
+    }
+
+    /**
+     * Starts the batch timer, unless it is already running. Should be called
+     * while holding the lock on <tt>changedNodes</tt>.
+     */
+    private void scheduleBatch()
+    {
+        if (!batchTimer.isRunning())
+            batchTimer.start();
+    }
+
+    /**
+     * Applies all pending group sorts and node changes. Nodes in sorted groups
+     * are repainted by the sort and aren't changed separately. Invoked in the
+     * event dispatch thread.
+     */
+    private void applyBatch()
+    {
+        GroupNode[] groups;
+        TreeNode[] nodes;
+
+        synchronized (changedNodes)
+        {
+            groups = unsortedGroups.toArray(
+                new GroupNode[unsortedGroups.size()]);
+            nodes = changedNodes.toArray(new TreeNode[changedNodes.size()]);
+            unsortedGroups.clear();
+            changedNodes.clear();
+        }
+
+        long startTime = System.nanoTime();
+        Set<TreeNode> sortedGroups = Collections.newSetFromMap(
+            new IdentityHashMap<TreeNode, Boolean>());
+
+        for (GroupNode group : groups)
+        {
+            // Skip groups removed in the meantime.
+            if (group == rootGroupNode || group.getParent() != null)
             {
-                ContactListTreeModel.super.nodeChanged(node);
+                group.sortChildren();
+                sortedGroups.add(group);
             }
-        });
+        }
+
+        for (TreeNode node : nodes)
+        {
+            if (!sortedGroups.contains(node.getParent()))
+                super.nodeChanged(node);
+        }
+
+        long time = System.nanoTime() - startTime;
+
+        batchCount++;
+        batchTime += time;
+        if (time > maxBatchTime)
+            maxBatchTime = time;
+
+        if (logger.isTraceEnabled())
+            logger.trace("Contact list batch of " + groups.length
+                + " sorts and " + nodes.length + " node changes took "
+                + time / 1000 + " us.");
+        else if (logger.isDebugEnabled()
+            && time > BATCH_INTERVAL * 1000000L)
+            logger.debug("Contact list batch of " + groups.length
+                + " sorts and " + nodes.length + " node changes took "
+                + time / 1000000 + " ms. " + batchCount
+                + " batches took " + batchTime / 1000000 + " ms in total, "
+                + maxBatchTime / 1000000 + " ms at most.");
     }
 
     /**
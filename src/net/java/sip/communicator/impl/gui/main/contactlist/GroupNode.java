@@ -352,32 +352,38 @@ public int getSourceIndex()
     }
 
     /**
-     * Sorts the children of this node.
+     * Sorts the children of this node. The sort is applied together with the
+     * other pending changes of the <tt>treeModel</tt>, so sorting the same
+     * group many times in a row costs a single sort.
      * @param treeModel the <tt>ContactListTreeModel</tt>, which should be
      * refreshed
      */
-    @SuppressWarnings("unchecked")
     public void sort(final ContactListTreeModel treeModel)
     {
         if (children != null)
-        {
-            SwingUtilities.invokeLater(new Runnable()
-            {
-                public void run()
-                {
-                    TreePath selectionPath = getLeadSelectionPath();
-                    int oldSelectionIndex = getLeadSelectionRow();
+            treeModel.sortLater(this);
+    }
 
-                    Collections.sort(children, nodeComparator);
+    /**
+     * Sorts the children of this node immediately. Invoked in the event
+     * dispatch thread.
+     */
+    @SuppressWarnings("unchecked")
+    void sortChildren()
+    {
+        if (children == null)
+            return;
 
-                    fireNodesChanged();
+        TreePath selectionPath = getLeadSelectionPath();
+        int oldSelectionIndex = getLeadSelectionRow();
 
-                    treeModel.getParentTree().setSelectionPath(selectionPath);
+        Collections.sort(children, nodeComparator);
 
-                    refreshSelection(oldSelectionIndex, getLeadSelectionRow());
-                }
-            });
-        }
+        fireNodesChanged();
+
+        treeModel.getParentTree().setSelectionPath(selectionPath);
+
+        refreshSelection(oldSelectionIndex, getLeadSelectionRow());
     }
 
     /**
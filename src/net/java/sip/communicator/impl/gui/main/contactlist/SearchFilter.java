@@ -22,6 +22,7 @@
 
 import net.java.sip.communicator.impl.gui.*;
 import net.java.sip.communicator.impl.gui.main.contactlist.contactsource.*;
+import net.java.sip.communicator.service.contactlist.*;
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.gui.event.*;
@@ -108,7 +109,7 @@ public void applyFilter(FilterQuery filterQuery)
             // First add the MetaContactListSource
             filterQuery.addContactQuery(defaultQuery);
 
-            mclSource.startQuery(defaultQuery, filterPattern);
+            mclSource.startQuery(defaultQuery, filterString, filterPattern);
         }
         else if (sourceContactList.getDefaultFilter()
                     .equals(TreeContactList.historyFilter))
@@ -224,6 +225,26 @@ public boolean isMatching(UIContact uiContact)
         return false;
     }
 
+    /**
+     * Returns the <tt>MetaContact</tt>s that this filter would add to the
+     * contact list. Contacts shown as a result of a previous search, which are
+     * also found by this filter, are kept in the contact list when the search
+     * string changes, instead of being removed and added again.
+     * @return the <tt>MetaContact</tt>s matching this filter, or an empty set
+     * if this filter doesn't search the <tt>MetaContactListService</tt>
+     */
+    public Set<MetaContact> getMatchingMetaContacts()
+    {
+        if (mclSource == null
+            || sourceContactList == null
+            || filterString == null
+            || !sourceContactList.getDefaultFilter()
+                    .equals(TreeContactList.presenceFilter))
+            return Collections.emptySet();
+
+        return mclSource.findMatchingContacts(filterString, filterPattern);
+    }
+
     /**
      * For all groups we return false. If some of the child contacts of this
      * group matches this filter the group would be automatically added when
@@ -1232,7 +1232,6 @@ public FilterQuery applyFilter(ContactListFilter filter)
 
         if (currentFilterQuery != null && !currentFilterQuery.isCanceled())
             currentFilterQuery.cancel();
-        rootUIGroup = null;
         currentFilterQuery = new UIFilterQuery(this);
 
         if (filterThread == null)
@@ -1275,7 +1274,20 @@ public void run()
                 UIFilterQuery filterQuery = currentFilterQuery;
                 ContactListFilter filter = this.filter;
 
-                treeModel.clear();
+                // When the search string changes we keep the contacts that
+                // would be found again, so the list doesn't flicker and only
+                // the differences are added or removed.
+                if (filter instanceof SearchFilter
+                    && filter.equals(currentFilter))
+                {
+                    retainContacts(
+                        ((SearchFilter) filter).getMatchingMetaContacts());
+                }
+                else
+                {
+                    rootUIGroup = null;
+                    treeModel.clear();
+                }
 
                 if (!filterQuery.isCanceled())
                 {
@@ -1317,6 +1329,77 @@ public void run()
         }
     }
 
+    /**
+     * Removes all contacts from this list, except the ones corresponding to
+     * the given <tt>MetaContact</tt>s.
+     * @param metaContacts the <tt>MetaContact</tt>s to keep
+     */
+    private void retainContacts(final Set<MetaContact> metaContacts)
+    {
+        if (!SwingUtilities.isEventDispatchThread())
+        {
+            try
+            {
+                SwingUtilities.invokeAndWait(new Runnable()
+                {
+                    public void run()
+                    {
+                        retainContacts(metaContacts);
+                    }
+                });
+            }
+            catch (Exception e)
+            {
+                logger.error("Failed to update the contact list.", e);
+            }
+            return;
+        }
+
+        List<UIContact> removedContacts = new ArrayList<UIContact>();
+        collectRemovedContacts(
+            treeModel.getRoot(), metaContacts, removedContacts);
+
+        for (UIContact contact : removedContacts)
+            removeContact(contact, true);
+
+        // Don't leave the contacts group title alone in the list.
+        if (rootUIGroup != null && treeModel.getRoot().getChildCount() == 1)
+            removeMetaUIRootGroup();
+    }
+
+    /**
+     * Collects the contacts under the given <tt>groupNode</tt>, which don't
+     * correspond to one of the given <tt>MetaContact</tt>s.
+     * @param groupNode the <tt>GroupNode</tt> to search
+     * @param metaContacts the <tt>MetaContact</tt>s to keep
+     * @param removedContacts the list to add the contacts to remove to
+     */
+    private static void collectRemovedContacts(
+        GroupNode groupNode,
+        Set<MetaContact> metaContacts,
+        List<UIContact> removedContacts)
+    {
+        for (int i = 0; i < groupNode.getChildCount(); i++)
+        {
+            TreeNode treeNode = groupNode.getChildAt(i);
+
+            if (treeNode instanceof GroupNode)
+            {
+                collectRemovedContacts(
+                    (GroupNode) treeNode, metaContacts, removedContacts);
+            }
+            else if (treeNode instanceof ContactNode)
+            {
+                UIContact contact
+                    = ((ContactNode) treeNode).getContactDescriptor();
+
+                if (!(contact instanceof MetaUIContact)
+                    || !metaContacts.contains(contact.getDescriptor()))
+                    removedContacts.add(contact);
+            }
+        }
+    }
+
     /**
      * Sets the default filter to the given <tt>filter</tt>.
      * @param filter the <tt>ContactListFilter</tt> to set as default
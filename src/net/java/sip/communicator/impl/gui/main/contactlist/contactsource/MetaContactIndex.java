@@ -0,0 +1,487 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.contactlist.contactsource;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.contactlist.*;
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * The <tt>MetaContactIndex</tt> is a substring index over the display names
+ * and addresses of all <tt>MetaContact</tt>s in the contact list. It maps
+ * every trigram of these strings to the contacts that contain it, such that a
+ * search only has to check the contacts containing the rarest trigram of the
+ * filter string instead of the whole contact list.
+ * <p>
+ * The index is built the first time it is searched and is then kept up to
+ * date by the <tt>MetaContactListSource</tt> from the
+ * <tt>MetaContactListService</tt> events. The result of the last search is
+ * kept until the index is modified, so a search for a string that extends the
+ * previous one (i.e. the user typing one more character) only refines the
+ * previous result.
+ */
+public class MetaContactIndex
+{
+    /**
+     * The length of the indexed substrings.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * The minimum number of removed entries before the index is compacted.
+     */
+    private static final int MIN_COMPACT_COUNT = 256;
+
+    /**
+     * The indexed entries by their id. Removed entries are <tt>null</tt>.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * The indexed entries by their <tt>MetaContact</tt>.
+     */
+    private final Map<MetaContact, Entry> contactEntries
+        = new HashMap<MetaContact, Entry>();
+
+    /**
+     * The ids of the entries containing each trigram.
+     */
+    private final Map<String, IdList> grams = new HashMap<String, IdList>();
+
+    /**
+     * The number of removed entries, which are still referenced from
+     * <tt>grams</tt>.
+     */
+    private int removedCount = 0;
+
+    /**
+     * Indicates if the index has been built.
+     */
+    private boolean built = false;
+
+    /**
+     * The case folded filter string of the last search, or <tt>null</tt> if
+     * the index has been modified since.
+     */
+    private String lastFilter;
+
+    /**
+     * The result of the last search.
+     */
+    private List<Entry> lastMatches;
+
+    /**
+     * Builds the index from the given <tt>root</tt> group, unless it has
+     * already been built.
+     *
+     * @param root the root <tt>MetaContactGroup</tt> of the contact list
+     */
+    public synchronized void build(MetaContactGroup root)
+    {
+        if (built)
+            return;
+
+        addGroup(root);
+        built = true;
+    }
+
+    /**
+     * Drops the whole index. It is built again on the next search.
+     */
+    public synchronized void invalidate()
+    {
+        entries.clear();
+        contactEntries.clear();
+        grams.clear();
+        removedCount = 0;
+        built = false;
+        lastFilter = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Adds the given <tt>metaContact</tt> to the index or updates its strings
+     * if it is already indexed. Does nothing if the index is not built yet,
+     * as it will contain the contact once it is.
+     *
+     * @param metaContact the <tt>MetaContact</tt> to add or update
+     */
+    public synchronized void update(MetaContact metaContact)
+    {
+        if (!built)
+            return;
+
+        updateEntry(metaContact);
+        compact();
+    }
+
+    /**
+     * Adds or updates all contacts of the given group and its subgroups. The
+     * contacts of groups which are added to the contact list are not
+     * announced with events of their own.
+     *
+     * @param group the <tt>MetaContactGroup</tt> to add or update
+     */
+    public synchronized void updateGroup(MetaContactGroup group)
+    {
+        if (!built)
+            return;
+
+        updateGroupEntries(group);
+        compact();
+    }
+
+    /**
+     * Removes the given <tt>metaContact</tt> from the index.
+     *
+     * @param metaContact the <tt>MetaContact</tt> to remove
+     */
+    public synchronized void remove(MetaContact metaContact)
+    {
+        if (!built)
+            return;
+
+        removeEntry(metaContact);
+        compact();
+    }
+
+    /**
+     * Returns the <tt>MetaContact</tt>s with a display name, or a protocol
+     * contact with a display name or address, containing the given
+     * <tt>filterString</tt>, ignoring case.
+     *
+     * @param filterString the string to search for
+     * @return the matching <tt>MetaContact</tt>s, in no particular order
+     */
+    public synchronized List<MetaContact> search(String filterString)
+    {
+        String filter = fold(filterString);
+        Collection<Entry> candidates;
+
+        if (lastFilter != null && filter.startsWith(lastFilter))
+            candidates = lastMatches;
+        else if (filter.length() >= GRAM_LENGTH)
+            candidates = getGramCandidates(filter);
+        else
+            candidates = contactEntries.values();
+
+        List<Entry> matches = new ArrayList<Entry>();
+        for (Entry entry : candidates)
+        {
+            if (entry.contains(filter))
+                matches.add(entry);
+        }
+
+        lastFilter = filter;
+        lastMatches = matches;
+
+        List<MetaContact> result = new ArrayList<MetaContact>(matches.size());
+        for (Entry entry : matches)
+            result.add(entry.metaContact);
+        return result;
+    }
+
+    /**
+     * Returns the number of indexed <tt>MetaContact</tt>s.
+     *
+     * @return the number of indexed <tt>MetaContact</tt>s
+     */
+    public synchronized int size()
+    {
+        return contactEntries.size();
+    }
+
+    /**
+     * Returns the entries containing the rarest trigram of the given lower
+     * case <tt>filter</tt>.
+     *
+     * @param filter the case folded filter string, at least
+     * <tt>GRAM_LENGTH</tt> characters long
+     * @return the candidate entries
+     */
+    private Collection<Entry> getGramCandidates(String filter)
+    {
+        IdList rarest = null;
+
+        for (int i = 0; i + GRAM_LENGTH <= filter.length(); i++)
+        {
+            IdList ids = grams.get(filter.substring(i, i + GRAM_LENGTH));
+
+            if (ids == null)
+                return Collections.emptyList();
+            if (rarest == null || ids.size < rarest.size)
+                rarest = ids;
+        }
+
+        List<Entry> candidates = new ArrayList<Entry>(rarest.size);
+        for (int i = 0; i < rarest.size; i++)
+        {
+            Entry entry = entries.get(rarest.ids[i]);
+
+            if (entry != null)
+                candidates.add(entry);
+        }
+        return candidates;
+    }
+
+    /**
+     * Adds or updates the entries of all contacts of the given group and its
+     * subgroups.
+     *
+     * @param group the <tt>MetaContactGroup</tt> to add or update
+     */
+    private void updateGroupEntries(MetaContactGroup group)
+    {
+        Iterator<MetaContact> childContacts = group.getChildContacts();
+        while (childContacts.hasNext())
+            updateEntry(childContacts.next());
+
+        Iterator<MetaContactGroup> subgroups = group.getSubgroups();
+        while (subgroups.hasNext())
+            updateGroupEntries(subgroups.next());
+    }
+
+    /**
+     * Adds an entry for the given <tt>metaContact</tt> or replaces its entry
+     * if its search strings have changed.
+     *
+     * @param metaContact the <tt>MetaContact</tt> to add or update
+     */
+    private void updateEntry(MetaContact metaContact)
+    {
+        String[] strings = getSearchStrings(metaContact);
+        Entry entry = contactEntries.get(metaContact);
+
+        if (entry != null && Arrays.equals(entry.strings, strings))
+            return;
+
+        removeEntry(metaContact);
+        addEntry(metaContact, strings);
+    }
+
+    /**
+     * Adds all contacts of the given group and its subgroups.
+     *
+     * @param group the <tt>MetaContactGroup</tt> to add
+     */
+    private void addGroup(MetaContactGroup group)
+    {
+        Iterator<MetaContact> childContacts = group.getChildContacts();
+        while (childContacts.hasNext())
+        {
+            MetaContact metaContact = childContacts.next();
+
+            removeEntry(metaContact);
+            addEntry(metaContact, getSearchStrings(metaContact));
+        }
+
+        Iterator<MetaContactGroup> subgroups = group.getSubgroups();
+        while (subgroups.hasNext())
+            addGroup(subgroups.next());
+    }
+
+    /**
+     * Adds a new entry for the given <tt>metaContact</tt>.
+     *
+     * @param metaContact the <tt>MetaContact</tt> to add
+     * @param strings the case folded search strings of the contact
+     */
+    private void addEntry(MetaContact metaContact, String[] strings)
+    {
+        Entry entry = new Entry(entries.size(), metaContact, strings);
+        Set<String> entryGrams = new HashSet<String>();
+
+        for (String string : strings)
+        {
+            for (int i = 0; i + GRAM_LENGTH <= string.length(); i++)
+                entryGrams.add(string.substring(i, i + GRAM_LENGTH));
+        }
+
+        for (String gram : entryGrams)
+        {
+            IdList ids = grams.get(gram);
+
+            if (ids == null)
+            {
+                ids = new IdList();
+                grams.put(gram, ids);
+            }
+            ids.add(entry.id);
+        }
+
+        entries.add(entry);
+        contactEntries.put(metaContact, entry);
+        lastFilter = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Removes the entry of the given <tt>metaContact</tt>. The id of the entry
+     * stays in <tt>grams</tt> until the index is compacted.
+     *
+     * @param metaContact the <tt>MetaContact</tt> to remove
+     */
+    private void removeEntry(MetaContact metaContact)
+    {
+        Entry entry = contactEntries.remove(metaContact);
+
+        if (entry == null)
+            return;
+
+        entries.set(entry.id, null);
+        removedCount++;
+        lastFilter = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Rebuilds the index if more than half of its entries have been removed.
+     */
+    private void compact()
+    {
+        if (removedCount < MIN_COMPACT_COUNT
+            || removedCount < entries.size() / 2)
+            return;
+
+        Map<MetaContact, Entry> live
+            = new LinkedHashMap<MetaContact, Entry>(contactEntries);
+
+        entries.clear();
+        contactEntries.clear();
+        grams.clear();
+        removedCount = 0;
+
+        for (Entry entry : live.values())
+            addEntry(entry.metaContact, entry.strings);
+    }
+
+    /**
+     * Returns the case folded strings through which the given
+     * <tt>metaContact</tt> can be found: its display name and the display
+     * names and addresses of its protocol contacts.
+     *
+     * @param metaContact the <tt>MetaContact</tt>
+     * @return the search strings of the contact
+     */
+    private static String[] getSearchStrings(MetaContact metaContact)
+    {
+        List<String> strings = new ArrayList<String>();
+
+        addSearchString(strings, metaContact.getDisplayName());
+
+        Iterator<Contact> contacts = metaContact.getContacts();
+        while (contacts.hasNext())
+        {
+            Contact contact = contacts.next();
+
+            addSearchString(strings, contact.getDisplayName());
+            addSearchString(strings, contact.getAddress());
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    /**
+     * Adds the case folded form of the given string to <tt>strings</tt>,
+     * unless it is <tt>null</tt> or already contained.
+     *
+     * @param strings the list to add to
+     * @param string the string to add
+     */
+    private static void addSearchString(List<String> strings, String string)
+    {
+        if (string == null)
+            return;
+
+        String lower = fold(string);
+        if (!strings.contains(lower))
+            strings.add(lower);
+    }
+
+    /**
+     * Folds the case of the given string the same way for all locales. Every
+     * character is mapped through upper and then lower case, like the
+     * case insensitive, unicode aware <tt>Pattern</tt> of the filter compares
+     * characters, so that the index finds all contacts the pattern matches.
+     *
+     * @param string the string to fold
+     * @return the case folded string
+     */
+    static String fold(String string)
+    {
+        char[] chars = string.toCharArray();
+
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+
+    /**
+     * An indexed <tt>MetaContact</tt> together with its search strings.
+     */
+    private static class Entry
+    {
+        private final int id;
+
+        private final MetaContact metaContact;
+
+        private final String[] strings;
+
+        private Entry(int id, MetaContact metaContact, String[] strings)
+        {
+            this.id = id;
+            this.metaContact = metaContact;
+            this.strings = strings;
+        }
+
+        /**
+         * Indicates if one of the search strings of this entry contains the
+         * given case folded <tt>filter</tt>.
+         *
+         * @param filter the case folded filter string
+         * @return <tt>true</tt> if this entry is matching the filter
+         */
+        private boolean contains(String filter)
+        {
+            for (String string : strings)
+            {
+                if (string.contains(filter))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A growable list of entry ids. Primitive ids keep the index small for
+     * contact lists with tens of thousands of contacts.
+     */
+    private static class IdList
+    {
+        private int[] ids = new int[4];
+
+        private int size = 0;
+
+        private void add(int id)
+        {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+}
@@ -95,6 +95,11 @@
      */
     private int index = 0;
 
+    /**
+     * The substring index used to search the <tt>MetaContactListService</tt>.
+     */
+    private final MetaContactIndex searchIndex = new MetaContactIndex();
+
     /**
      * The logger.
      */
@@ -229,6 +234,80 @@ public void run()
         }.start();
     }
 
+    /**
+     * Starts the query. Instead of walking the whole contact list, the
+     * <tt>MetaContact</tt>s containing the <tt>filterString</tt> are looked up
+     * in the search index and only those are checked against the
+     * <tt>filterPattern</tt>.
+     *
+     * @param query the query to be started
+     * @param filterString the string to search for
+     * @param filterPattern the pattern to filter through
+     */
+    public void startQuery(final MetaContactQuery query,
+        final String filterString,
+        final Pattern filterPattern)
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                searchIndex.build(
+                    GuiActivator.getContactListService().getRoot());
+
+                List<MetaContact> matches = searchIndex.search(filterString);
+                int resultCount = 0;
+
+                for (MetaContact metaContact : matches)
+                {
+                    if (query.isCanceled())
+                        break;
+
+                    MetaContactGroup parentGroup
+                        = metaContact.getParentMetaContactGroup();
+
+                    // The contact may have been removed in the meantime.
+                    if (parentGroup == null
+                        || !isMatching(filterPattern, metaContact))
+                        continue;
+
+                    resultCount++;
+                    addQueryResult(query, metaContact, parentGroup,
+                        resultCount);
+                }
+
+                if (!query.isCanceled())
+                    query.fireQueryEvent(
+                        MetaContactQueryStatusEvent.QUERY_COMPLETED);
+                else
+                    query.fireQueryEvent(
+                        MetaContactQueryStatusEvent.QUERY_CANCELED);
+            }
+        }.start();
+    }
+
+    /**
+     * Returns all <tt>MetaContact</tt>s matching the given filter.
+     *
+     * @param filterString the string to search for
+     * @param filterPattern the pattern to filter through
+     * @return the matching <tt>MetaContact</tt>s
+     */
+    public Set<MetaContact> findMatchingContacts(String filterString,
+                                                 Pattern filterPattern)
+    {
+        searchIndex.build(GuiActivator.getContactListService().getRoot());
+
+        Set<MetaContact> matchingContacts = new HashSet<MetaContact>();
+        for (MetaContact metaContact : searchIndex.search(filterString))
+        {
+            if (isMatching(filterPattern, metaContact))
+                matchingContacts.add(metaContact);
+        }
+        return matchingContacts;
+    }
+
     /**
      * Filters the children in the given <tt>MetaContactGroup</tt> to match the
      * given <tt>filterPattern</tt> and stores the result in the given
@@ -254,47 +333,7 @@ public void queryMetaContactSource(Pattern filterPattern,
             {
                 resultCount++;
 
-                if (resultCount <= INITIAL_CONTACT_COUNT)
-                {
-                    UIGroup uiGroup = null;
-                    if (!MetaContactListSource.isRootGroup(parentGroup))
-                    {
-                        synchronized (parentGroup)
-                        {
-                            uiGroup = MetaContactListSource
-                                .getUIGroup(parentGroup);
-                            if (uiGroup == null)
-                                uiGroup = MetaContactListSource
-                                    .createUIGroup(parentGroup);
-                        }
-                    }
-
-                    UIContact newUIContact;
-                    synchronized (metaContact)
-                    {
-                        newUIContact 
-                            = MetaContactListSource.getUIContact(metaContact);
-    
-                        if (newUIContact == null)
-                        {
-                            newUIContact
-                                = MetaContactListSource
-                                    .createUIContact(metaContact);
-                        }
-                        
-                        GuiActivator.getContactList().addContact(
-                            newUIContact,
-                            uiGroup,
-                            true,
-                            true);
-                    }
-                    
-                    query.setInitialResultCount(resultCount);
-                }
-                else
-                {
-                    query.fireQueryEvent(metaContact);
-                }
+                addQueryResult(query, metaContact, parentGroup, resultCount);
             }
         }
 
@@ -311,6 +350,63 @@ public void queryMetaContactSource(Pattern filterPattern,
         }
     }
 
+    /**
+     * Adds a <tt>MetaContact</tt> matching the given <tt>query</tt> to the
+     * contact list. The first <tt>INITIAL_CONTACT_COUNT</tt> results are
+     * added directly, the following ones through query events.
+     * @param query the object that tracks the query
+     * @param metaContact the matching <tt>MetaContact</tt>
+     * @param parentGroup the parent group of the <tt>metaContact</tt>
+     * @param resultCount the number of results including this one
+     */
+    private void addQueryResult(MetaContactQuery query,
+                                MetaContact metaContact,
+                                MetaContactGroup parentGroup,
+                                int resultCount)
+    {
+        if (resultCount <= INITIAL_CONTACT_COUNT)
+        {
+            UIGroup uiGroup = null;
+            if (!MetaContactListSource.isRootGroup(parentGroup))
+            {
+                synchronized (parentGroup)
+                {
+                    uiGroup = MetaContactListSource
+                        .getUIGroup(parentGroup);
+                    if (uiGroup == null)
+                        uiGroup = MetaContactListSource
+                            .createUIGroup(parentGroup);
+                }
+            }
+
+            UIContact newUIContact;
+            synchronized (metaContact)
+            {
+                newUIContact
+                    = MetaContactListSource.getUIContact(metaContact);
+
+                if (newUIContact == null)
+                {
+                    newUIContact
+                        = MetaContactListSource
+                            .createUIContact(metaContact);
+                }
+
+                GuiActivator.getContactList().addContact(
+                    newUIContact,
+                    uiGroup,
+                    true,
+                    true);
+            }
+
+            query.setInitialResultCount(resultCount);
+        }
+        else
+        {
+            query.fireQueryEvent(metaContact);
+        }
+    }
+
     /**
      * Checks if the given <tt>metaContact</tt> is matching the given
      * <tt>filterPattern</tt>.
@@ -324,7 +420,7 @@ public void queryMetaContactSource(Pattern filterPattern,
      * @return <tt>true</tt> to indicate that the given <tt>metaContact</tt> is
      * matching the current filter, otherwise returns <tt>false</tt>
      */
-    private boolean isMatching(Pattern filterPattern, MetaContact metaContact)
+    public boolean isMatching(Pattern filterPattern, MetaContact metaContact)
     {
         Matcher matcher = filterPattern.matcher(metaContact.getDisplayName());
 
@@ -514,6 +610,8 @@ public void metaContactAdded(final MetaContactEvent evt)
     private void metaContactAdded(final MetaContact metaContact,
                                  final MetaContactGroup parentGroup)
     {
+        searchIndex.update(metaContact);
+
         UIContactImpl uiContact;
 
         synchronized (metaContact)
@@ -562,6 +660,10 @@ public void metaContactGroupAdded(MetaContactGroupEvent evt)
     {
         final MetaContactGroup metaGroup = evt.getSourceMetaContactGroup();
 
+        // The contacts of a new server stored group are added without events
+        // of their own.
+        searchIndex.updateGroup(metaGroup);
+
         UIGroup uiGroup;
 
         synchronized (metaGroup)
@@ -609,6 +711,10 @@ public void metaContactGroupModified(MetaContactGroupEvent evt)
     {
         final MetaContactGroup metaGroup = evt.getSourceMetaContactGroup();
 
+        if (evt.getEventID()
+                == MetaContactGroupEvent.CONTACT_GROUP_ADDED_TO_META_GROUP)
+            searchIndex.updateGroup(metaGroup);
+
         UIGroupImpl uiGroup;
         synchronized (metaGroup)
         {
@@ -639,6 +745,10 @@ public void metaContactGroupRemoved(final MetaContactGroupEvent evt)
     {
         MetaContactGroup metaGroup = evt.getSourceMetaContactGroup();
 
+        // The contacts of the group are removed along with it without events
+        // of their own.
+        searchIndex.invalidate();
+
         UIGroup uiGroup;
         synchronized (metaGroup)
         {
@@ -768,6 +878,8 @@ public void metaContactRemoved(final MetaContactEvent evt)
     {
         MetaContact metaContact = evt.getSourceMetaContact();
 
+        searchIndex.remove(metaContact);
+
         UIContact uiContact;
         synchronized (metaContact)
         {
@@ -788,6 +900,8 @@ public void metaContactRenamed(final MetaContactRenamedEvent evt)
     {
         MetaContact metaContact = evt.getSourceMetaContact();
 
+        searchIndex.update(metaContact);
+
         UIContactImpl uiContact;
         synchronized (metaContact)
         {
@@ -843,6 +957,8 @@ public void protoContactAdded(ProtoContactEvent evt)
     {
         final MetaContact metaContact = evt.getNewParent();
 
+        searchIndex.update(metaContact);
+
         UIContact parentUIContact;
         boolean parentUIContactCreated = false;
         synchronized (metaContact)
@@ -900,6 +1016,8 @@ public void protoContactModified(ProtoContactEvent evt)
     {
         MetaContact metaContact = evt.getNewParent();
 
+        searchIndex.update(metaContact);
+
         UIContactImpl uiContact;
         synchronized (metaContact)
         {
@@ -928,6 +1046,9 @@ public void protoContactMoved(ProtoContactEvent evt)
         final MetaContact oldParent = evt.getOldParent();
         final MetaContact newParent = evt.getNewParent();
 
+        searchIndex.update(oldParent);
+        searchIndex.update(newParent);
+
         UIContact oldUIContact;
         synchronized (oldParent)
         {
@@ -1000,6 +1121,8 @@ public void protoContactRemoved(ProtoContactEvent evt)
     {
         final MetaContact oldParent = evt.getOldParent();
 
+        searchIndex.update(oldParent);
+
         UIContactImpl oldUIContact;
         synchronized (oldParent)
         {
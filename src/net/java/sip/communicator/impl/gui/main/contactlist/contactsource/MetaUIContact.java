@@ -51,6 +51,26 @@
     private static final String AVATAR_DATA_KEY
         = MetaUIContact.class.getName() + ".avatar";
 
+    /**
+     * The key of the user data in <tt>MetaContact</tt> which specifies
+     * the zoomed avatar of the selected contact cached from previous
+     * invocations.
+     */
+    private static final String SELECTED_AVATAR_DATA_KEY
+        = MetaUIContact.class.getName() + ".selectedAvatar";
+
+    /**
+     * The status icons shared by all contacts, by presence status.
+     */
+    private static final Map<PresenceStatus, ImageIcon> statusIcons
+        = new HashMap<PresenceStatus, ImageIcon>();
+
+    /**
+     * The avatars of unauthorized contacts shared by all contacts, by size.
+     */
+    private static final Map<String, ImageIcon> unauthorizedAvatars
+        = new HashMap<String, ImageIcon>();
+
     /**
      * A list of all search strings available for the underlying
      * <tt>MetaContact</tt>.
@@ -217,10 +237,35 @@ public ImageIcon getStatusIcon()
                         : status;
         }
 
-        if (status != null)
-            return new ImageIcon(Constants.getStatusIcon(status));
+        if (status == null)
+            return null;
 
-        return null;
+        synchronized (statusIcons)
+        {
+            ImageIcon statusIcon = statusIcons.get(status);
+
+            if (statusIcon == null)
+            {
+                statusIcon = new ImageIcon(Constants.getStatusIcon(status));
+                statusIcons.put(status, statusIcon);
+            }
+            return statusIcon;
+        }
+    }
+
+    /**
+     * Drops the icons shared by all contacts, e.g. after a skin change.
+     */
+    public static void clearIconCache()
+    {
+        synchronized (statusIcons)
+        {
+            statusIcons.clear();
+        }
+        synchronized (unauthorizedAvatars)
+        {
+            unauthorizedAvatars.clear();
+        }
     }
 
     /**
@@ -339,26 +384,24 @@ public ImageIcon getScaledAvatar(
         if((avatarBytes == null) || (avatarBytes.length <= 0))
         {
             if (!subscribed)
-            {
-                return ImageUtils.getScaledRoundedIcon(
-                    ImageLoader.getImage(ImageLoader.UNAUTHORIZED_CONTACT_PHOTO),
-                    width, height);
-            }
+                return getUnauthorizedAvatar(width, height);
 
             return null;
         }
 
         // If the cell is selected we return a zoomed version of the avatar
-        // image.
-        if (isSelected)
-            return ImageUtils.getScaledRoundedIcon(avatarBytes, width, height);
+        // image, which is cached separately.
+        String dataKey = isSelected ? SELECTED_AVATAR_DATA_KEY : AVATAR_DATA_KEY;
 
-        // In any other case try to get the avatar from the cache.
+        // Try to get the avatar from the cache.
         Object[] avatarCache
-            = (Object[]) metaContact.getData(AVATAR_DATA_KEY);
+            = (Object[]) metaContact.getData(dataKey);
         ImageIcon avatar = null;
 
-        if ((avatarCache != null) && (avatarCache[0] == avatarBytes))
+        if ((avatarCache != null)
+                && (avatarCache[0] == avatarBytes)
+                && avatarCache[2].equals(width)
+                && avatarCache[3].equals(height))
             avatar = (ImageIcon) avatarCache[1];
 
         // If the avatar isn't available or it's not up-to-date, create it.
@@ -372,18 +415,48 @@ public ImageIcon getScaledAvatar(
         {
             if (avatar != null)
                 metaContact.setData(
-                    AVATAR_DATA_KEY,
-                    new Object[] { avatarBytes, avatar });
+                    dataKey,
+                    new Object[] { avatarBytes, avatar, width, height });
         }
         else
         {
             avatarCache[0] = avatarBytes;
             avatarCache[1] = avatar;
+            avatarCache[2] = width;
+            avatarCache[3] = height;
         }
 
         return avatar;
     }
 
+    /**
+     * Returns the avatar shown for contacts, which haven't authorized us to
+     * see their status.
+     *
+     * @param width the desired icon width
+     * @param height the desired icon height
+     * @return the avatar of unauthorized contacts
+     */
+    private static ImageIcon getUnauthorizedAvatar(int width, int height)
+    {
+        String key = width + "x" + height;
+
+        synchronized (unauthorizedAvatars)
+        {
+            ImageIcon avatar = unauthorizedAvatars.get(key);
+
+            if (avatar == null)
+            {
+                avatar = ImageUtils.getScaledRoundedIcon(
+                    ImageLoader.getImage(ImageLoader.UNAUTHORIZED_CONTACT_PHOTO),
+                    width, height);
+                if (avatar != null)
+                    unauthorizedAvatars.put(key, avatar);
+            }
+            return avatar;
+        }
+    }
+
     /**
      * Returns the display details for the underlying <tt>MetaContact</tt>.
      * @return the display details for the underlying <tt>MetaContact</tt>
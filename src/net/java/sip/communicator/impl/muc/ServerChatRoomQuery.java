@@ -34,6 +34,18 @@
     extends AsyncContactQuery<ContactSourceService>
     implements ChatRoomProviderWrapperListener
 {
+    /**
+     * The number of chat rooms requested at once from a provider which lists
+     * its chat rooms in pages.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The time in milliseconds to wait before querying a chat room list that
+     * is still being retrieved for more chat rooms.
+     */
+    private static final long PAGE_WAIT = 500;
+
     /**
      * The query string.
      */
@@ -123,6 +135,14 @@ private void providerAdded(final ChatRoomProviderWrapper provider,
         final boolean addQueryResult)
     {
         final ProtocolProviderService pps = provider.getProtocolProvider();
+        OperationSetChatRoomListing listing
+            = pps.getOperationSet(OperationSetChatRoomListing.class);
+        if (listing != null)
+        {
+            addChatRoomPages(pps, listing, addQueryResult);
+            return;
+        }
+
         List<String> chatRoomNames =
             MUCActivator.getMUCService().getExistingChatRooms(provider);
         if (chatRoomNames == null)
@@ -141,6 +161,92 @@ private void providerAdded(final ChatRoomProviderWrapper provider,
         addChatRooms(pps, chatRooms, addQueryResult);
     }
 
+    /**
+     * Adds the chat rooms of a provider which lists its chat rooms in pages,
+     * as soon as they are received from the server, instead of waiting for
+     * the complete list. The provider filters the chat rooms itself.
+     *
+     * @param pps the protocol provider.
+     * @param listing the chat room listing operation set of <tt>pps</tt>.
+     * @param addQueryResult indicates whether we should add the chat rooms to
+     * the query results or fire events without adding them to the results.
+     */
+    private void addChatRoomPages(ProtocolProviderService pps,
+        OperationSetChatRoomListing listing, boolean addQueryResult)
+    {
+        // The order of a list that is being retrieved may still change, so
+        // once it is complete it is queried once more from the start and only
+        // the chat rooms that have not been added yet are added.
+        Set<String> added = new HashSet<String>();
+        boolean partial = false;
+        int offset = 0;
+
+        while (getStatus() != QUERY_CANCELED)
+        {
+            boolean complete = listing.isChatRoomListComplete();
+            List<String> page;
+
+            try
+            {
+                page = listing.queryChatRooms(queryString, offset, PAGE_SIZE);
+            }
+            catch (OperationFailedException e)
+            {
+                return;
+            }
+
+            Set<BaseChatRoomSourceContact> chatRooms
+                = new HashSet<BaseChatRoomSourceContact>();
+            for (String name : page)
+            {
+                if (added.add(name) && isMatching(name, pps))
+                {
+                    chatRooms.add(
+                        new BaseChatRoomSourceContact(name, name, this, pps));
+                }
+            }
+            if (!chatRooms.isEmpty())
+            {
+                synchronized (contactResults)
+                {
+                    contactResults.addAll(chatRooms);
+                }
+                if (addQueryResult)
+                    addQueryResults(chatRooms);
+                else
+                {
+                    for (SourceContact contact : chatRooms)
+                        fireContactReceived(contact, false);
+                }
+            }
+
+            offset += page.size();
+            if (!complete)
+                partial = true;
+            if (page.size() == PAGE_SIZE)
+                continue;
+
+            if (complete)
+            {
+                if (!partial)
+                    return;
+                partial = false;
+                offset = 0;
+            }
+            else
+            {
+                try
+                {
+                    Thread.sleep(PAGE_WAIT);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
 
     /**
      * Adds found result to the query results.
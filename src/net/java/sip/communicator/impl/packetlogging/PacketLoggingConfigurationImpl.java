@@ -29,6 +29,19 @@
 public class PacketLoggingConfigurationImpl
     extends PacketLoggingConfiguration
 {
+    /**
+     * Configuration property for enabling/disabling writing of the log
+     * files in the pcapng format instead of the classic libpcap one.
+     */
+    public static final String PACKET_LOGGING_PCAPNG_ENABLED_PROPERTY_NAME
+        = "net.java.sip.communicator.packetlogging"
+            + ".PACKET_LOGGING_PCAPNG_ENABLED";
+
+    /**
+     * Whether the log files are written in the pcapng format.
+     */
+    private boolean pcapngEnabled = false;
+
     /**
      * Creates new PacketLoggingConfiguration and load values from
      * configuration service and if missing uses already defined
@@ -72,6 +85,20 @@
             configService.getInt(
                 PACKET_LOGGING_FILE_COUNT_PROPERTY_NAME,
                 getLogfileCount()));
+        pcapngEnabled
+            = configService.getBoolean(
+                PACKET_LOGGING_PCAPNG_ENABLED_PROPERTY_NAME,
+                pcapngEnabled);
+    }
+
+    /**
+     * Checks whether the log files are written in the pcapng format, where
+     * every protocol is logged as a separate interface.
+     * @return <tt>true</tt> if pcapng files are written.
+     */
+    public boolean isPcapngEnabled()
+    {
+        return pcapngEnabled;
     }
 
     /**
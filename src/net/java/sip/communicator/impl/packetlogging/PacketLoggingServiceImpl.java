@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.packetlogging;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 import com.google.common.collect.*;
@@ -28,7 +29,9 @@
 
 /**
  * Packet Logging Service implementation dumping logs in
- * pcap(tcpdump/wireshark) format file.
+ * pcap(tcpdump/wireshark) format file. When enabled in the configuration
+ * the logs are written in pcapng format, where every protocol is logged
+ * as a separate interface.
  *
  * @author Damian Minkov
  */
@@ -49,6 +52,45 @@
      */
     private static final int EVICTING_QUEUE_MAX_SIZE = 1000;
 
+    /**
+     * The max number of tcp connections we keep seq and ack numbers for.
+     */
+    private static final int MAX_TCP_CONNECTIONS = 256;
+
+    /**
+     * The pcapng section header block type.
+     */
+    private static final int PCAPNG_SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+
+    /**
+     * The pcapng interface description block type.
+     */
+    private static final int PCAPNG_INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+
+    /**
+     * The pcapng enhanced packet block type.
+     */
+    private static final int PCAPNG_ENHANCED_PACKET_BLOCK = 0x00000006;
+
+    /**
+     * The pcapng byte-order magic.
+     */
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    /**
+     * The link type of raw ipv4/ipv6 packets, used for pcapng interfaces
+     * so we don't have to write fake ethernet headers.
+     */
+    private static final int LINKTYPE_RAW = 101;
+
+    /**
+     * The pcapng option codes we use.
+     */
+    private static final int OPT_ENDOFOPT = 0;
+    private static final int OPT_SHB_USERAPPL = 4;
+    private static final int OPT_IF_NAME = 2;
+    private static final int OPT_IF_DESCRIPTION = 3;
+
     /**
      * The OutputStream we are currently writing to.
      */
@@ -146,20 +188,34 @@
             };
 
     /**
-     * Using this object to lock and protectd the two counters
-     * used for tcp seq and ack numbers.
+     * The seq and ack numbers of the tcp connections we have logged, the
+     * first element is the seq we send, the second one is the seq the
+     * remote side sends. Keeps only the most recently used connections.
      */
-    private Object tcpCounterLock = new Object();
+    private final Map<TcpConnection, long[]> tcpCounters
+        = new LinkedHashMap<TcpConnection, long[]>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<TcpConnection, long[]> eldest)
+            {
+                return size() > MAX_TCP_CONNECTIONS;
+            }
+        };
 
     /**
-     * The seq that the sender will send.
+     * Whether the current files are written in pcapng format.
      */
-    private long srcCount = 1;
+    private boolean pcapng = false;
 
     /**
-     * This is the ack number send from the sender.
+     * The pcapng interface ids of the protocols that have already been
+     * described in the current file.
      */
-    private long dstCount = 1;
+    private final Map<ProtocolName, Integer> interfaceIds
+        = new EnumMap<ProtocolName, Integer>(ProtocolName.class);
 
     /**
      * A counter watching how much has been written to the file.
@@ -187,7 +243,11 @@ public void start()
     private void getFileNames()
         throws Exception
     {
-        int fileCount = getConfiguration().getLogfileCount();
+        PacketLoggingConfiguration cfg = getConfiguration();
+        int fileCount = cfg.getLogfileCount();
+
+        pcapng = (cfg instanceof PacketLoggingConfigurationImpl)
+            && ((PacketLoggingConfigurationImpl) cfg).isPcapngEnabled();
 
         files = new File[fileCount];
         for(int i = 0; i < fileCount; i++)
@@ -196,7 +256,8 @@ private void getFileNames()
                 = PacketLoggingActivator.getFileAccessService()
                     .getPrivatePersistentFile(
                         new File(PacketLoggingActivator.LOGGING_DIR_NAME,
-                            "jitsi" + i + ".pcap").toString(),
+                            "jitsi" + i + (pcapng ? ".pcapng" : ".pcap"))
+                                .toString(),
                         FileCategory.LOG);
         }
     }
@@ -230,7 +291,14 @@ private void rotateFiles()
 
         outputStream = new FileOutputStream(files[0]);
         written = 0;
-        createGlobalHeader();
+
+        if(pcapng)
+        {
+            interfaceIds.clear();
+            createSectionHeaderBlock();
+        }
+        else
+            createGlobalHeader();
     }
 
     /**
@@ -304,6 +372,191 @@ private void createGlobalHeader()
         outputStream.write(0x00);
     }
 
+    /**
+     * Creates pcapng section header block.
+     * @throws IOException
+     */
+    private void createSectionHeaderBlock()
+        throws IOException
+    {
+        byte[] userAppl = "Jitsi".getBytes("UTF-8");
+        int len = 28 + optionLength(userAppl) + 4;
+        ByteBuffer block = allocateBlock(PCAPNG_SECTION_HEADER_BLOCK, len);
+
+        block.putInt(PCAPNG_BYTE_ORDER_MAGIC);
+        /* major and minor version number */
+        block.putShort((short) 1);
+        block.putShort((short) 0);
+        /* section length, not specified */
+        block.putLong(-1L);
+
+        putOption(block, OPT_SHB_USERAPPL, userAppl);
+        putOption(block, OPT_ENDOFOPT, null);
+
+        writeBlock(block);
+    }
+
+    /**
+     * Returns the pcapng interface id of the given protocol, writing its
+     * interface description block to the current file if it is not
+     * described yet.
+     *
+     * @param protocol the protocol which interface id we need.
+     * @return the interface id of the protocol.
+     * @throws IOException
+     */
+    private int getInterfaceId(ProtocolName protocol)
+        throws IOException
+    {
+        Integer id = interfaceIds.get(protocol);
+
+        if(id != null)
+            return id;
+
+        byte[] name = protocol.name().getBytes("UTF-8");
+        byte[] description
+            = ("Jitsi " + protocol.name() + " packets").getBytes("UTF-8");
+        int len = 20 + optionLength(name) + optionLength(description) + 4;
+        ByteBuffer block
+            = allocateBlock(PCAPNG_INTERFACE_DESCRIPTION_BLOCK, len);
+
+        block.putShort((short) LINKTYPE_RAW);
+        /* reserved */
+        block.putShort((short) 0);
+        /* snap length, no limit */
+        block.putInt(0);
+
+        putOption(block, OPT_IF_NAME, name);
+        putOption(block, OPT_IF_DESCRIPTION, description);
+        putOption(block, OPT_ENDOFOPT, null);
+
+        writeBlock(block);
+        written += len;
+
+        id = interfaceIds.size();
+        interfaceIds.put(protocol, id);
+        return id;
+    }
+
+    /**
+     * Writes pcapng enhanced packet block with the packet content.
+     *
+     * @param packet the packet to write.
+     * @param timestamp the time of the packet in milliseconds.
+     * @param ipHeader the ip header to write before the content.
+     * @param transportHeader the transport header to write before the
+     * content.
+     * @return the number of bytes written.
+     * @throws IOException
+     */
+    private int writeEnhancedPacketBlock(
+            Packet packet,
+            long timestamp,
+            byte[] ipHeader,
+            byte[] transportHeader)
+        throws IOException
+    {
+        int interfaceId = getInterfaceId(packet.protocol);
+        int capLen
+            = ipHeader.length + transportHeader.length + packet.packetLength;
+        int len = 32 + pad(capLen);
+        ByteBuffer block = allocateBlock(PCAPNG_ENHANCED_PACKET_BLOCK, len);
+        /* microseconds, the default timestamp resolution */
+        long ts = timestamp * 1000;
+
+        block.putInt(interfaceId);
+        block.putInt((int) (ts >>> 32));
+        block.putInt((int) ts);
+        block.putInt(capLen);
+        block.putInt(capLen);
+        block.put(ipHeader);
+        block.put(transportHeader);
+        block.put(
+                packet.packetContent,
+                packet.packetOffset,
+                packet.packetLength);
+        block.position(block.position() + pad(capLen) - capLen);
+
+        writeBlock(block);
+        return len;
+    }
+
+    /**
+     * Allocates a little-endian buffer for a whole pcapng block and writes
+     * the block type and total length at its start and the total length
+     * at its end.
+     *
+     * @param type the block type.
+     * @param len the block total length.
+     * @return the buffer positioned at the start of the block body.
+     */
+    private static ByteBuffer allocateBlock(int type, int len)
+    {
+        ByteBuffer block = ByteBuffer.allocate(len);
+
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(len - 4, len);
+        block.putInt(type);
+        block.putInt(len);
+        return block;
+    }
+
+    /**
+     * Writes a pcapng block allocated with {@link #allocateBlock(int, int)}
+     * to the output stream with a single write.
+     *
+     * @param block the block to write.
+     * @throws IOException
+     */
+    private void writeBlock(ByteBuffer block)
+        throws IOException
+    {
+        outputStream.write(block.array(), 0, block.capacity());
+    }
+
+    /**
+     * Puts a pcapng option in the block.
+     *
+     * @param block the block to put the option in.
+     * @param code the option code.
+     * @param value the option value or <tt>null</tt> for options
+     * without value.
+     */
+    private static void putOption(ByteBuffer block, int code, byte[] value)
+    {
+        int len = (value == null) ? 0 : value.length;
+
+        block.putShort((short) code);
+        block.putShort((short) len);
+        if(value != null)
+        {
+            block.put(value);
+            block.position(block.position() + pad(len) - len);
+        }
+    }
+
+    /**
+     * Returns the number of bytes an option with the given value takes.
+     *
+     * @param value the option value.
+     * @return the option length including its padding.
+     */
+    private static int optionLength(byte[] value)
+    {
+        return 4 + pad(value.length);
+    }
+
+    /**
+     * Returns the given length padded to 32 bits.
+     *
+     * @param len the length to pad.
+     * @return the padded length.
+     */
+    private static int pad(int len)
+    {
+        return (len + 3) & ~3;
+    }
+
     /**
      * Checks is logging globally enabled for the service.
      *
@@ -506,38 +759,40 @@ private void savePacket(Packet packet)
 
             len = (short)(packet.packetLength + transportHeader.length);
 
-            if(packet.sender)
+            // the seq and ack numbers are tracked per connection, so
+            // every connection is a separate tcp stream in the capture
+            TcpConnection connection
+                = packet.sender
+                    ? new TcpConnection(
+                            packet.sourceAddress, packet.sourcePort,
+                            packet.destinationAddress, packet.destinationPort)
+                    : new TcpConnection(
+                            packet.destinationAddress, packet.destinationPort,
+                            packet.sourceAddress, packet.sourcePort);
+            long seqnum;
+            long acknum;
+
+            synchronized(tcpCounters)
             {
-                long seqnum;
-                long acknum;
-                synchronized(tcpCounterLock)
-                {
-                    seqnum = srcCount;
-                    srcCount += packet.packetLength;
-                    acknum = dstCount;
-                }
+                long[] counters = tcpCounters.get(connection);
 
-                intToBytes((int)(seqnum & 0xffffffff),
-                       transportHeader, 4);
-                intToBytes((int)(acknum & 0xffffffff),
-                       transportHeader, 8);
-            }
-            else
-            {
-                long seqnum;
-                long acknum;
-                synchronized(tcpCounterLock)
+                if(counters == null)
                 {
-                    seqnum = dstCount;
-                    dstCount += packet.packetLength;
-                    acknum = srcCount;
+                    counters = new long[] { 1, 1 };
+                    tcpCounters.put(connection, counters);
                 }
 
-                intToBytes((int)(seqnum & 0xffffffff),
-                       transportHeader, 4);
-                intToBytes((int)(acknum & 0xffffffff),
-                       transportHeader, 8);
+                int local = packet.sender ? 0 : 1;
+
+                seqnum = counters[local];
+                counters[local] += packet.packetLength;
+                acknum = counters[1 - local];
             }
+
+            intToBytes((int)(seqnum & 0xffffffff),
+                   transportHeader, 4);
+            intToBytes((int)(acknum & 0xffffffff),
+                   transportHeader, 8);
         }
 
         // now set ip header total length
@@ -588,6 +843,15 @@ private void savePacket(Packet packet)
             if((limit > 0) && (written > limit))
                 rotateFiles();
 
+            if(pcapng)
+            {
+                written
+                    += writeEnhancedPacketBlock(
+                            packet, current, ipHeader, transportHeader);
+                outputStream.flush();
+                return;
+            }
+
             addInt(tsSec);
             addInt(tsUsec);
             addInt(inclLen);
@@ -770,6 +1034,74 @@ private Packet(ProtocolName protocol,
         }
     }
 
+    /**
+     * Identifies a logged tcp connection by its local and remote
+     * addresses and ports.
+     */
+    private static class TcpConnection
+    {
+        /**
+         * The local address of the connection.
+         */
+        private final byte[] localAddress;
+
+        /**
+         * The local port of the connection.
+         */
+        private final int localPort;
+
+        /**
+         * The remote address of the connection.
+         */
+        private final byte[] remoteAddress;
+
+        /**
+         * The remote port of the connection.
+         */
+        private final int remotePort;
+
+        /**
+         * Creates a connection identifier.
+         * @param localAddress the local address of the connection.
+         * @param localPort the local port of the connection.
+         * @param remoteAddress the remote address of the connection.
+         * @param remotePort the remote port of the connection.
+         */
+        private TcpConnection(byte[] localAddress,
+                              int localPort,
+                              byte[] remoteAddress,
+                              int remotePort)
+        {
+            this.localAddress = localAddress;
+            this.localPort = localPort;
+            this.remoteAddress = remoteAddress;
+            this.remotePort = remotePort;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof TcpConnection))
+                return false;
+
+            TcpConnection other = (TcpConnection) obj;
+
+            return localPort == other.localPort
+                && remotePort == other.remotePort
+                && Arrays.equals(localAddress, other.localAddress)
+                && Arrays.equals(remoteAddress, other.remoteAddress);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * Arrays.hashCode(localAddress) + localPort)
+                + 31 * Arrays.hashCode(remoteAddress) + remotePort;
+        }
+    }
+
     /**
      * Dumps packet in separate thread so we don't block
      * our calling thread.
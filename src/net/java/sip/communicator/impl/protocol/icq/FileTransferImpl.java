@@ -205,27 +205,20 @@ else if (state==FileTransferState.TRANSFERRING)
                     final ProgressStatusProvider psp = (
                         (TransferringFileEvent)event).getProgressProvider();
 
-                    new Thread("Transfer for " + transfer.getBuddyScreenname())
-                    {
-                        @Override
-                        public void run()
+                    FileTransferProgressScheduler.schedule(
+                        FileTransferImpl.this,
+                        psp.getLength(),
+                        new FileTransferProgressScheduler.Sampler()
                         {
-                            while (transfer.isOpen())
+                            public boolean sample()
                             {
-                                long transfered = psp.getPosition();
-
-                                setTransferedBytes(transfered);
-                                fireProgressChangeEvent(
-                                    System.currentTimeMillis(), transfered);
+                                if (!transfer.isOpen())
+                                    return false;
 
-                                try {
-                                    Thread.sleep(100);
-                                }
-                                catch (InterruptedException e)
-                                {}
+                                setTransferedBytes(psp.getPosition());
+                                return true;
                             }
-                        }
-                    }.start();
+                        });
                 }
             }
         }
@@ -235,8 +235,9 @@ public void run()
                 if (query.length() + nick.length() >= maxQueryLength)
                 {
                     this.queryList.add(nicks);
-                    BasicPollerPresenceWatcher.this.irc
-                        .rawMessage(createQuery(query));
+                    QueuedIRCApi.sendBackgroundQuery(
+                        BasicPollerPresenceWatcher.this.irc,
+                        createQuery(query));
                     // Initialize new data types
                     query.delete(0, query.length());
                     nicks = new LinkedList<String>();
@@ -249,8 +250,8 @@ public void run()
             {
                 // Send remaining entries.
                 this.queryList.add(nicks);
-                BasicPollerPresenceWatcher.this.irc
-                    .rawMessage(createQuery(query));
+                QueuedIRCApi.sendBackgroundQuery(
+                    BasicPollerPresenceWatcher.this.irc, createQuery(query));
             }
         }
 
@@ -0,0 +1,380 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+/**
+ * Thread-safe index of the channels on an IRC server.
+ *
+ * Channels are sorted by name, ignoring case and leading channel type
+ * characters, such that a filter "java" finds "#java" and "##java" by prefix
+ * look-up instead of scanning the whole list. Channels that match the filter
+ * elsewhere in their name or in their topic follow the prefix matches.
+ *
+ * The index is filled while the LIST reply is being received, so it can be
+ * queried before the listing is complete.
+ */
+public final class ChannelIndex
+{
+    /**
+     * Characters that are ignored at the start of a channel name when sorting
+     * and prefix matching.
+     */
+    private static final String CHANNEL_TYPES = "#&!+";
+
+    /**
+     * Separator between the sort key and the full channel name. Spaces are
+     * not allowed in channel names, so the separator cannot clash.
+     */
+    private static final char KEY_SEPARATOR = ' ';
+
+    /**
+     * Channels by sort key.
+     */
+    private final TreeMap<String, Entry> entries =
+        new TreeMap<String, Entry>();
+
+    /**
+     * Generation of the listing that is currently being received. Entries
+     * that were not seen in the most recent full listing are removed once it
+     * completes.
+     */
+    private int generation = 0;
+
+    /**
+     * Flag indicating whether at least one listing has completed.
+     */
+    private boolean complete = false;
+
+    /**
+     * Time (in milliseconds) at which the most recent listing was started.
+     */
+    private long listed = 0L;
+
+    /**
+     * Start a new listing.
+     *
+     * @param full <tt>true</tt> if the listing will contain all channels,
+     *            <tt>false</tt> if it is a delta of channels that changed
+     */
+    synchronized void start(final boolean full)
+    {
+        if (full)
+        {
+            this.generation++;
+        }
+        this.listed = System.currentTimeMillis();
+    }
+
+    /**
+     * Add or update a channel.
+     *
+     * @param name the channel name
+     * @param users the number of users in the channel
+     * @param topic the channel topic
+     */
+    synchronized void put(final String name, final int users,
+        final String topic)
+    {
+        this.entries.put(key(name), new Entry(name, users, topic,
+            this.generation));
+    }
+
+    /**
+     * Finish the current listing.
+     *
+     * @param full <tt>true</tt> if the listing contained all channels, in
+     *            which case channels that were not listed are removed
+     */
+    synchronized void finish(final boolean full)
+    {
+        if (full)
+        {
+            final Iterator<Entry> it = this.entries.values().iterator();
+            while (it.hasNext())
+            {
+                if (it.next().generation != this.generation)
+                {
+                    it.remove();
+                }
+            }
+        }
+        this.complete = true;
+    }
+
+    /**
+     * Check whether at least one listing has completed.
+     *
+     * @return returns <tt>true</tt> if the index contains a complete listing
+     */
+    public synchronized boolean isComplete()
+    {
+        return this.complete;
+    }
+
+    /**
+     * Get the time at which the most recent listing was started.
+     *
+     * @return returns the time in milliseconds, or 0 if never listed
+     */
+    synchronized long getListed()
+    {
+        return this.listed;
+    }
+
+    /**
+     * Get the number of indexed channels.
+     *
+     * @return returns the number of channels
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Get the names of all indexed channels.
+     *
+     * @return returns the channel names, sorted
+     */
+    public synchronized List<String> names()
+    {
+        final ArrayList<String> names =
+            new ArrayList<String>(this.entries.size());
+        for (Entry entry : this.entries.values())
+        {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    /**
+     * Query a page of channels matching a filter. Channels of which the name
+     * (ignoring leading channel type characters) starts with the filter come
+     * first, followed by channels that contain the filter anywhere else in
+     * their name or topic.
+     *
+     * @param filter the filter, or <tt>null</tt> or empty string to match all
+     *            channels
+     * @param offset the number of matching channels to skip
+     * @param limit the maximum number of channels to return
+     * @return returns the matching channels
+     */
+    public synchronized List<Entry> query(final String filter,
+        final int offset, final int limit)
+    {
+        if (offset < 0 || limit < 0)
+        {
+            throw new IllegalArgumentException(
+                "offset and limit cannot be negative");
+        }
+        final ArrayList<Entry> page = new ArrayList<Entry>();
+        if (limit == 0)
+        {
+            return page;
+        }
+        if (filter == null || filter.isEmpty())
+        {
+            collect(this.entries.values(), offset, limit, page);
+            return page;
+        }
+        // Channel names cannot contain spaces, so such a filter can only
+        // match topics.
+        final String prefix =
+            filter.indexOf(KEY_SEPARATOR) >= 0 ? null : strip(filter);
+        int skip = offset;
+        if (prefix != null)
+        {
+            final SortedMap<String, Entry> prefixed =
+                this.entries.subMap(prefix, prefix + Character.MAX_VALUE);
+            skip = collect(prefixed.values(), offset, limit, page);
+            if (page.size() == limit)
+            {
+                return page;
+            }
+        }
+        final String lowerFilter = filter.toLowerCase();
+        for (Map.Entry<String, Entry> candidate : this.entries.entrySet())
+        {
+            if ((prefix != null && candidate.getKey().startsWith(prefix))
+                || !candidate.getValue().matches(lowerFilter))
+            {
+                continue;
+            }
+            if (skip > 0)
+            {
+                skip--;
+                continue;
+            }
+            page.add(candidate.getValue());
+            if (page.size() == limit)
+            {
+                break;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Add entries to a page, after skipping an offset.
+     *
+     * @param source the entries
+     * @param offset the number of entries to skip
+     * @param limit maximum page size
+     * @param page the page to add to
+     * @return returns the remainder of the offset that is not yet skipped
+     */
+    private static int collect(final Collection<Entry> source,
+        final int offset, final int limit, final List<Entry> page)
+    {
+        int skip = offset;
+        for (Entry entry : source)
+        {
+            if (skip > 0)
+            {
+                skip--;
+                continue;
+            }
+            page.add(entry);
+            if (page.size() == limit)
+            {
+                break;
+            }
+        }
+        return skip;
+    }
+
+    /**
+     * Compute the sort key of a channel name.
+     *
+     * @param name the channel name
+     * @return returns the sort key
+     */
+    private static String key(final String name)
+    {
+        return strip(name) + KEY_SEPARATOR + name.toLowerCase();
+    }
+
+    /**
+     * Strip leading channel type characters from a name and convert it to
+     * lower case.
+     *
+     * @param name the channel name or filter
+     * @return returns the stripped name
+     */
+    private static String strip(final String name)
+    {
+        int start = 0;
+        while (start < name.length()
+            && CHANNEL_TYPES.indexOf(name.charAt(start)) >= 0)
+        {
+            start++;
+        }
+        return name.substring(start).toLowerCase();
+    }
+
+    /**
+     * A channel in the index.
+     */
+    public static final class Entry
+    {
+        /**
+         * The channel name.
+         */
+        private final String name;
+
+        /**
+         * The number of users in the channel.
+         */
+        private final int users;
+
+        /**
+         * The channel topic.
+         */
+        private final String topic;
+
+        /**
+         * The listing generation in which the channel was last seen.
+         */
+        private final int generation;
+
+        /**
+         * Constructor.
+         *
+         * @param name the channel name
+         * @param users the number of users
+         * @param topic the channel topic
+         * @param generation the listing generation
+         */
+        private Entry(final String name, final int users, final String topic,
+            final int generation)
+        {
+            if (name == null)
+            {
+                throw new IllegalArgumentException("name cannot be null");
+            }
+            this.name = name;
+            this.users = users;
+            this.topic = topic == null ? "" : topic;
+            this.generation = generation;
+        }
+
+        /**
+         * Get the channel name.
+         *
+         * @return returns the channel name
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Get the number of users in the channel.
+         *
+         * @return returns the number of users
+         */
+        public int getUsers()
+        {
+            return this.users;
+        }
+
+        /**
+         * Get the channel topic.
+         *
+         * @return returns the topic, or empty string if no topic is set
+         */
+        public String getTopic()
+        {
+            return this.topic;
+        }
+
+        /**
+         * Check whether the channel name or topic contains a filter.
+         *
+         * @param lowerFilter the filter in lower case
+         * @return returns <tt>true</tt> if the channel matches
+         */
+        private boolean matches(final String lowerFilter)
+        {
+            return this.name.toLowerCase().contains(lowerFilter)
+                || this.topic.toLowerCase().contains(lowerFilter);
+        }
+    }
+}
@@ -119,6 +119,11 @@
      */
     private final boolean awayNotify;
 
+    /**
+     * Scheduler for the periodic presence queries of all joined channels.
+     */
+    private final ChannelPresenceScheduler presenceScheduler;
+
     /**
      * Constructor.
      *
@@ -163,6 +168,7 @@ public ChannelManager(final IRCApi irc, final IIRCState connectionState,
                 ISupport.KICKLEN);
         parseISupportChanLimit(this.isupportChanLimit, this.connectionState);
         this.awayNotify = awayNotifyCapability;
+        this.presenceScheduler = new ChannelPresenceScheduler(this.irc);
     }
 
     /**
@@ -840,34 +846,15 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
         private static final int IRC_RPL_WHOREPLY = 352;
 
         /**
-         * IRC reply code for end of WHO reply list.
-         */
-        private static final int IRC_RPL_ENDOFWHO = 315;
-
-        /**
-         * Presence task period.
-         */
-        private static final long TASK_PERIOD = 60000L;
-
-        /**
-         * Presence task initial delay.
-         *
-         * The first WHO-request is fired during ChatRoomListener constructions,
-         * as we need at least 1 such request, even if away-notify capability is
-         * active.
+         * IRC reply code for WHOX reply entry for an individual user.
          */
-        private static final long TASK_INITIAL_DELAY = TASK_PERIOD;
+        private static final int IRC_RPL_WHOSPCRPL = 354;
 
         /**
          * Chat room for which this listener is working.
          */
         private final ChatRoomIrcImpl chatroom;
 
-        /**
-         * Presence task timer.
-         */
-        private final Timer presenceTaskTimer = new Timer();
-
         /**
          * Constructor. Instantiate listener for the provided chat room.
          *
@@ -890,7 +877,7 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
             this.chatroom = chatroom;
             if (activatePresenceWatcher && !awayNotifyCapability)
             {
-                createPeriodicPresenceWatcher();
+                ChannelManager.this.presenceScheduler.add(chatroom);
             }
             else
             {
@@ -898,25 +885,9 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
                     + "(away-notify capability is " + awayNotifyCapability
                     + ")");
             }
-            this.irc.rawMessage("WHO " + chatroom.getIdentifier());
-        }
-
-        /**
-         * Create periodic task for updating channel presence statuses.
-         */
-        private void createPeriodicPresenceWatcher() {
-            final TimerTask task = new TimerTask()
-            {
-                @Override
-                public void run()
-                {
-                    irc.rawMessage("WHO " + chatroom.getIdentifier());
-                }
-            };
-            this.presenceTaskTimer.schedule(task, TASK_INITIAL_DELAY,
-                TASK_PERIOD);
-            LOGGER.debug("Scheduled periodic task for querying member presence "
-                + "for channel " + this.chatroom.getIdentifier());
+            // We need at least 1 presence query, even if away-notify
+            // capability is active.
+            ChannelManager.this.presenceScheduler.query(chatroom);
         }
 
         /**
@@ -1070,16 +1041,22 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
                     // case. Or if this reply was not targeted at this channel.
                     return;
                 }
-                final String nick = messageComponents[4];
-                final ChatRoomMemberIrcImpl member =
-                    (ChatRoomMemberIrcImpl) this.chatroom
-                        .getChatRoomMember(nick);
-                if (member != null)
+                updateMemberPresence(messageComponents[4],
+                    messageComponents[5]);
+                break;
+
+            case IRC_RPL_WHOSPCRPL:
+                // WHOX reply with the requested fields: token, channel, nick
+                // and flags.
+                final String[] whoxComponents = msg.getText().split(" ");
+                if (whoxComponents.length < 4
+                    || !ChannelPresenceScheduler.WHOX_TOKEN
+                        .equals(whoxComponents[0])
+                    || !isThisChatRoom(whoxComponents[1]))
                 {
-                    final IrcStatusEnum status =
-                        determineStatus(messageComponents[5]);
-                    updateMemberPresence(member, status);
+                    return;
                 }
+                updateMemberPresence(whoxComponents[2], whoxComponents[3]);
                 break;
 
             default:
@@ -1087,6 +1064,24 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
             }
         }
 
+        /**
+         * Update the presence status of a single member as reported in a WHO
+         * reply. Members that are unknown to the chat room are ignored.
+         *
+         * @param nick the member's nick
+         * @param flags the flags of the WHO reply
+         */
+        private void updateMemberPresence(final String nick,
+            final String flags)
+        {
+            final ChatRoomMemberIrcImpl member =
+                (ChatRoomMemberIrcImpl) this.chatroom.getChatRoomMember(nick);
+            if (member != null)
+            {
+                updateMemberPresence(member, determineStatus(flags));
+            }
+        }
+
         /**
          * Determine the presence status by the code in the IRC WHO reply.
          *
@@ -1137,6 +1132,7 @@ public void onChannelKick(final ChannelKick msg)
             {
                 LOGGER.debug(
                     "Local user is kicked. Removing chat room listener.");
+                ChannelManager.this.presenceScheduler.remove(this.chatroom);
                 this.irc.deleteListener(this);
                 ChannelManager.this.joined
                     .remove(this.chatroom.getIdentifier());
@@ -1158,7 +1154,7 @@ public void onUserQuit(final QuitMessage msg)
             final String user = msg.getSource().getNick();
             if (localUser(user))
             {
-                this.presenceTaskTimer.cancel();
+                ChannelManager.this.presenceScheduler.cancel();
             }
             else
             {
@@ -1181,7 +1177,7 @@ public void onUserQuit(final QuitMessage msg)
         @Override
         public void onError(final ErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            ChannelManager.this.presenceScheduler.cancel();
             super.onError(msg);
         }
 
@@ -1192,7 +1188,7 @@ public void onError(final ErrorMessage msg)
         @Override
         public void onClientError(final ClientErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            ChannelManager.this.presenceScheduler.cancel();
             super.onClientError(msg);
         }
 
@@ -1349,7 +1345,7 @@ private void updateMemberPresence(ChatRoomMemberIrcImpl member,
          */
         private void leaveChatRoom()
         {
-            this.presenceTaskTimer.cancel();
+            ChannelManager.this.presenceScheduler.remove(this.chatroom);
             this.irc.deleteListener(this);
             ChannelManager.this.joined.remove(this.chatroom.getIdentifier());
             LOGGER.debug("Leaving chat room " + this.chatroom.getIdentifier()
@@ -0,0 +1,260 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import com.ircclouds.irc.api.*;
+
+/**
+ * Scheduler for the periodic channel presence queries of a single IRC
+ * connection.
+ *
+ * All joined channels share a single timer. WHO queries are staggered such
+ * that at most one query is sent per {@link #QUERY_INTERVAL}. The query
+ * period of a channel grows with its number of members and channels that are
+ * not shown in the user interface are not queried at all.
+ *
+ * Queries use the WHOX extension, requesting only the channel, nick and
+ * flags fields. Servers that do not support WHOX ignore the extra parameter
+ * and send regular WHO replies.
+ */
+final class ChannelPresenceScheduler
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger
+        .getLogger(ChannelPresenceScheduler.class);
+
+    /**
+     * Token that identifies the replies to our WHOX queries.
+     */
+    static final String WHOX_TOKEN = "745";
+
+    /**
+     * Minimum interval between two consecutive presence queries. It is twice
+     * the flood control penalty of {@link QueuedIRCApi}, such that presence
+     * queries use at most half of the rate at which commands can be sent.
+     */
+    static final long QUERY_INTERVAL = 2 * QueuedIRCApi.PENALTY;
+
+    /**
+     * Query period for channels up to {@link #MEMBERS_PER_PERIOD} members.
+     */
+    static final long BASE_PERIOD = 60000L;
+
+    /**
+     * Maximum query period, regardless of channel size.
+     */
+    static final long MAX_PERIOD = 600000L;
+
+    /**
+     * Number of members for which the query period is extended by another
+     * {@link #BASE_PERIOD}.
+     */
+    static final int MEMBERS_PER_PERIOD = 100;
+
+    /**
+     * WHOX fields: query token, channel, nick and flags.
+     */
+    private static final String WHOX_FIELDS = "%tcnf," + WHOX_TOKEN;
+
+    /**
+     * IRCApi instance.
+     */
+    private final IRCApi irc;
+
+    /**
+     * Scheduled channels by channel name, in order of scheduling.
+     */
+    private final Map<String, ScheduledChannel> channels =
+        new LinkedHashMap<String, ScheduledChannel>();
+
+    /**
+     * Timer that is shared by all channels. It is created once the first
+     * channel is scheduled.
+     */
+    private Timer timer = null;
+
+    /**
+     * Flag indicating that the scheduler has been cancelled.
+     */
+    private boolean cancelled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param irc the IRCApi instance
+     */
+    ChannelPresenceScheduler(final IRCApi irc)
+    {
+        if (irc == null)
+        {
+            throw new IllegalArgumentException("irc cannot be null");
+        }
+        this.irc = irc;
+    }
+
+    /**
+     * Compute the query period for a channel of a certain size.
+     *
+     * @param members the number of channel members
+     * @return returns the query period in milliseconds
+     */
+    static long period(final int members)
+    {
+        final long factor =
+            Math.max(1, (members + MEMBERS_PER_PERIOD - 1)
+                / MEMBERS_PER_PERIOD);
+        return Math.min(MAX_PERIOD, factor * BASE_PERIOD);
+    }
+
+    /**
+     * Query the presence of the members of a chat room immediately.
+     *
+     * @param chatroom the chat room
+     */
+    void query(final ChatRoomIrcImpl chatroom)
+    {
+        QueuedIRCApi.sendBackgroundQuery(this.irc,
+            "WHO " + chatroom.getIdentifier() + " " + WHOX_FIELDS);
+    }
+
+    /**
+     * Schedule periodic presence queries for a chat room.
+     *
+     * @param chatroom the chat room
+     */
+    synchronized void add(final ChatRoomIrcImpl chatroom)
+    {
+        if (this.cancelled)
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        this.channels.put(chatroom.getIdentifier(), new ScheduledChannel(
+            chatroom, now + period(chatroom.getMembersCount())));
+        if (this.timer == null)
+        {
+            this.timer = new Timer("IRC channel presence", true);
+            this.timer.schedule(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    queryNext();
+                }
+            }, QUERY_INTERVAL, QUERY_INTERVAL);
+        }
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Scheduled periodic presence queries for channel "
+                + chatroom.getIdentifier());
+        }
+    }
+
+    /**
+     * Stop periodic presence queries for a chat room.
+     *
+     * @param chatroom the chat room
+     */
+    synchronized void remove(final ChatRoomIrcImpl chatroom)
+    {
+        this.channels.remove(chatroom.getIdentifier());
+    }
+
+    /**
+     * Cancel all presence queries, for example because the connection was
+     * closed.
+     */
+    synchronized void cancel()
+    {
+        this.cancelled = true;
+        this.channels.clear();
+        if (this.timer != null)
+        {
+            this.timer.cancel();
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Query the channel that is overdue the longest, skipping channels that
+     * are not shown in the user interface.
+     */
+    private void queryNext()
+    {
+        final ChatRoomIrcImpl chatroom;
+        synchronized (this)
+        {
+            final long now = System.currentTimeMillis();
+            ScheduledChannel next = null;
+            for (ScheduledChannel channel : this.channels.values())
+            {
+                if (channel.due > now
+                    || !channel.chatroom.hasMemberPropertyChangeListeners())
+                {
+                    continue;
+                }
+                if (next == null || channel.due < next.due)
+                {
+                    next = channel;
+                }
+            }
+            if (next == null)
+            {
+                return;
+            }
+            next.due = now + period(next.chatroom.getMembersCount());
+            chatroom = next.chatroom;
+        }
+        query(chatroom);
+    }
+
+    /**
+     * A channel and the time of its next presence query.
+     */
+    private static final class ScheduledChannel
+    {
+        /**
+         * The chat room.
+         */
+        private final ChatRoomIrcImpl chatroom;
+
+        /**
+         * Time at which the next query is due.
+         */
+        private long due;
+
+        /**
+         * Constructor.
+         *
+         * @param chatroom the chat room
+         * @param due time of the first query
+         */
+        private ScheduledChannel(final ChatRoomIrcImpl chatroom,
+            final long due)
+        {
+            this.chatroom = chatroom;
+            this.due = due;
+        }
+    }
+}
@@ -622,6 +622,19 @@ public void removeMemberPropertyChangeListener(
         }
     }
 
+    /**
+     * Check whether anybody is interested in changes of the properties of
+     * this chat room's members, such as their presence status. This is the
+     * case while the chat room is shown in the user interface.
+     *
+     * @return returns <tt>true</tt> if member property change listeners are
+     *         registered, or <tt>false</tt> otherwise.
+     */
+    boolean hasMemberPropertyChangeListeners()
+    {
+        return !memberPropChangeListeners.isEmpty();
+    }
+
     /**
      * Adds a listener that will be notified of changes of a member role in the
      * room such as being granted operator.
@@ -58,7 +58,11 @@
     /**
      * Maximum number of entries in the WATCH list supported by this server.
      */
-    WATCH;
+    WATCH,
+    /**
+     * Extensions to the LIST command supported by IRC server.
+     */
+    ELIST;
 
     /**
      * Pattern for parsing ChanLimit ISUPPORT parameter.
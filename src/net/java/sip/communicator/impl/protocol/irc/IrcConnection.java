@@ -206,7 +206,8 @@
 
         // instantiate server channel lister
         this.channelLister =
-            new ServerChannelLister(this.irc, this.connectionState);
+            new ServerChannelLister(this.irc, this.connectionState,
+                this.context.provider.getAccountID().getAccountUniqueID());
     }
 
     /**
@@ -140,7 +140,7 @@ public void connect(final String host, final int port,
 
                 this.params.setServer(server);
 
-                final IRCApi irc = new IRCApiImpl(true);
+                final IRCApi irc = new QueuedIRCApi(new IRCApiImpl(true));
 
                 if (LOGGER.isTraceEnabled())
                 {
@@ -150,7 +150,7 @@ public void connect(final String host, final int port,
                     irc.addListener(new DebugListener());
                 }
 
-                // Synchronized IRCApi instance passed on to the connection
+                // Queueing IRCApi instance passed on to the connection
                 // instance.
                 this.session.set(new IrcConnection(this.context, config, irc,
                     this.params, password, this));
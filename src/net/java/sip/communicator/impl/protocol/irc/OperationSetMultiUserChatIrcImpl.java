@@ -36,6 +36,7 @@
  */
 public class OperationSetMultiUserChatIrcImpl
     extends AbstractOperationSetMultiUserChat
+    implements OperationSetChatRoomListing
 {
     /**
      * A call back to the IRC provider that created us.
@@ -91,6 +92,63 @@ public List<String> getExistingChatRooms() throws OperationFailedException
         return connection.getServerChannelLister().getList();
     }
 
+    /**
+     * Queries a page of the chat rooms available on the server, matching a
+     * filter. Channels that have been received so far are queried if the
+     * channel list is still being retrieved.
+     *
+     * @param filter the filter, or <tt>null</tt> to match all chat rooms
+     * @param offset the number of matching chat rooms to skip
+     * @param limit the maximum number of chat rooms to return
+     * @return the names of the matching chat rooms
+     * @throws OperationFailedException if we are not connected
+     */
+    public List<String> queryChatRooms(final String filter, final int offset,
+        final int limit) throws OperationFailedException
+    {
+        final IrcConnection connection =
+            this.ircProvider.getIrcStack().getConnection();
+        if (connection == null)
+        {
+            throw new OperationFailedException(
+                "Connection is not available.",
+                OperationFailedException.NETWORK_FAILURE);
+        }
+        final List<ChannelIndex.Entry> entries;
+        try
+        {
+            entries =
+                connection.getServerChannelLister().query(filter, offset,
+                    limit);
+        }
+        catch (IllegalStateException e)
+        {
+            throw new OperationFailedException(e.getMessage(),
+                OperationFailedException.NETWORK_FAILURE, e);
+        }
+        final List<String> names = new ArrayList<String>(entries.size());
+        for (ChannelIndex.Entry entry : entries)
+        {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Determines whether the channel list is complete, i.e. it is not being
+     * retrieved from the IRC server.
+     *
+     * @return <tt>true</tt> if the channel list is complete or we are not
+     *         connected
+     */
+    public boolean isChatRoomListComplete()
+    {
+        final IrcConnection connection =
+            this.ircProvider.getIrcStack().getConnection();
+        return connection == null
+            || connection.getServerChannelLister().isComplete();
+    }
+
     /**
      * Returns a list of the chat rooms that we have joined and are currently
      * active in.
@@ -133,6 +133,10 @@ protected void initialize(final String userID, final AccountID accountID)
             addSupportedOperationSet(
                 OperationSetMultiUserChat.class,
                 multiUserChat);
+            // Also register for paged listing of the server's chat rooms.
+            addSupportedOperationSet(
+                OperationSetChatRoomListing.class,
+                multiUserChat);
 
             // Initialize basic instant messaging
             this.instantMessaging =
@@ -0,0 +1,847 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.util.*;
+
+import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.ctcp.*;
+import com.ircclouds.irc.api.domain.*;
+import com.ircclouds.irc.api.filters.*;
+import com.ircclouds.irc.api.listeners.*;
+import com.ircclouds.irc.api.state.*;
+
+/**
+ * Queueing wrapper for IRCApi.
+ *
+ * All outbound commands are queued and sent by a single worker thread, such
+ * that a caller never blocks on another caller's command and commands are
+ * sent in the order in which they were issued. The worker applies the client
+ * flood control of RFC 1459 (section 8.10): a burst of {@link #BURST}
+ * commands, after which a command is sent every {@link #PENALTY}
+ * milliseconds. Failures of commands with a callback are reported through
+ * the callback, other failures are logged.
+ *
+ * Periodic background queries (see {@link #backgroundQuery(String)}) are only
+ * sent when no interactive command is waiting, such that polling does not
+ * delay the user's messages. A background query that is already waiting to
+ * be sent is not queued a second time. Raw messages are always interactive.
+ *
+ * Connecting, disconnecting, DCC and listener management are not queued.
+ */
+public class QueuedIRCApi
+    implements IRCApi
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(QueuedIRCApi.class);
+
+    /**
+     * Number of commands that can be sent without delay.
+     */
+    static final int BURST = 5;
+
+    /**
+     * Time in milliseconds that every command adds to the flood timer.
+     */
+    static final long PENALTY = 2000L;
+
+    /**
+     * IRCApi instance.
+     */
+    private final IRCApi irc;
+
+    /**
+     * Executor with a single worker thread that sends the queued commands.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Flood timer as described in RFC 1459. Only accessed by the worker
+     * thread.
+     */
+    private long floodTimer = 0;
+
+    /**
+     * Sequence number of the next command, used to send commands of the same
+     * priority in the order in which they were issued.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Background queries that are waiting to be sent.
+     */
+    private final Set<String> queuedQueries = Collections
+        .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Constructor for queueing wrapper.
+     *
+     * @param irc IRCApi instance
+     */
+    public QueuedIRCApi(final IRCApi irc)
+    {
+        if (irc == null)
+        {
+            throw new IllegalArgumentException("irc instance cannot be null");
+        }
+        this.irc = irc;
+        this.executor =
+            new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        final Thread t = new Thread(r, "IRC command queue");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the number of commands currently waiting to be sent.
+     *
+     * @return returns the queue depth
+     */
+    public int getQueueDepth()
+    {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Queue a command.
+     *
+     * @param command the command
+     */
+    private void queue(final Command command)
+    {
+        try
+        {
+            this.executor.execute(command);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (command.query != null)
+            {
+                this.queuedQueries.remove(command.query);
+            }
+            command.failed(e);
+        }
+    }
+
+    /**
+     * Drop all commands that have not been sent yet. Their failure is
+     * reported, such that nobody keeps waiting for their result.
+     */
+    private void dropQueued()
+    {
+        final List<Runnable> dropped = new ArrayList<Runnable>();
+        this.executor.getQueue().drainTo(dropped);
+        this.queuedQueries.clear();
+        if (dropped.isEmpty())
+        {
+            return;
+        }
+        final IllegalStateException e =
+            new IllegalStateException(
+                "Disconnected before the command could be sent.");
+        for (Runnable command : dropped)
+        {
+            ((Command) command).failed(e);
+        }
+    }
+
+    /**
+     * Send a periodic query through the provided IRCApi instance. The query
+     * is sent as a background query if the instance queues commands and as a
+     * raw message otherwise.
+     *
+     * @param irc the IRCApi instance
+     * @param aQuery the raw query
+     */
+    static void sendBackgroundQuery(final IRCApi irc, final String aQuery)
+    {
+        if (irc instanceof QueuedIRCApi)
+        {
+            ((QueuedIRCApi) irc).backgroundQuery(aQuery);
+        }
+        else
+        {
+            irc.rawMessage(aQuery);
+        }
+    }
+
+    /**
+     * Wait until the flood timer allows sending another command, then
+     * account for that command.
+     *
+     * @throws InterruptedException in case the worker is interrupted while
+     *             waiting
+     */
+    private void pace() throws InterruptedException
+    {
+        final long now = System.currentTimeMillis();
+        if (this.floodTimer < now)
+        {
+            this.floodTimer = now;
+        }
+        final long wait = this.floodTimer + PENALTY - now - BURST * PENALTY;
+        if (wait > 0)
+        {
+            Thread.sleep(wait);
+        }
+        this.floodTimer += PENALTY;
+    }
+
+    /**
+     * An outbound IRC command.
+     */
+    private abstract class Command
+        implements Runnable, Comparable<Command>
+    {
+        /**
+         * Time at which the command was issued.
+         */
+        private final long issued = System.currentTimeMillis();
+
+        /**
+         * Sequence number of the command.
+         */
+        private final long number = QueuedIRCApi.this.sequence
+            .getAndIncrement();
+
+        /**
+         * The background query that is sent by this command or null for an
+         * interactive command.
+         */
+        private final String query;
+
+        /**
+         * Constructor for an interactive command.
+         */
+        protected Command()
+        {
+            this(null);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param query the background query that is sent by this command or
+         *            null for an interactive command
+         */
+        protected Command(final String query)
+        {
+            this.query = query;
+        }
+
+        /**
+         * Send the command.
+         */
+        protected abstract void send();
+
+        /**
+         * Report the failure to send the command.
+         *
+         * @param e the failure
+         */
+        protected void failed(final Exception e)
+        {
+            LOGGER.warn("Failed to send IRC command.", e);
+        }
+
+        /**
+         * Interactive commands come before background queries, commands of
+         * the same kind are sent in the order in which they were issued.
+         *
+         * @param other the other command
+         * @return returns the ordering of the commands
+         */
+        @Override
+        public int compareTo(final Command other)
+        {
+            final boolean background = this.query != null;
+            if (background != (other.query != null))
+            {
+                return background ? 1 : -1;
+            }
+            return this.number < other.number ? -1
+                : this.number == other.number ? 0 : 1;
+        }
+
+        @Override
+        public void run()
+        {
+            if (this.query != null)
+            {
+                QueuedIRCApi.this.queuedQueries.remove(this.query);
+            }
+            try
+            {
+                pace();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                failed(e);
+                return;
+            }
+            if (LOGGER.isTraceEnabled())
+            {
+                final long latency =
+                    System.currentTimeMillis() - this.issued;
+                LOGGER.trace("Sending IRC command after " + latency
+                    + " ms in queue, " + getQueueDepth()
+                    + " more commands queued.");
+            }
+            try
+            {
+                send();
+            }
+            catch (RuntimeException e)
+            {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * An outbound IRC command with a callback for the result.
+     *
+     * @param <T> the result type
+     */
+    private abstract class CallbackCommand<T>
+        extends Command
+    {
+        /**
+         * The callback.
+         */
+        protected final Callback<T> callback;
+
+        /**
+         * Constructor.
+         *
+         * @param callback the callback
+         */
+        protected CallbackCommand(final Callback<T> callback)
+        {
+            this.callback = callback;
+        }
+
+        @Override
+        protected void failed(final Exception e)
+        {
+            this.callback.onFailure(e);
+        }
+    }
+
+    @Override
+    public void connect(final IServerParameters aServerParameters,
+        final Callback<IIRCState> aCallback)
+    {
+        this.irc.connect(aServerParameters, aCallback);
+    }
+
+    @Override
+    public void connect(final IServerParameters aServerParameters,
+        final Callback<IIRCState> aCallback,
+        final CapabilityNegotiator negotiator)
+    {
+        this.irc.connect(aServerParameters, aCallback, negotiator);
+    }
+
+    /**
+     * Disconnect immediately. Commands that have not been sent yet are
+     * dropped and reported as failed.
+     */
+    @Override
+    public void disconnect()
+    {
+        dropQueued();
+        this.irc.disconnect();
+    }
+
+    /**
+     * Disconnect immediately. Commands that have not been sent yet are
+     * dropped and reported as failed.
+     *
+     * @param aQuitMessage the quit message
+     */
+    @Override
+    public void disconnect(final String aQuitMessage)
+    {
+        dropQueued();
+        this.irc.disconnect(aQuitMessage);
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.joinChannel(aChannelName);
+            }
+        });
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName,
+        final Callback<IRCChannel> aCallback)
+    {
+        queue(new CallbackCommand<IRCChannel>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.joinChannel(aChannelName, this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName, final String aKey)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.joinChannel(aChannelName, aKey);
+            }
+        });
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName, final String aKey,
+        final Callback<IRCChannel> aCallback)
+    {
+        queue(new CallbackCommand<IRCChannel>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.joinChannel(aChannelName, aKey,
+                    this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.leaveChannel(aChannelName);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.leaveChannel(aChannelName,
+                    this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final String aPartMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.leaveChannel(aChannelName, aPartMessage);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final String aPartMessage, final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.leaveChannel(aChannelName, aPartMessage,
+                    this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void changeNick(final String aNewNick)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.changeNick(aNewNick);
+            }
+        });
+    }
+
+    @Override
+    public void changeNick(final String aNewNick,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.changeNick(aNewNick, this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void message(final String aTarget, final String aMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.message(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void message(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.message(aTarget, aMessage,
+                    this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void act(final String aTarget, final String aMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.act(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void act(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.act(aTarget, aMessage, this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void notice(final String aTarget, final String aMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.notice(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void notice(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.notice(aTarget, aMessage, this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.kick(aChannel, aNick);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final String aKickMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.kick(aChannel, aNick, aKickMessage);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.kick(aChannel, aNick, this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final String aKickMessage, final Callback<String> aCallback)
+    {
+        queue(new CallbackCommand<String>(aCallback)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.kick(aChannel, aNick, aKickMessage,
+                    this.callback);
+            }
+        });
+    }
+
+    @Override
+    public void changeTopic(final String aChannel, final String aTopic)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.changeTopic(aChannel, aTopic);
+            }
+        });
+    }
+
+    @Override
+    public void changeMode(final String aModeString)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.changeMode(aModeString);
+            }
+        });
+    }
+
+    @Override
+    public void rawMessage(final String aMessage)
+    {
+        queue(new Command()
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.rawMessage(aMessage);
+            }
+        });
+    }
+
+    /**
+     * Queue a raw query that is sent periodically in the background, such as
+     * presence polling. It is only sent when no interactive command is
+     * waiting and it is dropped if the same query is already waiting to be
+     * sent.
+     *
+     * @param aQuery the raw query
+     */
+    public void backgroundQuery(final String aQuery)
+    {
+        if (!this.queuedQueries.add(aQuery))
+        {
+            if (LOGGER.isTraceEnabled())
+            {
+                LOGGER.trace("Query already queued: " + aQuery);
+            }
+            return;
+        }
+        queue(new Command(aQuery)
+        {
+            @Override
+            protected void send()
+            {
+                QueuedIRCApi.this.irc.rawMessage(aQuery);
+            }
+        });
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final Integer aTimeout, final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aTimeout, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final Integer aListeningPort,
+        final File aFile, final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aListeningPort, aFile, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final Integer aListeningPort, final Integer aTimeout,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aListeningPort, aTimeout, aCallback);
+    }
+
+    @Override
+    public void dccAccept(final String aNick, final File aFile,
+        final Integer aPort, final Integer aResumePosition,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccAccept(aNick, aFile, aPort, aResumePosition, aCallback);
+    }
+
+    @Override
+    public void dccAccept(final String aNick, final File aFile,
+        final Integer aPort, final Integer aResumePosition,
+        final Integer aTimeout, final DCCSendCallback aCallback)
+    {
+        this.irc.dccAccept(aNick, aFile, aPort, aResumePosition, aTimeout,
+            aCallback);
+    }
+
+    @Override
+    public void dccReceive(final File aFile, final Integer aSize,
+        final SocketAddress aAddress, final DCCReceiveCallback aCallback)
+    {
+        this.irc.dccReceive(aFile, aSize, aAddress, aCallback);
+    }
+
+    @Override
+    public void dccReceive(final File aFile, final Integer aSize,
+        final SocketAddress aAddress, final DCCReceiveCallback aCallback,
+        final Proxy aProxy)
+    {
+        this.irc.dccReceive(aFile, aSize, aAddress, aCallback, aProxy);
+    }
+
+    @Override
+    public void dccResume(final File aFile, final Integer aResumePosition,
+        final Integer aSize, final SocketAddress aAddress,
+        final DCCReceiveCallback aCallback)
+    {
+        this.irc.dccResume(aFile, aResumePosition, aSize, aAddress, aCallback);
+    }
+
+    @Override
+    public void dccResume(final File aFile, final Integer aResumePosition,
+        final Integer aSize, final SocketAddress aAddress,
+        final DCCReceiveCallback aCallback, final Proxy aProxy)
+    {
+        this.irc.dccResume(aFile, aResumePosition, aSize, aAddress, aCallback,
+            aProxy);
+    }
+
+    @Override
+    public DCCManager getDCCManager()
+    {
+        return this.irc.getDCCManager();
+    }
+
+    @Override
+    public void addListener(final IMessageListener aListener)
+    {
+        this.irc.addListener(aListener);
+    }
+
+    @Override
+    public void deleteListener(final IMessageListener aListener)
+    {
+        this.irc.deleteListener(aListener);
+    }
+
+    @Override
+    public void setMessageFilter(final IMessageFilter aFilter)
+    {
+        this.irc.setMessageFilter(aFilter);
+    }
+}
@@ -22,12 +22,21 @@
 import net.java.sip.communicator.util.*;
 
 import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.domain.*;
 import com.ircclouds.irc.api.domain.messages.*;
 import com.ircclouds.irc.api.state.*;
 
 /**
- * Server channel lister for retrieving initial list and managing channel cache
- * for its period as well as cleaning up cache after the cache has expired.
+ * Server channel lister for retrieving the list of channels on the IRC server.
+ *
+ * Channels are streamed into a {@link ChannelIndex} while the LIST reply is
+ * being received, so the index can be queried before the listing is complete.
+ * The index is kept per account and server, such that it survives a
+ * reconnect but is not shared with other accounts, and is cleaned up once it
+ * has not been used for a while. An outdated index is
+ * refreshed with a delta listing of recently created channels if the server
+ * supports the ELIST 'C' extension. A full listing is requested otherwise, or
+ * periodically to remove channels that no longer exist.
  *
  * @author Danny van Heumen
  */
@@ -52,9 +61,54 @@
     private static final long RATIO_MILLISECONDS_TO_NANOSECONDS = 1000000L;
 
     /**
-     * Expiration time for chat room list cache.
+     * Expiration time (in milliseconds) for chat room list cache. After
+     * expiration, the list is refreshed.
+     */
+    private static final long CHAT_ROOM_LIST_CACHE_EXPIRATION = 60000L;
+
+    /**
+     * Maximum time (in milliseconds) between full listings. Delta listings
+     * only report new channels, so a full listing is needed every now and then
+     * to remove channels that have disappeared and to update user counts.
+     */
+    private static final long CHAT_ROOM_LIST_FULL_REFRESH = 600000L;
+
+    /**
+     * Retention time (in nanoseconds) of an unused chat room list cache.
+     */
+    private static final long CHAT_ROOM_LIST_CACHE_RETENTION = 900000000000L;
+
+    /**
+     * Interval (in milliseconds) at which a thread waiting for the listing
+     * to complete checks whether the connection is still alive.
+     */
+    private static final long WAIT_INTERVAL = 1000L;
+
+    /**
+     * Number of milliseconds in a minute.
+     */
+    private static final long MINUTE = 60000L;
+
+    /**
+     * ELIST condition for filtering on channel creation time.
+     */
+    private static final char ELIST_CREATION_TIME = 'C';
+
+    /**
+     * Timer shared by all clean up jobs.
+     */
+    private static final Timer CLEAN_UP_TIMER = new Timer(
+        "IRC channel list clean up", true);
+
+    /**
+     * Channel list caches by account and server. Access is synchronized on
+     * the map itself.
+     *
+     * Every index is contained inside a simple container object that carries
+     * the time of last use.
      */
-    private static final long CHAT_ROOM_LIST_CACHE_EXPIRATION = 60000000000L;
+    private static final Map<String, Container<ChannelIndex>> INDEXES =
+        new HashMap<String, Container<ChannelIndex>>();
 
     /**
      * IRCApi instance.
@@ -69,22 +123,24 @@
     private final IIRCState connectionState;
 
     /**
-     * The cached channel list.
-     *
-     * Contained inside a simple container object in order to lock the container
-     * while accessing the contents.
+     * Unique ID of the account that the connection belongs to.
      */
-    private final Container<List<String>> channellist =
-        new Container<List<String>>(null);
+    private final String account;
+
+    /**
+     * Listener for the listing that is currently in progress. (Can be null)
+     */
+    private ChannelListListener listing = null;
 
     /**
      * Constructor.
      *
      * @param irc thread-safe irc api instance
      * @param connectionState irc connection state
+     * @param account unique ID of the account that the connection belongs to
      */
     public ServerChannelLister(final IRCApi irc,
-        final IIRCState connectionState)
+        final IIRCState connectionState, final String account)
     {
         if (irc == null)
         {
@@ -97,11 +153,19 @@ public ServerChannelLister(final IRCApi irc,
                 "connectionState instance cannot be null");
         }
         this.connectionState = connectionState;
+        if (account == null)
+        {
+            throw new IllegalArgumentException("account cannot be null");
+        }
+        this.account = account;
     }
 
     /**
      * Get a list of channels available on the IRC server.
      *
+     * Blocks until the listing is complete if no up-to-date list is
+     * available.
+     *
      * @return List of available channels.
      */
     public List<String> getList()
@@ -112,78 +176,186 @@ public List<String> getList()
             throw new IllegalStateException("Not connected to an IRC server.");
         }
 
-        synchronized (this.channellist)
+        final ChannelIndex index = index();
+        final ChannelListListener listener = refresh(index);
+        if (listener == null)
+        {
+            LOGGER.trace("Using cached list of server chat rooms.");
+        }
+        else
         {
-            List<String> list =
-                this.channellist.get(CHAT_ROOM_LIST_CACHE_EXPIRATION);
-            if (list == null)
+            final Result<ChannelIndex, Exception> signal = listener.signal;
+            synchronized (signal)
             {
-                LOGGER
-                    .trace("Chat room list null or outdated. Start retrieving "
-                        + "new chat room list.");
-                Result<List<String>, Exception> listSignal =
-                    new Result<List<String>, Exception>(
-                        new LinkedList<String>());
-                synchronized (listSignal)
+                try
                 {
-                    try
+                    while (!signal.isDone()
+                        && this.connectionState.isConnected())
                     {
-                        this.irc
-                            .addListener(new ChannelListListener(listSignal));
-                        this.irc.rawMessage("LIST");
-                        while (!listSignal.isDone())
-                        {
-                            LOGGER.trace("Waiting for list ...");
-                            listSignal.wait();
-                        }
-                        LOGGER.trace("Done waiting for list.");
-                    }
-                    catch (InterruptedException e)
-                    {
-                        LOGGER.warn("INTERRUPTED while waiting for list.", e);
+                        LOGGER.trace("Waiting for list ...");
+                        signal.wait(WAIT_INTERVAL);
                     }
+                    LOGGER.trace("Done waiting for list.");
+                }
+                catch (InterruptedException e)
+                {
+                    LOGGER.warn("INTERRUPTED while waiting for list.", e);
                 }
-                list = listSignal.getValue();
-                this.channellist.set(list);
-                LOGGER.trace("Finished retrieving server chat room list.");
-
-                // Set timer to clean up the cache after use, since otherwise
-                // this data could stay in memory for a long time.
-                createCleanUpJob(this.channellist);
             }
-            else
+            LOGGER.trace("Finished retrieving server chat room list.");
+        }
+
+        final List<String> list = index.names();
+        if (LOGGER.isDebugEnabled())
+        {
+            // Report on number of channels to give an impression of the
+            // kind of result that will be returned.
+            LOGGER.debug("Server channel list contains " + list.size()
+                + " channels.");
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Query a page of channels available on the IRC server, matching a
+     * filter.
+     *
+     * This method does not block. If no up-to-date list is available, a
+     * listing is requested and the channels that have been received so far are
+     * queried. Use {@link #isComplete()} to check whether querying again may
+     * produce more results.
+     *
+     * @param filter the filter, or <tt>null</tt> to match all channels
+     * @param offset the number of matching channels to skip
+     * @param limit the maximum number of channels to return
+     * @return returns the matching channels
+     */
+    public List<ChannelIndex.Entry> query(final String filter,
+        final int offset, final int limit)
+    {
+        if (!connectionState.isConnected())
+        {
+            throw new IllegalStateException("Not connected to an IRC server.");
+        }
+        final ChannelIndex index = index();
+        refresh(index);
+        return index.query(filter, offset, limit);
+    }
+
+    /**
+     * Check whether the channel list is complete, i.e. no listing is in
+     * progress.
+     *
+     * @return returns <tt>true</tt> if the list is complete
+     */
+    public synchronized boolean isComplete()
+    {
+        return this.listing == null || this.listing.signal.isDone();
+    }
+
+    /**
+     * Get the channel index of the account and the server we are connected
+     * to. Accessing the index marks it as used.
+     *
+     * @return returns the channel index
+     */
+    private ChannelIndex index()
+    {
+        final IRCServer server = this.connectionState.getServer();
+        final String key =
+            this.account + "/" + server.getHostname() + ":" + server.getPort();
+        synchronized (INDEXES)
+        {
+            Container<ChannelIndex> container = INDEXES.get(key);
+            ChannelIndex index = container == null ? null
+                : container.get(CHAT_ROOM_LIST_CACHE_RETENTION);
+            if (index == null)
             {
-                LOGGER.trace("Using cached list of server chat rooms.");
+                index = new ChannelIndex();
+                container = new Container<ChannelIndex>(index);
+                INDEXES.put(key, container);
+                createCleanUpJob(key, container,
+                    CHAT_ROOM_LIST_CACHE_RETENTION);
             }
-
-            if (LOGGER.isDebugEnabled())
+            else
             {
-                // Report on number of channels to give an impression of the
-                // kind of result that will be returned.
-                LOGGER.debug("Server channel list contains " + list.size()
-                    + " channels.");
+                container.set(index);
             }
+            return index;
+        }
+    }
 
-            return Collections.unmodifiableList(list);
+    /**
+     * Request a listing if the index is outdated and no listing is in progress
+     * yet.
+     *
+     * @param index the channel index
+     * @return returns the listener for the listing in progress, or null if the
+     *         index is up-to-date
+     */
+    private synchronized ChannelListListener refresh(final ChannelIndex index)
+    {
+        if (this.listing != null && !this.listing.signal.isDone())
+        {
+            return this.listing;
+        }
+        final long age = System.currentTimeMillis() - index.getListed();
+        if (index.isComplete() && age < CHAT_ROOM_LIST_CACHE_EXPIRATION)
+        {
+            return null;
         }
+        final boolean full =
+            !index.isComplete() || age > CHAT_ROOM_LIST_FULL_REFRESH
+                || !isCreationTimeFilterSupported();
+        LOGGER.trace("Chat room list null or outdated. Start retrieving "
+            + (full ? "full" : "delta") + " chat room list.");
+        this.listing = new ChannelListListener(index, full);
+        index.start(full);
+        this.irc.addListener(this.listing);
+        if (full)
+        {
+            this.irc.rawMessage("LIST");
+        }
+        else
+        {
+            // Include the minute in which the previous listing started.
+            this.irc.rawMessage("LIST " + ELIST_CREATION_TIME + "<"
+                + (age / MINUTE + 1));
+        }
+        return this.listing;
+    }
+
+    /**
+     * Check whether the server supports listing channels by creation time,
+     * i.e. whether the ISUPPORT parameter ELIST contains 'C'.
+     *
+     * @return returns <tt>true</tt> if supported
+     */
+    private boolean isCreationTimeFilterSupported()
+    {
+        final String value =
+            this.connectionState.getServerOptions().getKey(
+                ISupport.ELIST.name());
+        return value != null
+            && value.toUpperCase().indexOf(ELIST_CREATION_TIME) >= 0;
     }
 
     /**
      * Create a clean up job that checks the container after the cache has
-     * expired. If the container is still populated, then remove it. This clean
-     * up makes sure that there are no references left to an otherwise useless
-     * outdated list of channels.
+     * expired. If the container has not been used since, then remove it. This
+     * clean up makes sure that there are no references left to an otherwise
+     * useless outdated list of channels.
      *
-     * @param channellist the container carrying the list of channel names
+     * @param key the account and server key of the container
+     * @param container the container carrying the channel index
+     * @param delay the delay (in nanoseconds) before checking the container
      */
-    private static void createCleanUpJob(
-        final Container<List<String>> channellist)
+    private static void createCleanUpJob(final String key,
+        final Container<ChannelIndex> container, final long delay)
     {
-        final Timer cleanUpJob = new Timer();
-        final long timestamp = channellist.getTimestamp();
-        cleanUpJob.schedule(new ChannelListCacheCleanUpTask(channellist,
-            timestamp), CHAT_ROOM_LIST_CACHE_EXPIRATION
-            / RATIO_MILLISECONDS_TO_NANOSECONDS + CACHE_CLEAN_UP_DELAY);
+        CLEAN_UP_TIMER.schedule(new ChannelListCacheCleanUpTask(key,
+            container), delay / RATIO_MILLISECONDS_TO_NANOSECONDS
+            + CACHE_CLEAN_UP_DELAY);
     }
 
     /**
@@ -195,58 +367,64 @@ private static void createCleanUpJob(
         extends TimerTask
     {
         /**
-         * Expected timestamp on which the list cache was created. It is used as
-         * an indicator to see whether the cache has been refreshed in the mean
-         * time.
+         * Account and server key of the container.
          */
-        private final long timestamp;
+        private final String key;
 
         /**
          * Container holding the channel list cache.
          */
-        private final Container<List<String>> container;
+        private final Container<ChannelIndex> container;
 
         /**
          * Construct new clean up job definition.
          *
+         * @param key account and server key of the container
          * @param listContainer container that holds the channel list cache
-         * @param timestamp expected timestamp of list cache creation
          */
-        private ChannelListCacheCleanUpTask(
-            final Container<List<String>> listContainer, final long timestamp)
+        private ChannelListCacheCleanUpTask(final String key,
+            final Container<ChannelIndex> listContainer)
         {
             if (listContainer == null)
             {
                 throw new IllegalArgumentException(
                     "listContainer cannot be null");
             }
+            this.key = key;
             this.container = listContainer;
-            this.timestamp = timestamp;
         }
 
         /**
-         * Remove the list reference from the container. But only if the
-         * timestamp matches. This makes sure that only one clean up job will
-         * clean up a list.
+         * Remove the container if it has not been used during the retention
+         * time. Otherwise, check again once the retention time since last use
+         * has passed.
          */
         @Override
         public void run()
         {
-            synchronized (this.container)
+            synchronized (INDEXES)
             {
-                // Only clean up old cache if this is the dedicated task for it.
-                // If the timestamp has changed, another job is responsible for
-                // the clean up.
-                if (this.container.getTimestamp() != this.timestamp)
+                // Only clean up if the container is still the current one for
+                // this account and server. Otherwise, another job is responsible for the
+                // clean up.
+                if (INDEXES.get(this.key) != this.container)
                 {
                     LOGGER.trace("Not cleaning up channel list cache. The "
-                        + "timestamp does not match.");
+                        + "cache has been replaced.");
                     return;
                 }
-                this.container.set(null);
+                final long unused =
+                    System.nanoTime() - this.container.getTimestamp();
+                if (unused < CHAT_ROOM_LIST_CACHE_RETENTION)
+                {
+                    createCleanUpJob(this.key, this.container,
+                        CHAT_ROOM_LIST_CACHE_RETENTION - unused);
+                    return;
+                }
+                INDEXES.remove(this.key);
             }
-            // We cannot clear the list itself, since the contents might still
-            // be in use by the UI, inside the immutable wrapper.
+            // We cannot clear the index itself, since the contents might still
+            // be in use by the UI.
             LOGGER.debug("Old channel list cache has been cleared.");
         }
     }
@@ -258,11 +436,6 @@ public void run()
     private final class ChannelListListener
         extends AbstractIrcMessageListener
     {
-        /**
-         * Start of an IRC server channel listing reply.
-         */
-        private static final int RPL_LISTSTART = 321;
-
         /**
          * Continuation of an IRC server channel listing reply.
          */
@@ -274,35 +447,42 @@ public void run()
         private static final int RPL_LISTEND = 323;
 
         /**
-         * Reference to the provided list instance.
+         * Signal for waiting threads. Its value is the index that is being
+         * filled.
          */
-        private final Result<List<String>, Exception> signal;
+        private final Result<ChannelIndex, Exception> signal;
+
+        /**
+         * Flag indicating whether this is a full listing.
+         */
+        private final boolean full;
 
         /**
          * Constructor for channel list listener.
          *
-         * @param api irc-api library instance
-         * @param signal signal for sync signaling
+         * @param index the channel index to fill
+         * @param full <tt>true</tt> for a full listing, <tt>false</tt> for a
+         *            delta listing
          */
-        private ChannelListListener(
-            final Result<List<String>, Exception> signal)
+        private ChannelListListener(final ChannelIndex index,
+            final boolean full)
         {
             super(ServerChannelLister.this.irc,
                 ServerChannelLister.this.connectionState);
-            this.signal = signal;
+            this.signal = new Result<ChannelIndex, Exception>(index);
+            this.full = full;
         }
 
         /**
          * Act on LIST messages:
          * <pre>
-         * - 321 RPL_LISTSTART,
          * - 322 RPL_LIST,
          * - 323 RPL_LISTEND
          * </pre>
          *
-         * Clears the list upon starting. All received channels are added to the
-         * list. Upon receiving RPL_LISTEND finalize the list and signal the
-         * waiting thread that it can continue processing the list.
+         * All received channels are added to the index immediately. Upon
+         * receiving RPL_LISTEND finalize the index and signal the waiting
+         * threads that they can continue processing the list.
          *
          * @param msg The numeric server message.
          */
@@ -316,23 +496,11 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
 
             switch (msg.getNumericCode())
             {
-            case RPL_LISTSTART:
-                synchronized (this.signal)
-                {
-                    this.signal.getValue().clear();
-                }
-                break;
             case RPL_LIST:
-                String channel = parse(msg.getText());
-                if (channel != null)
-                {
-                    synchronized (this.signal)
-                    {
-                        this.signal.getValue().add(channel);
-                    }
-                }
+                parse(this.signal.getValue(), msg.getText());
                 break;
             case RPL_LISTEND:
+                this.signal.getValue().finish(this.full);
                 synchronized (this.signal)
                 {
                     // Done collecting channels. Remove listener and then we're
@@ -349,21 +517,42 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
         }
 
         /**
-         * Parse an IRC server response RPL_LIST. Extract the channel name.
+         * Parse an IRC server response RPL_LIST: "&lt;channel&gt; &lt;# visible&gt;
+         * :&lt;topic&gt;". Add the channel to the index.
          *
+         * @param index the channel index
          * @param text raw server response
-         * @return returns the channel name
          */
-        private String parse(final String text)
+        private void parse(final ChannelIndex index, final String text)
         {
-            int endOfChannelName = text.indexOf(' ');
+            final int endOfChannelName = text.indexOf(' ');
             if (endOfChannelName == -1)
             {
-                return null;
+                return;
             }
-            // Create a new string to make sure that the original (larger)
+            // Create new strings to make sure that the original (larger)
             // strings can be GC'ed.
-            return new String(text.substring(0, endOfChannelName));
+            final String channel =
+                new String(text.substring(0, endOfChannelName));
+            int endOfUsers = text.indexOf(' ', endOfChannelName + 1);
+            if (endOfUsers == -1)
+            {
+                endOfUsers = text.length();
+            }
+            int users;
+            try
+            {
+                users = Integer.parseInt(text.substring(endOfChannelName + 1,
+                    endOfUsers));
+            }
+            catch (NumberFormatException e)
+            {
+                users = 0;
+            }
+            final int startOfTopic = text.indexOf(':', endOfUsers);
+            final String topic = startOfTopic == -1 ? ""
+                : new String(text.substring(startOfTopic + 1));
+            index.put(channel, users, topic);
         }
     }
 
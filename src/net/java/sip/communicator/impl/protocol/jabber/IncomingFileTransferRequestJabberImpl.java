@@ -180,7 +180,7 @@ public FileTransfer acceptFile(File file)
             jabberTransfer.recieveFile(file);
 
             new OperationSetFileTransferJabberImpl
-                .FileTransferProgressThread(
+                .FileTransferProgressTracker(
                 jabberTransfer, incomingTransfer, getFileSize()).start();
         }
         catch (XMPPException e)
@@ -17,19 +17,24 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber;
 
+import java.io.*;
 import java.lang.reflect.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.protocol.ServerStoredDetails.*;
 import net.java.sip.communicator.util.*;
 
 import org.apache.commons.lang3.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smackx.packet.*;
+import org.jivesoftware.smackx.provider.*;
 
 /**
  * Handles and retrieves all info of our contacts or our account info
@@ -46,9 +51,87 @@
      */
     private ProtocolProviderServiceJabberImpl jabberProvider = null;
 
-    // here is kept all the details retrieved so far
-    private final Map<String, List<GenericDetail>> retreivedDetails
-        = new Hashtable<String, List<GenericDetail>>();
+    /**
+     * The name of the property which specifies the maximum number of contacts
+     * whose details are kept in memory.
+     */
+    public static final String CONTACT_DETAILS_CACHE_SIZE_PROPERTY
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".CONTACT_DETAILS_CACHE_SIZE";
+
+    /**
+     * The name of the property which specifies the maximum age in
+     * milliseconds of a persisted vCard which is used without refreshing it.
+     */
+    public static final String VCARD_CACHE_MAX_AGE_PROPERTY
+        = "net.java.sip.communicator.impl.protocol.jabber.VCARD_CACHE_MAX_AGE";
+
+    /**
+     * The default maximum number of contacts whose details are kept in
+     * memory.
+     */
+    private static final int DEFAULT_CONTACT_DETAILS_CACHE_SIZE = 500;
+
+    /**
+     * The default maximum age in milliseconds of a persisted vCard, one week.
+     */
+    private static final long DEFAULT_VCARD_CACHE_MAX_AGE
+        = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The name of the directory in which the vCards of the contacts are
+     * persisted.
+     */
+    private static final String VCARD_CACHE_DIR = "vcards";
+
+    /**
+     * The maximum number of vCards requested at once when refreshing them in
+     * the background.
+     */
+    private static final int REFRESH_BATCH_SIZE = 20;
+
+    /**
+     * The address of the account owner.
+     */
+    private final String ownerUin;
+
+    /**
+     * The details of the account owner which are modified in place by the
+     * account info operation set and are thus never evicted.
+     */
+    private CachedDetails ownerDetails;
+
+    // here is kept the details of the most recently used contacts
+    private final Map<String, CachedDetails> retreivedDetails;
+
+    /**
+     * The directory in which the vCards of the contacts are persisted or
+     * <tt>null</tt> if they are only cached in memory.
+     */
+    private final File vcardCacheDir;
+
+    /**
+     * The maximum age in milliseconds of a persisted vCard which is used
+     * without refreshing it.
+     */
+    private final long vcardCacheMaxAge;
+
+    /**
+     * The contacts whose vCards are to be refreshed in the background along
+     * with the photos they advertise and the listeners waiting for them.
+     */
+    private final Map<String, PendingRefresh> pendingRefreshes
+        = new LinkedHashMap<String, PendingRefresh>();
+
+    /**
+     * The executor which refreshes vCards in the background.
+     */
+    private ThreadPoolExecutor refreshExecutor;
+
+    /**
+     * Whether a refresh of the {@link #pendingRefreshes} is scheduled.
+     */
+    private boolean refreshScheduled = false;
 
     private static final String TAG_FN_OPEN = "<FN>";
     private static final String TAG_FN_CLOSE = "</FN>";
@@ -63,12 +146,57 @@ protected InfoRetreiver(
             String ownerUin)
     {
         this.jabberProvider = jabberProvider;
+        this.ownerUin = ownerUin;
+
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
 
         vcardTimeoutReply
-            = JabberActivator.getConfigurationService().getLong(
+            = cfg.getLong(
                     ProtocolProviderServiceJabberImpl
                         .VCARD_REPLY_TIMEOUT_PROPERTY,
                     -1);
+        vcardCacheMaxAge
+            = cfg.getLong(
+                    VCARD_CACHE_MAX_AGE_PROPERTY,
+                    DEFAULT_VCARD_CACHE_MAX_AGE);
+
+        final int cacheSize
+            = cfg.getInt(
+                    CONTACT_DETAILS_CACHE_SIZE_PROPERTY,
+                    DEFAULT_CONTACT_DETAILS_CACHE_SIZE);
+
+        retreivedDetails
+            = Collections.synchronizedMap(
+                    new LinkedHashMap<String, CachedDetails>(16, 0.75f, true)
+                    {
+                        private static final long serialVersionUID = 0L;
+
+                        @Override
+                        protected boolean removeEldestEntry(
+                                Map.Entry<String, CachedDetails> eldest)
+                        {
+                            return size() > cacheSize;
+                        }
+                    });
+
+        File dir = null;
+        FileAccessService fileAccessService
+            = JabberActivator.getFileAccessService();
+
+        if (fileAccessService != null)
+        {
+            try
+            {
+                dir
+                    = fileAccessService.getPrivatePersistentDirectory(
+                            VCARD_CACHE_DIR, FileCategory.CACHE);
+            }
+            catch (Exception e)
+            {
+                logger.error("Failed to get the vCard cache directory.", e);
+            }
+        }
+        vcardCacheDir = dir;
     }
 
     /**
@@ -166,202 +294,216 @@ protected List<GenericDetail> retrieveDetails(String contactAddress)
             else
                 load(card, connection, contactAddress, vcardTimeoutReply);
 
-            String tmp;
-
-            tmp = checkForFullName(card);
-            if(tmp != null)
-                result.add(new DisplayNameDetail(
-                    StringEscapeUtils.unescapeXml(tmp)));
-
-            tmp = card.getFirstName();
-            if(tmp != null)
-                result.add(new FirstNameDetail(
-                    StringEscapeUtils.unescapeXml(tmp)));
-
-            tmp = card.getMiddleName();
-            if(tmp != null)
-                result.add(new MiddleNameDetail(
-                    StringEscapeUtils.unescapeXml(tmp)));
+            return cacheVCard(contactAddress, card).details;
+        }
+        catch (Throwable exc)
+        {
+            String msg = "Cannot load details for contact "
+                + contactAddress + " : " + exc.getMessage();
+            if(logger.isTraceEnabled())
+                logger.error(msg, exc);
+            else
+                logger.error(msg);
+        }
 
-            tmp = card.getLastName();
-            if(tmp != null)
-                result.add(new LastNameDetail(
-                    StringEscapeUtils.unescapeXml(tmp)));
+        putCachedDetails(contactAddress, new CachedDetails(result));
 
-            tmp = card.getNickName();
-            if(tmp != null)
-                result.add(new NicknameDetail(
-                    StringEscapeUtils.unescapeXml(tmp)));
+        return result;
+    }
 
-            tmp = card.getField("BDAY");
-            if (tmp != null)
+    /**
+     * Creates the details of a contact from its vCard.
+     *
+     * @param card the vCard of the contact
+     * @return the details of the contact
+     */
+    private List<GenericDetail> createDetails(VCard card)
+    {
+        List<GenericDetail> result = new LinkedList<GenericDetail>();
+        String tmp;
+
+        tmp = checkForFullName(card);
+        if(tmp != null)
+            result.add(new DisplayNameDetail(
+                StringEscapeUtils.unescapeXml(tmp)));
+
+        tmp = card.getFirstName();
+        if(tmp != null)
+            result.add(new FirstNameDetail(
+                StringEscapeUtils.unescapeXml(tmp)));
+
+        tmp = card.getMiddleName();
+        if(tmp != null)
+            result.add(new MiddleNameDetail(
+                StringEscapeUtils.unescapeXml(tmp)));
+
+        tmp = card.getLastName();
+        if(tmp != null)
+            result.add(new LastNameDetail(
+                StringEscapeUtils.unescapeXml(tmp)));
+
+        tmp = card.getNickName();
+        if(tmp != null)
+            result.add(new NicknameDetail(
+                StringEscapeUtils.unescapeXml(tmp)));
+
+        tmp = card.getField("BDAY");
+        if (tmp != null)
+        {
+            try
             {
-                try
-                {
-                    Calendar birthDateCalendar = Calendar.getInstance();
-                    DateFormat dateFormat =
-                        new SimpleDateFormat(
-                            JabberActivator.getResources().getI18NString(
-                                "plugin.accountinfo.BDAY_FORMAT"));
-                    Date birthDate =
-                        dateFormat.parse(tmp);
-                    birthDateCalendar.setTime(birthDate);
-                    BirthDateDetail bd = new BirthDateDetail(birthDateCalendar);
-                    result.add(bd);
-                }
-                catch (ParseException e) {}
+                Calendar birthDateCalendar = Calendar.getInstance();
+                DateFormat dateFormat =
+                    new SimpleDateFormat(
+                        JabberActivator.getResources().getI18NString(
+                            "plugin.accountinfo.BDAY_FORMAT"));
+                Date birthDate =
+                    dateFormat.parse(tmp);
+                birthDateCalendar.setTime(birthDate);
+                BirthDateDetail bd = new BirthDateDetail(birthDateCalendar);
+                result.add(bd);
             }
-            // Home Details
-            // addrField one of
-            // POSTAL, PARCEL, (DOM | INTL), PREF, POBOX, EXTADR, STREET,
-            // LOCALITY, REGION, PCODE, CTRY
-            tmp = card.getAddressFieldHome("STREET");
-            if(tmp != null)
-                result.add(new AddressDetail(tmp));
-
-            tmp = card.getAddressFieldHome("LOCALITY");
-            if(tmp != null)
-                result.add(new CityDetail(tmp));
-
-            tmp = card.getAddressFieldHome("REGION");
+            catch (ParseException e) {}
+        }
+        // Home Details
+        // addrField one of
+        // POSTAL, PARCEL, (DOM | INTL), PREF, POBOX, EXTADR, STREET,
+        // LOCALITY, REGION, PCODE, CTRY
+        tmp = card.getAddressFieldHome("STREET");
+        if(tmp != null)
+            result.add(new AddressDetail(tmp));
+
+        tmp = card.getAddressFieldHome("LOCALITY");
+        if(tmp != null)
+            result.add(new CityDetail(tmp));
+
+        tmp = card.getAddressFieldHome("REGION");
+        if(tmp != null)
+            result.add(new ProvinceDetail(tmp));
+
+        tmp = card.getAddressFieldHome("PCODE");
+        if(tmp != null)
+            result.add(new PostalCodeDetail(tmp));
+
+            tmp = card.getAddressFieldHome("CTRY");
             if(tmp != null)
-                result.add(new ProvinceDetail(tmp));
+                result.add(new CountryDetail(tmp));
 
-            tmp = card.getAddressFieldHome("PCODE");
-            if(tmp != null)
-                result.add(new PostalCodeDetail(tmp));
+        // phoneType one of
+        //VOICE, FAX, PAGER, MSG, CELL, VIDEO, BBS, MODEM, ISDN, PCS, PREF
 
-                tmp = card.getAddressFieldHome("CTRY");
-                if(tmp != null)
-                    result.add(new CountryDetail(tmp));
+        tmp = card.getPhoneHome("VOICE");
+        if(tmp != null)
+            result.add(new PhoneNumberDetail(tmp));
 
-            // phoneType one of
-            //VOICE, FAX, PAGER, MSG, CELL, VIDEO, BBS, MODEM, ISDN, PCS, PREF
+        tmp = card.getPhoneHome("VIDEO");
+        if(tmp != null)
+            result.add(new VideoDetail(tmp));
 
-            tmp = card.getPhoneHome("VOICE");
-            if(tmp != null)
-                result.add(new PhoneNumberDetail(tmp));
+        tmp = card.getPhoneHome("FAX");
+        if(tmp != null)
+            result.add(new FaxDetail(tmp));
 
-            tmp = card.getPhoneHome("VIDEO");
-            if(tmp != null)
-                result.add(new VideoDetail(tmp));
+        tmp = card.getPhoneHome("PAGER");
+        if(tmp != null)
+            result.add(new PagerDetail(tmp));
 
-            tmp = card.getPhoneHome("FAX");
-            if(tmp != null)
-                result.add(new FaxDetail(tmp));
+        tmp = card.getPhoneHome("CELL");
+        if(tmp != null)
+            result.add(new MobilePhoneDetail(tmp));
 
-            tmp = card.getPhoneHome("PAGER");
-            if(tmp != null)
-                result.add(new PagerDetail(tmp));
+        tmp = card.getPhoneHome("TEXT");
+        if(tmp != null)
+            result.add(new MobilePhoneDetail(tmp));
 
-            tmp = card.getPhoneHome("CELL");
-            if(tmp != null)
-                result.add(new MobilePhoneDetail(tmp));
-
-            tmp = card.getPhoneHome("TEXT");
-            if(tmp != null)
-                result.add(new MobilePhoneDetail(tmp));
-
-            tmp = card.getEmailHome();
-            if(tmp != null)
-                result.add(new EmailAddressDetail(tmp));
+        tmp = card.getEmailHome();
+        if(tmp != null)
+            result.add(new EmailAddressDetail(tmp));
 
-            // Work Details
-            // addrField one of
-            // POSTAL, PARCEL, (DOM | INTL), PREF, POBOX, EXTADR, STREET,
-            // LOCALITY, REGION, PCODE, CTRY
-            tmp = card.getAddressFieldWork("STREET");
-            if(tmp != null)
-                result.add(new WorkAddressDetail(tmp));
+        // Work Details
+        // addrField one of
+        // POSTAL, PARCEL, (DOM | INTL), PREF, POBOX, EXTADR, STREET,
+        // LOCALITY, REGION, PCODE, CTRY
+        tmp = card.getAddressFieldWork("STREET");
+        if(tmp != null)
+            result.add(new WorkAddressDetail(tmp));
 
-            tmp = card.getAddressFieldWork("LOCALITY");
-            if(tmp != null)
-                result.add(new WorkCityDetail(tmp));
+        tmp = card.getAddressFieldWork("LOCALITY");
+        if(tmp != null)
+            result.add(new WorkCityDetail(tmp));
 
-            tmp = card.getAddressFieldWork("REGION");
-            if(tmp != null)
-                result.add(new WorkProvinceDetail(tmp));
+        tmp = card.getAddressFieldWork("REGION");
+        if(tmp != null)
+            result.add(new WorkProvinceDetail(tmp));
 
-            tmp = card.getAddressFieldWork("PCODE");
-            if(tmp != null)
-                result.add(new WorkPostalCodeDetail(tmp));
+        tmp = card.getAddressFieldWork("PCODE");
+        if(tmp != null)
+            result.add(new WorkPostalCodeDetail(tmp));
 
 //                tmp = card.getAddressFieldWork("CTRY");
 //                if(tmp != null)
 //                    result.add(new WorkCountryDetail(tmp);
 
-            // phoneType one of
-            //VOICE, FAX, PAGER, MSG, CELL, VIDEO, BBS, MODEM, ISDN, PCS, PREF
+        // phoneType one of
+        //VOICE, FAX, PAGER, MSG, CELL, VIDEO, BBS, MODEM, ISDN, PCS, PREF
 
-            tmp = card.getPhoneWork("VOICE");
-            if(tmp != null)
-                result.add(new WorkPhoneDetail(tmp));
+        tmp = card.getPhoneWork("VOICE");
+        if(tmp != null)
+            result.add(new WorkPhoneDetail(tmp));
 
-            tmp = card.getPhoneWork("VIDEO");
-            if(tmp != null)
-                result.add(new WorkVideoDetail(tmp));
+        tmp = card.getPhoneWork("VIDEO");
+        if(tmp != null)
+            result.add(new WorkVideoDetail(tmp));
 
-            tmp = card.getPhoneWork("FAX");
-            if(tmp != null)
-                result.add(new WorkFaxDetail(tmp));
+        tmp = card.getPhoneWork("FAX");
+        if(tmp != null)
+            result.add(new WorkFaxDetail(tmp));
 
-            tmp = card.getPhoneWork("PAGER");
-            if(tmp != null)
-                result.add(new WorkPagerDetail(tmp));
+        tmp = card.getPhoneWork("PAGER");
+        if(tmp != null)
+            result.add(new WorkPagerDetail(tmp));
 
-            tmp = card.getPhoneWork("CELL");
-            if(tmp != null)
-                result.add(new WorkMobilePhoneDetail(tmp));
+        tmp = card.getPhoneWork("CELL");
+        if(tmp != null)
+            result.add(new WorkMobilePhoneDetail(tmp));
 
-            tmp = card.getPhoneWork("TEXT");
-            if(tmp != null)
-                result.add(new WorkMobilePhoneDetail(tmp));
+        tmp = card.getPhoneWork("TEXT");
+        if(tmp != null)
+            result.add(new WorkMobilePhoneDetail(tmp));
 
-            tmp = card.getEmailWork();
-            if(tmp != null)
-                result.add(new WorkEmailAddressDetail(tmp));
+        tmp = card.getEmailWork();
+        if(tmp != null)
+            result.add(new WorkEmailAddressDetail(tmp));
 
-            tmp = card.getOrganization();
-            if(tmp != null)
-                result.add(new WorkOrganizationNameDetail(tmp));
+        tmp = card.getOrganization();
+        if(tmp != null)
+            result.add(new WorkOrganizationNameDetail(tmp));
 
-            tmp = card.getOrganizationUnit();
-            if(tmp != null)
-                result.add(new WorkDepartmentNameDetail(tmp));
-
-            tmp = card.getField("TITLE");
-            if(tmp != null)
-                result.add(new JobTitleDetail(tmp));
+        tmp = card.getOrganizationUnit();
+        if(tmp != null)
+            result.add(new WorkDepartmentNameDetail(tmp));
 
-            tmp = card.getField("ABOUTME");
-            if (tmp != null)
-                result.add(new AboutMeDetail(tmp));
+        tmp = card.getField("TITLE");
+        if(tmp != null)
+            result.add(new JobTitleDetail(tmp));
 
-            byte[] imageBytes = card.getAvatar();
-            if(imageBytes != null && imageBytes.length > 0)
-            {
-                result.add(new ImageDetail("Image", imageBytes));
-            }
+        tmp = card.getField("ABOUTME");
+        if (tmp != null)
+            result.add(new AboutMeDetail(tmp));
 
-            try
-            {
-                tmp = card.getField("URL");
-                if(tmp != null)
-                    result.add(new URLDetail("URL", new URL(tmp)));
-            }
-            catch(MalformedURLException e){}
-        }
-        catch (Throwable exc)
+        byte[] imageBytes = card.getAvatar();
+        if(imageBytes != null && imageBytes.length > 0)
         {
-            String msg = "Cannot load details for contact "
-                + contactAddress + " : " + exc.getMessage();
-            if(logger.isTraceEnabled())
-                logger.error(msg, exc);
-            else
-                logger.error(msg);
+            result.add(new ImageDetail("Image", imageBytes));
         }
 
-        retreivedDetails.put(contactAddress, result);
+        try
+        {
+            tmp = card.getField("URL");
+            if(tmp != null)
+                result.add(new URLDetail("URL", new URL(tmp)));
+        }
+        catch(MalformedURLException e){}
 
         return result;
     }
@@ -375,7 +517,9 @@ protected List<GenericDetail> retrieveDetails(String contactAddress)
      */
     List<GenericDetail> getCachedContactDetails(String contactAddress)
     {
-        return retreivedDetails.get(contactAddress);
+        CachedDetails cached = getCachedDetails(contactAddress);
+
+        return (cached == null) ? null : cached.details;
     }
 
     /**
@@ -386,7 +530,451 @@ List<GenericDetail> getCachedContactDetails(String contactAddress)
     void addCachedContactDetails(
         String contactAddress, List<GenericDetail> details)
     {
-        retreivedDetails.put(contactAddress, details);
+        putCachedDetails(contactAddress, new CachedDetails(details));
+    }
+
+    /**
+     * Retrieves the photo of a contact which has advertised a specific photo
+     * hash. If the vCard of the contact cached in memory has the same photo it
+     * is used right away. Otherwise the persisted vCard is checked and, if it
+     * has another photo, the vCard is refreshed in the background together
+     * with the other contacts which are waiting for a refresh.
+     *
+     * @param contactAddress the address of the contact
+     * @param photoHash the SHA-1 hash of the photo advertised by the contact
+     * @param listener the listener to be notified once the photo is retrieved
+     */
+    void retrievePhoto(
+            String contactAddress,
+            String photoHash,
+            PhotoListener listener)
+    {
+        CachedDetails cached
+            = contactAddress.equals(ownerUin)
+                ? ownerDetails
+                : retreivedDetails.get(contactAddress);
+
+        if ((cached != null) && photoHash.equals(cached.photoHash))
+        {
+            listener.photoRetrieved(contactAddress, cached.getPhoto());
+            return;
+        }
+
+        synchronized (pendingRefreshes)
+        {
+            PendingRefresh pending = pendingRefreshes.get(contactAddress);
+
+            if (pending == null)
+            {
+                pending = new PendingRefresh();
+                pendingRefreshes.put(contactAddress, pending);
+            }
+            pending.photoHash = photoHash;
+            pending.listeners.add(listener);
+
+            if (refreshExecutor == null)
+            {
+                refreshExecutor
+                    = new ThreadPoolExecutor(
+                            1, 1,
+                            60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactory()
+                            {
+                                public Thread newThread(Runnable r)
+                                {
+                                    Thread t
+                                        = new Thread(
+                                                r,
+                                                InfoRetreiver.class.getName()
+                                                    + ".RefreshVCards");
+
+                                    t.setDaemon(true);
+                                    return t;
+                                }
+                            });
+                refreshExecutor.allowCoreThreadTimeOut(true);
+                refreshExecutor.execute(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                pruneVCards();
+                            }
+                        });
+            }
+            if (!refreshScheduled)
+            {
+                refreshScheduled = true;
+                refreshExecutor.execute(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                refreshVCards();
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Refreshes the vCards of the contacts which are waiting for a refresh.
+     * A persisted vCard with the advertised photo is used without a request.
+     * The requests of a batch are sent at once and their answers are
+     * collected afterwards so that a batch takes about one round trip.
+     */
+    private void refreshVCards()
+    {
+        while (true)
+        {
+            Map<String, PendingRefresh> batch
+                = new LinkedHashMap<String, PendingRefresh>();
+
+            synchronized (pendingRefreshes)
+            {
+                Iterator<Map.Entry<String, PendingRefresh>> iter
+                    = pendingRefreshes.entrySet().iterator();
+
+                while (iter.hasNext() && (batch.size() < REFRESH_BATCH_SIZE))
+                {
+                    Map.Entry<String, PendingRefresh> e = iter.next();
+
+                    batch.put(e.getKey(), e.getValue());
+                    iter.remove();
+                }
+                if (batch.isEmpty())
+                {
+                    refreshScheduled = false;
+                    return;
+                }
+            }
+
+            Iterator<Map.Entry<String, PendingRefresh>> iter
+                = batch.entrySet().iterator();
+
+            while (iter.hasNext())
+            {
+                Map.Entry<String, PendingRefresh> e = iter.next();
+                String contactAddress = e.getKey();
+
+                if (contactAddress.equals(ownerUin))
+                    continue;
+
+                // Only parse a persisted vCard with the advertised photo.
+                CachedDetails cached
+                    = readVCard(contactAddress, e.getValue().photoHash);
+
+                if (cached != null)
+                {
+                    retreivedDetails.put(contactAddress, cached);
+                    e.getValue().photoRetrieved(
+                            contactAddress, cached.getPhoto());
+                    iter.remove();
+                }
+            }
+            if (batch.isEmpty())
+                continue;
+
+            Connection connection = jabberProvider.getConnection();
+
+            if(connection == null || !connection.isAuthenticated())
+            {
+                for (Map.Entry<String, PendingRefresh> e : batch.entrySet())
+                    e.getValue().photoNotRetrieved(e.getKey());
+                continue;
+            }
+
+            long timeout
+                = (vcardTimeoutReply == -1)
+                    ? SmackConfiguration.getPacketReplyTimeout()
+                    : vcardTimeoutReply;
+            Map<String, PacketCollector> collectors
+                = new LinkedHashMap<String, PacketCollector>();
+
+            for (String contactAddress : batch.keySet())
+            {
+                VCard request = new VCard();
+
+                request.setTo(contactAddress);
+                request.setType(IQ.Type.GET);
+                collectors.put(
+                        contactAddress,
+                        connection.createPacketCollector(
+                                new PacketIDFilter(request.getPacketID())));
+                connection.sendPacket(request);
+            }
+
+            long deadline = System.currentTimeMillis() + timeout;
+
+            for (Map.Entry<String, PacketCollector> e : collectors.entrySet())
+            {
+                String contactAddress = e.getKey();
+                PacketCollector collector = e.getValue();
+                Packet response;
+
+                try
+                {
+                    response
+                        = collector.nextResult(
+                                Math.max(
+                                    1,
+                                    deadline - System.currentTimeMillis()));
+                }
+                finally
+                {
+                    collector.cancel();
+                }
+
+                if (!(response instanceof VCard)
+                        || (response.getError() != null))
+                {
+                    logger.info(
+                            "Cannot retrieve vCard from: " + contactAddress
+                                + ((response == null)
+                                    ? " (timeout)"
+                                    : (": " + response.getError())));
+                    batch.get(contactAddress).photoNotRetrieved(
+                            contactAddress);
+                    continue;
+                }
+
+                CachedDetails cached
+                    = cacheVCard(contactAddress, (VCard) response);
+
+                batch.get(contactAddress).photoRetrieved(
+                        contactAddress, cached.getPhoto());
+            }
+        }
+    }
+
+    /**
+     * Deletes the persisted vCards which are older than the maximum age and
+     * would thus never be used again.
+     */
+    private void pruneVCards()
+    {
+        if (vcardCacheDir == null)
+            return;
+
+        File[] files = vcardCacheDir.listFiles();
+
+        if (files == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        int pruned = 0;
+
+        for (File file : files)
+        {
+            if (file.isFile()
+                    && (now - file.lastModified() > vcardCacheMaxAge)
+                    && file.delete())
+            {
+                pruned++;
+            }
+        }
+        if ((pruned != 0) && logger.isDebugEnabled())
+            logger.debug("Pruned " + pruned + " outdated cached vCards.");
+    }
+
+    /**
+     * Creates the details of a contact from its vCard, caches them and
+     * persists the vCard.
+     *
+     * @param contactAddress the address of the contact
+     * @param card the vCard of the contact
+     * @return the cached details of the contact
+     */
+    private CachedDetails cacheVCard(String contactAddress, VCard card)
+    {
+        CachedDetails cached = new CachedDetails(createDetails(card));
+
+        putCachedDetails(contactAddress, cached);
+        if (!contactAddress.equals(ownerUin))
+            writeVCard(contactAddress, cached.photoHash, card);
+        return cached;
+    }
+
+    /**
+     * Gets the cached details of a contact from memory or, if missing, from
+     * the persistent vCard cache.
+     *
+     * @param contactAddress the address of the contact
+     * @return the cached details of the contact or <tt>null</tt>
+     */
+    private CachedDetails getCachedDetails(String contactAddress)
+    {
+        if (contactAddress.equals(ownerUin))
+            return ownerDetails;
+
+        CachedDetails cached = retreivedDetails.get(contactAddress);
+
+        if (cached == null)
+        {
+            cached = readVCard(contactAddress, null);
+            if (cached != null)
+                retreivedDetails.put(contactAddress, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Caches the details of a contact in memory. The details of the account
+     * owner are never evicted.
+     *
+     * @param contactAddress the address of the contact
+     * @param cached the details of the contact
+     */
+    private void putCachedDetails(String contactAddress, CachedDetails cached)
+    {
+        if (contactAddress.equals(ownerUin))
+            ownerDetails = cached;
+        else
+            retreivedDetails.put(contactAddress, cached);
+    }
+
+    /**
+     * Gets the file in which the vCard of a specific contact is persisted.
+     *
+     * @param contactAddress the address of the contact
+     * @return the file in which the vCard of <tt>contactAddress</tt> is
+     * persisted or <tt>null</tt> if vCards are not persisted
+     */
+    private File getVCardFile(String contactAddress)
+    {
+        if (vcardCacheDir == null)
+            return null;
+
+        String name
+            = org.jivesoftware.smack.util.StringUtils.hash(contactAddress);
+
+        return new File(vcardCacheDir, name + ".xml");
+    }
+
+    /**
+     * Reads the persisted vCard of a contact and creates its details.
+     *
+     * @param contactAddress the address of the contact
+     * @param photoHash the SHA-1 hash of the photo the persisted vCard is
+     * required to have or <tt>null</tt> to accept any
+     * @return the details of <tt>contactAddress</tt> or <tt>null</tt> if no
+     * matching vCard younger than the maximum age is persisted
+     */
+    private CachedDetails readVCard(String contactAddress, String photoHash)
+    {
+        File file = getVCardFile(contactAddress);
+
+        if ((file == null)
+                || !file.isFile()
+                || (System.currentTimeMillis() - file.lastModified()
+                        > vcardCacheMaxAge))
+        {
+            return null;
+        }
+
+        BufferedReader reader = null;
+
+        try
+        {
+            reader
+                = new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(file), "UTF-8"));
+
+            // The first line holds the address to rule out collisions.
+            if (!contactAddress.equals(reader.readLine()))
+                return null;
+
+            // The second line holds the hash of the photo in the vCard.
+            String persistedPhotoHash = reader.readLine();
+
+            if ((photoHash != null) && !photoHash.equals(persistedPhotoHash))
+                return null;
+
+            StringBuilder xml = new StringBuilder();
+            char[] buffer = new char[1024];
+            int length;
+
+            while ((length = reader.read(buffer)) != -1)
+                xml.append(buffer, 0, length);
+
+            return
+                new CachedDetails(
+                        createDetails(
+                                VCardProvider.createVCardFromXML(
+                                        xml.toString())));
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to read cached vCard of " + contactAddress, e);
+            return null;
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the vCard of a contact.
+     *
+     * @param contactAddress the address of the contact
+     * @param photoHash the SHA-1 hash of the photo in <tt>card</tt>
+     * @param card the vCard of the contact
+     */
+    private void writeVCard(String contactAddress, String photoHash, VCard card)
+    {
+        File file = getVCardFile(contactAddress);
+
+        if (file == null)
+            return;
+        if (!vcardCacheDir.isDirectory() && !vcardCacheDir.mkdirs())
+        {
+            logger.warn("Failed to create directory: " + vcardCacheDir);
+            return;
+        }
+
+        Writer writer = null;
+
+        try
+        {
+            writer
+                = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(contactAddress);
+            writer.write('\n');
+            writer.write((photoHash == null) ? "" : photoHash);
+            writer.write('\n');
+            writer.write(card.getChildElementXML());
+        }
+        catch (IOException ioe)
+        {
+            logger.warn(
+                    "Failed to cache vCard of " + contactAddress, ioe);
+            file.delete();
+        }
+        finally
+        {
+            if (writer != null)
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+        }
     }
 
     /**
@@ -532,4 +1120,126 @@ public WorkPagerDetail(String number)
             super.detailDisplayName = "WorkPager";
         }
     }
+
+    /**
+     * Listens for the photos retrieved by
+     * {@link InfoRetreiver#retrievePhoto(String, String, PhotoListener)}.
+     */
+    interface PhotoListener
+    {
+        /**
+         * Notifies that the photo of a contact has been retrieved.
+         *
+         * @param contactAddress the address of the contact
+         * @param photo the photo of the contact or <tt>null</tt> if it has
+         * none
+         */
+        void photoRetrieved(String contactAddress, byte[] photo);
+
+        /**
+         * Notifies that the photo of a contact could not be retrieved, for
+         * example because the account is not connected or the request for the
+         * vCard of the contact failed.
+         *
+         * @param contactAddress the address of the contact
+         */
+        void photoNotRetrieved(String contactAddress);
+    }
+
+    /**
+     * A contact whose vCard is to be refreshed in the background.
+     */
+    private static class PendingRefresh
+    {
+        /**
+         * The SHA-1 hash of the photo most recently advertised by the
+         * contact.
+         */
+        String photoHash;
+
+        /**
+         * The listeners waiting for the photo of the contact.
+         */
+        final List<PhotoListener> listeners = new ArrayList<PhotoListener>();
+
+        /**
+         * Notifies the listeners that the photo of the contact has been
+         * retrieved.
+         *
+         * @param contactAddress the address of the contact
+         * @param photo the photo of the contact or <tt>null</tt>
+         */
+        void photoRetrieved(String contactAddress, byte[] photo)
+        {
+            for (PhotoListener listener : listeners)
+            {
+                try
+                {
+                    listener.photoRetrieved(contactAddress, photo);
+                }
+                catch (Throwable t)
+                {
+                    logger.error("Error delivering retrieved photo", t);
+                }
+            }
+        }
+
+        /**
+         * Notifies the listeners that the photo of the contact could not be
+         * retrieved.
+         *
+         * @param contactAddress the address of the contact
+         */
+        void photoNotRetrieved(String contactAddress)
+        {
+            for (PhotoListener listener : listeners)
+            {
+                try
+                {
+                    listener.photoNotRetrieved(contactAddress);
+                }
+                catch (Throwable t)
+                {
+                    logger.error("Error delivering photo failure", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * The details of a contact along with the SHA-1 hash of its photo.
+     */
+    private static class CachedDetails
+    {
+        final List<GenericDetail> details;
+
+        final String photoHash;
+
+        CachedDetails(List<GenericDetail> details)
+        {
+            this.details = details;
+
+            byte[] photo = getPhoto();
+
+            this.photoHash
+                = (photo == null)
+                    ? null
+                    : VCardTempXUpdatePresenceExtension.getImageSha1(photo);
+        }
+
+        /**
+         * Gets the photo of the contact.
+         *
+         * @return the photo of the contact or <tt>null</tt>
+         */
+        byte[] getPhoto()
+        {
+            for (GenericDetail detail : details)
+            {
+                if (detail instanceof ImageDetail)
+                    return ((ImageDetail) detail).getBytes();
+            }
+            return null;
+        }
+    }
 }
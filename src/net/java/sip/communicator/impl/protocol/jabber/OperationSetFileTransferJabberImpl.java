@@ -26,6 +26,7 @@
 import net.java.sip.communicator.service.protocol.FileTransfer;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.event.FileTransferListener;
+import net.java.sip.communicator.service.protocol.jabber.*;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
 import net.java.sip.communicator.util.*;
 
@@ -33,6 +34,9 @@
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.provider.*;
+import org.jivesoftware.smackx.*;
+import org.jivesoftware.smackx.bytestreams.ibb.*;
+import org.jivesoftware.smackx.bytestreams.socks5.*;
 import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
 import org.jivesoftware.smackx.filetransfer.*;
 import org.jivesoftware.smackx.packet.*;
@@ -80,11 +84,34 @@
     private Vector<FileTransferListener> fileTransferListeners
         = new Vector<FileTransferListener>();
 
+    /**
+     * The namespace of SOCKS5 bytestreams.
+     */
+    private static final String SOCKS5_BYTESTREAMS_NAMESPACE
+        = "http://jabber.org/protocol/bytestreams";
+
+    /**
+     * The name of the field of the feature negotiation form of a stream
+     * initiation which lists the offered stream methods.
+     */
+    private static final String STREAM_METHOD_FIELD = "stream-method";
+
+    /**
+     * Restricts the stream initiations sent by an account which uses in-band
+     * bytestreams only. Non-<tt>null</tt> only while such an account is
+     * registered.
+     */
+    private PacketInterceptor ibbOnlyInterceptor;
+
     // Register file transfer features on every established connection
     // to make sure we register them before creating our
     // ServiceDiscoveryManager
     static
     {
+        // Let Smack negotiate both SOCKS5 and in-band bytestreams. Accounts
+        // which use in-band bytestreams only are restricted per connection.
+        FileTransferNegotiator.IBB_ONLY = false;
+
         Connection.addConnectionCreationListener(new ConnectionCreationListener()
         {
             public void connectionCreated(Connection connection)
@@ -105,9 +132,115 @@ public OperationSetFileTransferJabberImpl(
 
         provider.addRegistrationStateChangeListener(
             new RegistrationStateListener());
+    }
+
+    /**
+     * Determines whether the account of this instance restricts file
+     * transfers to in-band bytestreams.
+     *
+     * @return <tt>true</tt> if file transfers use in-band bytestreams only
+     */
+    private boolean isIbbOnly()
+    {
+        return ((JabberAccountID) jabberProvider.getAccountID())
+            .isFileTransferIbbOnly();
+    }
+
+    /**
+     * Sets up the stream methods of a newly registered connection. A
+     * connection of an account which uses in-band bytestreams only neither
+     * advertises nor offers SOCKS5 bytestreams. Other connections try SOCKS5
+     * bytestreams first and fall back to in-band bytestreams.
+     *
+     * @param connection the registered connection
+     */
+    private void setUpStreamMethods(Connection connection)
+    {
+        if (isIbbOnly())
+        {
+            ScServiceDiscoveryManager discoveryManager
+                = jabberProvider.getDiscoveryManager();
+
+            if (discoveryManager != null)
+                discoveryManager.removeFeature(SOCKS5_BYTESTREAMS_NAMESPACE);
+
+            ibbOnlyInterceptor = new PacketInterceptor()
+            {
+                public void interceptPacket(Packet packet)
+                {
+                    restrictToInBandBytestreams((StreamInitiation) packet);
+                }
+            };
+            connection.addPacketInterceptor(
+                ibbOnlyInterceptor,
+                new AndFilter(  new PacketTypeFilter(StreamInitiation.class),
+                                new IQTypeFilter(IQ.Type.SET)));
+        }
+        else
+        {
+            /*
+             * Remember the streamhost which worked last and try it first for
+             * the following transfers instead of probing the proxies in the
+             * order in which the server lists them.
+             */
+            Socks5BytestreamManager.getBytestreamManager(connection)
+                .setProxyPrioritizationEnabled(true);
+        }
+    }
+
+    /**
+     * Removes the stream method options other than in-band bytestreams from
+     * the feature negotiation form of a stream initiation. Smack then
+     * negotiates in-band bytestreams for the transfer whether the stream
+     * initiation is an offer we send or one we have received.
+     *
+     * @param streamInitiation the stream initiation to restrict
+     */
+    private static void restrictToInBandBytestreams(
+        StreamInitiation streamInitiation)
+    {
+        DataForm form = streamInitiation.getFeatureNegotiationForm();
+
+        if (form == null)
+            return;
+
+        DataForm restrictedForm = new DataForm(form.getType());
+        Iterator<FormField> fields = form.getFields();
+
+        while (fields.hasNext())
+        {
+            FormField field = fields.next();
+
+            if (!STREAM_METHOD_FIELD.equals(field.getVariable()))
+            {
+                restrictedForm.addField(field);
+                continue;
+            }
+
+            FormField restrictedField = new FormField(STREAM_METHOD_FIELD);
+            restrictedField.setType(field.getType());
+
+            Iterator<FormField.Option> options = field.getOptions();
+            while (options.hasNext())
+            {
+                FormField.Option option = options.next();
 
-        // use only ibb for file transfers
-        FileTransferNegotiator.IBB_ONLY = true;
+                if (InBandBytestreamManager.NAMESPACE.equals(
+                        option.getValue()))
+                    restrictedField.addOption(option);
+            }
+
+            Iterator<String> values = field.getValues();
+            while (values.hasNext())
+            {
+                String value = values.next();
+
+                if (InBandBytestreamManager.NAMESPACE.equals(value))
+                    restrictedField.addValue(value);
+            }
+            restrictedForm.addField(restrictedField);
+        }
+        streamInitiation.setFeatureNegotiationForm(restrictedForm);
     }
 
     /**
@@ -241,8 +374,8 @@ else if(priority == bestPriority && jabberStatus != null)
             // Send the file through the Jabber file transfer.
             transfer.sendFile(file, "Sending file");
 
-            // Start the status and progress thread.
-            new FileTransferProgressThread(
+            // Start sampling the status and progress.
+            new FileTransferProgressTracker(
                 transfer, outgoingTransfer).start();
         }
         catch(XMPPException e)
@@ -377,6 +510,8 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
                     (OperationSetPersistentPresenceJabberImpl) jabberProvider
                         .getOperationSet(OperationSetPersistentPresence.class);
 
+                setUpStreamMethods(jabberProvider.getConnection());
+
                 // Create the Jabber FileTransferManager.
                 manager = new FileTransferManager(
                             jabberProvider.getConnection());
@@ -407,6 +542,14 @@ else if (evt.getNewState() == RegistrationState.UNREGISTERED)
                         fileTransferRequestListener);
                 }
 
+                if(ibbOnlyInterceptor != null
+                    && jabberProvider.getConnection() != null)
+                {
+                    jabberProvider.getConnection().removePacketInterceptor(
+                        ibbOnlyInterceptor);
+                }
+                ibbOnlyInterceptor = null;
+
                 ProviderManager providerManager = ProviderManager.getInstance();
                 if (providerManager != null)
                 {
@@ -444,6 +587,9 @@ public void processPacket(Packet packet)
 
             StreamInitiation streamInitiation = (StreamInitiation) packet;
 
+            if (isIbbOnly())
+                restrictToInBandBytestreams(streamInitiation);
+
             FileTransferRequest jabberRequest
                 = new FileTransferRequest(manager, streamInitiation);
 
@@ -570,10 +716,12 @@ void fireFileTransferCreated(FileTransferCreatedEvent event)
     }
 
     /**
-     * Updates file transfer progress and status while sending or receiving a
-     * file.
+     * Updates file transfer status while sending or receiving a file. The
+     * transfer is sampled by the shared <tt>FileTransferProgressScheduler</tt>
+     * which also fires the progress events.
      */
-    protected static class FileTransferProgressThread extends Thread
+    protected static class FileTransferProgressTracker
+        implements FileTransferProgressScheduler.Sampler
     {
         private final org.jivesoftware.smackx.filetransfer.FileTransfer
             jabberTransfer;
@@ -581,7 +729,12 @@ protected static class FileTransferProgressThread extends Thread
 
         private long initialFileSize;
 
-        public FileTransferProgressThread(
+        /**
+         * The time the transfer entered the in progress state or <tt>-1</tt>.
+         */
+        private long transferStartTime = -1;
+
+        public FileTransferProgressTracker(
             org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
             AbstractFileTransfer transfer,
             long initialFileSize)
@@ -591,73 +744,81 @@ public FileTransferProgressThread(
             this.initialFileSize = initialFileSize;
         }
 
-        public FileTransferProgressThread(
+        public FileTransferProgressTracker(
             org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
             AbstractFileTransfer transfer)
         {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
+            this(jabberTransfer, transfer, -1);
         }
 
         /**
-         * Thread entry point.
+         * Starts sampling the transfer.
          */
-        @Override
-        public void run()
+        public void start()
         {
-            int status;
-            long progress;
-            String statusReason = "";
+            FileTransferProgressScheduler.schedule(
+                fileTransfer, initialFileSize, this);
+        }
+
+        /**
+         * Updates the status of the transfer and fires the final events once
+         * it has finished.
+         *
+         * @return <tt>true</tt> if the transfer is still active
+         */
+        public boolean sample()
+        {
+            int status = parseJabberStatus(jabberTransfer.getStatus());
 
-            while (true)
+            if (status == FileTransferStatusChangeEvent.FAILED
+                || status == FileTransferStatusChangeEvent.COMPLETED
+                || status == FileTransferStatusChangeEvent.CANCELED
+                || status == FileTransferStatusChangeEvent.REFUSED)
             {
-                try
-                {
-                    Thread.sleep(10);
+                finish(status);
+                return false;
+            }
 
-                    status = parseJabberStatus(jabberTransfer.getStatus());
-                    progress = fileTransfer.getTransferedBytes();
+            if (transferStartTime == -1
+                    && status == FileTransferStatusChangeEvent.IN_PROGRESS)
+            {
+                transferStartTime = System.currentTimeMillis();
+            }
 
-                    if (status == FileTransferStatusChangeEvent.FAILED
-                        || status == FileTransferStatusChangeEvent.COMPLETED
-                        || status == FileTransferStatusChangeEvent.CANCELED
-                        || status == FileTransferStatusChangeEvent.REFUSED)
-                    {
-                        if (fileTransfer instanceof
-                                OutgoingFileTransferJabberImpl)
-                        {
-                            ((OutgoingFileTransferJabberImpl) fileTransfer)
-                                .removeThumbnailRequestListener();
-                        }
+            fileTransfer.fireStatusChangeEvent(status, "Status changed");
+            return true;
+        }
 
-                        // sometimes a filetransfer can be preparing
-                        // and than completed :
-                        // transfered in one iteration of current thread
-                        // so it won't go through intermediate state - inProgress
-                        // make sure this won't happen
-                        if(status == FileTransferStatusChangeEvent.COMPLETED
-                            && fileTransfer.getStatus()
-                                == FileTransferStatusChangeEvent.PREPARING)
-                        {
-                            fileTransfer.fireStatusChangeEvent(
-                                FileTransferStatusChangeEvent.IN_PROGRESS,
-                                "Status changed");
-                            fileTransfer.fireProgressChangeEvent(
-                                System.currentTimeMillis(), progress);
-                        }
+        /**
+         * Fires the final status and progress events of the transfer.
+         *
+         * @param status the status the Jabber transfer has finished with
+         */
+        private void finish(int status)
+        {
+            long progress = fileTransfer.getTransferedBytes();
+            String statusReason = "";
 
-                        break;
-                    }
+            if (fileTransfer instanceof OutgoingFileTransferJabberImpl)
+            {
+                ((OutgoingFileTransferJabberImpl) fileTransfer)
+                    .removeThumbnailRequestListener();
+            }
 
-                    fileTransfer.fireStatusChangeEvent(status, "Status changed");
-                    fileTransfer.fireProgressChangeEvent(
-                        System.currentTimeMillis(), progress);
-                }
-                catch (InterruptedException e)
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Unable to sleep thread.", e);
-                }
+            // sometimes a filetransfer can be preparing
+            // and than completed :
+            // transfered between two samples
+            // so it won't go through intermediate state - inProgress
+            // make sure this won't happen
+            if(status == FileTransferStatusChangeEvent.COMPLETED
+                && fileTransfer.getStatus()
+                    == FileTransferStatusChangeEvent.PREPARING)
+            {
+                fileTransfer.fireStatusChangeEvent(
+                    FileTransferStatusChangeEvent.IN_PROGRESS,
+                    "Status changed");
+                fileTransfer.fireProgressChangeEvent(
+                    System.currentTimeMillis(), progress);
             }
 
             if (jabberTransfer.getError() != null)
@@ -692,6 +853,20 @@ public void run()
                 status = FileTransferStatusChangeEvent.CANCELED;
             }
 
+            if (status == FileTransferStatusChangeEvent.COMPLETED
+                && transferStartTime != -1
+                && logger.isInfoEnabled())
+            {
+                long duration
+                    = Math.max(
+                        1, System.currentTimeMillis() - transferStartTime);
+                long transferedBytes = fileTransfer.getTransferedBytes();
+
+                logger.info("Transferred " + transferedBytes + " bytes"
+                    + " in " + duration + " ms ("
+                    + (transferedBytes * 1000 / 1024 / duration) + " KiB/s)");
+            }
+
             fileTransfer.fireStatusChangeEvent(status, statusReason);
             fileTransfer.fireProgressChangeEvent(
                 System.currentTimeMillis(), progress);
@@ -139,6 +139,11 @@
      */
     private ContactJabberImpl localContact = null;
 
+    /**
+     * Retrieves the vCards and thus the avatars of our contacts.
+     */
+    private final InfoRetreiver infoRetreiver;
+
     /**
      * Creates the OperationSet.
      * @param provider the parent provider.
@@ -150,6 +155,8 @@ public OperationSetPersistentPresenceJabberImpl(
     {
         super(provider);
 
+        this.infoRetreiver = infoRetreiver;
+
         currentStatus =
             parentProvider.getJabberStatusEnum().getStatus(
                 JabberStatusEnum.OFFLINE);
@@ -2000,7 +2007,7 @@ public void parseContactPhotoPresence(Packet packet)
             return;
         }
 
-        byte[] currentAvatar = sourceContact.getImage(false);
+        final byte[] currentAvatar = sourceContact.getImage(false);
 
         // Get the packet extension which contains the photo tag.
         DefaultPacketExtension defaultPacketExtension =
@@ -2009,56 +2016,86 @@ public void parseContactPhotoPresence(Packet packet)
                     VCardTempXUpdatePresenceExtension.NAMESPACE);
         if(defaultPacketExtension != null)
         {
-            try
+            String packetPhotoSHA1 =
+                defaultPacketExtension.getValue("photo");
+            // If this presence packet has a photo tag with a SHA-1 hash
+            // which differs from the current avatar SHA-1 hash, then Jitsi
+            // retrieves the new avatar image and updates this contact image
+            // in the contact list.
+            if(packetPhotoSHA1 != null
+                    && !packetPhotoSHA1.equals(
+                        VCardTempXUpdatePresenceExtension.getImageSha1(
+                            currentAvatar))
+              )
             {
-                String packetPhotoSHA1 =
-                    defaultPacketExtension.getValue("photo");
-                // If this presence packet has a photo tag with a SHA-1 hash
-                // which differs from the current avatar SHA-1 hash, then Jitsi
-                // retrieves the new avatar image and updates this contact image
-                // in the contact list.
-                if(packetPhotoSHA1 != null
-                        && !packetPhotoSHA1.equals(
-                            VCardTempXUpdatePresenceExtension.getImageSha1(
-                                currentAvatar))
-                  )
+                // If there is an avatar image, retrieves it from the vCard
+                // cache or, if the cached vCard has another photo, in the
+                // background.
+                if(packetPhotoSHA1.length() != 0)
                 {
-                    byte[] newAvatar = null;
-
-                    // If there is an avatar image, retrieves it.
-                    if(packetPhotoSHA1.length() != 0)
-                    {
-                        // Retrieves the new contact avatar image.
-                        VCard vCard = new VCard();
-                        vCard.load(parentProvider.getConnection(), userID);
-                        newAvatar = vCard.getAvatar();
-                    }
-                    // Else removes the current avatar image, since the contact
-                    // has removed it from the server.
-                    else
-                    {
-                        newAvatar = new byte[0];
-                    }
+                    infoRetreiver.retrievePhoto(
+                        userID,
+                        packetPhotoSHA1,
+                        new InfoRetreiver.PhotoListener()
+                        {
+                            public void photoRetrieved(
+                                String contactAddress,
+                                byte[] photo)
+                            {
+                                updateContactPhoto(
+                                    contactAddress, currentAvatar, photo);
+                            }
 
-                    // Sets the new avatar image to the Jitsi contact.
-                    sourceContact.setImage(newAvatar);
-                    // Fires a property change event to update the contact list.
-                    this.fireContactPropertyChangeEvent(
-                        ContactPropertyChangeEvent.PROPERTY_IMAGE,
-                        sourceContact,
-                        currentAvatar,
-                        newAvatar);
+                            public void photoNotRetrieved(
+                                String contactAddress)
+                            {
+                                // Keeps the current avatar image until the
+                                // contact advertises its photo again.
+                                if (logger.isDebugEnabled())
+                                    logger.debug("Failed to retrieve photo of "
+                                        + contactAddress);
+                            }
+                        });
+                }
+                // Else removes the current avatar image, since the contact
+                // has removed it from the server.
+                else
+                {
+                    updateContactPhoto(userID, currentAvatar, new byte[0]);
                 }
-            }
-            catch(XMPPException ex)
-            {
-                logger.info("Cannot retrieve vCard from: " + packet.getFrom());
-                if(logger.isTraceEnabled())
-                    logger.trace("vCard retrieval exception was: ", ex);
             }
         }
     }
 
+    /**
+     * Sets the new avatar image of a contact and fires a property change
+     * event to update the contact list.
+     *
+     * @param userID the address of the contact
+     * @param oldAvatar the previous avatar image of the contact
+     * @param newAvatar the new avatar image of the contact
+     */
+    private void updateContactPhoto(
+        String userID,
+        byte[] oldAvatar,
+        byte[] newAvatar)
+    {
+        ContactJabberImpl sourceContact
+            = ssContactList.findContactById(userID);
+
+        if(sourceContact == null)
+            return;
+
+        // Sets the new avatar image to the Jitsi contact.
+        sourceContact.setImage(newAvatar);
+        // Fires a property change event to update the contact list.
+        this.fireContactPropertyChangeEvent(
+            ContactPropertyChangeEvent.PROPERTY_IMAGE,
+            sourceContact,
+            oldAvatar,
+            newAvatar);
+    }
+
     /**
      * Initializes the map with priorities and statuses which we will use when
      * changing statuses.
@@ -23,6 +23,7 @@
 import java.security.cert.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.net.ssl.*;
 
@@ -857,16 +858,26 @@ private ConnectState connectUsingSRVRecords(
 
         if(srvRecords != null)
         {
+            // resolve all the targets in parallel, we will most probably
+            // need the next ones if the first one fails
+            List<Future<InetSocketAddress[]>> srvLookups
+                = new ArrayList<Future<InetSocketAddress[]>>(
+                        srvRecords.length);
             for(SRVRecord srv : srvRecords)
             {
+                srvLookups.add(
+                    NetworkUtils.getAandAAAARecordsAsync(
+                        srv.getTarget(),
+                        srv.getPort()));
+            }
+
+            for(int i = 0; i < srvRecords.length; i++)
+            {
+                SRVRecord srv = srvRecords[i];
                 InetSocketAddress[] addrs = null;
                 try
                 {
-                    addrs =
-                        NetworkUtils.getAandAAAARecords(
-                            srv.getTarget(),
-                            srv.getPort()
-                        );
+                    addrs = NetworkUtils.getDnsQueryResult(srvLookups.get(i));
                 }
                 catch (ParseException e)
                 {
@@ -38,7 +38,15 @@
      * lower case  strings in the left column because JIDs in XMPP are not case
      * sensitive.
      */
-    private List<ContactGroup> subGroups = new LinkedList<ContactGroup>();
+    private List<ContactGroup> subGroups = new ArrayList<ContactGroup>();
+
+    /**
+     * The identities of the groups in {@link #subGroups} which allow checking
+     * whether a group is still a sub group without a linear search.
+     */
+    private final Set<ContactGroup> subGroupSet
+        = Collections.newSetFromMap(
+                new IdentityHashMap<ContactGroup, Boolean>());
 
     private boolean isResolved = false;
 
@@ -108,6 +116,7 @@ public void addContact(ContactJabberImpl contact)
     void addSubGroup(ContactGroupJabberImpl group)
     {
         subGroups.add(group);
+        subGroupSet.add(group);
     }
 
     /**
@@ -125,7 +134,19 @@ void removeSubGroup(ContactGroupJabberImpl group)
      */
     void removeSubGroup(int index)
     {
-        subGroups.remove(index);
+        subGroupSet.remove(subGroups.remove(index));
+    }
+
+    /**
+     * Determines whether a specific group is a sub group of this root group.
+     *
+     * @param group the group to check
+     * @return <tt>true</tt> if <tt>group</tt> is a sub group of this root
+     * group; otherwise, <tt>false</tt>
+     */
+    boolean containsSubGroup(ContactGroup group)
+    {
+        return subGroupSet.contains(group);
     }
 
     /**
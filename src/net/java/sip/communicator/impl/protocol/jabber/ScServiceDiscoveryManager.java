@@ -19,11 +19,13 @@
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.configuration.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
@@ -111,6 +113,38 @@
      */
     private DiscoveryInfoRetriever retriever = new DiscoveryInfoRetriever();
 
+    /**
+     * The name of the property which specifies the maximum number of
+     * disco#info requests sent in the background which are in progress at a
+     * time.
+     */
+    public static final String MAX_PENDING_DISCOVERIES_PNAME
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".MAX_PENDING_DISCOVERIES";
+
+    /**
+     * The default maximum number of disco#info requests sent in the
+     * background which are in progress at a time.
+     */
+    private static final int DEFAULT_MAX_PENDING_DISCOVERIES = 8;
+
+    /**
+     * The number of disco#info requests sent.
+     */
+    private final AtomicLong discoveryRequestCount = new AtomicLong();
+
+    /**
+     * The number of disco#info requests which have been coalesced with
+     * another one for the same entity capabilities.
+     */
+    private final AtomicLong coalescedDiscoveryRequestCount = new AtomicLong();
+
+    /**
+     * The total time in milliseconds the sent disco#info requests took to
+     * complete.
+     */
+    private final AtomicLong discoveryTime = new AtomicLong();
+
     /**
      * Creates a new <tt>ScServiceDiscoveryManager</tt> wrapping the default
      * discovery manager of the specified <tt>connection</tt>.
@@ -508,6 +542,22 @@ public DiscoverInfo discoverInfo(String entityID)
                 return discoverInfo;
         }
 
+        // wait for a request for the same caps which is already in progress
+        if ((caps != null) && !caps.hash.equals(""))
+        {
+            PendingDiscovery discovery = retriever.get(entityID, caps);
+
+            if (discovery != null)
+            {
+                coalescedDiscoveryRequestCount.incrementAndGet();
+                discoverInfo
+                    = discovery.await(
+                            SmackConfiguration.getPacketReplyTimeout());
+                if ((discoverInfo != null) && caps.isValid(discoverInfo))
+                    return discoverInfo;
+            }
+        }
+
         discoverInfo
             = discoverInfo(
                     entityID,
@@ -583,7 +633,25 @@ public DiscoverInfo discoverInfoNonBlocking(String entityID)
     public DiscoverInfo discoverInfo(String entityID, String node)
         throws XMPPException
     {
-        return discoveryManager.discoverInfo(entityID, node);
+        long startTime = System.currentTimeMillis();
+
+        try
+        {
+            return discoveryManager.discoverInfo(entityID, node);
+        }
+        finally
+        {
+            long duration = System.currentTimeMillis() - startTime;
+
+            discoveryRequestCount.incrementAndGet();
+            discoveryTime.addAndGet(duration);
+            if (logger.isTraceEnabled())
+            {
+                logger.trace(
+                        "disco#info to " + entityID + " took " + duration
+                            + " ms");
+            }
+        }
     }
 
     /**
@@ -632,6 +700,12 @@ public DiscoverItems discoverItems(String entityID, String node)
      */
     public boolean supportsFeature(String jid, String feature)
     {
+        EntityCapsManager.Caps caps = capsManager.getCapsByUser(jid);
+
+        // check the feature bit set of the cached caps first
+        if ((caps != null) && EntityCapsManager.supportsFeature(caps, feature))
+            return true;
+
         DiscoverInfo info;
 
         try
@@ -667,130 +741,254 @@ public void stop()
     {
         if(retriever != null)
             retriever.stop();
+
+        if (logger.isDebugEnabled())
+        {
+            long count = discoveryRequestCount.get();
+
+            logger.debug(
+                    "Sent " + count + " disco#info requests ("
+                        + coalescedDiscoveryRequestCount.get()
+                        + " coalesced), average time "
+                        + ((count == 0) ? 0 : (discoveryTime.get() / count))
+                        + " ms");
+        }
     }
 
     /**
-     * Thread that runs the discovery info.
+     * Gets the key by which requests for the discover info of a specific
+     * entity are coalesced. Entities advertising the same valid caps share a
+     * key, all others are keyed by their JID.
+     *
+     * @param entityID the entity
+     * @param caps the caps of <tt>entityID</tt> or <tt>null</tt>
+     * @return the key by which requests for the discover info of
+     * <tt>entityID</tt> are coalesced
      */
-    private class DiscoveryInfoRetriever
+    private static String getDiscoveryKey(
+            String entityID,
+            EntityCapsManager.Caps caps)
+    {
+        return
+            ((caps == null) || caps.hash.equals(""))
+                ? entityID
+                : (caps.node + '#' + caps.hash + '#' + caps.ver);
+    }
+
+    /**
+     * A disco#info request scheduled by the {@link DiscoveryInfoRetriever}
+     * along with the entities waiting for its answer.
+     */
+    private class PendingDiscovery
         implements Runnable
     {
         /**
-         * start/stop.
+         * The key by which requests are coalesced into this one.
          */
-        private boolean stopped = true;
+        private final String key;
 
         /**
-         * The thread that runs this dispatcher.
+         * The entity which the disco#info request is sent to.
          */
-        private Thread retrieverThread = null;
+        private final String entityID;
 
         /**
-         * Entities to be processed and their caps.
-         * HashMap so we can store null caps.
+         * The caps of {@link #entityID} or <tt>null</tt>.
          */
-        private Map<String, EntityCapsManager.Caps> entities
-            = new HashMap<String, EntityCapsManager.Caps>();
+        private final EntityCapsManager.Caps caps;
 
         /**
-         * Our capability operation set.
+         * The entities which are waiting for the answer of this request.
+         * Accessed under the lock of {@link DiscoveryInfoRetriever#pending}.
          */
-        private OperationSetContactCapabilitiesJabberImpl capabilitiesOpSet;
+        private final Set<String> entityIDs = new LinkedHashSet<String>();
+
+        /**
+         * The answer to this request.
+         */
+        private DiscoverInfo discoverInfo;
+
+        /**
+         * Whether this request has completed.
+         */
+        private boolean done = false;
+
+        PendingDiscovery(
+                String key,
+                String entityID,
+                EntityCapsManager.Caps caps)
+        {
+            this.key = key;
+            this.entityID = entityID;
+            this.caps = caps;
+            entityIDs.add(entityID);
+        }
 
         /**
-         * Runs in different thread.
+         * Sends the disco#info request and processes its answer for all
+         * entities waiting for it.
          */
         public void run()
         {
+            DiscoverInfo discoverInfo = null;
+
             try
             {
-                stopped = false;
+                discoverInfo = discoverInfo(
+                            entityID,
+                            (caps == null ) ? null : caps.getNodeVer());
+            }
+            catch(XMPPException ex)
+            {
+                // print discovery info errors only when trace is enabled
+                if(logger.isTraceEnabled())
+                    logger.error("Error requesting discover info for "
+                        + entityID, ex);
+            }
+            finally
+            {
+                List<String> waitingEntityIDs
+                    = retriever.remove(this);
+
+                complete(discoverInfo);
 
-                while(!stopped)
+                // the retriever has been stopped while we were waiting
+                if ((waitingEntityIDs != null) && (discoverInfo != null))
                 {
-                    Map.Entry<String, EntityCapsManager.Caps>
-                        entityToProcess = null;
+                    retriever.process(
+                            entityID, waitingEntityIDs, caps, discoverInfo);
+                }
+            }
+        }
 
-                    synchronized(entities)
-                    {
-                        if(entities.size() == 0)
-                        {
-                            try
-                            {
-                                entities.wait();
-                            }
-                            catch (InterruptedException iex){}
-                        }
-
-                        Iterator<Map.Entry<String, EntityCapsManager.Caps>>
-                            iter = entities.entrySet().iterator();
-                        if(iter.hasNext())
-                        {
-                            entityToProcess = iter.next();
-                            iter.remove();
-                        }
-                    }
+        /**
+         * Marks this request as completed and wakes up the threads waiting
+         * for its answer.
+         *
+         * @param discoverInfo the answer to this request or <tt>null</tt> if
+         * it failed or has been cancelled
+         */
+        synchronized void complete(DiscoverInfo discoverInfo)
+        {
+            if (done)
+                return;
 
-                    if(entityToProcess != null)
-                    {
-                        // process
-                        requestDiscoveryInfo(
-                            entityToProcess.getKey(),
-                            entityToProcess.getValue());
-                    }
+            this.discoverInfo = discoverInfo;
+            done = true;
+            notifyAll();
+        }
 
-                    entityToProcess = null;
-                }
-            } catch(Throwable t)
+        /**
+         * Waits for the answer of this request.
+         *
+         * @param timeout the maximum time in milliseconds to wait
+         * @return the answer of this request or <tt>null</tt> if it failed or
+         * did not complete in time
+         */
+        synchronized DiscoverInfo await(long timeout)
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            boolean interrupted = false;
+
+            while (!done)
             {
-                logger.error("Error requesting discovery info, " +
-                    "thread ended unexpectedly", t);
+                long wait = deadline - System.currentTimeMillis();
+
+                if (wait <= 0)
+                    break;
+                try
+                {
+                    wait(wait);
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
             }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            return discoverInfo;
         }
+    }
+
+    /**
+     * Retrieves discover info in the background. Requests for entities with
+     * the same caps are coalesced into one and a bounded number of requests
+     * is in progress at a time.
+     */
+    private class DiscoveryInfoRetriever
+    {
+        /**
+         * The requests which are scheduled or in progress by their key.
+         */
+        private final Map<String, PendingDiscovery> pending
+            = new HashMap<String, PendingDiscovery>();
 
         /**
-         * Requests the discovery info and fires the event if
-         * retrieved.
-         * @param entityID the entity to request
-         * @param caps and its capability.
+         * The executor which sends the requests or <tt>null</tt> if this
+         * retriever is stopped.
+         */
+        private ThreadPoolExecutor executor = null;
+
+        /**
+         * Our capability operation set.
          */
-        private void requestDiscoveryInfo(final String entityID,
-                                          EntityCapsManager.Caps caps)
+        private OperationSetContactCapabilitiesJabberImpl capabilitiesOpSet;
+
+        /**
+         * Validates and caches the discover info received for a number of
+         * entities and fires the event if retrieved. If the discover info does
+         * not match the caps, it only describes the queried entity and the
+         * other entities are queued for their own request.
+         *
+         * @param queriedEntityID the entity which the request was sent to
+         * @param entityIDs the entities which are waiting for the answer
+         * @param caps their capability.
+         * @param discoverInfo the received discover info
+         */
+        private void process(String queriedEntityID,
+                             List<String> entityIDs,
+                             EntityCapsManager.Caps caps,
+                             DiscoverInfo discoverInfo)
         {
-            try
+            if ((caps != null) && !caps.isValid(discoverInfo))
             {
-                DiscoverInfo discoverInfo = discoverInfo(
-                            entityID,
-                            (caps == null ) ? null : caps.getNodeVer());
+                if(!caps.hash.equals(""))
+                {
+                    logger.error("Invalid DiscoverInfo for "
+                        + caps.getNodeVer() + ": " + discoverInfo);
+                }
+                caps = null;
 
-                if ((caps != null) && !caps.isValid(discoverInfo))
+                for (String entityID : entityIDs)
                 {
-                    if(!caps.hash.equals(""))
-                    {
-                        logger.error("Invalid DiscoverInfo for "
-                            + caps.getNodeVer() + ": " + discoverInfo);
-                    }
-                    caps = null;
+                    if (!entityID.equals(queriedEntityID))
+                        addEntityForRetrieve(entityID, null);
                 }
+                entityIDs = Collections.singletonList(queriedEntityID);
+            }
 
-                boolean fireEvent = false;
+            boolean fireEvent = false;
 
-                if (caps == null)
+            if (caps == null)
+            {
+                if (cacheNonCaps)
                 {
-                    if (cacheNonCaps)
-                    {
+                    for (String entityID : entityIDs)
                         nonCapsCache.put(entityID, discoverInfo);
-                        fireEvent = true;
-                    }
-                }
-                else
-                {
-                    EntityCapsManager.addDiscoverInfoByCaps(caps, discoverInfo);
                     fireEvent = true;
                 }
+            }
+            else
+            {
+                EntityCapsManager.addDiscoverInfoByCaps(caps, discoverInfo);
+                fireEvent = true;
+            }
 
-                // fire event
-                if(fireEvent && capabilitiesOpSet != null)
+            // fire event
+            if(fireEvent && capabilitiesOpSet != null)
+            {
+                for (String entityID : entityIDs)
                 {
                     capabilitiesOpSet.fireContactCapabilitiesChanged(
                         entityID,
@@ -799,13 +997,6 @@ private void requestDiscoveryInfo(final String entityID,
                         );
                 }
             }
-            catch(XMPPException ex)
-            {
-                // print discovery info errors only when trace is enabled
-                if(logger.isTraceEnabled())
-                    logger.error("Error requesting discover info for "
-                        + entityID, ex);
-            }
         }
 
         /**
@@ -816,24 +1007,69 @@ private void requestDiscoveryInfo(final String entityID,
         public void addEntityForRetrieve(String entityID,
                                          EntityCapsManager.Caps caps)
         {
-            synchronized(entities)
+            String key = getDiscoveryKey(entityID, caps);
+
+            synchronized(pending)
             {
+                PendingDiscovery discovery = pending.get(key);
 
-                if(!entities.containsKey(entityID))
+                if (discovery != null)
                 {
-                    entities.put(entityID, caps);
-                    entities.notifyAll();
+                    if (discovery.entityIDs.add(entityID))
+                        coalescedDiscoveryRequestCount.incrementAndGet();
+                    return;
+                }
 
-                    if(retrieverThread == null)
-                    {
-                        start();
-                    }
+                if(executor == null)
+                {
+                    start();
                 }
+
+                discovery = new PendingDiscovery(key, entityID, caps);
+                pending.put(key, discovery);
+                executor.execute(discovery);
+            }
+        }
+
+        /**
+         * Gets the request for the discover info of a specific entity which is
+         * scheduled or in progress.
+         *
+         * @param entityID the entity.
+         * @param caps and its capability.
+         * @return the request for the discover info of <tt>entityID</tt> or
+         * <tt>null</tt> if there is no such request
+         */
+        PendingDiscovery get(String entityID, EntityCapsManager.Caps caps)
+        {
+            synchronized(pending)
+            {
+                return pending.get(getDiscoveryKey(entityID, caps));
+            }
+        }
+
+        /**
+         * Removes a completed request.
+         *
+         * @param discovery the completed request
+         * @return the entities which have been waiting for the answer of
+         * <tt>discovery</tt> or <tt>null</tt> if this retriever has been
+         * stopped in the meantime
+         */
+        private List<String> remove(PendingDiscovery discovery)
+        {
+            synchronized(pending)
+            {
+                if (pending.get(discovery.key) != discovery)
+                    return null;
+
+                pending.remove(discovery.key);
+                return new ArrayList<String>(discovery.entityIDs);
             }
         }
 
         /**
-         * Start thread.
+         * Start the executor.
          */
         private void start()
         {
@@ -841,27 +1077,54 @@ private void start()
                 parentProvider.getOperationSet(
                     OperationSetContactCapabilities.class);
 
-            retrieverThread = new Thread(
-                this,
-                ScServiceDiscoveryManager.class.getName());
-            retrieverThread.setDaemon(true);
-
-            retrieverThread.start();
+            int maxPending = DEFAULT_MAX_PENDING_DISCOVERIES;
+            ConfigurationService cfg
+                = JabberActivator.getConfigurationService();
 
+            if (cfg != null)
+            {
+                maxPending
+                    = cfg.getInt(MAX_PENDING_DISCOVERIES_PNAME, maxPending);
+            }
+            if (maxPending < 1)
+                maxPending = 1;
+
+            executor = new ThreadPoolExecutor(
+                maxPending, maxPending,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(
+                            r,
+                            ScServiceDiscoveryManager.class.getName());
 
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
         }
 
         /**
-         * Stops and clears.
+         * Stops and clears. The scheduled and running requests are completed
+         * without an answer so that no thread keeps waiting for them.
          */
         void stop()
         {
-            synchronized(entities)
+            synchronized(pending)
             {
-                stopped = true;
-                entities.notifyAll();
+                for (PendingDiscovery discovery : pending.values())
+                    discovery.complete(null);
+                pending.clear();
 
-                retrieverThread = null;
+                if (executor != null)
+                {
+                    executor.shutdownNow();
+                    executor = null;
+                }
             }
         }
     }
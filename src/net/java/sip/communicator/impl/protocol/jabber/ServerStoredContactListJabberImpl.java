@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.protocol.jabber;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.customavatar.*;
 import net.java.sip.communicator.service.protocol.*;
@@ -114,6 +115,19 @@
      */
     private String initialStatusMessage = null;
 
+    /**
+     * The groups in which contacts have last been found by their lower case
+     * bare addresses. Lookups through this index are verified against the
+     * groups so that a stale entry only costs a full search.
+     */
+    private final Map<String, ContactGroupJabberImpl> contactGroupIndex
+        = new ConcurrentHashMap<String, ContactGroupJabberImpl>();
+
+    /**
+     * The name of the group of the contacts which are not in the roster.
+     */
+    private String nonPersistentGroupName = null;
+
     /**
      * Creates a ServerStoredContactList wrapper for the specified BuddyList.
      *
@@ -393,9 +407,20 @@ private ContactGroupJabberImpl findContactGroupByNameCopy(String name)
      */
     public ContactJabberImpl findContactById(String id)
     {
-        Iterator<ContactGroup> contactGroups = rootGroup.subgroups();
         ContactJabberImpl result = null;
         String userId = StringUtils.parseBareAddress(id);
+        String indexKey = userId.toLowerCase();
+        ContactGroupJabberImpl indexedGroup = contactGroupIndex.get(indexKey);
+
+        if (indexedGroup != null && rootGroup.containsSubGroup(indexedGroup))
+        {
+            result = indexedGroup.findContact(userId);
+
+            if (result != null)
+                return result;
+        }
+
+        Iterator<ContactGroup> contactGroups = rootGroup.subgroups();
 
         while(contactGroups.hasNext())
         {
@@ -405,8 +430,12 @@ public ContactJabberImpl findContactById(String id)
             result = contactGroup.findContact(userId);
 
             if (result != null)
+            {
+                contactGroupIndex.put(indexKey, contactGroup);
                 return result;
+            }
         }
+        contactGroupIndex.remove(indexKey);
 
         //check for private contacts
         ContactGroupJabberImpl volatileGroup
@@ -434,8 +463,18 @@ public ContactJabberImpl findContactById(String id)
      */
     public ContactGroup findContactGroup(ContactJabberImpl child)
     {
-        Iterator<ContactGroup> contactGroups = rootGroup.subgroups();
         String contactAddress = child.getAddress();
+        String indexKey = contactAddress.toLowerCase();
+        ContactGroupJabberImpl indexedGroup = contactGroupIndex.get(indexKey);
+
+        if (indexedGroup != null
+                && rootGroup.containsSubGroup(indexedGroup)
+                && indexedGroup.findContact(contactAddress) != null)
+        {
+            return indexedGroup;
+        }
+
+        Iterator<ContactGroup> contactGroups = rootGroup.subgroups();
 
         while(contactGroups.hasNext())
         {
@@ -443,7 +482,10 @@ public ContactGroup findContactGroup(ContactJabberImpl child)
                 = (ContactGroupJabberImpl)contactGroups.next();
 
             if( contactGroup.findContact(contactAddress)!= null)
+            {
+                contactGroupIndex.put(indexKey, contactGroup);
                 return contactGroup;
+            }
         }
 
         if ( rootGroup.findContact(contactAddress) != null)
@@ -898,8 +940,17 @@ void init(OperationSetPersistentPresenceJabberImpl.ContactChangesListener
         this.roster.addRosterListener(presenceChangeListener);
         this.roster.setSubscriptionMode(Roster.SubscriptionMode.manual);
 
+        long startTime = System.currentTimeMillis();
+
         initRoster();
 
+        if(logger.isInfoEnabled())
+        {
+            logger.info("Resolved a roster of " + roster.getEntryCount()
+                + " entries in " + roster.getGroupCount() + " groups in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        }
+
         // roster has been requested and dispatched, mark this
         synchronized(rosterInitLock)
         {
@@ -1167,9 +1218,15 @@ private synchronized void initRoster()
      */
     ContactGroupJabberImpl getNonPersistentGroup()
     {
-        String groupName
-            = JabberActivator.getResources().getI18NString(
-                "service.gui.NOT_IN_CONTACT_LIST_GROUP_NAME");
+        String groupName = nonPersistentGroupName;
+
+        if(groupName == null)
+        {
+            groupName
+                = JabberActivator.getResources().getI18NString(
+                    "service.gui.NOT_IN_CONTACT_LIST_GROUP_NAME");
+            nonPersistentGroupName = groupName;
+        }
 
         for (int i = 0; i < getRootGroup().countSubgroups(); i++)
         {
@@ -19,6 +19,7 @@
 
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jivesoftware.smack.packet.*;
 
@@ -36,6 +37,14 @@
 public abstract class AbstractPacketExtension
     implements PacketExtension
 {
+    /**
+     * Caches whether the classes of the extensions we serialize override
+     * {@link #toXML()} and thus have to be serialized with it rather than
+     * streamed with {@link #toXML(StringBuilder)}.
+     */
+    private static final Map<Class<?>, Boolean> overridesToXML
+        = new ConcurrentHashMap<Class<?>, Boolean>();
+
     /**
      * The name space of this packet extension. Should remain <tt>null</tt> if
      * there's no namespace associated with this element.
@@ -122,20 +131,43 @@ public String getNamespace()
      */
     public String toXML()
     {
-        StringBuilder bldr = new StringBuilder();
+        StringBuilder xml = new StringBuilder();
 
-        bldr.append("<").append(getElementName()).append(" ");
+        toXML(xml);
+        return xml.toString();
+    }
+
+    /**
+     * Appends an XML representation of this extension to <tt>xml</tt>. The
+     * child extensions are appended to the same <tt>StringBuilder</tt> rather
+     * than serialized separately, so a whole tree of extensions is serialized
+     * without copying each level into its parent.
+     *
+     * @param xml the <tt>StringBuilder</tt> to append to.
+     */
+    public void toXML(StringBuilder xml)
+    {
+        xml.append("<").append(getElementName()).append(" ");
 
         String namespace = getNamespace();
 
         if(namespace != null)
-            bldr.append("xmlns='").append(namespace).append("'");
+            xml.append("xmlns='").append(namespace).append("'");
 
         //add the rest of the attributes if any
-        for(Map.Entry<String, Object> entry : attributes.entrySet())
+        synchronized(attributes)
         {
-            bldr.append(" ").append(entry.getKey()).append("='")
-                    .append(entry.getValue()).append("'");
+            for(Map.Entry<String, Object> entry : attributes.entrySet())
+            {
+                Object value = entry.getValue();
+
+                if (value == null)
+                    continue;
+
+                xml.append(" ").append(entry.getKey()).append("='");
+                escapeAttributeValue(xml, value.toString());
+                xml.append("'");
+            }
         }
 
         //add child elements if any
@@ -147,11 +179,11 @@ public String toXML()
         {
             if ((text == null) || (text.length() == 0))
             {
-                bldr.append("/>");
-                return bldr.toString();
+                xml.append("/>");
+                return;
             }
             else
-                bldr.append('>');
+                xml.append('>');
         }
         else
         {
@@ -160,28 +192,114 @@ public String toXML()
                 if (childElements.isEmpty() && packets.isEmpty()
                         && ((text == null) || (text.length() == 0)))
                 {
-                    bldr.append("/>");
-                    return bldr.toString();
+                    xml.append("/>");
+                    return;
                 }
                 else
                 {
-                    bldr.append(">");
+                    xml.append(">");
                     for(PacketExtension packExt : childElements)
-                        bldr.append(packExt.toXML());
+                        appendXML(xml, packExt);
                     for(Packet packet : packets)
-                        bldr.append(packet.toXML());
+                        xml.append(packet.toXML());
                 }
             }
         }
 
         //text content if any
         if((text != null) && (text.trim().length() > 0))
-            bldr.append(text);
+            xml.append(text);
+
+        xml.append("</").append(getElementName()).append(">");
+    }
 
-        
-        bldr.append("</").append(getElementName()).append(">");
+    /**
+     * Appends an XML representation of a specific <tt>PacketExtension</tt> to
+     * <tt>xml</tt>, streaming it with {@link #toXML(StringBuilder)} if it is
+     * an <tt>AbstractPacketExtension</tt> which doesn't have its own
+     * {@link #toXML()}.
+     *
+     * @param xml the <tt>StringBuilder</tt> to append to.
+     * @param extension the <tt>PacketExtension</tt> to append.
+     */
+    public static void appendXML(StringBuilder xml, PacketExtension extension)
+    {
+        if(extension instanceof AbstractPacketExtension
+                && !overridesToXML(extension.getClass()))
+            ((AbstractPacketExtension) extension).toXML(xml);
+        else
+            xml.append(extension.toXML());
+    }
 
-        return bldr.toString();
+    /**
+     * Determines whether a specific class overrides {@link #toXML()}.
+     *
+     * @param clazz the class to check.
+     * @return <tt>true</tt> if <tt>clazz</tt> overrides {@link #toXML()}.
+     */
+    private static boolean overridesToXML(Class<?> clazz)
+    {
+        Boolean overrides = overridesToXML.get(clazz);
+
+        if(overrides == null)
+        {
+            try
+            {
+                overrides
+                    = clazz.getMethod("toXML").getDeclaringClass()
+                        != AbstractPacketExtension.class;
+            }
+            catch (NoSuchMethodException e)
+            {
+                // cannot happen, it's a PacketExtension
+                overrides = Boolean.TRUE;
+            }
+            overridesToXML.put(clazz, overrides);
+        }
+        return overrides;
+    }
+
+    /**
+     * Appends a specific attribute value to <tt>xml</tt>, escaping the
+     * characters which are not allowed in XML attribute values.
+     *
+     * @param xml the <tt>StringBuilder</tt> to append to.
+     * @param value the attribute value to append.
+     */
+    public static void escapeAttributeValue(StringBuilder xml, String value)
+    {
+        int length = value.length();
+        int start = 0;
+
+        for(int i = 0; i < length; i++)
+        {
+            String escaped;
+
+            switch(value.charAt(i))
+            {
+            case '&':
+                escaped = "&amp;";
+                break;
+            case '<':
+                escaped = "&lt;";
+                break;
+            case '>':
+                escaped = "&gt;";
+                break;
+            case '\'':
+                escaped = "&apos;";
+                break;
+            case '"':
+                escaped = "&quot;";
+                break;
+            default:
+                continue;
+            }
+
+            xml.append(value, start, i).append(escaped);
+            start = i + 1;
+        }
+        xml.append(value, start, length);
     }
 
     /**
@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions;
 
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import net.java.sip.communicator.service.protocol.jabber.*;
@@ -27,6 +29,16 @@
 /**
  * A provider that parses incoming packet extensions into instances of the
  * {@link Class} that it has been instantiated for.
+ * <p>
+ * Providers of frequently parsed elements may override
+ * {@link #createPacketExtension()} in order to avoid the reflective
+ * instantiation and may register the providers of their known child elements
+ * with {@link #addChildProvider(String, String, PacketExtensionProvider)} so
+ * that they do not have to be looked up in the <tt>ProviderManager</tt> for
+ * every nested element. Child elements which have not been registered that way
+ * are still parsed with the providers registered in the
+ * <tt>ProviderManager</tt>.
+ * </p>
  *
  * @param <C> Class that the packets we will be parsing belong to
  * @author Emil Ivov
@@ -53,6 +65,15 @@
      */
     private final Class<C> packetClass;
 
+    /**
+     * The providers of the known child elements of the packets parsed by this
+     * provider mapped by element name and then by namespace.
+     */
+    private final ConcurrentMap<String, Map<String, PacketExtensionProvider>>
+        childProviders
+            = new ConcurrentHashMap<
+                    String, Map<String, PacketExtensionProvider>>();
+
     /**
      * Creates a new packet provider for the specified packet extensions.
      *
@@ -63,6 +84,90 @@ public DefaultPacketExtensionProvider(Class<C> c)
         this.packetClass = c;
     }
 
+    /**
+     * Registers the provider to be used for the child elements with a specific
+     * name and namespace of the packets parsed by this provider instead of
+     * looking it up in the <tt>ProviderManager</tt>.
+     *
+     * @param elementName the name of the child element
+     * @param namespace the namespace of the child element or <tt>null</tt> if
+     * it does not have a namespace
+     * @param provider the provider to parse the child element with
+     * @return this provider
+     */
+    public DefaultPacketExtensionProvider<C> addChildProvider(
+            String elementName,
+            String namespace,
+            PacketExtensionProvider provider)
+    {
+        Map<String, PacketExtensionProvider> providersByNamespace
+            = childProviders.get(elementName);
+
+        if (providersByNamespace == null)
+        {
+            providersByNamespace
+                = new ConcurrentHashMap<String, PacketExtensionProvider>();
+
+            Map<String, PacketExtensionProvider> existing
+                = childProviders.putIfAbsent(
+                        elementName,
+                        providersByNamespace);
+
+            if (existing != null)
+                providersByNamespace = existing;
+        }
+        providersByNamespace.put(
+                (namespace == null) ? "" : namespace,
+                provider);
+        return this;
+    }
+
+    /**
+     * Creates a new, empty instance of the packets parsed by this provider.
+     * The default implementation instantiates {@link #packetClass}
+     * reflectively.
+     *
+     * @return a new instance of <tt>C</tt>
+     * @throws Exception if the instance could not be created
+     */
+    protected C createPacketExtension()
+        throws Exception
+    {
+        return packetClass.newInstance();
+    }
+
+    /**
+     * Returns the provider of the child elements with a specific name and
+     * namespace. The providers registered with
+     * {@link #addChildProvider(String, String, PacketExtensionProvider)} take
+     * precedence over the ones registered in the <tt>ProviderManager</tt>.
+     *
+     * @param elementName the name of the child element
+     * @param namespace the namespace of the child element
+     * @return the provider to parse the child element with or <tt>null</tt>
+     */
+    private PacketExtensionProvider getChildProvider(
+            String elementName,
+            String namespace)
+    {
+        Map<String, PacketExtensionProvider> providersByNamespace
+            = childProviders.get(elementName);
+
+        if (providersByNamespace != null)
+        {
+            PacketExtensionProvider provider
+                = providersByNamespace.get(
+                        (namespace == null) ? "" : namespace);
+
+            if (provider != null)
+                return provider;
+        }
+        return
+            smackInteroperabilityLayer.getExtensionProvider(
+                    elementName,
+                    namespace);
+    }
+
     /**
      * Parse an extension sub-packet and create a <tt>C</tt> instance. At
      * the beginning of the method call, the xml parser will be positioned on
@@ -77,7 +182,7 @@ public DefaultPacketExtensionProvider(Class<C> c)
      */
     public C parseExtension(XmlPullParser parser) throws Exception
     {
-        C packetExtension = packetClass.newInstance();
+        C packetExtension = createPacketExtension();
 
         //first, set all attributes
         int attrCount = parser.getAttributeCount();
@@ -94,6 +199,7 @@ public C parseExtension(XmlPullParser parser) throws Exception
         int eventType;
         String elementName;
         String namespace;
+        boolean finest = logger.isLoggable(Level.FINEST);
 
         while (!done)
         {
@@ -101,15 +207,15 @@ public C parseExtension(XmlPullParser parser) throws Exception
             elementName = parser.getName();
             namespace = parser.getNamespace();
 
-            if (logger.isLoggable(Level.FINEST))
+            if (finest)
                 logger.finest("Will parse " + elementName
                     + " ns=" + namespace
                     + " class=" + packetExtension.getClass().getSimpleName());
 
             if (eventType == XmlPullParser.START_TAG)
             {
-                PacketExtensionProvider provider = smackInteroperabilityLayer
-                        .getExtensionProvider( elementName, namespace );
+                PacketExtensionProvider provider
+                    = getChildProvider(elementName, namespace);
 
                 if(provider == null)
                 {
@@ -146,7 +252,7 @@ public C parseExtension(XmlPullParser parser) throws Exception
                 packetExtension.setText(text);
             }
 
-            if (logger.isLoggable(Level.FINEST))
+            if (finest)
                 logger.finest("Done parsing " + elementName);
         }
 
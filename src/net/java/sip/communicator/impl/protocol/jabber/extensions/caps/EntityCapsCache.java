@@ -0,0 +1,515 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.caps;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jivesoftware.smack.provider.*;
+import org.jivesoftware.smackx.packet.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Caches the <tt>DiscoverInfo</tt>s associated with entity capabilities. The
+ * most recently used ones are kept in a bounded in-memory cache together with
+ * a bit set of their features and all of them are persisted in a dedicated
+ * directory, one file per node#hash#ver, so that they don't have to be
+ * queried over the network in later application instances.
+ */
+class EntityCapsCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>EntityCapsCache</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(EntityCapsCache.class);
+
+    /**
+     * The character encoding of the files of the cache.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The extension of the files of the cache.
+     */
+    private static final String FILE_EXTENSION = ".xml";
+
+    /**
+     * The indices in the feature bit sets of the features of the cached
+     * <tt>DiscoverInfo</tt>s. The keys are the canonical instances of the
+     * feature strings.
+     */
+    private static final ConcurrentMap<String, Integer> featureIndices
+        = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The directory in which the <tt>DiscoverInfo</tt>s are persisted or
+     * <tt>null</tt> if they are only cached in memory.
+     */
+    private final File directory;
+
+    /**
+     * The most recently used <tt>DiscoverInfo</tt>s.
+     */
+    private final Map<EntityCapsManager.Caps, CachedCaps> entries;
+
+    /**
+     * Initializes a new <tt>EntityCapsCache</tt>.
+     *
+     * @param directory the directory in which the <tt>DiscoverInfo</tt>s are
+     * to be persisted or <tt>null</tt> to only cache them in memory
+     * @param capacity the maximum number of <tt>DiscoverInfo</tt>s to be kept
+     * in memory
+     */
+    EntityCapsCache(File directory, final int capacity)
+    {
+        this.directory = directory;
+        entries
+            = new LinkedHashMap<EntityCapsManager.Caps, CachedCaps>(
+                    16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 0L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<EntityCapsManager.Caps, CachedCaps> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+    }
+
+    /**
+     * Gets the <tt>DiscoverInfo</tt> associated with a specific <tt>Caps</tt>
+     * either from memory or from disk.
+     *
+     * @param caps the <tt>Caps</tt> i.e. the node, the hash and the ver
+     * @return the <tt>DiscoverInfo</tt> associated with <tt>caps</tt> or
+     * <tt>null</tt> if none is known or the persisted one is not valid
+     */
+    synchronized DiscoverInfo get(EntityCapsManager.Caps caps)
+    {
+        CachedCaps entry = getEntry(caps);
+
+        return (entry == null) ? null : entry.info;
+    }
+
+    /**
+     * Determines whether the <tt>DiscoverInfo</tt> associated with a specific
+     * <tt>Caps</tt> lists a specific feature.
+     *
+     * @param caps the <tt>Caps</tt> i.e. the node, the hash and the ver
+     * @param feature the feature to check
+     * @return <tt>true</tt> if the <tt>DiscoverInfo</tt> associated with
+     * <tt>caps</tt> is known and lists <tt>feature</tt>; otherwise,
+     * <tt>false</tt>
+     */
+    synchronized boolean supportsFeature(
+            EntityCapsManager.Caps caps,
+            String feature)
+    {
+        CachedCaps entry = getEntry(caps);
+
+        if (entry == null)
+            return false;
+
+        Integer index = featureIndices.get(feature);
+
+        return (index != null) && entry.features.get(index);
+    }
+
+    /**
+     * Associates a <tt>DiscoverInfo</tt> with a specific <tt>Caps</tt> and
+     * persists it if it is a new association.
+     *
+     * @param caps the <tt>Caps</tt> i.e. the node, the hash and the ver
+     * @param info the <tt>DiscoverInfo</tt> to associate with <tt>caps</tt>
+     */
+    synchronized void put(EntityCapsManager.Caps caps, DiscoverInfo info)
+    {
+        CachedCaps oldEntry = entries.put(caps, new CachedCaps(info));
+        String xml = info.getChildElementXML();
+
+        if ((xml == null) || (xml.length() == 0))
+            return;
+
+        /*
+         * DiscoverInfo does not override equals so compare the XML in order to
+         * not rewrite the file every time the same caps are received.
+         */
+        String key = getKey(caps);
+        String oldXml
+            = (oldEntry == null)
+                ? read(key)
+                : oldEntry.info.getChildElementXML();
+
+        if (!xml.equals(oldXml))
+            write(key, xml);
+    }
+
+    /**
+     * Moves the <tt>DiscoverInfo</tt>s persisted by previous versions as
+     * <tt>ConfigurationService</tt> properties into this cache and removes
+     * the properties which have been written successfully.
+     *
+     * @param cfg the <tt>ConfigurationService</tt> to migrate from
+     * @param prefix the prefix of the names of the properties to migrate
+     */
+    synchronized void migrate(ConfigurationService cfg, String prefix)
+    {
+        if (directory == null)
+            return;
+
+        List<String> propertyNames
+            = cfg.getPropertyNamesByPrefix(prefix, false);
+
+        if ((propertyNames == null) || propertyNames.isEmpty())
+            return;
+
+        int migrated = 0;
+
+        for (String propertyName : propertyNames)
+        {
+            String xml = cfg.getString(propertyName);
+
+            if ((xml == null) || (xml.length() == 0))
+            {
+                cfg.removeProperty(propertyName);
+            }
+            else if (write(propertyName.substring(prefix.length()), xml))
+            {
+                /*
+                 * Only drop the property once the file is there, otherwise
+                 * the next start will try again.
+                 */
+                cfg.removeProperty(propertyName);
+                migrated++;
+            }
+        }
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Migrated " + migrated
+                        + " entity capabilities out of the configuration.");
+        }
+    }
+
+    /**
+     * Gets the <tt>CachedCaps</tt> associated with a specific <tt>Caps</tt>
+     * either from memory or from disk.
+     *
+     * @param caps the <tt>Caps</tt> i.e. the node, the hash and the ver
+     * @return the <tt>CachedCaps</tt> associated with <tt>caps</tt> or
+     * <tt>null</tt>
+     */
+    private CachedCaps getEntry(EntityCapsManager.Caps caps)
+    {
+        CachedCaps entry = entries.get(caps);
+
+        if ((entry == null) && (directory != null))
+        {
+            String key = getKey(caps);
+            String xml = read(key);
+
+            if (xml != null)
+            {
+                DiscoverInfo info = parse(xml);
+
+                if ((info != null) && caps.isValid(info))
+                {
+                    entry = new CachedCaps(info);
+                    entries.put(caps, entry);
+                }
+                else
+                {
+                    logger.error(
+                            "Invalid DiscoverInfo for " + caps.getNodeVer()
+                                + ": " + info);
+                    /*
+                     * The discoverInfo doesn't seem valid according to the
+                     * caps which means that we must have stored invalid
+                     * information. Delete the invalid information in order to
+                     * not try to validate it again.
+                     */
+                    getFile(key).delete();
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the file in which the <tt>DiscoverInfo</tt> associated with a
+     * specific node#hash#ver is persisted.
+     *
+     * @param key the node#hash#ver
+     * @return the file in which the <tt>DiscoverInfo</tt> associated with
+     * <tt>key</tt> is persisted
+     */
+    private File getFile(String key)
+    {
+        StringBuilder name = new StringBuilder(40 + FILE_EXTENSION.length());
+
+        try
+        {
+            byte[] digest
+                = MessageDigest.getInstance("SHA-1").digest(
+                        key.getBytes(ENCODING));
+
+            for (byte b : digest)
+            {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+        }
+        catch (GeneralSecurityException gse)
+        {
+            throw new IllegalStateException(gse);
+        }
+        catch (UnsupportedEncodingException uee)
+        {
+            throw new IllegalStateException(uee);
+        }
+        name.append(FILE_EXTENSION);
+        return new File(directory, name.toString());
+    }
+
+    /**
+     * Reads the XML of the <tt>DiscoverInfo</tt> persisted for a specific
+     * node#hash#ver.
+     *
+     * @param key the node#hash#ver
+     * @return the XML of the <tt>DiscoverInfo</tt> persisted for <tt>key</tt>
+     * or <tt>null</tt>
+     */
+    private String read(String key)
+    {
+        File file = getFile(key);
+
+        if (!file.isFile())
+            return null;
+
+        BufferedReader reader = null;
+
+        try
+        {
+            reader
+                = new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(file),
+                                ENCODING));
+
+            // The first line holds the key in order to rule out collisions.
+            if (!key.equals(reader.readLine()))
+                return null;
+
+            StringBuilder xml = new StringBuilder();
+            char[] buffer = new char[1024];
+            int length;
+
+            while ((length = reader.read(buffer)) != -1)
+                xml.append(buffer, 0, length);
+            return xml.toString();
+        }
+        catch (IOException ioe)
+        {
+            logger.warn("Failed to read entity capabilities from " + file, ioe);
+            return null;
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the XML of the <tt>DiscoverInfo</tt> associated with a
+     * specific node#hash#ver.
+     *
+     * @param key the node#hash#ver
+     * @param xml the XML of the <tt>DiscoverInfo</tt> associated with
+     * <tt>key</tt>
+     * @return <tt>true</tt> if <tt>xml</tt> has been persisted; otherwise,
+     * <tt>false</tt>
+     */
+    private boolean write(String key, String xml)
+    {
+        if (directory == null)
+            return false;
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            logger.warn("Failed to create directory: " + directory);
+            return false;
+        }
+
+        File file = getFile(key);
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+        Writer writer = null;
+        boolean written = false;
+
+        try
+        {
+            writer
+                = new OutputStreamWriter(
+                        new FileOutputStream(tmpFile),
+                        ENCODING);
+            writer.write(key);
+            writer.write('\n');
+            writer.write(xml);
+            writer.close();
+            writer = null;
+
+            written
+                = tmpFile.renameTo(file)
+                    || (file.delete() && tmpFile.renameTo(file));
+        }
+        catch (IOException ioe)
+        {
+            logger.warn("Failed to write entity capabilities to " + file, ioe);
+        }
+        finally
+        {
+            if (writer != null)
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+            if (!written)
+                tmpFile.delete();
+        }
+        return written;
+    }
+
+    /**
+     * Gets the node#hash#ver which identifies a specific <tt>Caps</tt> in the
+     * persistent store.
+     *
+     * @param caps the <tt>Caps</tt>
+     * @return the node#hash#ver which identifies <tt>caps</tt>
+     */
+    static String getKey(EntityCapsManager.Caps caps)
+    {
+        return caps.node + '#' + caps.hash + '#' + caps.ver;
+    }
+
+    /**
+     * Parses the XML of a <tt>DiscoverInfo</tt>.
+     *
+     * @param xml the XML to parse
+     * @return the parsed <tt>DiscoverInfo</tt> or <tt>null</tt> if
+     * <tt>xml</tt> could not be parsed
+     */
+    private static DiscoverInfo parse(String xml)
+    {
+        IQProvider discoverInfoProvider
+            = (IQProvider)
+                ProviderManager.getInstance().getIQProvider(
+                        "query",
+                        "http://jabber.org/protocol/disco#info");
+
+        if (discoverInfoProvider == null)
+            return null;
+
+        XmlPullParser parser = new MXParser();
+
+        try
+        {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new StringReader(xml));
+            // Start the parser.
+            parser.next();
+            return (DiscoverInfo) discoverInfoProvider.parseIQ(parser);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the index in the feature bit sets of a specific feature, assigning
+     * a new one if the feature has not been seen before.
+     *
+     * @param feature the feature
+     * @return the index in the feature bit sets of <tt>feature</tt>
+     */
+    private static int getFeatureIndex(String feature)
+    {
+        Integer index = featureIndices.get(feature);
+
+        if (index == null)
+        {
+            synchronized (featureIndices)
+            {
+                index = featureIndices.get(feature);
+                if (index == null)
+                {
+                    index = featureIndices.size();
+                    featureIndices.put(feature.intern(), index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * A <tt>DiscoverInfo</tt> together with the bit set of its features.
+     */
+    private static class CachedCaps
+    {
+        /**
+         * The bit set of the features of {@link #info} indexed by
+         * {@link EntityCapsCache#getFeatureIndex(String)}.
+         */
+        final BitSet features = new BitSet();
+
+        final DiscoverInfo info;
+
+        CachedCaps(DiscoverInfo info)
+        {
+            this.info = info;
+
+            Iterator<DiscoverInfo.Feature> iter
+                = EntityCapsManager.getDiscoverInfoFeatures(info);
+
+            while (iter.hasNext())
+                features.set(getFeatureIndex(iter.next().getVar()));
+        }
+    }
+}
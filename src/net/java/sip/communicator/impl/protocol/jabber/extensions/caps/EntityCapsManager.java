@@ -27,6 +27,7 @@
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 import org.jitsi.util.OSUtils;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
@@ -37,8 +38,6 @@
 import org.jivesoftware.smackx.*;
 import org.jivesoftware.smackx.packet.*;
 import org.osgi.framework.*;
-import org.xmlpull.mxp1.*;
-import org.xmlpull.v1.*;
 
 /**
  * Keeps track of entity capabilities.
@@ -68,8 +67,9 @@
     private static ConfigurationService configService;
 
     /**
-     * The prefix of the <tt>ConfigurationService</tt> properties which persist
-     * {@link #caps2discoverInfo}.
+     * The prefix of the <tt>ConfigurationService</tt> properties in which
+     * previous versions persisted the <tt>DiscoverInfo</tt>s associated with
+     * entity capabilities. They are migrated into {@link #capsCache}.
      */
     private static final String CAPS_PROPERTY_NAME_PREFIX
         = "net.java.sip.communicator.impl.protocol.jabber.extensions.caps."
@@ -89,17 +89,36 @@
         = OSUtils.IS_ANDROID ? "http://android.jitsi.org" : "http://jitsi.org";
 
     /**
-     * The <tt>Map</tt> of <tt>Caps</tt> to <tt>DiscoverInfo</tt> which
-     * associates a node#ver with the entity capabilities so that they don't
-     * have to be retrieved every time their necessary. Because ver is
-     * constructed from the entity capabilities using a specific hash method,
-     * the hash method is also associated with the entity capabilities along
-     * with the node and the ver in order to disambiguate cases of equal ver
-     * values for different entity capabilities constructed using different hash
-     * methods.
+     * The name of the property which specifies the maximum number of
+     * <tt>DiscoverInfo</tt>s associated with entity capabilities to be kept
+     * in memory.
      */
-    private static final Map<Caps, DiscoverInfo> caps2discoverInfo
-        = new ConcurrentHashMap<Caps, DiscoverInfo>();
+    public static final String CAPS_CACHE_SIZE_PNAME
+        = "net.java.sip.communicator.impl.protocol.jabber.extensions.caps."
+            + "EntityCapsManager.CACHE_SIZE";
+
+    /**
+     * The default maximum number of <tt>DiscoverInfo</tt>s associated with
+     * entity capabilities to be kept in memory.
+     */
+    private static final int CAPS_CACHE_SIZE_DEFAULT = 256;
+
+    /**
+     * The name of the directory in which the <tt>DiscoverInfo</tt>s
+     * associated with entity capabilities are persisted.
+     */
+    private static final String CAPS_CACHE_DIR = "entitycaps";
+
+    /**
+     * The cache which associates a node#ver with the entity capabilities so
+     * that they don't have to be retrieved every time their necessary.
+     * Because ver is constructed from the entity capabilities using a
+     * specific hash method, the hash method is also associated with the
+     * entity capabilities along with the node and the ver in order to
+     * disambiguate cases of equal ver values for different entity
+     * capabilities constructed using different hash methods.
+     */
+    private static EntityCapsCache capsCache;
 
     /**
      * Map of Full JID -&gt; DiscoverInfo/null. In case of c2s connection the
@@ -158,42 +177,7 @@ public static void addDiscoverInfoByCaps(Caps caps, DiscoverInfo info)
          */
         info.setNode(caps.getNodeVer());
 
-        synchronized (caps2discoverInfo)
-        {
-            DiscoverInfo oldInfo = caps2discoverInfo.put(caps, info);
-
-            /*
-             * If the specified info is a new association for the specified
-             * node, remember it across application instances in order to not
-             * query for it over the network.
-             */
-            if ((oldInfo == null) || !oldInfo.equals(info))
-            {
-                String xml = info.getChildElementXML();
-
-                if ((xml != null) && (xml.length() != 0))
-                {
-                    getConfigService()
-                        .setProperty(getCapsPropertyName(caps), xml);
-                }
-            }
-        }
-    }
-
-    /**
-     * Gets the name of the property in the <tt>ConfigurationService</tt> which
-     * is or is to be associated with a specific <tt>Caps</tt> value.
-     *
-     * @param caps the <tt>Caps</tt> value for which the associated
-     * <tt>ConfigurationService</tt> property name is to be returned
-     * @return the name of the property in the <tt>ConfigurationService</tt>
-     * which is or is to be associated with a specific <tt>Caps</tt> value
-     */
-    private static String getCapsPropertyName(Caps caps)
-    {
-        return
-            CAPS_PROPERTY_NAME_PREFIX
-                + caps.node + '#' + caps.hash + '#' + caps.ver;
+        getCapsCache().put(caps, info);
     }
 
     /**
@@ -219,6 +203,10 @@ public static void setBundleContext(BundleContext bundleContext)
         if (bundleContext == null)
         {
             configService = null;
+            synchronized (EntityCapsManager.class)
+            {
+                capsCache = null;
+            }
         }
         EntityCapsManager.bundleContext = bundleContext;
     }
@@ -486,90 +474,74 @@ public void setNode(String node)
      */
     public static DiscoverInfo getDiscoverInfoByCaps(Caps caps)
     {
-        synchronized (caps2discoverInfo)
-        {
-            DiscoverInfo discoverInfo = caps2discoverInfo.get(caps);
-
-            /*
-             * If we don't have the discoverInfo in the runtime cache yet, we
-             * may have it remembered in a previous application instance.
-             */
-            if (discoverInfo == null)
-            {
-                ConfigurationService configurationService
-                    = getConfigService();
-                String capsPropertyName = getCapsPropertyName(caps);
-                String xml = configurationService.getString(capsPropertyName);
+        return getCapsCache().get(caps);
+    }
 
-                if ((xml != null) && (xml.length() != 0))
-                {
-                    IQProvider discoverInfoProvider
-                        = (IQProvider)
-                            ProviderManager.getInstance().getIQProvider(
-                                    "query",
-                                    "http://jabber.org/protocol/disco#info");
+    /**
+     * Determines whether the <tt>DiscoverInfo</tt> associated with a specific
+     * <tt>Caps</tt> lists a specific feature without iterating over its
+     * features.
+     *
+     * @param caps the <tt>Caps</tt> i.e. the node, the hash and the ver
+     * @param feature the feature to check
+     * @return <tt>true</tt> if the <tt>DiscoverInfo</tt> associated with
+     * <tt>caps</tt> is known and lists <tt>feature</tt>; otherwise,
+     * <tt>false</tt>
+     */
+    public static boolean supportsFeature(Caps caps, String feature)
+    {
+        return getCapsCache().supportsFeature(caps, feature);
+    }
 
-                    if (discoverInfoProvider != null)
-                    {
-                        XmlPullParser parser = new MXParser();
+    /**
+     * Gets the cache of the <tt>DiscoverInfo</tt>s associated with entity
+     * capabilities, creating it and migrating the ones persisted in the
+     * <tt>ConfigurationService</tt> by previous versions on first use.
+     *
+     * @return the cache of the <tt>DiscoverInfo</tt>s associated with entity
+     * capabilities
+     */
+    private static EntityCapsCache getCapsCache()
+    {
+        synchronized (EntityCapsManager.class)
+        {
+            if (capsCache == null)
+            {
+                ConfigurationService cfg = getConfigService();
+                int capacity = CAPS_CACHE_SIZE_DEFAULT;
+                File directory = null;
 
-                        try
-                        {
-                            parser.setFeature(
-                                    XmlPullParser.FEATURE_PROCESS_NAMESPACES,
-                                    true);
-                            parser.setInput(new StringReader(xml));
-                            // Start the parser.
-                            parser.next();
-                        }
-                        catch (XmlPullParserException xppex)
-                        {
-                            parser = null;
-                        }
-                        catch (IOException ioex)
-                        {
-                            parser = null;
-                        }
+                if (cfg != null)
+                    capacity = cfg.getInt(CAPS_CACHE_SIZE_PNAME, capacity);
 
-                        if (parser != null)
-                        {
-                            try
-                            {
-                                discoverInfo
-                                    = (DiscoverInfo)
-                                        discoverInfoProvider.parseIQ(parser);
-                            }
-                            catch (Exception ex)
-                            {
-                            }
+                FileAccessService fileAccessService
+                    = (bundleContext == null)
+                        ? null
+                        : ServiceUtils.getService(
+                                bundleContext, FileAccessService.class);
 
-                            if (discoverInfo != null)
-                            {
-                                if (caps.isValid(discoverInfo))
-                                    caps2discoverInfo.put(caps, discoverInfo);
-                                else
-                                {
-                                    logger.error(
-                                            "Invalid DiscoverInfo for "
-                                                + caps.getNodeVer()
-                                                + ": "
-                                                + discoverInfo);
-                                    /*
-                                     * The discoverInfo doesn't seem valid
-                                     * according to the caps which means that we
-                                     * must have stored invalid information.
-                                     * Delete the invalid information in order
-                                     * to not try to validate it again.
-                                     */
-                                    configurationService.removeProperty(
-                                            capsPropertyName);
-                                }
-                            }
-                        }
+                if (fileAccessService != null)
+                {
+                    try
+                    {
+                        directory
+                            = fileAccessService.getPrivatePersistentDirectory(
+                                    CAPS_CACHE_DIR, FileCategory.CACHE);
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error(
+                                "Failed to get the entity capabilities cache"
+                                    + " directory.",
+                                e);
                     }
                 }
+
+                capsCache = new EntityCapsCache(directory, capacity);
+                if (cfg != null)
+                    capsCache.migrate(cfg, CAPS_PROPERTY_NAME_PREFIX);
             }
-            return discoverInfo;
+            return capsCache;
         }
     }
 
@@ -596,7 +568,7 @@ private static void cleanupDiscoverInfo(DiscoverInfo info)
      * features of the specified <tt>discoverInfo</tt>
      */
     @SuppressWarnings("unchecked")
-    private static Iterator<DiscoverInfo.Feature> getDiscoverInfoFeatures(
+    static Iterator<DiscoverInfo.Feature> getDiscoverInfoFeatures(
             DiscoverInfo discoverInfo)
     {
         Method getFeaturesMethod;
@@ -17,7 +17,9 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.colibri;
 
+import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
@@ -93,18 +95,59 @@
      * The list of {@link ChannelBundle}s included into this <tt>conference</tt>
      * IQ.
      */
-    private final List<ChannelBundle> channelBundles
-        = new LinkedList<ChannelBundle>();
+    private final IdIndexedList<ChannelBundle> channelBundles
+        = new IdIndexedList<ChannelBundle>()
+        {
+            @Override
+            protected IdOwners getIdOwners(ChannelBundle channelBundle)
+            {
+                return channelBundle.idOwners;
+            }
+
+            @Override
+            protected String getId(ChannelBundle channelBundle)
+            {
+                return channelBundle.getId();
+            }
+        };
 
     /**
      * The list of {@link Content}s included into this <tt>conference</tt> IQ.
      */
-    private final List<Content> contents = new LinkedList<Content>();
+    private final IdIndexedList<Content> contents
+        = new IdIndexedList<Content>()
+        {
+            @Override
+            protected IdOwners getIdOwners(Content content)
+            {
+                return content.idOwners;
+            }
+
+            @Override
+            protected String getId(Content content)
+            {
+                return content.getName();
+            }
+        };
 
     /**
      * The list of <tt>Endpoint</tt>s included into this <tt>conference</tt> IQ.
      */
-    private final List<Endpoint> endpoints = new LinkedList<Endpoint>();
+    private final IdIndexedList<Endpoint> endpoints
+        = new IdIndexedList<Endpoint>()
+        {
+            @Override
+            protected IdOwners getIdOwners(Endpoint endpoint)
+            {
+                return endpoint.idOwners;
+            }
+
+            @Override
+            protected String getId(Endpoint endpoint)
+            {
+                return endpoint.getId();
+            }
+        };
 
     /**
      * The ID of the conference represented by this IQ.
@@ -177,10 +220,7 @@ public boolean addChannelBundle(ChannelBundle channelBundle)
         if (channelBundle == null)
             throw new NullPointerException("channelBundle");
 
-        return
-            channelBundles.contains(channelBundle)
-               ? false
-               : channelBundles.add(channelBundle);
+        return channelBundles.add(channelBundle);
     }
 
     /**
@@ -200,7 +240,7 @@ public boolean addContent(Content content)
         if (content == null)
             throw new NullPointerException("content");
 
-        return contents.contains(content) ? false : contents.add(content);
+        return contents.add(content);
     }
 
     /**
@@ -225,6 +265,9 @@ public boolean addContent(String contentName)
      */
     public void addEndpoint(Endpoint endpoint)
     {
+        if (endpoint == null)
+            throw new NullPointerException("endpoint");
+
         endpoints.add(endpoint);
     }
 
@@ -237,7 +280,7 @@ public void addEndpoint(Endpoint endpoint)
      */
     public List<ChannelBundle> getChannelBundles()
     {
-        return Collections.unmodifiableList(channelBundles);
+        return channelBundles.asList();
     }
 
     /**
@@ -248,18 +291,7 @@ public List<ChannelBundle> getChannelBundles()
      */
     public ChannelBundle getChannelBundle(String bundleId)
     {
-        if (bundleId == null)
-        {
-            return null;
-        }
-        for (ChannelBundle bundle : channelBundles)
-        {
-            if (bundleId.equals(bundle.getId()))
-            {
-                return bundle;
-            }
-        }
-        return null;
+        return channelBundles.get(bundleId);
     }
 
     /**
@@ -341,12 +373,7 @@ public String getChildElementXML()
      */
     public Content getContent(String contentName)
     {
-        for (Content content : getContents())
-        {
-            if (contentName.equals(content.getName()))
-                return content;
-        }
-        return null;
+        return contents.get(contentName);
     }
 
     /**
@@ -358,7 +385,7 @@ public Content getContent(String contentName)
      */
     public List<Content> getContents()
     {
-        return Collections.unmodifiableList(contents);
+        return contents.asList();
     }
 
     /**
@@ -369,7 +396,20 @@ public List<Content> getContents()
      */
     public List<Endpoint> getEndpoints()
     {
-        return Collections.unmodifiableList(endpoints);
+        return endpoints.asList();
+    }
+
+    /**
+     * Finds the <tt>Endpoint</tt> included in this
+     * <tt>ColibriConferenceIQ</tt> which has a specific ID.
+     *
+     * @param endpointId the ID of the <tt>Endpoint</tt> to be returned
+     * @return the <tt>Endpoint</tt> identified by <tt>endpointId</tt> or
+     * <tt>null</tt> if not found.
+     */
+    public Endpoint getEndpoint(String endpointId)
+    {
+        return endpoints.get(endpointId);
     }
 
     /**
@@ -702,13 +742,27 @@ public void setName(String name)
         /**
          * The <tt>SourceGroupPacketExtension</tt>s of this channel.
          */
-        private List<SourceGroupPacketExtension> sourceGroups;
+        private Set<SourceGroupPacketExtension> sourceGroups;
+
+        /**
+         * The read-only snapshot of {@link #sourceGroups} returned by
+         * {@link #getSourceGroups()}. Reset to <tt>null</tt> whenever
+         * <tt>sourceGroups</tt> is modified.
+         */
+        private List<SourceGroupPacketExtension> sourceGroupsView;
 
         /**
          * The <tt>SourcePacketExtension</tt>s of this channel.
          */
-        private final List<SourcePacketExtension> sources
-            = new LinkedList<>();
+        private final Set<SourcePacketExtension> sources
+            = new LinkedHashSet<>();
+
+        /**
+         * The read-only snapshot of {@link #sources} returned by
+         * {@link #getSources()}. Reset to <tt>null</tt> whenever
+         * <tt>sources</tt> is modified.
+         */
+        private List<SourcePacketExtension> sourcesView;
 
         /**
          * The list of (RTP) SSRCs which have been seen/received on this
@@ -807,7 +861,11 @@ public synchronized boolean addSource(SourcePacketExtension source)
             if (source == null)
                 throw new NullPointerException("source");
 
-            return sources.contains(source) ? false : sources.add(source);
+            if (!sources.add(source))
+                return false;
+
+            sourcesView = null;
+            return true;
         }
 
         /**
@@ -827,12 +885,13 @@ public synchronized boolean addSourceGroup(
                 throw new NullPointerException("sourceGroup");
 
             if (sourceGroups == null)
-                sourceGroups = new LinkedList<SourceGroupPacketExtension>();
+                sourceGroups = new LinkedHashSet<SourceGroupPacketExtension>();
 
-            return
-                sourceGroups.contains(sourceGroup)
-                    ? false
-                    : sourceGroups.add(sourceGroup);
+            if (!sourceGroups.add(sourceGroup))
+                return false;
+
+            sourceGroupsView = null;
+            return true;
         }
 
         /**
@@ -1017,27 +1076,45 @@ public int getRTPPort()
          * Gets the list of <tt>SourceGroupPacketExtensions</tt>s which
          * represent the source groups of this channel.
          *
-         * @return a <tt>List</tt> of <tt>SourceGroupPacketExtension</tt>s which
-         * represent the source groups of this channel
+         * @return an unmodifiable <tt>List</tt> of
+         * <tt>SourceGroupPacketExtension</tt>s which represent the source
+         * groups of this channel or <tt>null</tt> if no source group has ever
+         * been added. The list is a snapshot which is only copied again after
+         * the source groups of this channel have been modified.
          */
         public synchronized List<SourceGroupPacketExtension> getSourceGroups()
         {
-            return
-                (sourceGroups == null)
-                    ? null
-                    : new ArrayList<SourceGroupPacketExtension>(sourceGroups);
+            if (sourceGroups == null)
+                return null;
+
+            if (sourceGroupsView == null)
+            {
+                sourceGroupsView
+                    = Collections.unmodifiableList(
+                            new ArrayList<SourceGroupPacketExtension>(
+                                    sourceGroups));
+            }
+            return sourceGroupsView;
         }
 
         /**
          * Gets the list of <tt>SourcePacketExtensions</tt>s which represent the
          * sources of this channel.
          *
-         * @return a <tt>List</tt> of <tt>SourcePacketExtension</tt>s which
-         * represent the sources of this channel
+         * @return an unmodifiable <tt>List</tt> of
+         * <tt>SourcePacketExtension</tt>s which represent the sources of this
+         * channel. The list is a snapshot which is only copied again after the
+         * sources of this channel have been modified.
          */
         public synchronized List<SourcePacketExtension> getSources()
         {
-            return new ArrayList<SourcePacketExtension>(sources);
+            if (sourcesView == null)
+            {
+                sourcesView
+                    = Collections.unmodifiableList(
+                            new ArrayList<SourcePacketExtension>(sources));
+            }
+            return sourcesView;
         }
 
         /**
@@ -1061,7 +1138,7 @@ protected boolean hasContent()
                 return true;
 
             List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
-            if (sourceGroups != null && !getSourceGroups().isEmpty())
+            if (sourceGroups != null && !sourceGroups.isEmpty())
                 return true;
 
             List<SourcePacketExtension> sources = getSources();
@@ -1159,17 +1236,17 @@ protected void printContent(StringBuilder xml)
             int[] ssrcs = getSSRCs();
 
             for (PayloadTypePacketExtension payloadType : payloadTypes)
-                xml.append(payloadType.toXML());
+                AbstractPacketExtension.appendXML(xml, payloadType);
 
             for (RTPHdrExtPacketExtension ext : rtpHdrExtPacketExtensions)
-                xml.append(ext.toXML());
+                AbstractPacketExtension.appendXML(xml, ext);
 
             for (SourcePacketExtension source : sources)
-                xml.append(source.toXML());
+                AbstractPacketExtension.appendXML(xml, source);
 
             if (sourceGroups != null && sourceGroups.size() != 0)
                 for (SourceGroupPacketExtension sourceGroup : sourceGroups)
-                    xml.append(sourceGroup.toXML());
+                    AbstractPacketExtension.appendXML(xml, sourceGroup);
 
             for (int i = 0; i < ssrcs.length; i++)
             {
@@ -1232,7 +1309,11 @@ public void removeRtpHeaderExtension(RTPHdrExtPacketExtension ext)
          */
         public synchronized boolean removeSource(SourcePacketExtension source)
         {
-            return sources.remove(source);
+            if (!sources.remove(source))
+                return false;
+
+            sourcesView = null;
+            return true;
         }
 
         /**
@@ -1560,6 +1641,11 @@ protected void printContent(StringBuilder xml)
          */
         private String id;
 
+        /**
+         * The {@link IdIndexedList}s which contain this <tt>ChannelBundle</tt>.
+         */
+        private final IdOwners idOwners = new IdOwners();
+
         /**
          * The transport element of this <tt>ChannelBundle</tt>.
          */
@@ -1598,6 +1684,7 @@ public IceUdpTransportPacketExtension getTransport()
          */
         public void setId(String id)
         {
+            idOwners.idChanged(this.id, id);
             this.id = id;
         }
 
@@ -1623,7 +1710,7 @@ public void toXML(StringBuilder xml)
             if (transport != null)
             {
                 xml.append('>');
-                xml.append(transport.toXML());
+                AbstractPacketExtension.appendXML(xml, transport);
                 xml.append("</").append(ELEMENT_NAME).append('>');
             }
             else
@@ -1714,6 +1801,11 @@ public void toXML(StringBuilder xml)
          */
         private String id;
 
+        /**
+         * The {@link IdIndexedList}s which contain this <tt>channel</tt>.
+         */
+        private final IdOwners idOwners = new IdOwners();
+
         /**
          * The indicator which determines whether the conference focus is the
          * initiator/offerer (as opposed to the responder/answerer) of the media
@@ -1874,6 +1966,7 @@ public void setExpire(int expire)
          */
         public void setID(String id)
         {
+            idOwners.idChanged(this.id, id);
             this.id = id;
         }
 
@@ -1964,7 +2057,7 @@ public void toXML(StringBuilder xml)
                 if(hasContent())
                     printContent(xml);
                 if (hasTransport)
-                    xml.append(transport.toXML());
+                    AbstractPacketExtension.appendXML(xml, transport);
                 xml.append("</").append(elementName).append('>');
             }
             else
@@ -1997,19 +2090,51 @@ public void toXML(StringBuilder xml)
          * The list of {@link Channel}s included into this <tt>content</tt> of a
          * <tt>conference</tt> IQ.
          */
-        private final List<Channel> channels = new LinkedList<Channel>();
+        private final IdIndexedList<Channel> channels
+            = new IdIndexedList<Channel>()
+            {
+                @Override
+                protected IdOwners getIdOwners(Channel channel)
+                {
+                    return ((ChannelCommon) channel).idOwners;
+                }
+
+                @Override
+                protected String getId(Channel channel)
+                {
+                    return channel.getID();
+                }
+            };
 
         /**
          * The name of the <tt>content</tt> represented by this instance.
          */
         private String name;
 
+        /**
+         * The {@link IdIndexedList}s which contain this <tt>Content</tt>.
+         */
+        private final IdOwners idOwners = new IdOwners();
+
         /**
          * The list of {@link SctpConnection}s included into this
          * <tt>content</tt> of a <tt>conference</tt> IQ.
          */
-        private final List<SctpConnection> sctpConnections
-            = new LinkedList<SctpConnection>();
+        private final IdIndexedList<SctpConnection> sctpConnections
+            = new IdIndexedList<SctpConnection>()
+            {
+                @Override
+                protected IdOwners getIdOwners(SctpConnection conn)
+                {
+                    return ((ChannelCommon) conn).idOwners;
+                }
+
+                @Override
+                protected String getId(SctpConnection conn)
+                {
+                    return conn.getID();
+                }
+            };
 
         /**
          * Initializes a new <tt>Content</tt> instance without a name and
@@ -2047,7 +2172,7 @@ public boolean addChannel(Channel channel)
             if (channel == null)
                 throw new NullPointerException("channel");
 
-            return channels.contains(channel) ? false : channels.add(channel);
+            return channels.add(channel);
         }
 
         /**
@@ -2086,7 +2211,7 @@ public boolean addSctpConnection(SctpConnection conn)
             if(conn == null)
                 throw new NullPointerException("Sctp connection");
 
-            return !sctpConnections.contains(conn) && sctpConnections.add(conn);
+            return sctpConnections.add(conn);
         }
 
         /**
@@ -2102,7 +2227,7 @@ public boolean addSctpConnection(SctpConnection conn)
          */
         public Channel getChannel(int channelIndex)
         {
-            return getChannels().get(channelIndex);
+            return channels.asList().get(channelIndex);
         }
 
         /**
@@ -2117,12 +2242,7 @@ public Channel getChannel(int channelIndex)
          */
         public Channel getChannel(String channelID)
         {
-            for (Channel channel : getChannels())
-            {
-                if (channelID.equals(channel.getID()))
-                    return channel;
-            }
-            return null;
+            return channels.get(channelID);
         }
 
         /**
@@ -2134,10 +2254,7 @@ public Channel getChannel(String channelID)
          */
         public SctpConnection getSctpConnection(String connectionID)
         {
-            for (SctpConnection conn : getSctpConnections())
-                if (connectionID.equals(conn.getID()))
-                    return conn;
-            return null;
+            return sctpConnections.get(connectionID);
         }
 
         /**
@@ -2149,7 +2266,7 @@ public SctpConnection getSctpConnection(String connectionID)
          */
         public int getChannelCount()
         {
-            return getChannels().size();
+            return channels.size();
         }
 
         /**
@@ -2161,7 +2278,7 @@ public int getChannelCount()
          */
         public List<Channel> getChannels()
         {
-            return Collections.unmodifiableList(channels);
+            return channels.asList();
         }
 
         /**
@@ -2183,7 +2300,7 @@ public String getName()
          */
         public List<SctpConnection> getSctpConnections()
         {
-            return Collections.unmodifiableList(sctpConnections);
+            return sctpConnections.asList();
         }
 
         /**
@@ -2214,6 +2331,7 @@ public void setName(String name)
             if (name == null)
                 throw new NullPointerException("name");
 
+            idOwners.idChanged(this.name, name);
             this.name = name;
         }
 
@@ -2291,6 +2409,11 @@ public boolean removeSctpConnection(SctpConnection connection)
          */
         private String id;
 
+        /**
+         * The {@link IdIndexedList}s which contain this <tt>Endpoint</tt>.
+         */
+        private final IdOwners idOwners = new IdOwners();
+
         /**
          * Initializes a new <tt>Endpoint</tt> with the given ID and display
          * name.
@@ -2336,6 +2459,7 @@ public void setDisplayName(String displayName)
          */
         public void setId(String id)
         {
+            idOwners.idChanged(this.id, id);
             this.id = id;
         }
     }
@@ -2651,4 +2775,289 @@ public void setPort(int port)
             this.port = port;
         }
     }
+
+    /**
+     * The {@link IdIndexedList}s which contain an element. They are told when
+     * the ID of the element changes, so that they rebuild their ID indexes.
+     * The lists are only weakly referenced, because elements such as
+     * <tt>Channel</tt>s are shared between IQs and must not keep transient
+     * IQs reachable from long-lived conference state.
+     */
+    private static class IdOwners
+    {
+        /**
+         * The lists containing the element.
+         */
+        private final List<WeakReference<IdIndexedList<?>>> lists
+            = new CopyOnWriteArrayList<WeakReference<IdIndexedList<?>>>();
+
+        /**
+         * Notes that the element has been added to a specific list.
+         *
+         * @param list the list
+         */
+        void add(IdIndexedList<?> list)
+        {
+            remove(null);
+            lists.add(new WeakReference<IdIndexedList<?>>(list));
+        }
+
+        /**
+         * Notes that the element has been removed from a specific list. The
+         * references to lists which have been garbage collected are dropped
+         * as well.
+         *
+         * @param list the list or <tt>null</tt> to only drop the references
+         * to lists which have been garbage collected
+         */
+        void remove(IdIndexedList<?> list)
+        {
+            for (WeakReference<IdIndexedList<?>> ref : lists)
+            {
+                IdIndexedList<?> l = ref.get();
+
+                if (l == null || l == list)
+                    lists.remove(ref);
+            }
+        }
+
+        /**
+         * Notes that the ID of the element is changing from <tt>oldId</tt> to
+         * <tt>newId</tt>.
+         *
+         * @param oldId the current ID of the element
+         * @param newId the ID the element is about to be given
+         */
+        void idChanged(String oldId, String newId)
+        {
+            if (oldId != null && !oldId.equals(newId))
+            {
+                for (WeakReference<IdIndexedList<?>> ref : lists)
+                {
+                    IdIndexedList<?> list = ref.get();
+
+                    if (list == null)
+                        lists.remove(ref);
+                    else
+                        list.idChanged();
+                }
+            }
+        }
+    }
+
+    /**
+     * An ordered list of elements which also indexes them by ID so that the
+     * lookups performed while building or analysing conferences with many
+     * endpoints do not have to scan the whole list. The order of insertion is
+     * preserved for serialization and elements are compared by identity, just
+     * like the <tt>LinkedList</tt>s which were used before.
+     * <p>
+     * Since the IDs of the elements may be changed after they have been
+     * added, every hit in the index is verified and the index is rebuilt on a
+     * miss if an element without an ID has been added or if the ID of one of
+     * the elements has changed since the last rebuild. The index is guarded
+     * by the monitor of the list, so concurrent lookups never observe it half
+     * built.
+     * </p>
+     *
+     * @param <T> the type of the elements
+     */
+    private static abstract class IdIndexedList<T>
+    {
+        /**
+         * The elements in the order in which they have been added.
+         */
+        private final List<T> list = new ArrayList<T>();
+
+        /**
+         * The read-only view of {@link #list} handed out to callers.
+         */
+        private final List<T> view = Collections.unmodifiableList(list);
+
+        /**
+         * The elements of {@link #list} used to reject duplicates.
+         */
+        private final Set<T> members
+            = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+
+        /**
+         * Maps IDs to the first element of {@link #list} with that ID.
+         */
+        private final Map<String, T> index = new HashMap<String, T>();
+
+        /**
+         * Incremented whenever the ID of an element of this list changes from
+         * one non-<tt>null</tt> value to another.
+         */
+        private int idGeneration = 0;
+
+        /**
+         * The value of {@link #idGeneration} when {@link #index} was last
+         * rebuilt.
+         */
+        private int indexGeneration = 0;
+
+        /**
+         * Whether {@link #list} may contain elements which are missing from
+         * {@link #index}.
+         */
+        private boolean indexIncomplete;
+
+        /**
+         * Whether more than one element of {@link #list} has the same ID.
+         */
+        private boolean duplicateIds;
+
+        /**
+         * Returns the ID of a specific element.
+         *
+         * @param element the element
+         * @return the ID of <tt>element</tt> or <tt>null</tt>
+         */
+        protected abstract String getId(T element);
+
+        /**
+         * Returns the lists which contain a specific element.
+         *
+         * @param element the element
+         * @return the <tt>IdOwners</tt> of <tt>element</tt>
+         */
+        protected abstract IdOwners getIdOwners(T element);
+
+        /**
+         * Appends an element unless it is already in this list.
+         *
+         * @param element the element to add
+         * @return <tt>true</tt> if this list has been modified
+         */
+        synchronized boolean add(T element)
+        {
+            if (!members.add(element))
+                return false;
+
+            list.add(element);
+            getIdOwners(element).add(this);
+
+            String id = getId(element);
+
+            if (id == null)
+                indexIncomplete = true;
+            else if (index.containsKey(id))
+                duplicateIds = true;
+            else
+                index.put(id, element);
+            return true;
+        }
+
+        /**
+         * Returns a read-only view of the elements of this list.
+         *
+         * @return an unmodifiable <tt>List</tt> of the elements
+         */
+        List<T> asList()
+        {
+            return view;
+        }
+
+        /**
+         * Returns the first element which has a specific ID.
+         *
+         * @param id the ID of the element to return
+         * @return the first element with the given <tt>id</tt> or
+         * <tt>null</tt> if there is no such element
+         */
+        synchronized T get(String id)
+        {
+            if (id == null)
+                return null;
+
+            T element = index.get(id);
+
+            if (element != null && id.equals(getId(element)))
+                return element;
+
+            if (element != null
+                    || indexIncomplete
+                    || indexGeneration != idGeneration)
+            {
+                reindex();
+                element = index.get(id);
+            }
+            return element;
+        }
+
+        /**
+         * Notes that the ID of one of the elements of this list has changed.
+         */
+        synchronized void idChanged()
+        {
+            idGeneration++;
+        }
+
+        /**
+         * Removes an element from this list.
+         *
+         * @param element the element to remove
+         * @return <tt>true</tt> if this list has been modified
+         */
+        synchronized boolean remove(T element)
+        {
+            if (element == null || !members.remove(element))
+                return false;
+
+            for (Iterator<T> i = list.iterator(); i.hasNext();)
+            {
+                if (i.next() == element)
+                {
+                    i.remove();
+                    break;
+                }
+            }
+            getIdOwners(element).remove(this);
+
+            String id = getId(element);
+
+            if (id != null && index.get(id) == element)
+            {
+                index.remove(id);
+                // Another element with the same ID has to be found by a scan.
+                if (duplicateIds)
+                    indexIncomplete = true;
+            }
+            return true;
+        }
+
+        /**
+         * Rebuilds {@link #index} from {@link #list}. Must be called while
+         * holding the monitor of this list.
+         */
+        private void reindex()
+        {
+            indexGeneration = idGeneration;
+            indexIncomplete = false;
+            duplicateIds = false;
+            index.clear();
+            for (T element : list)
+            {
+                String id = getId(element);
+
+                if (id == null)
+                    indexIncomplete = true;
+                else if (index.containsKey(id))
+                    duplicateIds = true;
+                else
+                    index.put(id, element);
+            }
+        }
+
+        /**
+         * Returns the number of elements in this list.
+         *
+         * @return the number of elements in this list
+         */
+        synchronized int size()
+        {
+            return list.size();
+        }
+    }
 }
@@ -43,35 +43,69 @@
      */
     private AbstractSmackInteroperabilityLayer smackInteroperabilityLayer =
             AbstractSmackInteroperabilityLayer.getInstance();
-    
+
+    /**
+     * The provider of the <tt>payload-type</tt> children of channels.
+     */
+    private final PacketExtensionProvider payloadTypeProvider
+        = JingleExtensionProviders.createPayloadTypeProvider(
+                ColibriConferenceIQ.NAMESPACE);
+
+    /**
+     * The provider of the <tt>rtp-hdrext</tt> children of channels.
+     */
+    private final PacketExtensionProvider rtpHdrExtProvider
+        = new DefaultPacketExtensionProvider<RTPHdrExtPacketExtension>(
+                RTPHdrExtPacketExtension.class);
+
+    /**
+     * The provider of the <tt>source</tt> elements.
+     */
+    private final DefaultPacketExtensionProvider<SourcePacketExtension>
+        sourceProvider = JingleExtensionProviders.createSourceProvider();
+
+    /**
+     * The provider of the <tt>ssrc-group</tt> children of channels.
+     */
+    private final PacketExtensionProvider sourceGroupProvider
+        = JingleExtensionProviders.createSourceGroupProvider(sourceProvider);
+
+    /**
+     * The provider of the ICE-UDP <tt>transport</tt> children of channels,
+     * SCTP connections and channel bundles.
+     */
+    private final PacketExtensionProvider iceUdpTransportProvider
+        = JingleExtensionProviders.createIceUdpTransportProvider();
+
+    /**
+     * The provider of the RAW-UDP <tt>transport</tt> children of channels.
+     */
+    private final PacketExtensionProvider rawUdpTransportProvider
+        = JingleExtensionProviders.createRawUdpTransportProvider();
+
     /** Initializes a new <tt>ColibriIQProvider</tt> instance. */
     public ColibriIQProvider()
     {
         smackInteroperabilityLayer.addExtensionProvider(
                 PayloadTypePacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
-                new DefaultPacketExtensionProvider<PayloadTypePacketExtension>(
-                        PayloadTypePacketExtension.class));
+                payloadTypeProvider);
         smackInteroperabilityLayer.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<RtcpFbPacketExtension>(
-                        RtcpFbPacketExtension.class));
+                JingleExtensionProviders.createRtcpFbProvider());
         smackInteroperabilityLayer.addExtensionProvider(
                 RTPHdrExtPacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
-                new DefaultPacketExtensionProvider<RTPHdrExtPacketExtension>(
-                        RTPHdrExtPacketExtension.class));
+                rtpHdrExtProvider);
         smackInteroperabilityLayer.addExtensionProvider(
                 SourcePacketExtension.ELEMENT_NAME,
                 SourcePacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<SourcePacketExtension>(
-                        SourcePacketExtension.class));
+                sourceProvider);
         smackInteroperabilityLayer.addExtensionProvider(
                 SourceGroupPacketExtension.ELEMENT_NAME,
                 SourceGroupPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<SourceGroupPacketExtension>(
-                        SourceGroupPacketExtension.class));
+                sourceGroupProvider);
         smackInteroperabilityLayer.addExtensionProvider(
                 SourceRidGroupPacketExtension.ELEMENT_NAME,
                 SourceRidGroupPacketExtension.NAMESPACE,
@@ -79,8 +113,7 @@ public ColibriIQProvider()
                         SourceRidGroupPacketExtension.class));
 
         PacketExtensionProvider parameterProvider
-                = new DefaultPacketExtensionProvider<ParameterPacketExtension>(
-                ParameterPacketExtension.class);
+                = JingleExtensionProviders.createParameterProvider();
 
         smackInteroperabilityLayer.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
@@ -210,6 +243,47 @@ private void addChildExtension(
         }
     }
 
+    /**
+     * Returns the provider of the child elements of channels, SCTP connections
+     * and channel bundles with a specific name and namespace. The elements
+     * which are parsed most often are handled by the providers of this
+     * instance without looking them up in the <tt>ProviderManager</tt>.
+     *
+     * @param name the name of the element
+     * @param namespace the namespace of the element
+     * @return the provider of the element or <tt>null</tt>
+     */
+    private PacketExtensionProvider getExtensionProvider(
+            String name,
+            String namespace)
+    {
+        if (ColibriConferenceIQ.NAMESPACE.equals(namespace))
+        {
+            if (PayloadTypePacketExtension.ELEMENT_NAME.equals(name))
+                return payloadTypeProvider;
+            if (RTPHdrExtPacketExtension.ELEMENT_NAME.equals(name))
+                return rtpHdrExtProvider;
+        }
+        else if (SourcePacketExtension.NAMESPACE.equals(namespace))
+        {
+            if (SourcePacketExtension.ELEMENT_NAME.equals(name))
+                return sourceProvider;
+            if (SourceGroupPacketExtension.ELEMENT_NAME.equals(name))
+                return sourceGroupProvider;
+        }
+        else if (IceUdpTransportPacketExtension.NAMESPACE.equals(namespace))
+        {
+            if (IceUdpTransportPacketExtension.ELEMENT_NAME.equals(name))
+                return iceUdpTransportProvider;
+        }
+        else if (RawUdpTransportPacketExtension.NAMESPACE.equals(namespace))
+        {
+            if (RawUdpTransportPacketExtension.ELEMENT_NAME.equals(name))
+                return rawUdpTransportProvider;
+        }
+        return smackInteroperabilityLayer.getExtensionProvider(name, namespace);
+    }
+
     private PacketExtension parseExtension(
             XmlPullParser parser,
             String name,
@@ -217,9 +291,7 @@ private PacketExtension parseExtension(
         throws Exception
     {
         PacketExtensionProvider extensionProvider
-            = smackInteroperabilityLayer.getExtensionProvider(
-                        name,
-                        namespace);
+            = getExtensionProvider(name, namespace);
         PacketExtension extension;
 
         if (extensionProvider == null)
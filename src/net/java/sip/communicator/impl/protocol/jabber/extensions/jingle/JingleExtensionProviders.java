@@ -0,0 +1,271 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jitsimeet.*;
+
+/**
+ * Creates the providers of the Jingle and COLIBRI elements which are parsed
+ * most often, e.g. during bursts of <tt>source-add</tt> and
+ * <tt>transport-info</tt> in large calls. The returned providers instantiate
+ * their extensions without reflection and parse their known child elements
+ * with the providers they have been wired with instead of looking them up in
+ * the <tt>ProviderManager</tt> for every element.
+ */
+public final class JingleExtensionProviders
+{
+    /**
+     * Creates a provider for <tt>parameter</tt> elements.
+     *
+     * @return a provider for <tt>parameter</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<ParameterPacketExtension>
+        createParameterProvider()
+    {
+        return
+            new DefaultPacketExtensionProvider<ParameterPacketExtension>(
+                    ParameterPacketExtension.class)
+            {
+                @Override
+                protected ParameterPacketExtension createPacketExtension()
+                {
+                    return new ParameterPacketExtension();
+                }
+            };
+    }
+
+    /**
+     * Creates a provider for <tt>rtcp-fb</tt> elements.
+     *
+     * @return a provider for <tt>rtcp-fb</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<RtcpFbPacketExtension>
+        createRtcpFbProvider()
+    {
+        return
+            new DefaultPacketExtensionProvider<RtcpFbPacketExtension>(
+                    RtcpFbPacketExtension.class)
+            {
+                @Override
+                protected RtcpFbPacketExtension createPacketExtension()
+                {
+                    return new RtcpFbPacketExtension();
+                }
+            };
+    }
+
+    /**
+     * Creates a provider for <tt>payload-type</tt> elements which parses
+     * their <tt>parameter</tt> and <tt>rtcp-fb</tt> children directly.
+     *
+     * @param namespace the namespace of the <tt>payload-type</tt> (and
+     * <tt>parameter</tt>) elements which differs between Jingle and COLIBRI
+     * @return a provider for <tt>payload-type</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<PayloadTypePacketExtension>
+        createPayloadTypeProvider(String namespace)
+    {
+        DefaultPacketExtensionProvider<PayloadTypePacketExtension> provider
+            = new DefaultPacketExtensionProvider<PayloadTypePacketExtension>(
+                    PayloadTypePacketExtension.class)
+            {
+                @Override
+                protected PayloadTypePacketExtension createPacketExtension()
+                {
+                    return new PayloadTypePacketExtension();
+                }
+            };
+
+        provider.addChildProvider(
+                ParameterPacketExtension.ELEMENT_NAME,
+                namespace,
+                createParameterProvider());
+        provider.addChildProvider(
+                RtcpFbPacketExtension.ELEMENT_NAME,
+                RtcpFbPacketExtension.NAMESPACE,
+                createRtcpFbProvider());
+        return provider;
+    }
+
+    /**
+     * Creates a provider for <tt>source</tt> elements which parses their
+     * <tt>parameter</tt> and <tt>ssrc-info</tt> children directly.
+     *
+     * @return a provider for <tt>source</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<SourcePacketExtension>
+        createSourceProvider()
+    {
+        DefaultPacketExtensionProvider<SourcePacketExtension> provider
+            = new DefaultPacketExtensionProvider<SourcePacketExtension>(
+                    SourcePacketExtension.class)
+            {
+                @Override
+                protected SourcePacketExtension createPacketExtension()
+                {
+                    return new SourcePacketExtension();
+                }
+            };
+
+        provider.addChildProvider(
+                ParameterPacketExtension.ELEMENT_NAME,
+                SourcePacketExtension.NAMESPACE,
+                createParameterProvider());
+        provider.addChildProvider(
+                SSRCInfoPacketExtension.ELEMENT_NAME,
+                SSRCInfoPacketExtension.NAMESPACE,
+                new DefaultPacketExtensionProvider<SSRCInfoPacketExtension>(
+                        SSRCInfoPacketExtension.class)
+                {
+                    @Override
+                    protected SSRCInfoPacketExtension createPacketExtension()
+                    {
+                        return new SSRCInfoPacketExtension();
+                    }
+                });
+        return provider;
+    }
+
+    /**
+     * Creates a provider for <tt>ssrc-group</tt> elements which parses their
+     * <tt>source</tt> children with a specific provider.
+     *
+     * @param sourceProvider the provider of the <tt>source</tt> children
+     * @return a provider for <tt>ssrc-group</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<SourceGroupPacketExtension>
+        createSourceGroupProvider(
+            DefaultPacketExtensionProvider<SourcePacketExtension>
+                sourceProvider)
+    {
+        DefaultPacketExtensionProvider<SourceGroupPacketExtension> provider
+            = new DefaultPacketExtensionProvider<SourceGroupPacketExtension>(
+                    SourceGroupPacketExtension.class)
+            {
+                @Override
+                protected SourceGroupPacketExtension createPacketExtension()
+                {
+                    return new SourceGroupPacketExtension();
+                }
+            };
+
+        provider.addChildProvider(
+                SourcePacketExtension.ELEMENT_NAME,
+                SourcePacketExtension.NAMESPACE,
+                sourceProvider);
+        return provider;
+    }
+
+    /**
+     * Creates a provider for <tt>candidate</tt> elements.
+     *
+     * @return a provider for <tt>candidate</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<CandidatePacketExtension>
+        createCandidateProvider()
+    {
+        return
+            new DefaultPacketExtensionProvider<CandidatePacketExtension>(
+                    CandidatePacketExtension.class)
+            {
+                @Override
+                protected CandidatePacketExtension createPacketExtension()
+                {
+                    return new CandidatePacketExtension();
+                }
+            };
+    }
+
+    /**
+     * Creates a provider for ICE-UDP <tt>transport</tt> elements which parses
+     * their <tt>candidate</tt>, <tt>remote-candidate</tt>, <tt>rtcp-mux</tt>
+     * and <tt>fingerprint</tt> children directly.
+     *
+     * @return a provider for ICE-UDP <tt>transport</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<IceUdpTransportPacketExtension>
+        createIceUdpTransportProvider()
+    {
+        DefaultPacketExtensionProvider<IceUdpTransportPacketExtension> provider
+            = new DefaultPacketExtensionProvider
+                    <IceUdpTransportPacketExtension>(
+                    IceUdpTransportPacketExtension.class)
+            {
+                @Override
+                protected IceUdpTransportPacketExtension
+                    createPacketExtension()
+                {
+                    return new IceUdpTransportPacketExtension();
+                }
+            };
+
+        provider.addChildProvider(
+                CandidatePacketExtension.ELEMENT_NAME,
+                IceUdpTransportPacketExtension.NAMESPACE,
+                createCandidateProvider());
+        provider.addChildProvider(
+                RemoteCandidatePacketExtension.ELEMENT_NAME,
+                IceUdpTransportPacketExtension.NAMESPACE,
+                new DefaultPacketExtensionProvider
+                        <RemoteCandidatePacketExtension>(
+                        RemoteCandidatePacketExtension.class));
+        provider.addChildProvider(
+                RtcpmuxPacketExtension.ELEMENT_NAME,
+                IceUdpTransportPacketExtension.NAMESPACE,
+                new DefaultPacketExtensionProvider<RtcpmuxPacketExtension>(
+                        RtcpmuxPacketExtension.class));
+        provider.addChildProvider(
+                DtlsFingerprintPacketExtension.ELEMENT_NAME,
+                DtlsFingerprintPacketExtension.NAMESPACE,
+                new DefaultPacketExtensionProvider
+                        <DtlsFingerprintPacketExtension>(
+                        DtlsFingerprintPacketExtension.class));
+        return provider;
+    }
+
+    /**
+     * Creates a provider for RAW-UDP <tt>transport</tt> elements which parses
+     * their <tt>candidate</tt> children directly.
+     *
+     * @return a provider for RAW-UDP <tt>transport</tt> elements
+     */
+    public static DefaultPacketExtensionProvider<RawUdpTransportPacketExtension>
+        createRawUdpTransportProvider()
+    {
+        DefaultPacketExtensionProvider<RawUdpTransportPacketExtension> provider
+            = new DefaultPacketExtensionProvider
+                    <RawUdpTransportPacketExtension>(
+                    RawUdpTransportPacketExtension.class);
+
+        provider.addChildProvider(
+                CandidatePacketExtension.ELEMENT_NAME,
+                RawUdpTransportPacketExtension.NAMESPACE,
+                createCandidateProvider());
+        return provider;
+    }
+
+    /**
+     * Prevents the initialization of <tt>JingleExtensionProviders</tt>
+     * instances.
+     */
+    private JingleExtensionProviders()
+    {
+    }
+}
@@ -32,6 +32,15 @@
  */
 public class JingleIQProvider implements IQProvider
 {
+    /**
+     * The provider of the <tt>content</tt> elements of Jingle IQs. Parses the
+     * RTP descriptions and transports, which make up most of the Jingle
+     * traffic, without looking up their providers in the
+     * <tt>ProviderManager</tt>.
+     */
+    private final DefaultPacketExtensionProvider<ContentPacketExtension>
+        contentProvider;
+
     /**
      * Creates a new instance of the <tt>JingleIQProvider</tt> and register all
      * jingle related extension providers. It is the responsibility of the
@@ -43,37 +52,87 @@ public JingleIQProvider()
         AbstractSmackInteroperabilityLayer smackInteroperabilityLayer = 
                 AbstractSmackInteroperabilityLayer.getInstance();
 
+        DefaultPacketExtensionProvider<PayloadTypePacketExtension>
+            payloadTypeProvider
+                = JingleExtensionProviders.createPayloadTypeProvider(
+                        RtpDescriptionPacketExtension.NAMESPACE);
+        DefaultPacketExtensionProvider<RTPHdrExtPacketExtension>
+            rtpHdrExtProvider
+                = new DefaultPacketExtensionProvider
+                        <RTPHdrExtPacketExtension>
+                        (RTPHdrExtPacketExtension.class);
+        DefaultPacketExtensionProvider<SourcePacketExtension> sourceProvider
+            = JingleExtensionProviders.createSourceProvider();
+        DefaultPacketExtensionProvider<RtpDescriptionPacketExtension>
+            descriptionProvider
+                = new DefaultPacketExtensionProvider
+                        <RtpDescriptionPacketExtension>(
+                        RtpDescriptionPacketExtension.class);
+
+        descriptionProvider.addChildProvider(
+                PayloadTypePacketExtension.ELEMENT_NAME,
+                RtpDescriptionPacketExtension.NAMESPACE,
+                payloadTypeProvider);
+        descriptionProvider.addChildProvider(
+                RTPHdrExtPacketExtension.ELEMENT_NAME,
+                RTPHdrExtPacketExtension.NAMESPACE,
+                rtpHdrExtProvider);
+        descriptionProvider.addChildProvider(
+                SourcePacketExtension.ELEMENT_NAME,
+                SourcePacketExtension.NAMESPACE,
+                sourceProvider);
+        descriptionProvider.addChildProvider(
+                SourceGroupPacketExtension.ELEMENT_NAME,
+                SourceGroupPacketExtension.NAMESPACE,
+                JingleExtensionProviders.createSourceGroupProvider(
+                        sourceProvider));
+
+        DefaultPacketExtensionProvider<IceUdpTransportPacketExtension>
+            iceUdpTransportProvider
+                = JingleExtensionProviders.createIceUdpTransportProvider();
+        DefaultPacketExtensionProvider<RawUdpTransportPacketExtension>
+            rawUdpTransportProvider
+                = JingleExtensionProviders.createRawUdpTransportProvider();
+
+        contentProvider
+            = new DefaultPacketExtensionProvider<ContentPacketExtension>(
+                    ContentPacketExtension.class);
+        contentProvider.addChildProvider(
+                RtpDescriptionPacketExtension.ELEMENT_NAME,
+                RtpDescriptionPacketExtension.NAMESPACE,
+                descriptionProvider);
+        contentProvider.addChildProvider(
+                IceUdpTransportPacketExtension.ELEMENT_NAME,
+                IceUdpTransportPacketExtension.NAMESPACE,
+                iceUdpTransportProvider);
+        contentProvider.addChildProvider(
+                RawUdpTransportPacketExtension.ELEMENT_NAME,
+                RawUdpTransportPacketExtension.NAMESPACE,
+                rawUdpTransportProvider);
+
         //<description/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 RtpDescriptionPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <RtpDescriptionPacketExtension>(
-                        RtpDescriptionPacketExtension.class));
+                descriptionProvider);
 
         //<payload-type/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 PayloadTypePacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <PayloadTypePacketExtension>(
-                        PayloadTypePacketExtension.class));
+                payloadTypeProvider);
 
         //<parameter/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <ParameterPacketExtension>
-                        (ParameterPacketExtension.class));
+                JingleExtensionProviders.createParameterProvider());
 
         //<rtp-hdrext/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 RTPHdrExtPacketExtension.ELEMENT_NAME,
                 RTPHdrExtPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <RTPHdrExtPacketExtension>
-                        (RTPHdrExtPacketExtension.class));
+                rtpHdrExtProvider);
 
         // <sctpmap/> provider
         smackInteroperabilityLayer.addExtensionProvider(
@@ -124,33 +183,25 @@ public JingleIQProvider()
         smackInteroperabilityLayer.addExtensionProvider(
                 IceUdpTransportPacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <IceUdpTransportPacketExtension>(
-                        IceUdpTransportPacketExtension.class));
+                iceUdpTransportProvider);
 
         //<raw-udp/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 RawUdpTransportPacketExtension.ELEMENT_NAME,
                 RawUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <RawUdpTransportPacketExtension>(
-                        RawUdpTransportPacketExtension.class));
+                rawUdpTransportProvider);
 
         //ice-udp <candidate/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 CandidatePacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                JingleExtensionProviders.createCandidateProvider());
 
         //raw-udp <candidate/> provider
         smackInteroperabilityLayer.addExtensionProvider(
                 CandidatePacketExtension.ELEMENT_NAME,
                 RawUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider
-                        <CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                JingleExtensionProviders.createCandidateProvider());
 
         //ice-udp <remote-candidate/> provider
         smackInteroperabilityLayer.addExtensionProvider(
@@ -208,8 +259,7 @@ public JingleIQProvider()
         smackInteroperabilityLayer.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<RtcpFbPacketExtension>(
-                        RtcpFbPacketExtension.class));
+                JingleExtensionProviders.createRtcpFbProvider());
 
         //rtcp-mux
         smackInteroperabilityLayer.addExtensionProvider(
@@ -265,9 +315,6 @@ public JingleIQ parseIQ(XmlPullParser parser)
         boolean done = false;
 
         // Sub-elements providers
-        DefaultPacketExtensionProvider<ContentPacketExtension> contentProvider
-            = new DefaultPacketExtensionProvider<ContentPacketExtension>(
-                    ContentPacketExtension.class);
         ReasonProvider reasonProvider = new ReasonProvider();
         DefaultPacketExtensionProvider<TransferPacketExtension> transferProvider
             = new DefaultPacketExtensionProvider<TransferPacketExtension>(
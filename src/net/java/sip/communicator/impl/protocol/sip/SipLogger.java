@@ -47,11 +47,43 @@
     private static final Logger logger
         = Logger.getLogger(SipLogger.class);
 
+    /**
+     * The max number of TCP/TLS connections we cache the local address for.
+     */
+    private static final int LOCAL_ADDRESS_CACHE_SIZE = 64;
+
+    /**
+     * The time in milliseconds a cached local address of a TCP/TLS connection
+     * is considered valid. Connections may be closed and reopened from
+     * another local port, so we do not keep them forever.
+     */
+    private static final long LOCAL_ADDRESS_CACHE_TTL = 10000;
+
     /**
      * SipStack to use.
      */
     private SipStack sipStack;
 
+    /**
+     * The local addresses of the TCP/TLS connections we have logged packets
+     * for, so we don't ask the stack for them on every logged message.
+     * Maps the transport, remote address and port and the local address of
+     * the connection to its local socket address and the time it was
+     * resolved.
+     */
+    private final Map<String, CachedLocalAddress> localAddressCache
+        = new LinkedHashMap<String, CachedLocalAddress>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CachedLocalAddress> eldest)
+            {
+                return size() > LOCAL_ADDRESS_CACHE_SIZE;
+            }
+        };
+
     /*
      * Implementation of StackLogger
      */
@@ -148,16 +180,19 @@ public boolean isLoggingEnabled()
      *
      * @param logLevel the level that we'd like to check loggability for.
      *
-     * @return always <tt>true</tt> regardless of <tt>logLevel</tt>'s value.
+     * @return <tt>false</tt> for <tt>TRACE_NONE</tt>, whether debug logging
+     * is enabled for <tt>TRACE_DEBUG</tt>, whether debug or packet logging is
+     * enabled for <tt>TRACE_MESSAGES</tt> and <tt>true</tt> otherwise.
      */
     public boolean isLoggingEnabled(int logLevel)
     {
-        // always enable trace messages so we can receive packets
-        // and log them to packet logging service
+        // enable trace messages only when we need to receive packets
+        // and log them to packet logging service, or dump them in the debug
+        // log, so the stack doesn't prepare them for nothing
         if (logLevel == TRACE_DEBUG)
             return logger.isDebugEnabled();
         if (logLevel == TRACE_MESSAGES)         // same as TRACE_INFO
-            return true;
+            return logger.isDebugEnabled() || isPacketLoggingEnabled();
         if (logLevel == TRACE_NONE)
             return false;
 
@@ -269,6 +304,21 @@ public void logMessage(SIPMessage message, String from, String to,
         }
     }
 
+    /**
+     * Checks whether logging of SIP packets to the packet logging service is
+     * enabled.
+     *
+     * @return <tt>true</tt> if SIP packets are logged.
+     */
+    private static boolean isPacketLoggingEnabled()
+    {
+        PacketLoggingService packetLogging = SipActivator.getPacketLogging();
+
+        return packetLogging != null
+            && packetLogging.isLoggingEnabled(
+                    PacketLoggingService.ProtocolName.SIP);
+    }
+
     /**
      * Logs the specified message and details to the packet logging service
      * if enabled.
@@ -280,14 +330,13 @@ private void logPacket(SIPMessage message, boolean sender)
     {
         try
         {
-            PacketLoggingService packetLogging = SipActivator.getPacketLogging();
-            if( packetLogging == null
-                || !packetLogging.isLoggingEnabled(
-                        PacketLoggingService.ProtocolName.SIP)
+            if(!isPacketLoggingEnabled()
                 /* Via not present in CRLF packet on TCP - causes NPE */
                 || message.getTopmostVia() == null )
                 return;
 
+            PacketLoggingService packetLogging = SipActivator.getPacketLogging();
+
             String transport = message.getTopmostVia().getTransport();
             boolean isTransportUDP = transport.equalsIgnoreCase("UDP");
 
@@ -304,7 +353,7 @@ private void logPacket(SIPMessage message, boolean sender)
                 if(!isTransportUDP)
                 {
                     InetSocketAddress localAddress =
-                        getLocalAddressForDestination(
+                        getCachedLocalAddressForDestination(
                             message.getRemoteAddress(),
                             message.getRemotePort(),
                             message.getLocalAddress(),
@@ -345,13 +394,23 @@ else if(message.getRemoteAddress() != null)
                 if(!isTransportUDP)
                 {
                     InetSocketAddress dstAddress =
-                        getLocalAddressForDestination(
+                        getCachedLocalAddressForDestination(
                             message.getRemoteAddress(),
                             message.getRemotePort(),
                             message.getLocalAddress(),
                             transport);
-                    dstPort = dstAddress.getPort();
-                    dstAddr = dstAddress.getAddress().getAddress();
+                    if (dstAddress != null)
+                    {
+                        dstPort = dstAddress.getPort();
+                        dstAddr = dstAddress.getAddress().getAddress();
+                    }
+                    else
+                    {
+                        logger.warn("Could not obtain destination address for "
+                            + " packet. Writing destination as 0.0.0.0:0");
+                        dstPort = 0;
+                        dstAddr = new byte[] { 0, 0, 0, 0 };
+                    }
                 }
                 else
                 {
@@ -390,14 +449,15 @@ else if(message.getRemoteAddress() != null)
                         byte[] newContent =  new byte[len];
                         Arrays.fill(newContent, (byte)'.');
                         newReq.setMessageContent(newContent);
-                        msg = newReq.toString().getBytes("UTF-8");
+                        msg = newReq.encodeAsBytes(transport);
                     }
                 }
             }
 
+            // encode straight to bytes, without going through a String
             if(msg == null)
             {
-                msg = message.toString().getBytes("UTF-8");
+                msg = message.encodeAsBytes(transport);
             }
 
             packetLogging.logPacket(
@@ -426,7 +486,7 @@ else if(message.getRemoteAddress() != null)
     public void logMessage(SIPMessage message, String from, String to,
                            String status, boolean sender)
     {
-        if (!logger.isInfoEnabled())
+        if (!logger.isDebugEnabled())
             return;
 
         String msgHeader;
@@ -436,9 +496,8 @@ public void logMessage(SIPMessage message, String from, String to,
         else
             msgHeader = "JAIN-SIP received a message from=\"";
 
-        if (logger.isInfoEnabled())
-            logger.info(msgHeader + from + "\" to=\"" + to + "\" (status: "
-                        + status + "):\n" + message);
+        logger.debug(msgHeader + from + "\" to=\"" + to + "\" (status: "
+            + status + "):\n" + message);
     }
 
     /**
@@ -484,6 +543,55 @@ public void logTrace(String message)
 
     }
 
+    /**
+     * Returns the local address of the TCP/TLS connection to the specified
+     * destination, using the cached value if we have resolved it recently.
+     *
+     * @param dst the destination address of the connection.
+     * @param dstPort the destination port of the connection.
+     * @param localAddress the local address of the connection
+     * (null for the "any" address).
+     * @param transport the transport of the connection TCP or TLS
+     *
+     * @return the local address of the connection or <tt>null</tt>
+     * if it cannot be resolved.
+     *
+     * @throws IOException  if we fail binding the local socket
+     */
+    private InetSocketAddress getCachedLocalAddressForDestination(
+                    InetAddress dst,
+                    int         dstPort,
+                    InetAddress localAddress,
+                    String      transport)
+        throws IOException
+    {
+        String key = transport.toUpperCase() + "/" + dst + ":" + dstPort
+            + "/" + localAddress;
+        long now = System.currentTimeMillis();
+        CachedLocalAddress cached;
+
+        synchronized(localAddressCache)
+        {
+            cached = localAddressCache.get(key);
+        }
+
+        if(cached != null && now - cached.timestamp < LOCAL_ADDRESS_CACHE_TTL)
+            return cached.address;
+
+        InetSocketAddress address = getLocalAddressForDestination(
+                dst, dstPort, localAddress, transport);
+
+        if(address != null)
+        {
+            synchronized(localAddressCache)
+            {
+                localAddressCache.put(
+                        key, new CachedLocalAddress(address, now));
+            }
+        }
+        return address;
+    }
+
     /**
      * Returns a local address to use with the specified TCP destination.
      * The method forces the JAIN-SIP stack to create
@@ -518,4 +626,32 @@ public java.net.InetSocketAddress getLocalAddressForDestination(
             return (java.net.InetSocketAddress)(((SipStackImpl)this.sipStack)
             .getLocalAddressForTcpDst(dst, dstPort, localAddress, 0));
     }
+
+    /**
+     * A local address of a TCP/TLS connection and the time it was resolved.
+     */
+    private static class CachedLocalAddress
+    {
+        /**
+         * The local address of the connection.
+         */
+        private final InetSocketAddress address;
+
+        /**
+         * The time in milliseconds the address was resolved.
+         */
+        private final long timestamp;
+
+        /**
+         * Creates a cached local address.
+         *
+         * @param address the local address of the connection.
+         * @param timestamp the time in milliseconds it was resolved.
+         */
+        private CachedLocalAddress(InetSocketAddress address, long timestamp)
+        {
+            this.address = address;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -25,6 +25,8 @@
 
 import java.net.*;
 import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.sip.*;
 
@@ -112,6 +114,7 @@ public SRVRecord[] getSRVRecords(String domain)
         ListeningPoint.UDP
     };
     private boolean hadSrvResults;
+    private List<Future<SRVRecord[]>> srvLookups;
     private String[][] naptrRecords;
     private int naptrIndex;
     private SRVRecord[] srvRecords;
@@ -241,6 +244,7 @@ private boolean getNextAddressInternal()
                     hadSrvResults = false;
                     state = State.Srv;
                     srvTransportIndex = 0;
+                    startSrvLookups();
                 }
 
                 return getNextAddressFromDns();
@@ -298,14 +302,8 @@ else if(TCP.equalsIgnoreCase(naptrRecords[naptrIndex][1]))
             case Srv:
                 for(;srvTransportIndex < transports.length; srvTransportIndex++)
                 {
-                    srvRecords = nu.getSRVRecords(
-                        (TLS.equals(transports[srvTransportIndex])
-                            ? "sips"
-                            : "sip"),
-                        (UDP.equalsIgnoreCase(transports[srvTransportIndex])
-                            ? UDP
-                            : TCP),
-                        address);
+                    srvRecords = NetworkUtils.getDnsQueryResult(
+                        srvLookups.get(srvTransportIndex));
                     if(srvRecords != null && srvRecords.length > 0)
                     {
                         hadSrvResults = true;
@@ -379,6 +377,31 @@ else if(TCP.equalsIgnoreCase(naptrRecords[naptrIndex][1]))
         return false;
     }
 
+    /**
+     * Starts the SRV lookups for all transports in parallel, so we do not
+     * wait for a round trip per transport when the first ones have no
+     * records. The results are consumed in the order of the transports.
+     */
+    private void startSrvLookups()
+    {
+        srvLookups = new ArrayList<Future<SRVRecord[]>>(transports.length);
+        for(final String t : transports)
+        {
+            srvLookups.add(NetworkUtils.submitDnsQuery(
+                new Callable<SRVRecord[]>()
+                {
+                    public SRVRecord[] call()
+                        throws ParseException, DnssecException
+                    {
+                        return nu.getSRVRecords(
+                            (TLS.equals(t) ? "sips" : "sip"),
+                            (UDP.equalsIgnoreCase(t) ? UDP : TCP),
+                            address);
+                    }
+                }));
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -390,6 +413,7 @@ public void reset()
     {
         super.reset();
         state = State.New;
+        srvLookups = null;
 
         //determine the hostname of the proxy for autodetection:
         //1) server part of the user ID
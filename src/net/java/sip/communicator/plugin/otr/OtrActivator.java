@@ -308,6 +308,10 @@ public void start(Object dependentService)
 
         uiService = (UIService) dependentService;
 
+        // Convert fingerprints stored by old versions once, instead of
+        // checking for them whenever the fingerprints are requested.
+        scOtrKeyManager.migrateLegacyPublicKeys();
+
         // Init static variables, don't proceed without them.
         scOtrEngine = new ScOtrEngineImpl();
         otrContactManager = new OtrContactManager();
@@ -431,7 +435,10 @@ public void stop(BundleContext bc) throws Exception
         bundleContext.removeServiceListener(this);
 
         if(scOtrEngine != null)
+        {
             bundleContext.removeServiceListener(scOtrEngine);
+            scOtrEngine.dispose();
+        }
 
         if(otrContactManager != null)
             bundleContext.removeServiceListener(otrContactManager);
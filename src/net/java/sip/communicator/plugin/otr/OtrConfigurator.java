@@ -173,6 +173,30 @@ public void appendProperty(String id, Object value)
         setProperty(id, newValue);
     }
 
+    /**
+     * Gets the IDs of all properties of which the name ends with the
+     * specified suffix. The IDs can be passed to the other methods of this
+     * class.
+     *
+     * @param suffix the suffix of the property names
+     * @return the IDs of the matching properties
+     */
+    public List<String> getPropertyIDsBySuffix(String suffix)
+    {
+        String prefix = getID("");
+        String xmlSuffix = getXmlFriendlyString(suffix);
+        List<String> ids = new ArrayList<String>();
+
+        for (String name
+                : OtrActivator.configService.getPropertyNamesByPrefix(
+                        prefix, false))
+        {
+            if (name.endsWith(xmlSuffix))
+                ids.add(name.substring(prefix.length()));
+        }
+        return ids;
+    }
+
     public List<String> getAppendedProperties(String id)
     {
         String listProperties =
@@ -491,11 +491,64 @@ public FragmenterInstructions getFragmenterInstructions(
             30000);
 
     /**
-     * Manages the scheduling of TimerTasks that are used to set Contact's
+     * The time after which a session that is not in use and not encrypted is
+     * forgotten.
+     */
+    private static final long SESSION_IDLE_TIMEOUT =
+        OtrActivator.configService.getLong(
+            "net.java.sip.communicator.plugin.otr.SESSION_IDLE_TIMEOUT",
+            3600000L);
+
+    /**
+     * The interval at which idle sessions are looked for.
+     */
+    private static final long SESSION_EXPIRY_INTERVAL = 300000L;
+
+    /**
+     * Single daemon thread shared by all OTR session bookkeeping: session
+     * status changes and the expiry of idle sessions.
+     */
+    private static final ScheduledExecutorService executor
+        = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "OTR session scheduler");
+
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Manages the scheduling of tasks that are used to set Contact's
      * ScSessionStatus (to TIMED_OUT) after a period of time.
      */
     private ScSessionStatusScheduler scheduler = new ScSessionStatusScheduler();
 
+    /**
+     * The periodic expiry of idle sessions.
+     */
+    private final ScheduledFuture<?> sessionExpiry;
+
+    /**
+     * The number of sessions that were not plaintext during the most recent
+     * expiry run.
+     */
+    private volatile int activeSessionCount = 0;
+
+    /**
+     * The number of plaintext sessions that were kept during the most recent
+     * expiry run, because they were used recently.
+     */
+    private volatile int idleSessionCount = 0;
+
+    /**
+     * The number of sessions that have been expired by this instance.
+     */
+    private volatile long expiredSessionCount = 0;
+
     /**
      * This mapping is used for taking care of keeping SessionStatus and
      * ScSessionStatus in sync for every Session object.
@@ -509,6 +562,12 @@ public FragmenterInstructions getFragmenterInstructions(
     private static final Map<OtrContact, SmpProgressDialog> progressDialogMap =
         new ConcurrentHashMap<OtrContact, SmpProgressDialog>();
 
+    /**
+     * The time at which the session was last requested, by session.
+     */
+    private static final Map<SessionID, Long> sessionLastUsed =
+        new ConcurrentHashMap<SessionID, Long>();
+
     public static OtrContact getOtrContact(SessionID sessionID)
     {
         return contactsMap.get(new ScSessionID(sessionID));
@@ -543,6 +602,7 @@ public static SessionID getSessionID(OtrContact otrContact)
                     otrContact.contact.getAddress() + resourceName,
                     pps.getProtocolName());
 
+        sessionLastUsed.put(sessionID, System.currentTimeMillis());
         synchronized (contactsMap)
         {
             if(contactsMap.containsKey(new ScSessionID(sessionID)))
@@ -570,17 +630,28 @@ public static SessionID getSessionID(OtrContact otrContact)
 
     private final OtrEngineHost otrEngineHost = new ScOtrEngineHost();
 
-    private final OtrSessionManager otrEngine;
+    private final ScOtrSessionManager otrEngine;
 
     public ScOtrEngineImpl()
     {
-        otrEngine = new OtrSessionManagerImpl(otrEngineHost);
+        otrEngine = new ScOtrSessionManager(otrEngineHost);
 
         // Clears the map after previous instance
         // This is required because of OSGi restarts in the same VM on Android
         contactsMap.clear();
+        sessionLastUsed.clear();
         scSessionStatusMap.clear();
 
+        sessionExpiry = executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                expireIdleSessions();
+            }
+        }, SESSION_EXPIRY_INTERVAL, SESSION_EXPIRY_INTERVAL,
+            TimeUnit.MILLISECONDS);
+
         this.otrEngine.addOtrEngineListener(new OtrEngineListener()
         {
             @Override
@@ -904,42 +975,44 @@ private ScOtrEngineListener[] getListeners()
     }
 
     /**
-     * Manages the scheduling of TimerTasks that are used to set Contact's
+     * Manages the scheduling of tasks that are used to set Contact's
      * ScSessionStatus after a period of time.
      * 
      * @author Marin Dzhigarov
      */
     private class ScSessionStatusScheduler
     {
-        private final Timer timer = new Timer();
-
-        private final Map<OtrContact, TimerTask> tasks =
-            new ConcurrentHashMap<OtrContact, TimerTask>();
+        private final Map<OtrContact, ScheduledFuture<?>> tasks =
+            new ConcurrentHashMap<OtrContact, ScheduledFuture<?>>();
 
         public void scheduleScSessionStatusChange(
             final OtrContact otrContact, final ScSessionStatus status)
         {
             cancel(otrContact);
 
-            TimerTask task
-                = new TimerTask()
+            ScheduledFuture<?> task
+                = executor.schedule(new Runnable()
                 {
                     @Override
                     public void run()
                     {
                         setSessionStatus(otrContact, status);
                     }
-                };
-            timer.schedule(task, SESSION_TIMEOUT);
+                }, SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
             tasks.put(otrContact, task);
         }
 
         public void cancel(final OtrContact otrContact)
         {
-            TimerTask task = tasks.get(otrContact);
+            ScheduledFuture<?> task = tasks.remove(otrContact);
             if (task != null)
-                task.cancel();
-            tasks.remove(otrContact);
+                task.cancel(false);
+        }
+
+        public void cancelAll()
+        {
+            for (OtrContact otrContact : tasks.keySet())
+                cancel(otrContact);
         }
 
         public void serviceChanged(ServiceEvent ev)
@@ -956,22 +1029,135 @@ public void serviceChanged(ServiceEvent ev)
                 ProtocolProviderService provider
                     = (ProtocolProviderService) service;
     
-                Iterator<OtrContact> i = tasks.keySet().iterator();
-    
-                while (i.hasNext())
+                for (OtrContact otrContact : tasks.keySet())
                 {
-                    OtrContact otrContact = i.next();
                     if (provider.equals(
                         otrContact.contact.getProtocolProvider()))
                     {
                         cancel(otrContact);
-                        i.remove();
                     }
                 }
             }
         }
     }
 
+    /**
+     * Forgets the sessions that are plaintext (or timed out) and have not been
+     * used for {@link #SESSION_IDLE_TIMEOUT}, including the otr4j session.
+     * Such a session is recreated the next time it is requested. Sessions
+     * that are encrypted, being set up or finished are kept, since their
+     * state is still of use.
+     */
+    private void expireIdleSessions()
+    {
+        long now = System.currentTimeMillis();
+        int active = 0;
+        int idle = 0;
+        int expired = 0;
+
+        synchronized (contactsMap)
+        {
+            Iterator<Map.Entry<ScSessionID, OtrContact>> i
+                = contactsMap.entrySet().iterator();
+
+            while (i.hasNext())
+            {
+                Map.Entry<ScSessionID, OtrContact> entry = i.next();
+                SessionID sessionID = entry.getKey().getSessionID();
+                ScSessionStatus status = scSessionStatusMap.get(sessionID);
+
+                Session session = otrEngine.findSession(sessionID);
+
+                if ((status != null
+                        && status != ScSessionStatus.PLAINTEXT
+                        && status != ScSessionStatus.TIMED_OUT)
+                    || (session != null
+                        && session.getSessionStatus()
+                            != SessionStatus.PLAINTEXT))
+                {
+                    active++;
+                    continue;
+                }
+
+                Long lastUsed = sessionLastUsed.get(sessionID);
+
+                if (lastUsed != null
+                    && now - lastUsed < SESSION_IDLE_TIMEOUT)
+                {
+                    idle++;
+                    continue;
+                }
+
+                OtrContact otrContact = entry.getValue();
+
+                i.remove();
+                otrEngine.removeSession(sessionID);
+                sessionLastUsed.remove(sessionID);
+                scSessionStatusMap.remove(sessionID);
+                scheduler.cancel(otrContact);
+
+                SmpProgressDialog progressDialog
+                    = progressDialogMap.get(otrContact);
+
+                if (progressDialog != null && !progressDialog.isVisible())
+                    progressDialogMap.remove(otrContact);
+                expired++;
+            }
+        }
+
+        activeSessionCount = active;
+        idleSessionCount = idle;
+        expiredSessionCount += expired;
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("OTR sessions: " + active + " active, " + idle
+                + " idle, " + expired + " expired now, "
+                + expiredSessionCount + " expired in total.");
+        }
+    }
+
+    /**
+     * Returns the number of sessions that were not plaintext when idle
+     * sessions were last looked for.
+     *
+     * @return the number of active sessions
+     */
+    public int getActiveSessionCount()
+    {
+        return activeSessionCount;
+    }
+
+    /**
+     * Returns the number of plaintext sessions that were kept when idle
+     * sessions were last looked for, because they had been used recently.
+     *
+     * @return the number of idle sessions
+     */
+    public int getIdleSessionCount()
+    {
+        return idleSessionCount;
+    }
+
+    /**
+     * Returns the number of sessions that have been forgotten because they
+     * were idle.
+     *
+     * @return the number of expired sessions
+     */
+    public long getExpiredSessionCount()
+    {
+        return expiredSessionCount;
+    }
+
+    /**
+     * Stops the scheduled bookkeeping of this instance.
+     */
+    public void dispose()
+    {
+        sessionExpiry.cancel(false);
+        scheduler.cancelAll();
+    }
+
     private void setSessionStatus(OtrContact contact, ScSessionStatus status)
     {
         scSessionStatusMap.put(getSessionID(contact), status);
@@ -1090,7 +1276,10 @@ public void serviceChanged(ServiceEvent ev)
                     if (provider.equals(
                         otrContact.contact.getProtocolProvider()))
                     {
-                        scSessionStatusMap.remove(getSessionID(otrContact));
+                        SessionID sessionID = getSessionID(otrContact);
+
+                        scSessionStatusMap.remove(sessionID);
+                        sessionLastUsed.remove(sessionID);
                         i.remove();
                     }
                 }
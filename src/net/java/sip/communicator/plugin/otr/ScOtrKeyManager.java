@@ -55,4 +55,6 @@
 
     public abstract void generateKeyPair(AccountID accountID);
 
+    public abstract void migrateLegacyPublicKeys();
+
 }
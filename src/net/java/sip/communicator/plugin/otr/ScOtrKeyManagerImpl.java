@@ -20,12 +20,17 @@
 import java.security.*;
 import java.security.spec.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.otr4j.crypto.*;
 import net.java.sip.communicator.plugin.otr.OtrContactManager.OtrContact;
 import net.java.sip.communicator.service.protocol.*;
 
 /**
+ * Key manager for OTR. Key pairs, fingerprints and verification status are
+ * cached in memory, since they are requested for every OTR message and every
+ * time OTR menus are shown. The caches are updated whenever the stored values
+ * change through this key manager.
  *
  * @author George Politis
  * @author Lyubomir Marinov
@@ -38,6 +43,37 @@
     private final List<ScOtrKeyManagerListener> listeners =
         new Vector<ScOtrKeyManagerListener>();
 
+    /**
+     * The key pairs of accounts by account unique ID.
+     */
+    private final Map<String, KeyPair> keyPairs
+        = new ConcurrentHashMap<String, KeyPair>();
+
+    /**
+     * The fingerprints of the key pairs of accounts by account unique ID.
+     */
+    private final Map<String, String> localFingerprints
+        = new ConcurrentHashMap<String, String>();
+
+    /**
+     * The raw fingerprints of the key pairs of accounts by account unique ID.
+     */
+    private final Map<String, byte[]> localFingerprintsRaw
+        = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * The known fingerprints of contacts by contact address.
+     */
+    private final Map<String, List<String>> remoteFingerprints
+        = new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * The verification status of fingerprints by contact address and
+     * fingerprint.
+     */
+    private final Map<String, Boolean> verified
+        = new ConcurrentHashMap<String, Boolean>();
+
     public void addListener(ScOtrKeyManagerListener l)
     {
         synchronized (listeners)
@@ -79,8 +115,10 @@ public void verify(OtrContact otrContact, String fingerprint)
         if ((fingerprint == null) || otrContact == null)
             return;
 
-        this.configurator.setProperty(otrContact.contact.getAddress() + fingerprint
-            + ".fingerprint.verified", true);
+        String id = otrContact.contact.getAddress() + fingerprint;
+
+        this.configurator.setProperty(id + ".fingerprint.verified", true);
+        verified.put(id, Boolean.TRUE);
 
         for (ScOtrKeyManagerListener l : getListeners())
             l.contactVerificationStatusChanged(otrContact);
@@ -91,8 +129,10 @@ public void unverify(OtrContact otrContact, String fingerprint)
         if ((fingerprint == null) || otrContact == null)
             return;
 
-        this.configurator.setProperty(otrContact.contact.getAddress() + fingerprint
-            + ".fingerprint.verified", false);
+        String id = otrContact.contact.getAddress() + fingerprint;
+
+        this.configurator.setProperty(id + ".fingerprint.verified", false);
+        verified.put(id, Boolean.FALSE);
 
         for (ScOtrKeyManagerListener l : getListeners())
             l.contactVerificationStatusChanged(otrContact);
@@ -103,9 +143,16 @@ public boolean isVerified(Contact contact, String fingerprint)
         if (fingerprint == null || contact == null)
             return false;
 
-        return this.configurator.getPropertyBoolean(
-            contact.getAddress() + fingerprint
-                + ".fingerprint.verified", false);
+        String id = contact.getAddress() + fingerprint;
+        Boolean isVerified = verified.get(id);
+
+        if (isVerified == null)
+        {
+            isVerified = this.configurator.getPropertyBoolean(
+                id + ".fingerprint.verified", false);
+            verified.put(id, isVerified);
+        }
+        return isVerified;
     }
 
     public List<String> getAllRemoteFingerprints(Contact contact)
@@ -113,31 +160,54 @@ public List<String> getAllRemoteFingerprints(Contact contact)
         if (contact == null)
             return null;
 
-        /*
-         * The following lines are needed for backward compatibility with old
-         * versions of the otr plugin. Instead of lists of fingerprints the otr
-         * plugin used to store one public key for every contact in the form of
-         * "userID.publicKey=..." and one boolean property in the form of
-         * "userID.publicKey.verified=...". In order not to loose these old
-         * properties we have to convert them to match the new format.
-         */
         String userID = contact.getAddress();
+        List<String> fingerprints = remoteFingerprints.get(userID);
 
-        byte[] b64PubKey =
-            this.configurator.getPropertyBytes(userID + ".publicKey");
-        if (b64PubKey != null)
+        if (fingerprints == null)
+        {
+            fingerprints = Collections.unmodifiableList(
+                this.configurator.getAppendedProperties(
+                    userID + ".fingerprints"));
+            remoteFingerprints.put(userID, fingerprints);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Converts the public keys stored by old versions of the OTR plugin to
+     * fingerprints. Instead of lists of fingerprints the OTR plugin used to
+     * store one public key for every contact in the form of
+     * "userID.publicKey=..." and one boolean property in the form of
+     * "userID.publicKey.verified=...". In order not to lose these old
+     * properties they are converted to the new format once, at startup.
+     */
+    public void migrateLegacyPublicKeys()
+    {
+        for (String id : this.configurator.getPropertyIDsBySuffix(".publicKey"))
         {
-            // We delete the old format property because we are going to convert
-            // it in the new format
-            this.configurator.removeProperty(userID + ".publicKey");
+            String userID
+                = id.substring(0, id.length() - ".publicKey".length());
 
-            X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(b64PubKey);
+            // Accounts store the public key of their own key pair under the
+            // same name, next to the private key.
+            if (this.configurator.getPropertyBytes(userID + ".privateKey")
+                    != null)
+                continue;
+
+            byte[] b64PubKey = this.configurator.getPropertyBytes(id);
+
+            // We delete the old format property because we are going to
+            // convert it in the new format
+            this.configurator.removeProperty(id);
+
+            X509EncodedKeySpec publicKeySpec
+                = new X509EncodedKeySpec(b64PubKey);
 
-            KeyFactory keyFactory;
             try
             {
-                keyFactory = KeyFactory.getInstance("DSA");
-                PublicKey pubKey = keyFactory.generatePublic(publicKeySpec);
+                PublicKey pubKey
+                    = KeyFactory.getInstance("DSA").generatePublic(
+                            publicKeySpec);
 
                 boolean isVerified =
                     this.configurator.getPropertyBoolean(userID
@@ -145,18 +215,14 @@ public List<String> getAllRemoteFingerprints(Contact contact)
 
                 // We also make sure to delete this old format property if it
                 // exists.
-                this.configurator.removeProperty(userID + ".publicKey.verified");
+                this.configurator.removeProperty(
+                    userID + ".publicKey.verified");
 
                 String fingerprint = getFingerprintFromPublicKey(pubKey);
 
                 // Now we can store the old properties in the new format.
-                if (isVerified)
-                    verify(OtrContactManager.getOtrContact(contact, null), fingerprint);
-                else
-                    unverify(OtrContactManager.getOtrContact(contact, null), fingerprint);
-
-                // Finally we append the new fingerprint to out stored list of
-                // fingerprints.
+                this.configurator.setProperty(userID + fingerprint
+                    + ".fingerprint.verified", isVerified);
                 this.configurator.appendProperty(
                     userID + ".fingerprints", fingerprint);
             }
@@ -169,11 +235,6 @@ public List<String> getAllRemoteFingerprints(Contact contact)
                 e.printStackTrace();
             }
         }
-
-        // Now we can safely return our list of fingerprints for this contact
-        // without worrying that we missed an old format property.
-        return this.configurator.getAppendedProperties(
-            contact.getAddress() + ".fingerprints");
     }
 
     public String getFingerprintFromPublicKey(PublicKey pubKey)
@@ -196,11 +257,19 @@ public String getLocalFingerprint(AccountID account)
         if (keyPair == null)
             return null;
 
+        String accountID = account.getAccountUniqueID();
+        String fingerprint = localFingerprints.get(accountID);
+
+        if (fingerprint != null)
+            return fingerprint;
+
         PublicKey pubKey = keyPair.getPublic();
 
         try
         {
-            return new OtrCryptoEngineImpl().getFingerprint(pubKey);
+            fingerprint = new OtrCryptoEngineImpl().getFingerprint(pubKey);
+            localFingerprints.put(accountID, fingerprint);
+            return fingerprint;
         }
         catch (OtrCryptoException e)
         {
@@ -216,11 +285,19 @@ public byte[] getLocalFingerprintRaw(AccountID account)
         if (keyPair == null)
             return null;
 
+        String accountID = account.getAccountUniqueID();
+        byte[] fingerprint = localFingerprintsRaw.get(accountID);
+
+        if (fingerprint != null)
+            return fingerprint.clone();
+
         PublicKey pubKey = keyPair.getPublic();
 
         try
         {
-            return new OtrCryptoEngineImpl().getFingerprintRaw(pubKey);
+            fingerprint = new OtrCryptoEngineImpl().getFingerprintRaw(pubKey);
+            localFingerprintsRaw.put(accountID, fingerprint);
+            return fingerprint.clone();
         }
         catch (OtrCryptoException e)
         {
@@ -234,11 +311,15 @@ public void saveFingerprint(Contact contact, String fingerprint)
         if (contact == null)
             return;
 
-        this.configurator.appendProperty(contact.getAddress() + ".fingerprints",
+        String userID = contact.getAddress();
+
+        this.configurator.appendProperty(userID + ".fingerprints",
             fingerprint);
+        remoteFingerprints.remove(userID);
 
-        this.configurator.setProperty(contact.getAddress() + fingerprint
+        this.configurator.setProperty(userID + fingerprint
             + ".fingerprint.verified", false);
+        verified.put(userID + fingerprint, Boolean.FALSE);
     }
 
     public KeyPair loadKeyPair(AccountID account)
@@ -247,6 +328,11 @@ public KeyPair loadKeyPair(AccountID account)
             return null;
 
         String accountID = account.getAccountUniqueID();
+        KeyPair keyPair = keyPairs.get(accountID);
+
+        if (keyPair != null)
+            return keyPair;
+
         // Load Private Key.
         byte[] b64PrivKey =
             this.configurator.getPropertyBytes(accountID + ".privateKey");
@@ -286,7 +372,9 @@ public KeyPair loadKeyPair(AccountID account)
             return null;
         }
 
-        return new KeyPair(publicKey, privateKey);
+        keyPair = new KeyPair(publicKey, privateKey);
+        keyPairs.put(accountID, keyPair);
+        return keyPair;
     }
 
     public void generateKeyPair(AccountID account)
@@ -321,5 +409,9 @@ public void generateKeyPair(AccountID account)
 
         this.configurator.setProperty(accountID + ".privateKey",
             pkcs8EncodedKeySpec.getEncoded());
+
+        keyPairs.put(accountID, keyPair);
+        localFingerprints.remove(accountID);
+        localFingerprintsRaw.remove(accountID);
     }
 }
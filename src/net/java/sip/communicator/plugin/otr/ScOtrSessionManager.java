@@ -0,0 +1,135 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.otr;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.otr4j.*;
+import net.java.otr4j.session.*;
+
+/**
+ * An <tt>OtrSessionManager</tt> which, unlike otr4j's
+ * <tt>OtrSessionManagerImpl</tt>, can forget a session. The next request for
+ * a forgotten session creates a new one.
+ */
+public class ScOtrSessionManager
+    implements OtrSessionManager
+{
+    private final OtrEngineHost host;
+
+    private final Map<SessionID, Session> sessions
+        = new HashMap<SessionID, Session>();
+
+    private final CopyOnWriteArrayList<OtrEngineListener> listeners
+        = new CopyOnWriteArrayList<OtrEngineListener>();
+
+    /**
+     * Forwards the events of all sessions to {@link #listeners}.
+     */
+    private final OtrEngineListener sessionListener = new OtrEngineListener()
+    {
+        public void sessionStatusChanged(SessionID sessionID)
+        {
+            for (OtrEngineListener l : listeners)
+                l.sessionStatusChanged(sessionID);
+        }
+
+        public void multipleInstancesDetected(SessionID sessionID)
+        {
+            for (OtrEngineListener l : listeners)
+                l.multipleInstancesDetected(sessionID);
+        }
+
+        public void outgoingSessionChanged(SessionID sessionID)
+        {
+            for (OtrEngineListener l : listeners)
+                l.outgoingSessionChanged(sessionID);
+        }
+    };
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param host the <tt>OtrEngineHost</tt> of the created sessions
+     */
+    public ScOtrSessionManager(OtrEngineHost host)
+    {
+        if (host == null)
+            throw new IllegalArgumentException("OtrEngineHost is required.");
+
+        this.host = host;
+    }
+
+    /**
+     * Gets the session with the given ID, creating it if it does not exist.
+     *
+     * @param sessionID the ID of the session
+     * @return the session with the given ID
+     */
+    public synchronized Session getSession(SessionID sessionID)
+    {
+        if (sessionID == null || sessionID.equals(SessionID.Empty))
+            throw new IllegalArgumentException();
+
+        Session session = sessions.get(sessionID);
+
+        if (session == null)
+        {
+            session = new SessionImpl(sessionID, host);
+            session.addOtrEngineListener(sessionListener);
+            sessions.put(sessionID, session);
+        }
+        return session;
+    }
+
+    /**
+     * Gets the session with the given ID without creating it.
+     *
+     * @param sessionID the ID of the session
+     * @return the session with the given ID or <tt>null</tt> if it does not
+     * exist
+     */
+    public synchronized Session findSession(SessionID sessionID)
+    {
+        return sessions.get(sessionID);
+    }
+
+    /**
+     * Forgets the session with the given ID.
+     *
+     * @param sessionID the ID of the session
+     */
+    public synchronized void removeSession(SessionID sessionID)
+    {
+        Session session = sessions.remove(sessionID);
+
+        if (session != null)
+            session.removeOtrEngineListener(sessionListener);
+    }
+
+    public void addOtrEngineListener(OtrEngineListener l)
+    {
+        listeners.addIfAbsent(l);
+    }
+
+    public void removeOtrEngineListener(OtrEngineListener l)
+    {
+        listeners.remove(l);
+    }
+}
@@ -35,8 +35,14 @@
 {
     public void onAuthenticateLinkClicked(UUID uuid)
     {
-        OtrContact otrContact = ScOtrEngineImpl.getOtrContact(
-                    ScOtrEngineImpl.getScSessionForGuid(uuid).getSessionID());
+        ScSessionID scSessionID = ScOtrEngineImpl.getScSessionForGuid(uuid);
+
+        // The session may have been forgotten since the link was shown.
+        if (scSessionID == null)
+            return;
+
+        OtrContact otrContact
+            = ScOtrEngineImpl.getOtrContact(scSessionID.getSessionID());
 
         openAuthDialog(otrContact);
     }
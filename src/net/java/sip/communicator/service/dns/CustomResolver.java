@@ -33,8 +33,9 @@
  * them to both our primary and backup resolvers (in case we have any). We then
  * always return the first response we get, regardless of who sent it.
  * <p>
- * We exit redundant mode after receiving <tt>DNS_REDEMPTION</tt> consecutive
- * timely and correct responses from our primary resolver.
+ * We exit redundant mode once the response times of our primary resolver,
+ * averaged over <tt>DNS_REDEMPTION</tt> responses, are back under
+ * <tt>DNS_PATIENCE</tt>.
  *
  * @author Emil Ivov
  */
@@ -55,9 +56,9 @@
         = "net.java.sip.communicator.util.dns.DNS_PATIENCE";
 
     /**
-     * The default number of times that the primary DNS would have to provide a
-     * faster response than the backup resolver before we consider it safe
-     * enough to exit redundant mode.
+     * The default number of responses over which the response times of the
+     * primary DNS are averaged when we consider whether it is safe enough to
+     * exit redundant mode.
      */
     public static final int DNS_REDEMPTION = 3;
 
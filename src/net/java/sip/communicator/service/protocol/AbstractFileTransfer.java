@@ -51,6 +51,18 @@
 
     private int status;
 
+    /**
+     * The transfer rate in bytes per second as last estimated by the
+     * <tt>FileTransferProgressScheduler</tt>.
+     */
+    private volatile long transferRate = 0;
+
+    /**
+     * The estimated time left in milliseconds as last estimated by the
+     * <tt>FileTransferProgressScheduler</tt> or <tt>-1</tt> if unknown.
+     */
+    private volatile long estimatedTimeLeft = -1;
+
     /**
      * Cancels this file transfer. When this method is called transfer should
      * be interrupted.
@@ -136,6 +148,43 @@ public int getStatus()
         return status;
     }
 
+    /**
+     * Returns the transfer rate of this file transfer in bytes per second if
+     * its progress is sampled by the <tt>FileTransferProgressScheduler</tt>.
+     *
+     * @return the transfer rate in bytes per second or <tt>0</tt> if unknown
+     */
+    public long getTransferRate()
+    {
+        return transferRate;
+    }
+
+    /**
+     * Returns the estimated time left until this file transfer completes if
+     * its progress is sampled by the <tt>FileTransferProgressScheduler</tt>.
+     *
+     * @return the estimated time left in milliseconds or <tt>-1</tt> if
+     * unknown
+     */
+    public long getEstimatedTimeLeft()
+    {
+        return estimatedTimeLeft;
+    }
+
+    /**
+     * Updates the transfer rate and the estimated time left of this file
+     * transfer.
+     *
+     * @param transferRate the transfer rate in bytes per second
+     * @param estimatedTimeLeft the estimated time left in milliseconds or
+     * <tt>-1</tt> if unknown
+     */
+    void setProgressEstimate(long transferRate, long estimatedTimeLeft)
+    {
+        this.transferRate = transferRate;
+        this.estimatedTimeLeft = estimatedTimeLeft;
+    }
+
     /**
      * Notifies all status listeners that a new
      * <tt>FileTransferStatusChangeEvent</tt> occured.
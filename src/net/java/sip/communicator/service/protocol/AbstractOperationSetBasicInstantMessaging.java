@@ -352,68 +352,69 @@ private EventObject[] messageTransform(final EventObject evt,
         // 'next' contains the resulting events after transformation in the
         // current iteration. It should not contain null values.
         final LinkedList<EventObject> next = new LinkedList<EventObject>();
-        for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                : opSetMessageTransform.transformLayers.entrySet())
+        for (OperationSetInstantMessageTransformImpl.PrioritizedTransformLayer
+                entry : opSetMessageTransform.getTransformLayers())
         {
-            for (TransformLayer transformLayer : entry.getValue())
+            final TransformLayer transformLayer = entry.getLayer();
+            final long start = System.nanoTime();
+
+            next.clear();
+            while (!current.isEmpty())
             {
-                next.clear();
-                while (!current.isEmpty())
+                final EventObject event = current.remove();
+                switch (eventType)
                 {
-                    final EventObject event = current.remove();
-                    switch (eventType)
+                case MessageDelivered:
+                    MessageDeliveredEvent transformedDelivered =
+                        transformLayer.messageDelivered(
+                            (MessageDeliveredEvent) event);
+                    if (transformedDelivered != null)
                     {
-                    case MessageDelivered:
-                        MessageDeliveredEvent transformedDelivered =
-                            transformLayer.messageDelivered(
-                                (MessageDeliveredEvent) event);
-                        if (transformedDelivered != null)
-                        {
-                            next.add(transformedDelivered);
-                        }
-                        break;
-                    case MessageDeliveryPending:
-                        MessageDeliveredEvent[] evts = transformLayer
-                            .messageDeliveryPending(
-                                (MessageDeliveredEvent) event);
-                        for (MessageDeliveredEvent mde : evts)
-                        {
-                            if (mde != null)
-                            {
-                                next.add(mde);
-                            }
-                        }
-                        break;
-                    case MessageDeliveryFailed:
-                        MessageDeliveryFailedEvent transformedDeliveryFailed =
-                            transformLayer.messageDeliveryFailed(
-                                (MessageDeliveryFailedEvent) event);
-                        if (transformedDeliveryFailed != null)
-                        {
-                            next.add(transformedDeliveryFailed);
-                        }
-                        break;
-                    case MessageReceived:
-                        MessageReceivedEvent transformedReceived =
-                            transformLayer
-                                .messageReceived((MessageReceivedEvent) event);
-                        if (transformedReceived != null)
+                        next.add(transformedDelivered);
+                    }
+                    break;
+                case MessageDeliveryPending:
+                    MessageDeliveredEvent[] evts = transformLayer
+                        .messageDeliveryPending(
+                            (MessageDeliveredEvent) event);
+                    for (MessageDeliveredEvent mde : evts)
+                    {
+                        if (mde != null)
                         {
-                            next.add(transformedReceived);
+                            next.add(mde);
                         }
-                        break;
-                    default:
-                        next.add(event);
-                        /*
-                         * We either have nothing to do or we do not know
-                         * what to do. Anyway, we'll silence the compiler.
-                         */
-                        break;
                     }
+                    break;
+                case MessageDeliveryFailed:
+                    MessageDeliveryFailedEvent transformedDeliveryFailed =
+                        transformLayer.messageDeliveryFailed(
+                            (MessageDeliveryFailedEvent) event);
+                    if (transformedDeliveryFailed != null)
+                    {
+                        next.add(transformedDeliveryFailed);
+                    }
+                    break;
+                case MessageReceived:
+                    MessageReceivedEvent transformedReceived =
+                        transformLayer
+                            .messageReceived((MessageReceivedEvent) event);
+                    if (transformedReceived != null)
+                    {
+                        next.add(transformedReceived);
+                    }
+                    break;
+                default:
+                    next.add(event);
+                    /*
+                     * We either have nothing to do or we do not know
+                     * what to do. Anyway, we'll silence the compiler.
+                     */
+                    break;
                 }
-                // Set events for next round of transformations.
-                current.addAll(next);
             }
+            // Set events for next round of transformations.
+            current.addAll(next);
+            entry.recordLatency(System.nanoTime() - start);
         }
 
         return current.toArray(new EventObject[current.size()]);
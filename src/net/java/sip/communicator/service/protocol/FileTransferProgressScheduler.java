@@ -0,0 +1,287 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.osgi.framework.*;
+
+/**
+ * Samples the progress of all active <tt>AbstractFileTransfer</tt>s on a
+ * single shared thread instead of a polling thread per transfer. On every
+ * sample the transfer rate and the estimated time left of each transfer are
+ * updated and a <tt>FileTransferProgressEvent</tt> is fired only if the
+ * number of transferred bytes has changed since the previous one.
+ * <p>
+ * The sampling interval in milliseconds is read from the
+ * {@link #SAMPLING_INTERVAL_PROPERTY} property when the sampling thread is
+ * started.
+ * </p>
+ */
+public class FileTransferProgressScheduler
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FileTransferProgressScheduler</tt>
+     * class for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FileTransferProgressScheduler.class);
+
+    /**
+     * The name of the property which specifies the interval in milliseconds
+     * at which the active file transfers are sampled.
+     */
+    public static final String SAMPLING_INTERVAL_PROPERTY
+        = "net.java.sip.communicator.service.protocol.filetransfer"
+            + ".PROGRESS_SAMPLING_INTERVAL";
+
+    /**
+     * The default interval in milliseconds at which the active file
+     * transfers are sampled.
+     */
+    public static final long DEFAULT_SAMPLING_INTERVAL = 100;
+
+    /**
+     * The weight of the newest sample in the smoothed transfer rate.
+     */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    /**
+     * Samples the protocol specific state of a file transfer.
+     */
+    public interface Sampler
+    {
+        /**
+         * Updates the status and the number of transferred bytes of the
+         * <tt>AbstractFileTransfer</tt> it has been scheduled with. Called on
+         * the sampling thread.
+         *
+         * @return <tt>true</tt> if the transfer is still active and has to be
+         * sampled again; <tt>false</tt> if it has finished, in which case the
+         * <tt>Sampler</tt> is responsible for firing the final events
+         */
+        public boolean sample();
+    }
+
+    /**
+     * The transfers which are currently sampled.
+     */
+    private static final List<ScheduledTransfer> transfers
+        = new CopyOnWriteArrayList<ScheduledTransfer>();
+
+    /**
+     * The executor running the sampling task or <tt>null</tt> if no transfer
+     * is active.
+     */
+    private static ScheduledExecutorService executor;
+
+    /**
+     * Starts sampling a specific file transfer.
+     *
+     * @param transfer the file transfer to fire progress events for
+     * @param totalBytes the size of the transferred file or <tt>-1</tt> if it
+     * is not known
+     * @param sampler the protocol specific <tt>Sampler</tt> of the transfer
+     */
+    public static void schedule(
+            AbstractFileTransfer transfer,
+            long totalBytes,
+            Sampler sampler)
+    {
+        transfers.add(new ScheduledTransfer(transfer, totalBytes, sampler));
+
+        synchronized (FileTransferProgressScheduler.class)
+        {
+            if (executor == null)
+            {
+                long interval = getSamplingInterval();
+
+                executor
+                    = Executors.newSingleThreadScheduledExecutor(
+                            new ThreadFactory()
+                            {
+                                public Thread newThread(Runnable r)
+                                {
+                                    Thread t
+                                        = new Thread(
+                                                r,
+                                                "FileTransferProgressScheduler");
+
+                                    t.setDaemon(true);
+                                    return t;
+                                }
+                            });
+                executor.scheduleWithFixedDelay(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                sampleTransfers();
+                            }
+                        },
+                        interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Samples all active transfers and stops the sampling thread once none
+     * is left.
+     */
+    private static void sampleTransfers()
+    {
+        long now = System.currentTimeMillis();
+
+        for (ScheduledTransfer transfer : transfers)
+        {
+            boolean active;
+
+            try
+            {
+                active = transfer.sample(now);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Failed to sample file transfer progress.", t);
+                active = false;
+            }
+            if (!active)
+                transfers.remove(transfer);
+        }
+
+        synchronized (FileTransferProgressScheduler.class)
+        {
+            if (transfers.isEmpty() && (executor != null))
+            {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the sampling interval from the configuration.
+     *
+     * @return the interval in milliseconds at which the active file
+     * transfers are sampled
+     */
+    private static long getSamplingInterval()
+    {
+        long interval = DEFAULT_SAMPLING_INTERVAL;
+        BundleContext bundleContext
+            = ProtocolProviderActivator.getBundleContext();
+
+        if (bundleContext != null)
+        {
+            ConfigurationService cfg
+                = ProtocolProviderActivator.getConfigurationService();
+
+            if (cfg != null)
+                interval = cfg.getLong(SAMPLING_INTERVAL_PROPERTY, interval);
+        }
+        return (interval > 0) ? interval : DEFAULT_SAMPLING_INTERVAL;
+    }
+
+    /**
+     * A file transfer together with the state of its previous sample.
+     */
+    private static class ScheduledTransfer
+    {
+        private final AbstractFileTransfer transfer;
+
+        private final long totalBytes;
+
+        private final Sampler sampler;
+
+        /**
+         * The number of transferred bytes at the previous sample.
+         */
+        private long lastBytes = 0;
+
+        /**
+         * The time of the previous sample.
+         */
+        private long lastTime = -1;
+
+        /**
+         * The smoothed transfer rate in bytes per second.
+         */
+        private double rate = 0;
+
+        ScheduledTransfer(
+                AbstractFileTransfer transfer,
+                long totalBytes,
+                Sampler sampler)
+        {
+            this.transfer = transfer;
+            this.totalBytes = totalBytes;
+            this.sampler = sampler;
+        }
+
+        /**
+         * Samples the transfer and fires a progress event if the number of
+         * transferred bytes has changed.
+         *
+         * @param now the time of the sample
+         * @return <tt>true</tt> if the transfer is still active
+         */
+        boolean sample(long now)
+        {
+            if (!sampler.sample())
+                return false;
+
+            long bytes = transfer.getTransferedBytes();
+
+            if (lastTime != -1 && now > lastTime)
+            {
+                double currentRate
+                    = (bytes - lastBytes) * 1000d / (now - lastTime);
+
+                rate
+                    = (rate == 0)
+                        ? currentRate
+                        : RATE_SMOOTHING * currentRate
+                            + (1 - RATE_SMOOTHING) * rate;
+            }
+            lastTime = now;
+
+            if (bytes != lastBytes)
+            {
+                lastBytes = bytes;
+
+                long timeLeft = -1;
+
+                if (totalBytes > 0 && rate > 0)
+                {
+                    timeLeft
+                        = (long) (Math.max(0, totalBytes - bytes)
+                                    * 1000d / rate);
+                }
+                transfer.setProgressEstimate((long) rate, timeLeft);
+                transfer.fireProgressChangeEvent(now, bytes);
+            }
+            return true;
+        }
+    }
+}
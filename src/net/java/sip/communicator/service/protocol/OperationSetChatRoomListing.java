@@ -0,0 +1,52 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.util.*;
+
+/**
+ * Provides the chat rooms available on the server in pages, for servers that
+ * return a long list of chat rooms slowly. The list can be queried while it
+ * is still being retrieved.
+ */
+public interface OperationSetChatRoomListing
+    extends OperationSet
+{
+    /**
+     * Queries a page of the chat rooms available on the server, matching a
+     * filter. Does not block. Chat rooms that are received later are appended
+     * to the list, so querying again may produce more results as long as
+     * {@link #isChatRoomListComplete()} returns <tt>false</tt>.
+     *
+     * @param filter the filter, or <tt>null</tt> to match all chat rooms
+     * @param offset the number of matching chat rooms to skip
+     * @param limit the maximum number of chat rooms to return
+     * @return the names of the matching chat rooms
+     * @throws OperationFailedException if the list cannot be retrieved
+     */
+    public List<String> queryChatRooms(String filter, int offset, int limit)
+        throws OperationFailedException;
+
+    /**
+     * Determines whether the list of chat rooms is complete, i.e. it is not
+     * being retrieved from the server.
+     *
+     * @return <tt>true</tt> if the list of chat rooms is complete
+     */
+    public boolean isChatRoomListComplete();
+}
@@ -18,18 +18,40 @@
 package net.java.sip.communicator.service.protocol;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import net.java.sip.communicator.util.*;
 
 /**
+ * Default implementation of {@link OperationSetInstantMessageTransform}.
+ *
+ * Layers are kept in an immutable list, sorted by ascending priority. Layers
+ * with equal priority keep the order in which they were added. Adding or
+ * removing a layer replaces the list, so message transformation can iterate
+ * over it without locking. The latency statistics of a layer are logged at
+ * debug level when it is removed.
+ *
  * @author George Politis
  */
 public class OperationSetInstantMessageTransformImpl
     implements OperationSetInstantMessageTransform
 {
-    public final Map<Integer, Vector<TransformLayer>> transformLayers
-        = new Hashtable<Integer, Vector<TransformLayer>>();
+    /**
+     * The <tt>Logger</tt> used by the
+     * <tt>OperationSetInstantMessageTransformImpl</tt> class and its instances
+     * for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(OperationSetInstantMessageTransformImpl.class);
 
     private static final int defaultPriority = 1;
 
+    /**
+     * The registered layers, sorted by priority.
+     */
+    private volatile List<PrioritizedTransformLayer> transformLayers
+        = Collections.emptyList();
+
     public void addTransformLayer(TransformLayer transformLayer)
     {
         this.addTransformLayer(defaultPriority, transformLayer);
@@ -37,41 +59,175 @@ public void addTransformLayer(TransformLayer transformLayer)
 
     public void addTransformLayer(int priority, TransformLayer transformLayer)
     {
-        synchronized (transformLayers)
+        synchronized (this)
         {
-            if (!transformLayers.containsKey(defaultPriority))
-                transformLayers.put(defaultPriority,
-                    new Vector<TransformLayer>());
+            List<PrioritizedTransformLayer> layers
+                = new ArrayList<PrioritizedTransformLayer>(transformLayers);
+            int index = 0;
 
-            transformLayers.get(defaultPriority).add(transformLayer);
+            while (index < layers.size()
+                    && layers.get(index).getPriority() <= priority)
+                index++;
+            layers.add(index,
+                new PrioritizedTransformLayer(priority, transformLayer));
+            transformLayers = Collections.unmodifiableList(layers);
         }
     }
 
     public boolean containsLayer(TransformLayer layer)
     {
-        synchronized (transformLayers)
+        for (PrioritizedTransformLayer entry : transformLayers)
         {
-            for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                    : transformLayers.entrySet())
-            {
-                if (entry.getValue().contains(layer))
-                    return true;
-            }
-
+            if (entry.getLayer().equals(layer))
+                return true;
         }
         return false;
     }
 
     public void removeTransformLayer(TransformLayer transformLayer)
     {
-        synchronized (transformLayers)
+        synchronized (this)
         {
-            for (Map.Entry<Integer, Vector<TransformLayer>> entry
-                    : transformLayers.entrySet())
+            List<PrioritizedTransformLayer> layers
+                = new ArrayList<PrioritizedTransformLayer>(transformLayers);
+            Iterator<PrioritizedTransformLayer> it = layers.iterator();
+
+            while (it.hasNext())
             {
-                entry.getValue().remove(transformLayer);
+                PrioritizedTransformLayer layer = it.next();
+
+                if (layer.getLayer().equals(transformLayer))
+                {
+                    it.remove();
+                    if (logger.isDebugEnabled())
+                        logger.debug("Removed transform layer " + layer);
+                }
             }
+            transformLayers = Collections.unmodifiableList(layers);
         }
     }
 
+    /**
+     * Returns a snapshot of the registered layers in the order in which they
+     * transform messages. The snapshot is not affected by layers being added
+     * or removed afterwards.
+     *
+     * @return the registered layers, sorted by priority
+     */
+    public List<PrioritizedTransformLayer> getTransformLayers()
+    {
+        return transformLayers;
+    }
+
+    /**
+     * A registered <tt>TransformLayer</tt> together with its priority and
+     * the latency statistics of its transformations.
+     */
+    public static class PrioritizedTransformLayer
+    {
+        /**
+         * The number of latency histogram buckets. Bucket <tt>i</tt> counts
+         * transformations that took less than <tt>2^i</tt> microseconds, the
+         * last bucket counts all slower ones.
+         */
+        public static final int HISTOGRAM_BUCKETS = 24;
+
+        private final int priority;
+
+        private final TransformLayer layer;
+
+        /**
+         * The latency histogram.
+         */
+        private final AtomicLongArray histogram
+            = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        /**
+         * The accumulated time spent in this layer, in nanoseconds.
+         */
+        private final AtomicLong totalTime = new AtomicLong();
+
+        private PrioritizedTransformLayer(int priority, TransformLayer layer)
+        {
+            if (layer == null)
+                throw new IllegalArgumentException("layer");
+
+            this.priority = priority;
+            this.layer = layer;
+        }
+
+        /**
+         * Returns the priority with which the layer was registered.
+         *
+         * @return the priority of the layer
+         */
+        public int getPriority()
+        {
+            return priority;
+        }
+
+        /**
+         * Returns the registered <tt>TransformLayer</tt>.
+         *
+         * @return the layer
+         */
+        public TransformLayer getLayer()
+        {
+            return layer;
+        }
+
+        /**
+         * Records the time a single transformation took in this layer.
+         *
+         * @param nanos the duration of the transformation in nanoseconds
+         */
+        public void recordLatency(long nanos)
+        {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+
+            histogram.incrementAndGet(
+                    Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+            totalTime.addAndGet(nanos);
+        }
+
+        /**
+         * Returns a copy of the latency histogram of this layer.
+         *
+         * @return the number of transformations per latency bucket
+         * @see #HISTOGRAM_BUCKETS
+         */
+        public long[] getLatencyHistogram()
+        {
+            long[] copy = new long[HISTOGRAM_BUCKETS];
+
+            for (int i = 0; i < copy.length; i++)
+                copy[i] = histogram.get(i);
+            return copy;
+        }
+
+        /**
+         * Returns the accumulated time spent in this layer.
+         *
+         * @return the total time in nanoseconds
+         */
+        public long getTotalTime()
+        {
+            return totalTime.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder s = new StringBuilder();
+
+            s.append(layer.getClass().getName())
+                .append(" (priority ").append(priority)
+                .append(", total ").append(getTotalTime() / 1000000)
+                .append(" ms, histogram");
+            for (long count : getLatencyHistogram())
+                s.append(' ').append(count);
+            return s.append(')').toString();
+        }
+    }
 }
@@ -104,6 +104,13 @@
     public static final String OVERRIDE_PHONE_SUFFIX
             = "OVERRIDE_PHONE_SUFFIX";
 
+    /**
+     * Account property which restricts file transfers to in-band
+     * bytestreams. Set it to <tt>false</tt> to try SOCKS5 bytestreams first.
+     */
+    public static final String FILE_TRANSFER_IBB_ONLY
+            = "FILE_TRANSFER_IBB_ONLY";
+
     /**
      * Creates an account id from the specified id and account properties.
      * @param id the id identifying this account
@@ -242,6 +249,18 @@ public boolean isGoogleContactsEnabled()
         return getAccountPropertyBoolean(GOOGLE_CONTACTS_ENABLED, true);
     }
 
+    /**
+     * Determines whether file transfers of this account are restricted to
+     * in-band bytestreams, which is the default.
+     *
+     * @return <tt>true</tt> if file transfers are to use in-band bytestreams
+     * only and <tt>false</tt> if SOCKS5 bytestreams are to be tried first.
+     */
+    public boolean isFileTransferIbbOnly()
+    {
+        return getAccountPropertyBoolean(FILE_TRANSFER_IBB_ONLY, true);
+    }
+
     /**
      * Enables anonymous authorization mode on this XMPP account.
      * @param useAnonymousAuth <tt>true</tt> to use anonymous login.
@@ -20,6 +20,8 @@
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import net.java.sip.communicator.service.dns.*;
 
@@ -110,12 +112,38 @@
      */
     private static final Random random = new Random();
 
+    /**
+     * The max number of DNS queries we run in parallel.
+     */
+    private static final int MAX_PARALLEL_DNS_QUERIES = 8;
+
+    /**
+     * The executor running the asynchronous DNS queries. The number of its
+     * threads is bounded and they die when idle.
+     */
+    private static final ThreadPoolExecutor dnsQueryExecutor;
+
     static
     {
         String prefer6 = System.getProperty("java.net.preferIPv6Addresses");
         String prefer4 = System.getProperty("java.net.preferIPv4Stack");
         logger.info("java.net.preferIPv6Addresses=" + prefer6);
         logger.info("java.net.preferIPv4Stack=" + prefer4);
+
+        dnsQueryExecutor = new ThreadPoolExecutor(
+            MAX_PARALLEL_DNS_QUERIES, MAX_PARALLEL_DNS_QUERIES,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    return new DnsQueryThread(r, count.incrementAndGet());
+                }
+            });
+        dnsQueryExecutor.allowCoreThreadTimeOut(true);
     }
 
     /**
@@ -549,8 +577,10 @@ public static SRVRecord[] getSRVRecords(
             if(!useDNSCache)
             {
                 lookup.setCache(new Cache());
+                records = lookup.run();
             }
-            records = lookup.run();
+            else
+                records = lookup.run();
         }
         catch (TextParseException tpe)
         {
@@ -922,63 +952,188 @@ public static InetSocketAddress[] getAandAAAARecords(String domain, int port)
             }
         }
 
-        List<InetSocketAddress> addresses = new LinkedList<InetSocketAddress>();
+        final String lookupDomain = domain;
+        final int lookupPort = port;
         boolean v6lookup = Boolean.getBoolean("java.net.preferIPv6Addresses");
 
-        for(int i = 0; i < 2; i++)
+        // the lookup of the not preferred address family runs in parallel,
+        // unless we are already on a DNS query thread and may starve the
+        // pool by waiting for it
+        Future<List<InetSocketAddress>> secondary = null;
+        if(!(Thread.currentThread() instanceof DnsQueryThread))
         {
-            Lookup lookup;
-            try
-            {
-                lookup = createLookup(domain, v6lookup ? Type.AAAA : Type.A);
-            }
-            catch (TextParseException tpe)
-            {
-                logger.error("Failed to parse domain <" + domain + ">", tpe);
-                throw new ParseException(tpe.getMessage(), 0);
-            }
-            Record[] records = null;
-            try
-            {
-                records = lookup.run();
-            }
-            catch(DnssecRuntimeException e)
-            {
-                throw new DnssecException(e);
-            }
-            if(records != null)
-            {
-                for(Record r : records)
+            final boolean secondaryV6 = !v6lookup;
+            secondary = dnsQueryExecutor.submit(
+                new Callable<List<InetSocketAddress>>()
                 {
-                    try
-                    {
-                        addresses.add(
-                            new InetSocketAddress(
-                                // create a new InetAddress filled with the
-                                // domain name to avoid PTR queries
-                                InetAddress.getByAddress(
-                                    domain,
-                                    v6lookup
-                                      ? ((AAAARecord)r).getAddress().getAddress()
-                                      : ((ARecord)r).getAddress().getAddress()
-                                ),
-                                port
-                            )
-                        );
-                    }
-                    catch (UnknownHostException e)
+                    public List<InetSocketAddress> call()
+                        throws Exception
                     {
-                        logger.error("Invalid record returned from DNS", e);
+                        return getAddressRecords(
+                            lookupDomain, lookupPort, secondaryV6);
                     }
-                }
-            }
-            v6lookup = !v6lookup;
+                });
         }
+
+        List<InetSocketAddress> addresses
+            = getAddressRecords(domain, port, v6lookup);
+
+        if(secondary != null)
+            addresses.addAll(getDnsQueryResult(secondary));
+        else
+            addresses.addAll(getAddressRecords(domain, port, !v6lookup));
+
         if(logger.isTraceEnabled())
             logger.trace("A or AAAA addresses: " + addresses);
         return addresses.toArray(new InetSocketAddress[0]);
     }
 
+    /**
+     * Returns the A or AAAA records of the specified domain as socket
+     * addresses.
+     *
+     * @param domain the name of the domain we'd like to resolve.
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>
+     * @param v6lookup <tt>true</tt> to look up AAAA records, <tt>false</tt>
+     * for A records.
+     * @return a list of InetSocketAddress containing records returned by the
+     *         DNS server - address and port .
+     * @throws ParseException if <tt>domain</tt> is not a valid domain name.
+     * @throws DnssecException when a DNSSEC validation failure occurred.
+     */
+    private static List<InetSocketAddress> getAddressRecords(
+            String domain,
+            int port,
+            boolean v6lookup)
+        throws ParseException, DnssecException
+    {
+        List<InetSocketAddress> addresses = new LinkedList<InetSocketAddress>();
+        int type = v6lookup ? Type.AAAA : Type.A;
+        Lookup lookup;
+        try
+        {
+            lookup = createLookup(domain, type);
+        }
+        catch (TextParseException tpe)
+        {
+            logger.error("Failed to parse domain <" + domain + ">", tpe);
+            throw new ParseException(tpe.getMessage(), 0);
+        }
+        Record[] records = null;
+        try
+        {
+            records = lookup.run();
+        }
+        catch(DnssecRuntimeException e)
+        {
+            throw new DnssecException(e);
+        }
+        if(records != null)
+        {
+            for(Record r : records)
+            {
+                try
+                {
+                    addresses.add(
+                        new InetSocketAddress(
+                            // create a new InetAddress filled with the
+                            // domain name to avoid PTR queries
+                            InetAddress.getByAddress(
+                                domain,
+                                v6lookup
+                                  ? ((AAAARecord)r).getAddress().getAddress()
+                                  : ((ARecord)r).getAddress().getAddress()
+                            ),
+                            port
+                        )
+                    );
+                }
+                catch (UnknownHostException e)
+                {
+                    logger.error("Invalid record returned from DNS", e);
+                }
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Asynchronously resolves the A and AAAA records of the specified domain.
+     *
+     * @param domain the name of the domain we'd like to resolve.
+     * @param port the port number of the returned <tt>InetSocketAddress</tt>
+     * @return the <tt>Future</tt> result of
+     * {@link #getAandAAAARecords(String, int)}, to be obtained with
+     * {@link #getDnsQueryResult(Future)}.
+     */
+    public static Future<InetSocketAddress[]> getAandAAAARecordsAsync(
+            final String domain,
+            final int port)
+    {
+        return submitDnsQuery(new Callable<InetSocketAddress[]>()
+        {
+            public InetSocketAddress[] call()
+                throws Exception
+            {
+                return getAandAAAARecords(domain, port);
+            }
+        });
+    }
+
+    /**
+     * Runs a DNS query on the threads shared by all asynchronous DNS
+     * queries. The query must only throw <tt>ParseException</tt>s and
+     * <tt>DnssecException</tt>s.
+     *
+     * @param query the query to run.
+     * @return the <tt>Future</tt> result of the query, to be obtained with
+     * {@link #getDnsQueryResult(Future)}.
+     */
+    public static <T> Future<T> submitDnsQuery(Callable<T> query)
+    {
+        return dnsQueryExecutor.submit(query);
+    }
+
+    /**
+     * Waits for the result of an asynchronous DNS query, rethrowing the
+     * exceptions of the query.
+     *
+     * @param query the query which result we want.
+     * @return the result of the query.
+     * @throws ParseException if the query failed to parse the domain name or
+     * was interrupted.
+     * @throws DnssecException when a DNSSEC validation failure occurred.
+     */
+    public static <T> T getDnsQueryResult(Future<T> query)
+        throws ParseException, DnssecException
+    {
+        try
+        {
+            return query.get();
+        }
+        catch (InterruptedException e)
+        {
+            query.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ParseException("Interrupted while resolving", 0);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if(cause instanceof ParseException)
+                throw (ParseException) cause;
+            else if(cause instanceof DnssecException)
+                throw (DnssecException) cause;
+            else if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else if(cause instanceof Error)
+                throw (Error) cause;
+            else
+                throw new RuntimeException(cause);
+        }
+    }
+
     /**
      * Returns array of hosts from the A record of the specified domain.
      * The records are ordered against the A record priority
@@ -1451,4 +1606,23 @@ public static void clearDefaultDNSCache()
         Cache defaultCache = Lookup.getDefaultCache(DClass.IN);
         defaultCache.clearCache();
     }
+
+    /**
+     * The thread running asynchronous DNS queries.
+     */
+    private static class DnsQueryThread
+        extends Thread
+    {
+        /**
+         * Creates a daemon thread running asynchronous DNS queries.
+         *
+         * @param r the runnable of the thread.
+         * @param index the index of the thread used in its name.
+         */
+        DnsQueryThread(Runnable r, int index)
+        {
+            super(r, NetworkUtils.class.getName() + " DNS query " + index);
+            setDaemon(true);
+        }
+    }
 }
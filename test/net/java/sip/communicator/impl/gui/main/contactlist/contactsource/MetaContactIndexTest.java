@@ -0,0 +1,227 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.contactlist.contactsource;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.contactlist.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+
+public class MetaContactIndexTest
+    extends TestCase
+{
+    private final List<MetaContact> rootContacts = new ArrayList<MetaContact>();
+
+    private final List<MetaContactGroup> rootGroups
+        = new ArrayList<MetaContactGroup>();
+
+    private MetaContactGroup root;
+
+    private MetaContactIndex index;
+
+    @Override
+    protected void setUp()
+    {
+        root = createGroup(rootContacts, rootGroups);
+        index = new MetaContactIndex();
+    }
+
+    public void testSearchBeforeAndAfterBuild()
+    {
+        MetaContact alice = createContact("Alice", "alice@example.com");
+        MetaContact bob = createContact("Bob", "bob@example.org");
+
+        rootContacts.add(alice);
+        rootContacts.add(bob);
+
+        // not indexed before it is built
+        index.update(alice);
+        Assert.assertEquals(0, index.size());
+
+        index.build(root);
+        Assert.assertEquals(2, index.size());
+        assertMatches(index.search("ali"), alice);
+        assertMatches(index.search("EXAMPLE.ORG"), bob);
+        assertMatches(index.search("b"), bob);
+        assertMatches(index.search("example"), alice, bob);
+        assertMatches(index.search("carol"));
+    }
+
+    public void testAddUpdateRemove()
+    {
+        index.build(root);
+
+        MetaContact carol = createContact("Carol", "carol@example.com");
+        index.update(carol);
+        assertMatches(index.search("carol"), carol);
+
+        MetaContact renamed = createContact("Caroline", "cl@example.com");
+        index.remove(carol);
+        index.update(renamed);
+        assertMatches(index.search("carol"), renamed);
+        assertMatches(index.search("cl@"), renamed);
+
+        index.remove(renamed);
+        assertMatches(index.search("carol"));
+        Assert.assertEquals(0, index.size());
+    }
+
+    public void testUpdateGroup()
+    {
+        index.build(root);
+
+        List<MetaContact> groupContacts = new ArrayList<MetaContact>();
+        MetaContact dave = createContact("Dave", "dave@example.com");
+        groupContacts.add(dave);
+        rootGroups.add(
+            createGroup(groupContacts, new ArrayList<MetaContactGroup>()));
+
+        assertMatches(index.search("dave"));
+        index.updateGroup(root);
+        assertMatches(index.search("dave"), dave);
+    }
+
+    public void testRefinementOnExtendedFilter()
+    {
+        MetaContact anna = createContact("Anna", "anna@example.com");
+        MetaContact annabel = createContact("Annabel", "annabel@example.com");
+        MetaContact hannah = createContact("Hannah", "hannah@example.com");
+
+        rootContacts.add(anna);
+        rootContacts.add(annabel);
+        rootContacts.add(hannah);
+        index.build(root);
+
+        assertMatches(index.search("an"), anna, annabel, hannah);
+        assertMatches(index.search("ann"), anna, annabel, hannah);
+        assertMatches(index.search("anna"), anna, annabel, hannah);
+        assertMatches(index.search("annab"), annabel);
+
+        // a modification drops the refined result
+        MetaContact annabella
+            = createContact("Annabella", "annabella@example.com");
+        index.update(annabella);
+        assertMatches(index.search("annab"), annabel, annabella);
+    }
+
+    public void testCompaction()
+    {
+        index.build(root);
+
+        List<MetaContact> contacts = new ArrayList<MetaContact>();
+        for (int i = 0; i < 600; i++)
+        {
+            MetaContact contact
+                = createContact("Contact " + i, "user" + i + "@example.com");
+
+            contacts.add(contact);
+            index.update(contact);
+        }
+        // removes more than half of the entries, which compacts the index
+        for (int i = 0; i < 500; i++)
+            index.remove(contacts.get(i));
+
+        Assert.assertEquals(100, index.size());
+        assertMatches(index.search("user499@"));
+        assertMatches(index.search("user500@"), contacts.get(500));
+        Assert.assertEquals(100, index.search("example").size());
+    }
+
+    public void testLocaleIndependentCase()
+    {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try
+        {
+            MetaContact ivan = createContact("ivan", "ivan@example.com");
+
+            rootContacts.add(ivan);
+            index.build(root);
+            assertMatches(index.search("IVAN"), ivan);
+        }
+        finally
+        {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    private static void assertMatches(
+        List<MetaContact> actual,
+        MetaContact... expected)
+    {
+        Assert.assertEquals(
+            new HashSet<MetaContact>(Arrays.asList(expected)),
+            new HashSet<MetaContact>(actual));
+        Assert.assertEquals(expected.length, actual.size());
+    }
+
+    private static MetaContact createContact(String displayName, String address)
+    {
+        Contact contact = EasyMock.createNiceMock(Contact.class);
+        EasyMock.expect(contact.getDisplayName())
+            .andStubReturn(displayName);
+        EasyMock.expect(contact.getAddress()).andStubReturn(address);
+        EasyMock.replay(contact);
+
+        final List<Contact> contacts = Collections.singletonList(contact);
+        MetaContact metaContact = EasyMock.createNiceMock(MetaContact.class);
+        EasyMock.expect(metaContact.getDisplayName())
+            .andStubReturn(displayName);
+        EasyMock.expect(metaContact.getContacts())
+            .andStubAnswer(new IAnswer<Iterator<Contact>>()
+            {
+                @Override
+                public Iterator<Contact> answer()
+                {
+                    return contacts.iterator();
+                }
+            });
+        EasyMock.replay(metaContact);
+        return metaContact;
+    }
+
+    private static MetaContactGroup createGroup(
+        final List<MetaContact> contacts,
+        final List<MetaContactGroup> subgroups)
+    {
+        MetaContactGroup group = EasyMock.createNiceMock(MetaContactGroup.class);
+        EasyMock.expect(group.getChildContacts())
+            .andStubAnswer(new IAnswer<Iterator<MetaContact>>()
+            {
+                @Override
+                public Iterator<MetaContact> answer()
+                {
+                    return contacts.iterator();
+                }
+            });
+        EasyMock.expect(group.getSubgroups())
+            .andStubAnswer(new IAnswer<Iterator<MetaContactGroup>>()
+            {
+                @Override
+                public Iterator<MetaContactGroup> answer()
+                {
+                    return subgroups.iterator();
+                }
+            });
+        EasyMock.replay(group);
+        return group;
+    }
+}
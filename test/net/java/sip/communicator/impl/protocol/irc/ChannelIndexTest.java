@@ -0,0 +1,113 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+import junit.framework.*;
+
+public class ChannelIndexTest
+    extends TestCase
+{
+    private ChannelIndex index;
+
+    @Override
+    protected void setUp()
+    {
+        this.index = new ChannelIndex();
+        this.index.start(true);
+        this.index.put("#Java", 300, "The Java programming language");
+        this.index.put("##java", 20, "Off-topic");
+        this.index.put("#python", 500, "Python, not java");
+        this.index.put("#jitsi", 40, "Jitsi users");
+    }
+
+    private static List<String> names(final List<ChannelIndex.Entry> entries)
+    {
+        final ArrayList<String> names = new ArrayList<String>();
+        for (ChannelIndex.Entry entry : entries)
+        {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    public void testQueryableBeforeComplete()
+    {
+        Assert.assertFalse(this.index.isComplete());
+        Assert.assertEquals(4, this.index.size());
+        Assert.assertEquals(4, this.index.query(null, 0, 10).size());
+    }
+
+    public void testPrefixMatchesComeFirst()
+    {
+        Assert.assertEquals(Arrays.asList("##java", "#Java", "#python"),
+            names(this.index.query("java", 0, 10)));
+        Assert.assertEquals(Arrays.asList("##java", "#Java", "#jitsi"),
+            names(this.index.query("#j", 0, 10)));
+    }
+
+    public void testTopicMatch()
+    {
+        Assert.assertEquals(Arrays.asList("#python"),
+            names(this.index.query("not java", 0, 10)));
+        Assert.assertEquals(300,
+            this.index.query("java", 1, 1).get(0).getUsers());
+    }
+
+    public void testPaging()
+    {
+        Assert.assertEquals(Arrays.asList("#Java"),
+            names(this.index.query("java", 1, 1)));
+        Assert.assertEquals(Arrays.asList("#python"),
+            names(this.index.query("java", 2, 1)));
+        Assert.assertTrue(this.index.query("java", 3, 1).isEmpty());
+        Assert.assertTrue(this.index.query("java", 0, 0).isEmpty());
+    }
+
+    public void testNegativeOffset()
+    {
+        try
+        {
+            this.index.query("java", -1, 1);
+            fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testFullListingRemovesMissingChannels()
+    {
+        this.index.finish(true);
+        this.index.start(true);
+        this.index.put("#jitsi", 41, "Jitsi users");
+        this.index.finish(true);
+        Assert.assertTrue(this.index.isComplete());
+        Assert.assertEquals(Arrays.asList("#jitsi"), this.index.names());
+    }
+
+    public void testDeltaListingKeepsChannels()
+    {
+        this.index.finish(true);
+        this.index.start(false);
+        this.index.put("#new", 1, "");
+        this.index.finish(false);
+        Assert.assertEquals(5, this.index.size());
+    }
+}
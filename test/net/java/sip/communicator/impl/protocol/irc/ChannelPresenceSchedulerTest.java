@@ -0,0 +1,66 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import junit.framework.*;
+
+import org.easymock.*;
+
+import com.ircclouds.irc.api.*;
+
+public class ChannelPresenceSchedulerTest
+    extends TestCase
+{
+    public void testConstructionNullIrc()
+    {
+        try
+        {
+            new ChannelPresenceScheduler(null);
+            fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testPeriodGrowsWithChannelSize()
+    {
+        Assert.assertEquals(ChannelPresenceScheduler.BASE_PERIOD,
+            ChannelPresenceScheduler.period(0));
+        Assert.assertEquals(ChannelPresenceScheduler.BASE_PERIOD,
+            ChannelPresenceScheduler.period(100));
+        Assert.assertEquals(2 * ChannelPresenceScheduler.BASE_PERIOD,
+            ChannelPresenceScheduler.period(101));
+        Assert.assertEquals(ChannelPresenceScheduler.MAX_PERIOD,
+            ChannelPresenceScheduler.period(100000));
+    }
+
+    public void testQueryUsesWhox()
+    {
+        IRCApi ircMock = EasyMock.createMock(IRCApi.class);
+        ChatRoomIrcImpl chatroomMock =
+            EasyMock.createMock(ChatRoomIrcImpl.class);
+        EasyMock.expect(chatroomMock.getIdentifier()).andReturn("#test");
+        ircMock.rawMessage("WHO #test %tcnf,"
+            + ChannelPresenceScheduler.WHOX_TOKEN);
+        EasyMock.expectLastCall();
+        EasyMock.replay(ircMock, chatroomMock);
+        new ChannelPresenceScheduler(ircMock).query(chatroomMock);
+        EasyMock.verify(ircMock, chatroomMock);
+    }
+}
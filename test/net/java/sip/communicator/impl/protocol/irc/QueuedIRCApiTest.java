@@ -0,0 +1,207 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.easymock.*;
+
+import com.ircclouds.irc.api.*;
+
+public class QueuedIRCApiTest
+    extends TestCase
+{
+    public void testConstructionNullIrc()
+    {
+        try
+        {
+            new QueuedIRCApi(null);
+            fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testCommandsAreSentInOrder() throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        IRCApi ircMock = EasyMock.createStrictMock(IRCApi.class);
+        ircMock.message("#test", "first");
+        ircMock.changeNick("other");
+        ircMock.message("#test", "second");
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            @Override
+            public Object answer() throws Throwable
+            {
+                done.countDown();
+                return null;
+            }
+        });
+        EasyMock.replay(ircMock);
+        QueuedIRCApi queued = new QueuedIRCApi(ircMock);
+        queued.message("#test", "first");
+        queued.changeNick("other");
+        queued.message("#test", "second");
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        EasyMock.verify(ircMock);
+        Assert.assertEquals(0, queued.getQueueDepth());
+    }
+
+    public void testFailureIsReportedToCallback() throws InterruptedException
+    {
+        final CountDownLatch failed = new CountDownLatch(1);
+        final RuntimeException failure = new RuntimeException("closed");
+        IRCApi ircMock = EasyMock.createMock(IRCApi.class);
+        ircMock.message(EasyMock.eq("#test"), EasyMock.eq("message"),
+            EasyMock.<Callback<String>> anyObject());
+        EasyMock.expectLastCall().andThrow(failure);
+        EasyMock.replay(ircMock);
+        new QueuedIRCApi(ircMock).message("#test", "message",
+            new Callback<String>()
+            {
+                @Override
+                public void onSuccess(String aObject)
+                {
+                }
+
+                @Override
+                public void onFailure(Exception aExc)
+                {
+                    Assert.assertSame(failure, aExc);
+                    failed.countDown();
+                }
+            });
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        EasyMock.verify(ircMock);
+    }
+
+    public void testInteractiveCommandsComeBeforeQueries()
+        throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        IRCApi ircMock = EasyMock.createStrictMock(IRCApi.class);
+        ircMock.message("#test", "first");
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            @Override
+            public Object answer() throws Throwable
+            {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        ircMock.message("#test", "second");
+        ircMock.rawMessage("WHO #test");
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            @Override
+            public Object answer() throws Throwable
+            {
+                done.countDown();
+                return null;
+            }
+        });
+        EasyMock.replay(ircMock);
+        QueuedIRCApi queued = new QueuedIRCApi(ircMock);
+        queued.message("#test", "first");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        queued.backgroundQuery("WHO #test");
+        queued.backgroundQuery("WHO #test");
+        queued.message("#test", "second");
+        Assert.assertEquals(2, queued.getQueueDepth());
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        EasyMock.verify(ircMock);
+    }
+
+    public void testRawMessagesAreNotDeduplicated()
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(2);
+        IRCApi ircMock = EasyMock.createStrictMock(IRCApi.class);
+        ircMock.rawMessage("WHO #test");
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            @Override
+            public Object answer() throws Throwable
+            {
+                done.countDown();
+                return null;
+            }
+        }).times(2);
+        EasyMock.replay(ircMock);
+        QueuedIRCApi queued = new QueuedIRCApi(ircMock);
+        queued.rawMessage("WHO #test");
+        queued.rawMessage("WHO #test");
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        EasyMock.verify(ircMock);
+    }
+
+    public void testDisconnectReportsDroppedCommands()
+        throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        IRCApi ircMock = EasyMock.createStrictMock(IRCApi.class);
+        // disconnect while the worker thread is still inside the mock
+        EasyMock.makeThreadSafe(ircMock, false);
+        ircMock.message("#test", "first");
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            @Override
+            public Object answer() throws Throwable
+            {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        ircMock.disconnect();
+        EasyMock.replay(ircMock);
+        QueuedIRCApi queued = new QueuedIRCApi(ircMock);
+        queued.message("#test", "first");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        queued.message("#test", "second", new Callback<String>()
+        {
+            @Override
+            public void onSuccess(String aObject)
+            {
+                Assert.fail("Dropped command must not succeed.");
+            }
+
+            @Override
+            public void onFailure(Exception aExc)
+            {
+                failed.countDown();
+            }
+        });
+        queued.disconnect();
+        release.countDown();
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, queued.getQueueDepth());
+        EasyMock.verify(ircMock);
+    }
+}
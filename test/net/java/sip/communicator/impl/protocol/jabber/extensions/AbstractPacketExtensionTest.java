@@ -0,0 +1,108 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import junit.framework.*;
+
+/**
+ * Tests the XML serialization of <tt>AbstractPacketExtension</tt>.
+ */
+public class AbstractPacketExtensionTest
+    extends TestCase
+{
+    private static class TestExtension
+        extends AbstractPacketExtension
+    {
+        public TestExtension(String namespace, String elementName)
+        {
+            super(namespace, elementName);
+        }
+    }
+
+    private static class CustomExtension
+        extends AbstractPacketExtension
+    {
+        public CustomExtension()
+        {
+            super(null, "custom");
+        }
+
+        @Override
+        public String toXML()
+        {
+            return "<custom-xml/>";
+        }
+    }
+
+    public void testEmptyElement()
+    {
+        TestExtension ext = new TestExtension("urn:test", "empty");
+
+        assertEquals("<empty xmlns='urn:test'/>", ext.toXML());
+    }
+
+    public void testNestedElements()
+    {
+        TestExtension root = new TestExtension("urn:test", "root");
+        TestExtension child = new TestExtension(null, "child");
+        TestExtension grandChild = new TestExtension("urn:other", "leaf");
+
+        root.setAttribute("id", "1");
+        child.setAttribute("name", "c");
+        grandChild.setText("text");
+        child.addChildExtension(grandChild);
+        root.addChildExtension(child);
+        root.addChildExtension(new CustomExtension());
+
+        assertEquals(
+            "<root xmlns='urn:test' id='1'>"
+                + "<child  name='c'>"
+                + "<leaf xmlns='urn:other'>text</leaf>"
+                + "</child>"
+                + "<custom-xml/>"
+                + "</root>",
+            root.toXML());
+
+        StringBuilder xml = new StringBuilder("<iq>");
+        AbstractPacketExtension.appendXML(xml, root);
+        xml.append("</iq>");
+        assertEquals("<iq>" + root.toXML() + "</iq>", xml.toString());
+    }
+
+    public void testAttributeEscaping()
+    {
+        TestExtension ext = new TestExtension(null, "e");
+
+        ext.setAttribute("a", "x'y\"<z>&");
+
+        assertEquals(
+            "<e  a='x&apos;y&quot;&lt;z&gt;&amp;'/>",
+            ext.toXML());
+    }
+
+    public void testAttributeEscapedOnce()
+    {
+        ConferenceDescriptionPacketExtension ext
+            = new ConferenceDescriptionPacketExtension();
+
+        ext.setUri("sip:a@b?x=1&y=2");
+
+        assertEquals("sip:a@b?x=1&y=2", ext.getUri());
+        assertTrue(ext.toXML().contains("uri='sip:a@b?x=1&amp;y=2'"));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.caps;
+
+import java.io.*;
+
+import junit.framework.*;
+
+import org.jivesoftware.smack.provider.*;
+import org.jivesoftware.smackx.packet.*;
+import org.jivesoftware.smackx.provider.*;
+
+/**
+ * Tests the persistence and the feature lookups of <tt>EntityCapsCache</tt>.
+ */
+public class EntityCapsCacheTest
+    extends TestCase
+{
+    private static final String NODE = "http://jitsi.org";
+
+    private File directory;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        ProviderManager.getInstance().addIQProvider(
+                "query",
+                "http://jabber.org/protocol/disco#info",
+                new DiscoverInfoProvider());
+
+        directory = File.createTempFile("entitycaps", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        File[] files = directory.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+
+        super.tearDown();
+    }
+
+    /**
+     * Creates a <tt>DiscoverInfo</tt> with specific features and the
+     * <tt>Caps</tt> which it is valid for.
+     */
+    private static EntityCapsManager.Caps createCaps(
+            DiscoverInfo info,
+            String... features)
+    {
+        DiscoverInfo.Identity identity
+            = new DiscoverInfo.Identity("client", "Jitsi");
+
+        identity.setType("pc");
+        info.addIdentity(identity);
+        for (String feature : features)
+            info.addFeature(feature);
+
+        EntityCapsManager capsManager = new EntityCapsManager();
+
+        capsManager.calculateEntityCapsVersion(info);
+
+        EntityCapsManager.Caps caps
+            = new EntityCapsManager.Caps(
+                    NODE,
+                    CapsPacketExtension.HASH_METHOD,
+                    capsManager.getCapsVersion(),
+                    null);
+
+        info.setNode(caps.getNodeVer());
+        return caps;
+    }
+
+    public void testPersistence()
+    {
+        DiscoverInfo info = new DiscoverInfo();
+        EntityCapsManager.Caps caps
+            = createCaps(info, "urn:xmpp:jingle:1", "urn:xmpp:receipts");
+
+        new EntityCapsCache(directory, 1).put(caps, info);
+
+        EntityCapsCache cache = new EntityCapsCache(directory, 1);
+        DiscoverInfo persisted = cache.get(caps);
+
+        assertNotNull(persisted);
+        assertTrue(persisted.containsFeature("urn:xmpp:receipts"));
+        assertTrue(cache.supportsFeature(caps, "urn:xmpp:jingle:1"));
+        assertFalse(cache.supportsFeature(caps, "urn:xmpp:unknown"));
+
+        EntityCapsManager.Caps unknown
+            = new EntityCapsManager.Caps(
+                    NODE, CapsPacketExtension.HASH_METHOD, "unknown", null);
+
+        assertNull(cache.get(unknown));
+        assertFalse(cache.supportsFeature(unknown, "urn:xmpp:jingle:1"));
+    }
+
+    public void testEviction()
+    {
+        DiscoverInfo info1 = new DiscoverInfo();
+        EntityCapsManager.Caps caps1 = createCaps(info1, "urn:test:1");
+        DiscoverInfo info2 = new DiscoverInfo();
+        EntityCapsManager.Caps caps2 = createCaps(info2, "urn:test:2");
+        EntityCapsCache cache = new EntityCapsCache(null, 1);
+
+        cache.put(caps1, info1);
+        assertSame(info1, cache.get(caps1));
+        cache.put(caps2, info2);
+        assertSame(info2, cache.get(caps2));
+        assertNull(cache.get(caps1));
+        assertFalse(cache.supportsFeature(caps1, "urn:test:1"));
+        assertTrue(cache.supportsFeature(caps2, "urn:test:2"));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.colibri;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Tests the lookups of <tt>ColibriConferenceIQ</tt> on a conference with
+ * many endpoints.
+ */
+public class ColibriConferenceIQTest
+    extends TestCase
+{
+    /**
+     * The number of endpoints in the conferences built by the tests.
+     */
+    private static final int ENDPOINT_COUNT = 500;
+
+    /**
+     * The names of the contents of the conferences built by the tests.
+     */
+    private static final String[] CONTENT_NAMES = { "audio", "video" };
+
+    /**
+     * Builds an allocation response with a channel and an SCTP connection
+     * per endpoint and content, and a channel bundle per endpoint.
+     */
+    private static ColibriConferenceIQ createAllocateResponse()
+    {
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+
+        response.setID("conference");
+        for (String contentName : CONTENT_NAMES)
+        {
+            ColibriConferenceIQ.Content content
+                = new ColibriConferenceIQ.Content(contentName);
+
+            for (int i = 0; i < ENDPOINT_COUNT; i++)
+            {
+                ColibriConferenceIQ.Channel channel
+                    = new ColibriConferenceIQ.Channel();
+
+                channel.setID(contentName + "-" + i);
+                channel.setEndpoint("endpoint-" + i);
+                channel.setChannelBundleId("bundle-" + i);
+                content.addChannel(channel);
+
+                ColibriConferenceIQ.SctpConnection conn
+                    = new ColibriConferenceIQ.SctpConnection();
+
+                conn.setID("sctp-" + contentName + "-" + i);
+                content.addSctpConnection(conn);
+            }
+            response.addContent(content);
+        }
+        for (int i = 0; i < ENDPOINT_COUNT; i++)
+        {
+            response.addChannelBundle(
+                    new ColibriConferenceIQ.ChannelBundle("bundle-" + i));
+            response.addEndpoint(
+                    new ColibriConferenceIQ.Endpoint(
+                            "endpoint-" + i, "Endpoint " + i));
+        }
+        return response;
+    }
+
+    public void testLargeConferenceLookups()
+    {
+        ColibriConferenceIQ state = new ColibriConferenceIQ();
+        ColibriAnalyser analyser = new ColibriAnalyser(state);
+
+        analyser.processChannelAllocResp(createAllocateResponse());
+
+        for (String contentName : CONTENT_NAMES)
+        {
+            ColibriConferenceIQ.Content content = state.getContent(contentName);
+
+            assertNotNull(content);
+            assertEquals(ENDPOINT_COUNT, content.getChannelCount());
+            for (int i = 0; i < ENDPOINT_COUNT; i++)
+            {
+                ColibriConferenceIQ.Channel channel
+                    = content.getChannel(contentName + "-" + i);
+
+                assertNotNull(channel);
+                assertSame(channel, content.getChannel(i));
+                assertNotNull(
+                    content.getSctpConnection("sctp-" + contentName + "-" + i));
+            }
+            assertNull(content.getChannel("missing"));
+        }
+        for (int i = 0; i < ENDPOINT_COUNT; i++)
+        {
+            assertEquals(
+                "bundle-" + i, state.getChannelBundle("bundle-" + i).getId());
+        }
+        assertNull(state.getContent("data"));
+        assertNull(state.getChannelBundle(null));
+    }
+
+    public void testOrderAndRemoval()
+    {
+        ColibriConferenceIQ conference = createAllocateResponse();
+        ColibriConferenceIQ.Content video = conference.getContent("video");
+        List<ColibriConferenceIQ.Channel> channels = video.getChannels();
+
+        for (int i = 0; i < ENDPOINT_COUNT; i++)
+            assertEquals("video-" + i, channels.get(i).getID());
+
+        ColibriConferenceIQ.Channel channel = video.getChannel("video-7");
+
+        assertFalse(video.addChannel(channel));
+        assertTrue(video.removeChannel(channel));
+        assertFalse(video.removeChannel(channel));
+        assertNull(video.getChannel("video-7"));
+        assertEquals(ENDPOINT_COUNT - 1, video.getChannelCount());
+        assertEquals("video-8", video.getChannel(7).getID());
+
+        assertEquals(
+            "Endpoint 42",
+            conference.getEndpoint("endpoint-42").getDisplayName());
+
+        String xml = conference.getChildElementXML();
+
+        assertTrue(
+            xml.indexOf("id='video-6'") < xml.indexOf("id='video-8'"));
+        assertTrue(xml.indexOf("name='audio'") < xml.indexOf("name='video'"));
+    }
+
+    public void testIdChangedAfterAdd()
+    {
+        ColibriConferenceIQ.Content content
+            = new ColibriConferenceIQ.Content("audio");
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel other = new ColibriConferenceIQ.Channel();
+
+        other.setID("other");
+        content.addChannel(channel);
+        content.addChannel(other);
+
+        assertNull(content.getChannel("allocated"));
+        channel.setID("allocated");
+        assertSame(channel, content.getChannel("allocated"));
+
+        other.setID("renamed");
+        assertNull(content.getChannel("other"));
+        assertSame(other, content.getChannel("renamed"));
+    }
+
+    public void testSourcesView()
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(1);
+        assertTrue(channel.getSources().isEmpty());
+        assertNull(channel.getSourceGroups());
+
+        assertTrue(channel.addSource(source));
+        assertFalse(channel.addSource(source));
+
+        List<SourcePacketExtension> sources = channel.getSources();
+
+        assertEquals(1, sources.size());
+        assertSame(sources, channel.getSources());
+        try
+        {
+            sources.clear();
+            fail("The sources of a Channel must be read-only");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+
+        assertTrue(channel.removeSource(source));
+        assertEquals(1, sources.size());
+        assertTrue(channel.getSources().isEmpty());
+    }
+}
@@ -20,6 +20,7 @@
 
 import junit.framework.TestCase;
 import net.java.sip.communicator.impl.protocol.jabber.SmackV3InteroperabilityLayer;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.service.protocol.jabber.AbstractSmackInteroperabilityLayer;
 import org.jivesoftware.smack.packet.IQ;
 import org.xmlpull.mxp1.MXParser;
@@ -172,4 +173,47 @@ public void testParseSource()
         assertEquals(3, numSsrcSources);
         assertEquals(3, numRidSources);
     }
-}
\ No newline at end of file
+
+    public void testParseChannelChildren()
+            throws Exception
+    {
+        xmlPullParser.setInput(new StringReader(testXml));
+        // Step forward to the 'conference' element
+        xmlPullParser.next();
+        xmlPullParser.next();
+
+        ColibriConferenceIQ conference
+            = (ColibriConferenceIQ) colibriIQProvider.parseIQ(xmlPullParser);
+
+        PayloadTypePacketExtension opus
+            = conference.getContent("audio").getChannel(0)
+                    .getPayloadTypes().get(0);
+        assertEquals("opus", opus.getName());
+        assertEquals(3, opus.getParameters().size());
+        assertEquals("maxplaybackrate", opus.getParameters().get(0).getName());
+
+        PayloadTypePacketExtension vp8
+            = conference.getContent("video").getChannel(0)
+                    .getPayloadTypes().get(0);
+        assertEquals(2, vp8.getParameters().size());
+        assertEquals(4, vp8.getRtcpFeedbackTypeList().size());
+
+        ColibriConferenceIQ.Channel video
+            = conference.getContent("video").getChannel(0);
+        assertEquals(2, video.getSourceGroups().size());
+        assertEquals(
+                3, video.getSourceGroups().get(0).getSources().size());
+
+        IceUdpTransportPacketExtension transport
+            = conference.getChannelBundle("66e3ea10").getTransport();
+        assertEquals("117916df", transport.getUfrag());
+        assertEquals(
+                1,
+                transport.getChildExtensionsOfType(
+                        DtlsFingerprintPacketExtension.class).size());
+        assertEquals(
+                1,
+                transport.getChildExtensionsOfType(
+                        RtcpmuxPacketExtension.class).size());
+    }
+}